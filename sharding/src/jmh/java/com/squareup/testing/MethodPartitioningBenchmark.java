@@ -0,0 +1,96 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how planning and filtering a {@link ShardingStrategies#METHOD} chunk scale with the
+ * number of test methods. Per-method times should stay roughly flat from one {@code methodCount}
+ * to the next; a quadratic step shows up as a per-method time that grows with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MethodPartitioningBenchmark {
+  private static final int METHODS_PER_CLASS = 20;
+  private static final PrintStream NO_OUTPUT = new PrintStream(new OutputStream() {
+    @Override public void write(int b) {
+    }
+  });
+
+  @Param({"1000", "10000", "150000"})
+  public int methodCount;
+
+  @Param({"40"})
+  public int chunkCount;
+
+  private List<TestClassInfo> testClasses;
+  private List<Description> descriptions;
+  private Filter filter;
+
+  @Setup public void setUp() {
+    testClasses = new ArrayList<>();
+    for (int classIndex = 0; classIndex * METHODS_PER_CLASS < methodCount; classIndex++) {
+      String className = "com.squareup.benchmark.Generated" + classIndex + "Test";
+      List<TestMethodInfo> methods = new ArrayList<>();
+      for (int i = 0; i < METHODS_PER_CLASS; i++) {
+        methods.add(new TestMethodInfo(className, "test" + i, "()V", 1, ImmutableList.of()));
+      }
+      testClasses.add(
+          new TestClassInfo(className, 1, null, false, null, null, ImmutableMap.of(), methods));
+    }
+
+    // Descriptions need a loadable class, so the filter is measured on one with every method.
+    descriptions = new ArrayList<>();
+    List<TestMethodInfo> chunkMethods = new ArrayList<>();
+    for (int i = 0; i < methodCount; i++) {
+      descriptions.add(Description.createTestDescription(GeneratedTest.class, "test" + i + "[0]"));
+      if (i % chunkCount == 0) {
+        chunkMethods.add(new TestMethodInfo(GeneratedTest.class.getName(), "test" + i, "()V", 1,
+            ImmutableList.of()));
+      }
+    }
+    filter = new TestMethodFilter(chunkMethods);
+  }
+
+  /** Plans the first chunk, returning its filter. */
+  @Benchmark public Filter plan() {
+    ShardingStrategy strategy = ShardingStrategies.METHOD.buildShardingStrategy();
+    strategy.setTestClasses(testClasses);
+    ChunkConfig chunkConfig = new ChunkConfig(chunkCount, 1, true);
+    strategy.getClassesForChunk(chunkConfig, NO_OUTPUT);
+    return strategy.getFilter(chunkConfig);
+  }
+
+  /** Filters every test of the suite, of which one in {@code chunkCount} belongs to the chunk. */
+  @Benchmark public void filter(Blackhole blackhole) {
+    for (Description description : descriptions) {
+      blackhole.consume(filter.shouldRun(description));
+    }
+  }
+
+  public static class GeneratedTest {
+  }
+}
@@ -0,0 +1,17 @@
+package com.squareup.testing;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks the {@link org.junit.runner.Description} of a test that {@link ShardingTestRunner}
+ * reported as passed without running it, because it passed before with the same inputs. See
+ * {@link ResultCache}. Listeners can check for it with {@code
+ * description.getAnnotation(CachedResult.class)}.
+ */
+@Target({})
+@Retention(RUNTIME)
+public @interface CachedResult {
+}
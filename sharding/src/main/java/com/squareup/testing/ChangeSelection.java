@@ -0,0 +1,142 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Selects the test classes affected by a change, so that a small change runs a small part of the
+ * suite. A test class is affected if it can reach a changed class through the {@link
+ * ClassDependencyGraph} of the class path.
+ *
+ * <p>The change is the files named in {@value #CHANGED_FILES_PROPERTY}, one path per line, or the
+ * files that differ from the git revision {@value #CHANGED_SINCE_PROPERTY} in the working tree,
+ * including untracked ones. Source files are matched to classes by their package directories and
+ * name. A changed source file without classes was deleted or isn't compiled into this class path,
+ * and is ignored. Any other changed file, such as a resource or a build file, may affect any test,
+ * so all tests run.
+ */
+final class ChangeSelection {
+  /** System property naming a file that lists the changed files. */
+  static final String CHANGED_FILES_PROPERTY = "square.test.changedFiles";
+
+  /** System property naming the git revision to diff the working tree against. */
+  static final String CHANGED_SINCE_PROPERTY = "square.test.changedSince";
+
+  private static final List<String> SOURCE_EXTENSIONS =
+      ImmutableList.of(".java", ".kt", ".scala", ".groovy");
+
+  private final List<String> changedFiles;
+
+  ChangeSelection(List<String> changedFiles) {
+    this.changedFiles = ImmutableList.copyOf(changedFiles);
+  }
+
+  /** Returns true if change-based selection is configured by system properties. */
+  static boolean isEnabled() {
+    return System.getProperty(CHANGED_FILES_PROPERTY) != null
+        || System.getProperty(CHANGED_SINCE_PROPERTY) != null;
+  }
+
+  /** Returns the change configured by system properties, or null if selection is off. */
+  static ChangeSelection get() {
+    String changedFiles = System.getProperty(CHANGED_FILES_PROPERTY);
+    if (changedFiles != null) {
+      try {
+        return new ChangeSelection(nonEmptyLines(
+            Files.readAllLines(Paths.get(changedFiles), StandardCharsets.UTF_8)));
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read changed files from " + changedFiles, e);
+      }
+    }
+    String changedSince = System.getProperty(CHANGED_SINCE_PROPERTY);
+    if (changedSince != null) {
+      List<String> files = new ArrayList<>(git("diff", "--name-only", changedSince, "--"));
+      files.addAll(git("ls-files", "--others", "--exclude-standard"));
+      return new ChangeSelection(files);
+    }
+    return null;
+  }
+
+  private static List<String> git(String... args) {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(ImmutableList.copyOf(args));
+    try {
+      Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      List<String> lines = new ArrayList<>();
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        for (String line; (line = reader.readLine()) != null; ) {
+          lines.add(line);
+        }
+      }
+      if (process.waitFor() != 0) {
+        throw new RuntimeException(
+            String.join(" ", command) + " failed: " + String.join("\n", lines));
+      }
+      return nonEmptyLines(lines);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to run " + String.join(" ", command), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted running " + String.join(" ", command), e);
+    }
+  }
+
+  private static List<String> nonEmptyLines(List<String> lines) {
+    return lines.stream().map(String::trim).filter(line -> !line.isEmpty()).collect(toList());
+  }
+
+  List<String> getChangedFiles() {
+    return changedFiles;
+  }
+
+  /**
+   * Returns the classes of {@code testClasses} that can reach a changed class, or all of them if
+   * a changed file can't be mapped to classes. Prints what was selected and why to {@code out}.
+   */
+  List<TestClassInfo> select(List<TestClassInfo> testClasses, ClassDependencyGraph graph,
+      PrintStream out) {
+    Set<String> changedClasses = new HashSet<>();
+    for (String file : changedFiles) {
+      Set<String> classes = graph.getClassesForSourceFile(file);
+      if (!classes.isEmpty()) {
+        changedClasses.addAll(classes);
+      } else if (!isSource(file)) {
+        out.printf("*         Changed Files: %d, running all tests since %s has no classes\n",
+            changedFiles.size(), file);
+        return testClasses;
+      }
+    }
+
+    Set<String> affected = graph.getDependents(changedClasses);
+    List<TestClassInfo> selected = testClasses.stream()
+        .filter(testClass -> affected.contains(testClass.getName()))
+        .collect(toList());
+    out.printf("*         Changed Files: %d\n", changedFiles.size());
+    out.printf("*       Changed Classes: %d\n", changedClasses.size());
+    out.printf("*        Affected Tests: %d of %d\n", selected.size(), testClasses.size());
+    return selected;
+  }
+
+  private static boolean isSource(String file) {
+    for (String extension : SOURCE_EXTENSIONS) {
+      if (file.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,210 @@
+package com.squareup.testing;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * Which classes refer to which, read from the constant pools of class files without loading them.
+ * A class depends on every class in its {@link ClassFileInfo#referencedClasses}. The graph also
+ * keeps a hash of each class file, so that a class and its dependencies can be fingerprinted.
+ *
+ * <p>Compile time constants are inlined by javac and classes named only in strings, such as those
+ * loaded reflectively, are invisible to the graph.
+ */
+final class ClassDependencyGraph {
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private final Map<String, Set<String>> dependencies = new HashMap<>();
+  private final Map<String, Set<String>> dependents = new HashMap<>();
+  private final Map<String, HashCode> hashes = new HashMap<>();
+  private final Map<String, Set<String>> classesBySourceFile = new HashMap<>();
+
+  private ClassDependencyGraph() {
+  }
+
+  /**
+   * Reads every class on {@code java.class.path}, including the {@code Class-Path} of manifest-only
+   * jars such as Surefire's.
+   */
+  static ClassDependencyGraph fromClassPath() {
+    Set<Path> roots = new LinkedHashSet<>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        addRoot(Paths.get(entry).toAbsolutePath(), roots);
+      }
+    }
+    return read(roots);
+  }
+
+  /** Reads every class in {@code roots}, which are class directories and jars. */
+  static ClassDependencyGraph read(Collection<Path> roots) {
+    ClassDependencyGraph graph = new ClassDependencyGraph();
+    for (Path root : roots) {
+      try {
+        if (Files.isDirectory(root)) {
+          graph.readDirectory(root);
+        } else if (Files.isRegularFile(root)) {
+          graph.readJar(root);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read class dependencies from " + root, e);
+      }
+    }
+    return graph;
+  }
+
+  private static void addRoot(Path root, Set<Path> roots) {
+    if (!roots.add(root) || !Files.isRegularFile(root)) {
+      return;
+    }
+    try (JarFile jarFile = new JarFile(root.toFile())) {
+      Manifest manifest = jarFile.getManifest();
+      String classPath = manifest != null
+          ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH)
+          : null;
+      if (classPath == null) {
+        return;
+      }
+      for (String entry : classPath.trim().split("\\s+")) {
+        Path path = entry.startsWith("file:")
+            ? Paths.get(URI.create(entry))
+            : root.resolveSibling(entry.replace("%20", " "));
+        addRoot(path.toAbsolutePath().normalize(), roots);
+      }
+    } catch (IOException e) {
+      // Not a jar; the class loader ignores it too.
+    }
+  }
+
+  private void readDirectory(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (file.toString().endsWith(".class")) {
+          readClass(Files.readAllBytes(file));
+        }
+      }
+    }
+  }
+
+  private void readJar(Path jar) throws IOException {
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      Enumeration<JarEntry> entries = jarFile.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+          try (InputStream in = jarFile.getInputStream(entry)) {
+            readClass(ByteStreams.toByteArray(in));
+          }
+        }
+      }
+    }
+  }
+
+  private void readClass(byte[] bytes) throws IOException {
+    if (bytes.length < 4 || Ints.fromByteArray(bytes) != MAGIC) {
+      return;
+    }
+    ClassFileInfo classFile = ClassFileInfo.read(new ByteArrayInputStream(bytes));
+    String name = classFile.name;
+    for (String dependency : classFile.referencedClasses) {
+      dependents.computeIfAbsent(dependency, key -> new HashSet<>()).add(name);
+    }
+    // The first of duplicate classes on the class path is the one that's loaded.
+    dependencies.putIfAbsent(name, classFile.referencedClasses);
+    hashes.putIfAbsent(name, Hashing.murmur3_128().hashBytes(bytes));
+
+    if (classFile.sourceFile != null) {
+      int packageEnd = name.lastIndexOf('.');
+      String sourcePath = packageEnd < 0
+          ? classFile.sourceFile
+          : name.substring(0, packageEnd).replace('.', '/') + "/" + classFile.sourceFile;
+      classesBySourceFile.computeIfAbsent(sourcePath, key -> new HashSet<>()).add(name);
+    }
+  }
+
+  /**
+   * Returns the classes compiled from {@code path}, a source file path that ends with its package
+   * directories, such as {@code service/src/main/java/com/squareup/Foo.java}.
+   */
+  Set<String> getClassesForSourceFile(String path) {
+    String normalized = path.replace('\\', '/');
+    Set<String> classes = new HashSet<>();
+    // Try each suffix that starts at a directory boundary: com/squareup/Foo.java, squareup/...
+    for (int start = 0; start >= 0; start = nextSegment(normalized, start)) {
+      Set<String> found = classesBySourceFile.get(normalized.substring(start));
+      if (found != null) {
+        classes.addAll(found);
+      }
+    }
+    return classes;
+  }
+
+  private static int nextSegment(String path, int start) {
+    int slash = path.indexOf('/', start);
+    return slash < 0 ? -1 : slash + 1;
+  }
+
+  /** Returns {@code classes} and every class that depends on one of them, even indirectly. */
+  Set<String> getDependents(Collection<String> classes) {
+    return reach(classes, dependents);
+  }
+
+  /** Returns {@code classes} and every class one of them depends on, even indirectly. */
+  Set<String> getDependencies(Collection<String> classes) {
+    return reach(classes, dependencies);
+  }
+
+  /**
+   * Returns a hash of the class file of {@code className}, or null if it isn't in the graph, such
+   * as classes of the JDK.
+   */
+  HashCode getHash(String className) {
+    return hashes.get(className);
+  }
+
+  private static Set<String> reach(Collection<String> classes, Map<String, Set<String>> edges) {
+    Set<String> reached = new HashSet<>(classes);
+    Deque<String> pending = new ArrayDeque<>(classes);
+    while (!pending.isEmpty()) {
+      Set<String> direct = edges.get(pending.pop());
+      if (direct == null) {
+        continue;
+      }
+      for (String dependent : direct) {
+        if (reached.add(dependent)) {
+          pending.push(dependent);
+        }
+      }
+    }
+    return reached;
+  }
+
+  /** Returns the number of classes read. */
+  int size() {
+    return hashes.size();
+  }
+}
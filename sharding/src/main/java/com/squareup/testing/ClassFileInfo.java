@@ -0,0 +1,392 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The parts of a class file needed to discover tests, read straight from its bytes so that the
+ * class is neither loaded nor initialized.
+ *
+ * <p>Only runtime visible annotations are read. Annotation values are kept as {@link Integer},
+ * {@link Long}, {@link Float}, {@link Double} or {@link String} constants, class names for class
+ * literals, {@code Type.CONSTANT} strings for enums, and lists for arrays. Nested annotation values
+ * are skipped. Only fields with runtime visible annotations are kept.
+ *
+ * <p>The classes named in the constant pool and the source file name are only kept when reading a
+ * class file, not in the {@link TestIndex}.
+ */
+final class ClassFileInfo {
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  /** Class types in descriptors and generic signatures, such as {@code Ljava/util/List<}. */
+  private static final Pattern CLASS_TYPE = Pattern.compile("L([\\w/$]+)[;<]");
+
+  final String name;
+  final String superName;
+  final int access;
+  final Map<String, Map<String, Object>> annotations;
+  final List<FieldInfo> fields;
+  final List<MethodInfo> methods;
+  /**
+   * Every other class named in the constant pool: superclasses, interfaces, field and method
+   * types, annotations, and every class whose members this class uses.
+   */
+  final Set<String> referencedClasses;
+  /** The {@code SourceFile} attribute, such as {@code Foo.java}, or null if absent. */
+  final String sourceFile;
+
+  ClassFileInfo(String name, String superName, int access,
+      Map<String, Map<String, Object>> annotations, List<FieldInfo> fields,
+      List<MethodInfo> methods) {
+    this(name, superName, access, annotations, fields, methods, ImmutableSet.of(), null);
+  }
+
+  ClassFileInfo(String name, String superName, int access,
+      Map<String, Map<String, Object>> annotations, List<FieldInfo> fields,
+      List<MethodInfo> methods, Set<String> referencedClasses, String sourceFile) {
+    this.name = name;
+    this.superName = superName;
+    this.access = access;
+    this.annotations = annotations;
+    this.fields = fields;
+    this.methods = methods;
+    this.referencedClasses = referencedClasses;
+    this.sourceFile = sourceFile;
+  }
+
+  /** Reads a class file from {@code in}, which should be buffered. */
+  static ClassFileInfo read(InputStream in) throws IOException {
+    return new Parser(new DataInputStream(in)).parse();
+  }
+
+  /** Returns the values of the class annotation {@code annotationType}, or null if absent. */
+  Map<String, Object> getAnnotation(String annotationType) {
+    return annotations.get(annotationType);
+  }
+
+  static final class FieldInfo {
+    final String name;
+    final String descriptor;
+    final int access;
+    final Map<String, Map<String, Object>> annotations;
+
+    FieldInfo(String name, String descriptor, int access,
+        Map<String, Map<String, Object>> annotations) {
+      this.name = name;
+      this.descriptor = descriptor;
+      this.access = access;
+      this.annotations = annotations;
+    }
+  }
+
+  static final class MethodInfo {
+    final String name;
+    final String descriptor;
+    final int access;
+    final List<String> exceptions;
+    final Map<String, Map<String, Object>> annotations;
+
+    MethodInfo(String name, String descriptor, int access, List<String> exceptions,
+        Map<String, Map<String, Object>> annotations) {
+      this.name = name;
+      this.descriptor = descriptor;
+      this.access = access;
+      this.exceptions = exceptions;
+      this.annotations = annotations;
+    }
+  }
+
+  /** Converts a class descriptor such as {@code Lorg/junit/Test;} to a binary class name. */
+  static String descriptorToClassName(String descriptor) {
+    if (descriptor.startsWith("L") && descriptor.endsWith(";")) {
+      return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+    return descriptor.replace('/', '.');
+  }
+
+  private static final class Parser {
+    private final DataInputStream in;
+    private Object[] constants;
+    private final List<Integer> classIndexes = new ArrayList<>();
+
+    Parser(DataInputStream in) {
+      this.in = in;
+    }
+
+    ClassFileInfo parse() throws IOException {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("not a class file");
+      }
+      in.readUnsignedShort(); // minor version
+      in.readUnsignedShort(); // major version
+      readConstantPool();
+
+      int access = in.readUnsignedShort();
+      String name = className(in.readUnsignedShort());
+      int superIndex = in.readUnsignedShort();
+      String superName = superIndex != 0 ? className(superIndex) : null;
+      skip(2 * in.readUnsignedShort()); // interfaces
+
+      int fieldCount = in.readUnsignedShort();
+      List<FieldInfo> fields = new ArrayList<>();
+      for (int i = 0; i < fieldCount; i++) {
+        FieldInfo field = readField();
+        if (!field.annotations.isEmpty()) {
+          fields.add(field);
+        }
+      }
+
+      int methodCount = in.readUnsignedShort();
+      List<MethodInfo> methods = new ArrayList<>(methodCount);
+      for (int i = 0; i < methodCount; i++) {
+        methods.add(readMethod());
+      }
+
+      Map<String, Map<String, Object>> annotations = ImmutableMap.of();
+      String sourceFile = null;
+      int attributeCount = in.readUnsignedShort();
+      for (int i = 0; i < attributeCount; i++) {
+        String attributeName = utf8(in.readUnsignedShort());
+        int length = in.readInt();
+        if (attributeName.equals("RuntimeVisibleAnnotations")) {
+          annotations = readAnnotations();
+        } else if (attributeName.equals("SourceFile")) {
+          sourceFile = utf8(in.readUnsignedShort());
+        } else {
+          skip(length);
+        }
+      }
+
+      Set<String> referencedClasses = referencedClasses();
+      referencedClasses.remove(name);
+      return new ClassFileInfo(name, superName, access, annotations, ImmutableList.copyOf(fields),
+          ImmutableList.copyOf(methods), ImmutableSet.copyOf(referencedClasses), sourceFile);
+    }
+
+    private void readConstantPool() throws IOException {
+      int count = in.readUnsignedShort();
+      constants = new Object[count];
+      for (int i = 1; i < count; i++) {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+          case CONSTANT_UTF8:
+            constants[i] = in.readUTF();
+            break;
+          case CONSTANT_INTEGER:
+            constants[i] = in.readInt();
+            break;
+          case CONSTANT_FLOAT:
+            constants[i] = in.readFloat();
+            break;
+          case CONSTANT_LONG:
+            constants[i++] = in.readLong();
+            break;
+          case CONSTANT_DOUBLE:
+            constants[i++] = in.readDouble();
+            break;
+          case CONSTANT_CLASS:
+            classIndexes.add(i);
+            constants[i] = new ConstantRef(in.readUnsignedShort());
+            break;
+          case CONSTANT_STRING:
+          case CONSTANT_METHOD_TYPE:
+          case CONSTANT_MODULE:
+          case CONSTANT_PACKAGE:
+            constants[i] = new ConstantRef(in.readUnsignedShort());
+            break;
+          case CONSTANT_METHOD_HANDLE:
+            skip(3);
+            break;
+          default:
+            // Field, method and interface method refs, NameAndType, Dynamic and InvokeDynamic.
+            skip(4);
+            break;
+        }
+      }
+    }
+
+    /** Returns the classes of {@code CONSTANT_Class} entries and of descriptors and signatures. */
+    private Set<String> referencedClasses() {
+      Set<String> classNames = new HashSet<>();
+      for (int index : classIndexes) {
+        String internalName = utf8(((ConstantRef) constants[index]).index);
+        if (internalName.startsWith("[")) {
+          addTypeNames(internalName, classNames);
+        } else {
+          classNames.add(internalName.replace('/', '.'));
+        }
+      }
+      for (Object constant : constants) {
+        if (constant instanceof String && ((String) constant).indexOf(';') > 0) {
+          addTypeNames((String) constant, classNames);
+        }
+      }
+      return classNames;
+    }
+
+    private static void addTypeNames(String descriptor, Set<String> classNames) {
+      Matcher matcher = CLASS_TYPE.matcher(descriptor);
+      while (matcher.find()) {
+        classNames.add(matcher.group(1).replace('/', '.'));
+      }
+    }
+
+    private FieldInfo readField() throws IOException {
+      int access = in.readUnsignedShort();
+      String name = utf8(in.readUnsignedShort());
+      String descriptor = utf8(in.readUnsignedShort());
+      Map<String, Map<String, Object>> annotations = ImmutableMap.of();
+
+      int attributeCount = in.readUnsignedShort();
+      for (int i = 0; i < attributeCount; i++) {
+        String attributeName = utf8(in.readUnsignedShort());
+        int length = in.readInt();
+        if (attributeName.equals("RuntimeVisibleAnnotations")) {
+          annotations = readAnnotations();
+        } else {
+          skip(length);
+        }
+      }
+      return new FieldInfo(name, descriptor, access, annotations);
+    }
+
+    private MethodInfo readMethod() throws IOException {
+      int access = in.readUnsignedShort();
+      String name = utf8(in.readUnsignedShort());
+      String descriptor = utf8(in.readUnsignedShort());
+      List<String> exceptions = ImmutableList.of();
+      Map<String, Map<String, Object>> annotations = ImmutableMap.of();
+
+      int attributeCount = in.readUnsignedShort();
+      for (int i = 0; i < attributeCount; i++) {
+        String attributeName = utf8(in.readUnsignedShort());
+        int length = in.readInt();
+        if (attributeName.equals("RuntimeVisibleAnnotations")) {
+          annotations = readAnnotations();
+        } else if (attributeName.equals("Exceptions")) {
+          int exceptionCount = in.readUnsignedShort();
+          List<String> exceptionNames = new ArrayList<>(exceptionCount);
+          for (int j = 0; j < exceptionCount; j++) {
+            exceptionNames.add(className(in.readUnsignedShort()));
+          }
+          exceptions = ImmutableList.copyOf(exceptionNames);
+        } else {
+          skip(length);
+        }
+      }
+      return new MethodInfo(name, descriptor, access, exceptions, annotations);
+    }
+
+    private Map<String, Map<String, Object>> readAnnotations() throws IOException {
+      int count = in.readUnsignedShort();
+      Map<String, Map<String, Object>> annotations = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        String type = descriptorToClassName(utf8(in.readUnsignedShort()));
+        annotations.put(type, readAnnotationValues());
+      }
+      return ImmutableMap.copyOf(annotations);
+    }
+
+    private Map<String, Object> readAnnotationValues() throws IOException {
+      int pairs = in.readUnsignedShort();
+      Map<String, Object> values = new LinkedHashMap<>();
+      for (int i = 0; i < pairs; i++) {
+        String elementName = utf8(in.readUnsignedShort());
+        Object value = readElementValue();
+        if (value != null) {
+          values.put(elementName, value);
+        }
+      }
+      return values;
+    }
+
+    private Object readElementValue() throws IOException {
+      int tag = in.readUnsignedByte();
+      switch (tag) {
+        case 'B':
+        case 'C':
+        case 'I':
+        case 'S':
+        case 'Z':
+        case 'D':
+        case 'F':
+        case 'J':
+        case 's':
+          return constants[in.readUnsignedShort()];
+        case 'e':
+          String enumType = descriptorToClassName(utf8(in.readUnsignedShort()));
+          return enumType + "." + utf8(in.readUnsignedShort());
+        case 'c':
+          return descriptorToClassName(utf8(in.readUnsignedShort()));
+        case '@':
+          skip(2);
+          readAnnotationValues();
+          return null;
+        case '[':
+          int count = in.readUnsignedShort();
+          List<Object> values = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            Object value = readElementValue();
+            if (value != null) {
+              values.add(value);
+            }
+          }
+          return values;
+        default:
+          throw new IOException("unexpected annotation element tag " + (char) tag);
+      }
+    }
+
+    private void skip(int bytes) throws IOException {
+      while (bytes > 0) {
+        int skipped = in.skipBytes(bytes);
+        if (skipped <= 0) {
+          throw new EOFException();
+        }
+        bytes -= skipped;
+      }
+    }
+
+    private String utf8(int index) {
+      return (String) constants[index];
+    }
+
+    private String className(int index) {
+      return utf8(((ConstantRef) constants[index]).index).replace('/', '.');
+    }
+  }
+
+  /** A constant that refers to a UTF8 constant, such as a class or string constant. */
+  private static final class ConstantRef {
+    final int index;
+
+    ConstantRef(int index) {
+      this.index = index;
+    }
+  }
+}
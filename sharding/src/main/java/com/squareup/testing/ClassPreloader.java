@@ -0,0 +1,71 @@
+package com.squareup.testing;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.runner.Runner;
+
+/**
+ * Initializes the next test classes of a chunk and builds their runners on a background thread
+ * while earlier classes run, so that loading, verifying and statically initializing them is off
+ * the critical path. Classes are preloaded in the order they run, up to {@value
+ * #PRELOAD_PROPERTY} classes ahead of the class running last.
+ *
+ * <p>A class's static initializer, and those of the classes it uses, run before its turn and on
+ * another thread, but never its {@code @BeforeClass} methods. Suites whose static initializers
+ * depend on what earlier classes did shouldn't preload.
+ */
+final class ClassPreloader {
+  /** System property setting how many classes to preload ahead of the running ones. */
+  static final String PRELOAD_PROPERTY = "square.test.preloadClasses";
+
+  private final List<Runner> runners;
+  private final Map<Runner, Integer> indexes = new IdentityHashMap<>();
+  private final int lookahead;
+  private final ExecutorService executor;
+  private int submitted;
+
+  ClassPreloader(List<Runner> runners, int lookahead) {
+    this.runners = runners;
+    this.lookahead = lookahead;
+    for (int i = 0; i < runners.size(); i++) {
+      indexes.put(runners.get(i), i);
+    }
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "test-class-preloader");
+      thread.setContextClassLoader(classLoader);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns a preloader of {@code runners}, which are {@link LazyRunner}s in the order they run,
+   * or null if {@value #PRELOAD_PROPERTY} doesn't enable it.
+   */
+  static ClassPreloader get(List<Runner> runners) {
+    int lookahead = Integer.getInteger(PRELOAD_PROPERTY, 0);
+    return lookahead > 0 && !runners.isEmpty() ? new ClassPreloader(runners, lookahead) : null;
+  }
+
+  /**
+   * Preloads the classes that run after {@code child}, or the first classes if it is null, up to
+   * the lookahead.
+   */
+  synchronized void advance(Runner child) {
+    Integer index = child != null ? indexes.get(child) : null;
+    int end = Math.min(runners.size(), (index != null ? index + 1 : 0) + lookahead);
+    for (; submitted < end; submitted++) {
+      LazyRunner runner = (LazyRunner) runners.get(submitted);
+      executor.execute(runner::preload);
+    }
+  }
+
+  /** Stops preloading, abandoning classes that haven't been preloaded yet. */
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,431 @@
+package com.squareup.testing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Runs every chunk of a sharded suite at once, each in its own local JVM, and merges their results
+ * into one report. This gives a single machine the isolation of separate build workers: static
+ * state, system properties and ports aren't shared between chunks.
+ *
+ * <pre>
+ * java com.squareup.testing.ForkLauncher [--forks N] [--retries N] [--report results.xml]
+ *     [--ports START-END] [--jvmArg ARG]... SUITE_CLASS
+ * </pre>
+ *
+ * <p>Every JVM runs {@link ForkedChunk} on this JVM's class path with this JVM's {@code
+ * square.test.*} system properties, and its own {@code square.test.runChunk}. Each is given a
+ * disjoint slice of {@code --ports} through the {@code square.test.portRange*} properties read by
+ * {@code PortPicker}.
+ *
+ * <p>If a JVM exits before it finishes, for example because a test called {@code System.exit} or
+ * ran out of memory, the running test is reported as an error and the chunk's remaining tests run
+ * again in a new JVM, up to {@code --retries} times.
+ */
+public final class ForkLauncher {
+  static final String PORT_RANGE_START_PROPERTY = "square.test.portRangeStart";
+  static final String PORT_RANGE_END_PROPERTY = "square.test.portRangeEnd";
+
+  private static final String FORWARDED_PROPERTY_PREFIX = "square.test.";
+  private static final Set<String> CHUNK_PROPERTIES = new LinkedHashSet<>(Arrays.asList(
+      "square.test.chunkCount", "square.test.runChunk", ForkedChunk.ONLY_FILE_PROPERTY,
+      PORT_RANGE_START_PROPERTY, PORT_RANGE_END_PROPERTY));
+
+  private final String suiteClassName;
+  private final int forks;
+  private final int retries;
+  private final int portRangeStart;
+  private final int portRangeEnd;
+  private final List<String> jvmArgs;
+  private final Map<String, TestResult> results = new LinkedHashMap<>();
+
+  ForkLauncher(String suiteClassName, int forks, int retries, int portRangeStart, int portRangeEnd,
+      List<String> jvmArgs) {
+    if (forks < 1) {
+      throw new IllegalArgumentException("forks must be at least one, but was " + forks);
+    }
+    if (portRangeEnd - portRangeStart < forks) {
+      throw new IllegalArgumentException(String.format(
+          "Port range %d-%d is too small for %d forks", portRangeStart, portRangeEnd, forks));
+    }
+    this.suiteClassName = suiteClassName;
+    this.forks = forks;
+    this.retries = retries;
+    this.portRangeStart = portRangeStart;
+    this.portRangeEnd = portRangeEnd;
+    this.jvmArgs = new ArrayList<>(jvmArgs);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int forks = Runtime.getRuntime().availableProcessors();
+    int retries = 1;
+    int portRangeStart = 10000;
+    int portRangeEnd = 30000;
+    Path report = null;
+    List<String> jvmArgs = new ArrayList<>();
+    String suiteClassName = null;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--forks":
+          forks = Integer.parseInt(args[++i]);
+          break;
+        case "--retries":
+          retries = Integer.parseInt(args[++i]);
+          break;
+        case "--report":
+          report = Paths.get(args[++i]);
+          break;
+        case "--ports":
+          String[] range = args[++i].split("-");
+          portRangeStart = Integer.parseInt(range[0]);
+          portRangeEnd = Integer.parseInt(range[1]);
+          break;
+        case "--jvmArg":
+          jvmArgs.add(args[++i]);
+          break;
+        default:
+          suiteClassName = args[i];
+      }
+    }
+    if (suiteClassName == null) {
+      System.err.println("Usage: ForkLauncher [--forks N] [--retries N] [--report FILE] "
+          + "[--ports START-END] [--jvmArg ARG]... SUITE_CLASS");
+      System.exit(2);
+    }
+
+    ForkLauncher launcher =
+        new ForkLauncher(suiteClassName, forks, retries, portRangeStart, portRangeEnd, jvmArgs);
+    Collection<TestResult> results = launcher.run();
+    if (report != null) {
+      writeReport(suiteClassName, results, report);
+    }
+    System.exit(printSummary(results) ? 0 : 1);
+  }
+
+  /** Runs every chunk and returns the results of their tests, ordered by chunk. */
+  Collection<TestResult> run() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(forks);
+    try {
+      List<Future<Map<String, TestResult>>> chunks = new ArrayList<>();
+      for (int chunk = 1; chunk <= forks; chunk++) {
+        int runChunk = chunk;
+        chunks.add(executor.submit(() -> runChunk(runChunk)));
+      }
+      for (Future<Map<String, TestResult>> chunk : chunks) {
+        results.putAll(chunk.get());
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Unable to run " + suiteClassName, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return results.values();
+  }
+
+  private Map<String, TestResult> runChunk(int runChunk) throws IOException, InterruptedException {
+    Map<String, TestResult> chunkResults = new LinkedHashMap<>();
+    Path onlyFile = null;
+    try {
+      for (int attempt = 0; ; attempt++) {
+        ForkedRun run = new ForkedRun(runChunk, chunkResults);
+        int exitCode = run.start(onlyFile);
+        if (run.events.done) {
+          return chunkResults;
+        }
+
+        if (run.events.running != null) {
+          chunkResults.put(run.events.running, TestResult.error(run.events.running, runChunk,
+              "Forked JVM exited with code " + exitCode + " while running this test"));
+        }
+        Set<String> remaining = new LinkedHashSet<>(run.events.planned);
+        remaining.removeAll(chunkResults.keySet());
+        if (remaining.isEmpty()) {
+          return chunkResults;
+        }
+        if (attempt >= retries) {
+          for (String testId : remaining) {
+            chunkResults.put(testId, TestResult.error(testId, runChunk,
+                "Not run: forked JVM exited with code " + exitCode));
+          }
+          return chunkResults;
+        }
+
+        System.out.printf("[chunk %d] Forked JVM exited with code %d, retrying %d remaining "
+            + "tests\n", runChunk, exitCode, remaining.size());
+        if (onlyFile == null) {
+          onlyFile = Files.createTempFile("sharded-test-chunk" + runChunk, ".only");
+        }
+        Files.write(onlyFile, remaining, StandardCharsets.UTF_8);
+      }
+    } finally {
+      if (onlyFile != null) {
+        Files.deleteIfExists(onlyFile);
+      }
+    }
+  }
+
+  List<String> command(int runChunk, Path onlyFile) {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(jvmArgs);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith(FORWARDED_PROPERTY_PREFIX) && !CHUNK_PROPERTIES.contains(name)) {
+        command.add("-D" + name + "=" + System.getProperty(name));
+      }
+    }
+
+    int portsPerFork = (portRangeEnd - portRangeStart) / forks;
+    int firstPort = portRangeStart + (runChunk - 1) * portsPerFork;
+    command.add("-Dsquare.test.chunkCount=" + forks);
+    command.add("-Dsquare.test.runChunk=" + runChunk);
+    command.add("-D" + PORT_RANGE_START_PROPERTY + "=" + firstPort);
+    command.add("-D" + PORT_RANGE_END_PROPERTY + "=" + (firstPort + portsPerFork));
+    if (onlyFile != null) {
+      command.add("-D" + ForkedChunk.ONLY_FILE_PROPERTY + "=" + onlyFile);
+    }
+
+    command.add(ForkedChunk.class.getName());
+    command.add(suiteClassName);
+    return command;
+  }
+
+  /** Prints a line per failed test and a total, returning true if nothing failed. */
+  static boolean printSummary(Collection<TestResult> results) {
+    int failed = 0;
+    int skipped = 0;
+    for (TestResult result : results) {
+      if (result.status == TestResult.Status.SKIPPED) {
+        skipped++;
+      } else if (result.status != TestResult.Status.PASSED) {
+        failed++;
+        System.out.printf("%s [chunk %d] %s\n", result.status, result.chunk, result.testId());
+      }
+    }
+    System.out.printf("Tests run: %d, Failures: %d, Skipped: %d\n", results.size(), failed,
+        skipped);
+    return failed == 0;
+  }
+
+  /** Writes {@code results} to {@code path} in the JUnit XML format read by CI servers. */
+  static void writeReport(String suiteName, Collection<TestResult> results, Path path)
+      throws IOException {
+    int failures = 0;
+    int errors = 0;
+    int skipped = 0;
+    long millis = 0;
+    for (TestResult result : results) {
+      failures += result.status == TestResult.Status.FAILED ? 1 : 0;
+      errors += result.status == TestResult.Status.ERROR ? 1 : 0;
+      skipped += result.status == TestResult.Status.SKIPPED ? 1 : 0;
+      millis += result.millis;
+    }
+
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+      xml.writeStartDocument("UTF-8", "1.0");
+      xml.writeStartElement("testsuite");
+      xml.writeAttribute("name", suiteName);
+      xml.writeAttribute("tests", Integer.toString(results.size()));
+      xml.writeAttribute("failures", Integer.toString(failures));
+      xml.writeAttribute("errors", Integer.toString(errors));
+      xml.writeAttribute("skipped", Integer.toString(skipped));
+      xml.writeAttribute("time", seconds(millis));
+      for (TestResult result : results) {
+        xml.writeStartElement("testcase");
+        xml.writeAttribute("classname", result.className);
+        xml.writeAttribute("name", result.methodName);
+        xml.writeAttribute("time", seconds(result.millis));
+        switch (result.status) {
+          case FAILED:
+          case ERROR:
+            xml.writeStartElement(result.status == TestResult.Status.FAILED ? "failure" : "error");
+            xml.writeAttribute("message", firstLine(result.trace));
+            xml.writeCharacters(result.trace);
+            xml.writeEndElement();
+            break;
+          case SKIPPED:
+            xml.writeEmptyElement("skipped");
+            break;
+          default:
+            break;
+        }
+        xml.writeEndElement();
+      }
+      xml.writeEndElement();
+      xml.writeEndDocument();
+      xml.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Unable to write " + path, e);
+    }
+  }
+
+  private static String seconds(long millis) {
+    return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+  }
+
+  private static String firstLine(String trace) {
+    int newline = trace.indexOf('\n');
+    return (newline < 0 ? trace : trace.substring(0, newline)).trim();
+  }
+
+  /** One JVM running a chunk, or the remaining tests of a chunk. */
+  private final class ForkedRun {
+    final int runChunk;
+    final EventReader events;
+
+    ForkedRun(int runChunk, Map<String, TestResult> chunkResults) {
+      this.runChunk = runChunk;
+      this.events = new EventReader(runChunk, chunkResults);
+    }
+
+    /** Runs the JVM to completion, returning its exit code. */
+    int start(Path onlyFile) throws IOException, InterruptedException {
+      Process process = new ProcessBuilder(command(runChunk, onlyFile))
+          .redirectError(ProcessBuilder.Redirect.INHERIT)
+          .start();
+      process.getOutputStream().close();
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!events.read(line)) {
+            System.out.println("[chunk " + runChunk + "] " + line);
+          }
+        }
+      }
+      return process.waitFor();
+    }
+  }
+
+  /** Collects the results of a chunk from the event lines written by {@link ForkedChunk}. */
+  static final class EventReader {
+    final int runChunk;
+    final Map<String, TestResult> chunkResults;
+    final Set<String> planned = new LinkedHashSet<>();
+    String running;
+    boolean done;
+
+    EventReader(int runChunk, Map<String, TestResult> chunkResults) {
+      this.runChunk = runChunk;
+      this.chunkResults = chunkResults;
+    }
+
+    /** Records {@code line} if it is an event line, returning false if it is output. */
+    boolean read(String line) {
+      if (!line.startsWith(ForkedChunk.EVENT_PREFIX + "\t")) {
+        return false;
+      }
+      onEvent(line.split("\t", -1));
+      return true;
+    }
+
+    private void onEvent(String[] fields) {
+      String event = fields[1];
+      if (event.equals(ForkedChunk.DONE)) {
+        done = true;
+        return;
+      }
+      String className = ForkedChunk.decode(fields[2]);
+      String methodName = ForkedChunk.decode(fields[3]);
+      String testId = ForkedChunk.testId(className, methodName);
+      TestResult result = chunkResults.get(testId);
+      switch (event) {
+        case ForkedChunk.PLANNED:
+          planned.add(testId);
+          break;
+        case ForkedChunk.STARTED:
+          running = testId;
+          chunkResults.remove(testId);
+          break;
+        case ForkedChunk.FAILED:
+        case ForkedChunk.ASSUMPTION_FAILED:
+          // Failures in @BeforeClass and the like have no test, and are reported on their own.
+          TestResult.Status status = event.equals(ForkedChunk.FAILED)
+              ? TestResult.Status.FAILED
+              : TestResult.Status.SKIPPED;
+          String trace = ForkedChunk.decode(fields[4]);
+          chunkResults.put(testId, new TestResult(className, methodName, runChunk, status,
+              result != null ? result.millis : 0, trace));
+          break;
+        case ForkedChunk.IGNORED:
+          chunkResults.put(testId,
+              new TestResult(className, methodName, runChunk, TestResult.Status.SKIPPED, 0, ""));
+          break;
+        case ForkedChunk.FINISHED:
+          long millis = Long.parseLong(fields[4]);
+          chunkResults.put(testId, result != null
+              ? new TestResult(className, methodName, runChunk, result.status, millis, result.trace)
+              : new TestResult(className, methodName, runChunk, TestResult.Status.PASSED, millis,
+                  ""));
+          running = null;
+          break;
+        default:
+          throw new IllegalStateException("Unexpected event from chunk " + runChunk + ": " + event);
+      }
+    }
+  }
+
+  static final class TestResult {
+    enum Status {
+      PASSED, FAILED, ERROR, SKIPPED
+    }
+
+    final String className;
+    final String methodName;
+    final int chunk;
+    final Status status;
+    final long millis;
+    final String trace;
+
+    TestResult(String className, String methodName, int chunk, Status status, long millis,
+        String trace) {
+      this.className = className;
+      this.methodName = methodName;
+      this.chunk = chunk;
+      this.status = status;
+      this.millis = millis;
+      this.trace = trace;
+    }
+
+    static TestResult error(String testId, int chunk, String message) {
+      int separator = testId.indexOf('#');
+      return new TestResult(testId.substring(0, separator), testId.substring(separator + 1), chunk,
+          Status.ERROR, 0, message);
+    }
+
+    String testId() {
+      return ForkedChunk.testId(className, methodName);
+    }
+
+    @Override public String toString() {
+      return testId() + " " + status;
+    }
+  }
+}
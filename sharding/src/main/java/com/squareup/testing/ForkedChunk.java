@@ -0,0 +1,188 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * The main class of a JVM forked by {@link ForkLauncher}: runs one chunk of a sharded suite and
+ * reports its tests as event lines on stdout. Test output is moved to stderr, but anything else
+ * written to stdout, such as the {@link ShardingTestRunner} preamble, is passed through.
+ *
+ * <p>Each event line is {@value #EVENT_PREFIX} followed by tab separated fields: the event, the
+ * test's class and method names and, for some events, a value. The planned tests are reported
+ * before any run, so that the launcher knows which tests remain if the JVM dies.
+ */
+final class ForkedChunk {
+  /** System property naming a file of test ids ({@code class#method}) to run, for retries. */
+  static final String ONLY_FILE_PROPERTY = "square.test.fork.onlyFile";
+
+  static final String EVENT_PREFIX = "@@sharded-test@@";
+  static final String PLANNED = "PLANNED";
+  static final String STARTED = "STARTED";
+  static final String FAILED = "FAILED";
+  static final String ASSUMPTION_FAILED = "ASSUMPTION_FAILED";
+  static final String IGNORED = "IGNORED";
+  static final String FINISHED = "FINISHED";
+  static final String DONE = "DONE";
+
+  private ForkedChunk() {
+  }
+
+  /** Runs {@code <suite class>} and exits with 0 if all of its tests passed. */
+  public static void main(String[] args) throws Exception {
+    PrintStream events =
+        new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8.name());
+    System.setOut(System.err);
+
+    Request request = Request.aClass(Class.forName(args[0]));
+    String onlyFile = System.getProperty(ONLY_FILE_PROPERTY);
+    if (onlyFile != null) {
+      request = request.filterWith(new OnlyFilter(
+          ImmutableSet.copyOf(Files.readAllLines(Paths.get(onlyFile), StandardCharsets.UTF_8))));
+    }
+    Runner runner = request.getRunner();
+    EventWriter eventWriter = new EventWriter(events);
+    eventWriter.plan(runner.getDescription());
+
+    JUnitCore core = new JUnitCore();
+    core.addListener(eventWriter);
+    Result result = core.run(runner);
+    eventWriter.write(DONE, "", "", "");
+    System.exit(result.wasSuccessful() ? 0 : 1);
+  }
+
+  static String testId(Description description) {
+    return testId(description.getClassName(), methodName(description));
+  }
+
+  static String testId(String className, String methodName) {
+    return className + "#" + methodName;
+  }
+
+  static String methodName(Description description) {
+    return description.getMethodName() != null
+        ? description.getMethodName()
+        : description.getDisplayName();
+  }
+
+  static String encode(String value) {
+    return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String decode(String value) {
+    return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Keeps the tests named in a retry's only file, or by a {@link TestDaemonClient}. A name without
+   * a method keeps every test of its class.
+   */
+  static final class OnlyFilter extends Filter {
+    private final Set<String> testIds;
+
+    OnlyFilter(Set<String> testIds) {
+      this.testIds = testIds;
+    }
+
+    @Override public boolean shouldRun(Description description) {
+      if (description.isTest()) {
+        return testIds.contains(testId(description))
+            || testIds.contains(description.getClassName());
+      }
+      for (Description child : description.getChildren()) {
+        if (shouldRun(child)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override public String describe() {
+      return "only " + testIds;
+    }
+  }
+
+  @RunListener.ThreadSafe
+  static final class EventWriter extends RunListener {
+    private final PrintStream events;
+    private final Map<Description, Long> startNanos = new ConcurrentHashMap<>();
+
+    EventWriter(PrintStream events) {
+      this.events = events;
+    }
+
+    void plan(Description description) {
+      if (description.isTest()) {
+        write(PLANNED, description, "");
+      }
+      for (Description child : description.getChildren()) {
+        plan(child);
+      }
+    }
+
+    @Override public void testStarted(Description description) {
+      startNanos.put(description, System.nanoTime());
+      write(STARTED, description, "");
+    }
+
+    @Override public void testFailure(Failure failure) {
+      write(FAILED, failure.getDescription(), encode(trace(failure)));
+    }
+
+    @Override public void testAssumptionFailure(Failure failure) {
+      write(ASSUMPTION_FAILED, failure.getDescription(), encode(trace(failure)));
+    }
+
+    @Override public void testIgnored(Description description) {
+      write(IGNORED, description, "");
+    }
+
+    @Override public void testFinished(Description description) {
+      Long start = startNanos.remove(description);
+      long millis = start != null ? (System.nanoTime() - start) / 1_000_000 : 0;
+      write(FINISHED, description, Long.toString(millis));
+    }
+
+    private void write(String event, Description description, String value) {
+      write(event, description.getClassName(), methodName(description), value);
+    }
+
+    /** Writes a line of test output, which must not start with {@value #EVENT_PREFIX}. */
+    synchronized void output(String line) {
+      events.println(line);
+    }
+
+    synchronized void write(String event, String className, String methodName, String value) {
+      events.println(EVENT_PREFIX + "\t" + event + "\t" + encode(className) + "\t"
+          + encode(methodName) + "\t" + value);
+    }
+
+    private static String trace(Failure failure) {
+      if (failure.getException() == null) {
+        return String.valueOf(failure.getMessage());
+      }
+      StringWriter trace = new StringWriter();
+      failure.getException().printStackTrace(new PrintWriter(trace));
+      return trace.toString();
+    }
+  }
+}
@@ -1,51 +1,421 @@
 package com.squareup.testing;
 
-import com.google.common.base.Throwables;
-import org.junit.Test;
-import org.reflections.adapters.MetadataAdapter;
-import org.reflections.scanners.AbstractScanner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.squareup.testing.ClassFileInfo.FieldInfo;
+import com.squareup.testing.ClassFileInfo.MethodInfo;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static org.reflections.ReflectionUtils.getAllMethods;
-import static org.reflections.ReflectionUtils.withAnnotation;
+import static java.util.Collections.emptyList;
 
 /**
  * Finds Junit3 style tests and JUnit4 annotated test classes.
+ *
+ * <p>Classes are discovered by reading their class files rather than by reflection, so scanning
+ * neither loads test classes nor runs their static initializers. {@code @Test} methods inherited
+ * from superclasses are found by reading the superclasses' class files too.
+ *
+ * <p>If {@value TestIndex#INDEX_FILE_PROPERTY} is set, the class files of each class path entry are
+ * cached in a {@link TestIndex} and only read again once the entry changes.
  */
-class JUnitTestsScanner extends AbstractScanner {
+class JUnitTestsScanner {
+  private static final String TEST = "org.junit.Test";
+  private static final String RUN_WITH = "org.junit.runner.RunWith";
+  private static final String CATEGORY = "org.junit.experimental.categories.Category";
+  private static final String RUN_TEST_ON_SHARD = RunTestOnShard.class.getName();
+  private static final String SLOW_TESTS = SlowTests.class.getName();
+  private static final String TEST_RESOURCES = TestResources.class.getName();
+  // In the acceptance module, which this module does not depend on.
+  private static final String INTEGRATE_APPS = "com.squareup.testing.acceptance.IntegrateApps";
+  // In the testing module, which this module does not depend on.
+  private static final String TEST_MODULE = "com.squareup.testing.TestModule";
+  private static final String TEST_INJECTOR = "com.squareup.testing.guice.TestInjector";
+  private static final int ACC_SYNTHETIC = 0x1000;
+
   private final ChunkConfig config;
+  private final ClassLoader classLoader;
+  private final TestIndex index;
+  private final Map<String, Optional<ClassFileInfo>> classFiles = new ConcurrentHashMap<>();
 
   public JUnitTestsScanner(ChunkConfig config) {
+    this(config, Thread.currentThread().getContextClassLoader(), TestIndex.get());
+  }
+
+  /** Uses {@code index}, if not null, to avoid reading class files that haven't changed. */
+  JUnitTestsScanner(ChunkConfig config, ClassLoader classLoader, TestIndex index) {
     this.config = config;
+    this.classLoader = classLoader;
+    this.index = index;
+  }
+
+  /**
+   * Returns every class in {@code packagePrefix} or its subpackages that looks like a test,
+   * including abstract ones.
+   */
+  public List<TestClassInfo> scan(String packagePrefix) {
+    return findClassNames(packagePrefix).parallelStream()
+        .filter(className -> className.endsWith("Test"))
+        .filter(className -> config.runFunctionalTests || !className.endsWith("FunctionalTest"))
+        .map(this::scanClass)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
   }
 
-  @SuppressWarnings("unchecked") @Override
-  public void scan(Object cls) {
-    MetadataAdapter metadataAdapter = getMetadataAdapter();
-    String className = metadataAdapter.getClassName(cls);
-    if (className.endsWith("Test")) {
-      if (!config.runFunctionalTests && className.endsWith("FunctionalTest")) {
-        return;
+  /**
+   * Returns the names of all classes in {@code packagePrefix} on the class path. With an index,
+   * the class files of each class path entry are also read up front, unless the index already has
+   * them.
+   */
+  Set<String> findClassNames(String packagePrefix) {
+    String packagePath = packagePrefix.replace('.', '/');
+    Set<String> classNames = new TreeSet<>();
+    try {
+      Enumeration<URL> roots = classLoader.getResources(packagePath);
+      while (roots.hasMoreElements()) {
+        URL root = roots.nextElement();
+        String key;
+        String stamp = null;
+        Set<String> rootClassNames = new TreeSet<>();
+        if (root.getProtocol().equals("jar")) {
+          JarURLConnection connection = (JarURLConnection) root.openConnection();
+          connection.setUseCaches(false);
+          Path jarPath = Paths.get(connection.getJarFileURL().toURI());
+          key = jarPath + "!/" + packagePath;
+          if (index != null) {
+            stamp = Files.size(jarPath) + ":" + Files.getLastModifiedTime(jarPath).toMillis();
+            if (addIndexedClassNames(key, stamp, classNames)) {
+              continue;
+            }
+          }
+          try (JarFile jarFile = connection.getJarFile()) {
+            addJarClassNames(jarFile, packagePath, rootClassNames);
+          }
+        } else if (root.getProtocol().equals("file")) {
+          Path directory = Paths.get(root.toURI());
+          key = directory.toString();
+          if (index != null) {
+            stamp = directoryStamp(directory);
+            if (addIndexedClassNames(key, stamp, classNames)) {
+              continue;
+            }
+          }
+          addDirectoryClassNames(directory, packagePrefix, rootClassNames);
+        } else {
+          continue;
+        }
+        classNames.addAll(rootClassNames);
+        if (index != null) {
+          indexRoot(key, stamp, rootClassNames);
+        }
+      }
+      if (index != null) {
+        index.save();
       }
+    } catch (IOException | URISyntaxException e) {
+      throw new RuntimeException("Unable to scan the class path for " + packagePrefix, e);
+    }
+    return classNames;
+  }
+
+  /**
+   * Fingerprints the names and contents of the class files in {@code packagePrefix} on the class
+   * path, without parsing them. Jar entries are fingerprinted by their recorded CRC, so only the
+   * class files of directories are read.
+   */
+  String fingerprint(String packagePrefix) {
+    String packagePath = packagePrefix.replace('.', '/');
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    try {
+      Enumeration<URL> roots = classLoader.getResources(packagePath);
+      while (roots.hasMoreElements()) {
+        URL root = roots.nextElement();
+        if (root.getProtocol().equals("jar")) {
+          JarURLConnection connection = (JarURLConnection) root.openConnection();
+          connection.setUseCaches(false);
+          try (JarFile jarFile = connection.getJarFile()) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+              JarEntry entry = entries.nextElement();
+              if (entry.getName().startsWith(packagePath + "/")
+                  && entry.getName().endsWith(".class")) {
+                hasher.putString(entry.getName(), StandardCharsets.UTF_8).putLong(entry.getCrc());
+              }
+            }
+          }
+        } else if (root.getProtocol().equals("file")) {
+          Path directory = Paths.get(root.toURI());
+          try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+              if (file.toString().endsWith(".class")) {
+                hasher.putString(directory.relativize(file).toString().replace('\\', '/'),
+                    StandardCharsets.UTF_8)
+                    .putBytes(Hashing.murmur3_128().hashBytes(Files.readAllBytes(file)).asBytes());
+              }
+            }
+          }
+        }
+      }
+    } catch (IOException | URISyntaxException e) {
+      throw new RuntimeException("Unable to fingerprint the class path for " + packagePrefix, e);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void addJarClassNames(JarFile jarFile, String packagePath, Set<String> classNames) {
+    Enumeration<JarEntry> entries = jarFile.entries();
+    while (entries.hasMoreElements()) {
+      String entryName = entries.nextElement().getName();
+      if (entryName.startsWith(packagePath + "/") && entryName.endsWith(".class")) {
+        classNames.add(toClassName(entryName));
+      }
+    }
+  }
 
-      Class<?> testClass;
-      try {
-        testClass = Class.forName(className);
-      } catch (ClassNotFoundException e) {
-        throw new RuntimeException(e);
+  private static void addDirectoryClassNames(Path directory, String packagePrefix,
+      Set<String> classNames) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.filter(file -> file.toString().endsWith(".class"))
+          .forEach(file -> classNames.add(packagePrefix + "."
+              + toClassName(directory.relativize(file).toString().replace('\\', '/'))));
+    }
+  }
+
+  private static String toClassName(String classFilePath) {
+    return classFilePath.substring(0, classFilePath.length() - ".class".length()).replace('/', '.');
+  }
+
+  /** Adds the indexed class names of a class path entry, returning false if none are indexed. */
+  private boolean addIndexedClassNames(String key, String stamp, Set<String> classNames) {
+    List<ClassFileInfo> indexed = index.get(key, stamp);
+    if (indexed == null) {
+      return false;
+    }
+    for (ClassFileInfo classFile : indexed) {
+      // Earlier class path entries shadow later ones, as they do for the class loader.
+      if (classNames.add(classFile.name)) {
+        classFiles.putIfAbsent(classFile.name, Optional.of(classFile));
       }
-      boolean containsValidTests =
-          !getAllMethods(testClass, withAnnotation(Test.class)).isEmpty();
+    }
+    return true;
+  }
+
+  private void indexRoot(String key, String stamp, Set<String> rootClassNames) {
+    index.put(key, stamp, rootClassNames.parallelStream()
+        .map(this::getClassFile)
+        .filter(Optional::isPresent)
+        .map(Optional::get)
+        .collect(Collectors.toList()));
+  }
 
-      if (!containsValidTests) {
-        // Some test runners (e.g cucumber) do not require @Test methods.
-        if (metadataAdapter.getClassAnnotationNames(cls).contains("org.junit.runner.RunWith")) {
-          containsValidTests = true;
+  /** Fingerprints the paths, sizes and modification times of a directory's class files. */
+  private static String directoryStamp(Path directory) throws IOException {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+        if (file.toString().endsWith(".class")) {
+          hasher.putString(directory.relativize(file).toString(), StandardCharsets.UTF_8)
+              .putLong(Files.size(file))
+              .putLong(Files.getLastModifiedTime(file).toMillis());
         }
       }
+    }
+    return hasher.hash().toString();
+  }
 
-      if (containsValidTests) {
-        getStore().put("UnitTestClass", className);
+  private TestClassInfo scanClass(String className) {
+    List<ClassFileInfo> hierarchy = getHierarchy(className);
+    if (hierarchy.isEmpty()) {
+      return null;
+    }
+    ClassFileInfo classFile = hierarchy.get(0);
+
+    boolean containsValidTests = hierarchy.stream()
+        .flatMap(type -> type.methods.stream())
+        .anyMatch(method -> method.annotations.containsKey(TEST));
+    if (!containsValidTests) {
+      // Some test runners (e.g cucumber) do not require @Test methods.
+      containsValidTests = classFile.getAnnotation(RUN_WITH) != null;
+    }
+    if (!containsValidTests) {
+      return null;
+    }
+
+    // @RunWith and @Category are @Inherited.
+    String runWith = (String) getInheritedAnnotationValue(hierarchy, RUN_WITH);
+    boolean slow = isSlow(hierarchy) || (runWith != null && isSlow(getHierarchy(runWith)));
+
+    Map<String, Object> runTestOnShard = classFile.getAnnotation(RUN_TEST_ON_SHARD);
+    List<TestMethodInfo> testMethods = getPublicTestMethods(hierarchy);
+    return new TestClassInfo(classFile.name, classFile.access, runWith, slow,
+        runTestOnShard != null ? (Integer) runTestOnShard.get("value") : null,
+        getInjectorKey(hierarchy), getResources(hierarchy, testMethods), testMethods);
+  }
+
+  /**
+   * Counts the resources declared by {@link TestResources}, which is {@code @Inherited}, and the
+   * distinct apps of {@code @IntegrateApps} on the class or its {@code testMethods}.
+   */
+  private static Map<TestResource, Integer> getResources(List<ClassFileInfo> hierarchy,
+      List<TestMethodInfo> testMethods) {
+    Map<TestResource, Integer> resources = new EnumMap<>(TestResource.class);
+    for (ClassFileInfo type : hierarchy) {
+      Map<String, Object> testResources = type.getAnnotation(TEST_RESOURCES);
+      if (testResources != null) {
+        for (Object value : (List<?>) testResources.getOrDefault("value", emptyList())) {
+          String constant = (String) value;
+          TestResource resource =
+              TestResource.valueOf(constant.substring(constant.lastIndexOf('.') + 1));
+          resources.merge(resource, 1, Integer::sum);
+        }
+        int ports = (Integer) testResources.getOrDefault("ports", 0);
+        if (ports > 0) {
+          resources.put(TestResource.PORT, ports);
+        }
+        break;
+      }
+    }
+
+    Set<Object> apps = new HashSet<>();
+    Map<String, Object> integrateApps = hierarchy.get(0).getAnnotation(INTEGRATE_APPS);
+    if (integrateApps != null) {
+      apps.addAll((List<?>) integrateApps.getOrDefault("value", emptyList()));
+    }
+    for (ClassFileInfo type : hierarchy) {
+      for (MethodInfo method : type.methods) {
+        Map<String, Object> methodApps = method.annotations.get(INTEGRATE_APPS);
+        if (methodApps != null && testMethods.contains(new TestMethodInfo(
+            type.name, method.name, method.descriptor, method.access, method.exceptions))) {
+          apps.addAll((List<?>) methodApps.getOrDefault("value", emptyList()));
+        }
       }
     }
+    if (!apps.isEmpty()) {
+      resources.merge(TestResource.INTEGRATED_APP, apps.size(), Math::max);
+    }
+    return resources;
+  }
+
+  /**
+   * Mirrors {@code InjectionTestRunner}, which uses the class's own {@code @TestModule} or else its
+   * public static {@code @TestInjector} field, possibly inherited. A field declared as an interface
+   * or abstract type, such as {@code InjectorSupplier}, doesn't say which injector it holds, so it
+   * is keyed by the class that declares it.
+   */
+  private String getInjectorKey(List<ClassFileInfo> hierarchy) {
+    Map<String, Object> testModule = hierarchy.get(0).getAnnotation(TEST_MODULE);
+    if (testModule != null && testModule.get("value") != null) {
+      return (String) testModule.get("value");
+    }
+    for (ClassFileInfo type : hierarchy) {
+      for (FieldInfo field : type.fields) {
+        if (field.annotations.containsKey(TEST_INJECTOR)
+            && Modifier.isPublic(field.access)
+            && Modifier.isStatic(field.access)) {
+          String fieldType = ClassFileInfo.descriptorToClassName(field.descriptor);
+          return isConcrete(fieldType) ? fieldType : type.name;
+        }
+      }
+    }
+    return null;
+  }
+
+  private boolean isConcrete(String className) {
+    Optional<ClassFileInfo> classFile = getClassFile(className);
+    return classFile.isPresent()
+        && !Modifier.isInterface(classFile.get().access)
+        && !Modifier.isAbstract(classFile.get().access);
+  }
+
+  /** Mirrors {@link SlowTestPredicate}. */
+  private static boolean isSlow(List<ClassFileInfo> hierarchy) {
+    Object categories = getInheritedAnnotationValue(hierarchy, CATEGORY);
+    return categories instanceof List && ((List<?>) categories).contains(SLOW_TESTS);
+  }
+
+  private static Object getInheritedAnnotationValue(List<ClassFileInfo> hierarchy,
+      String annotationType) {
+    for (ClassFileInfo type : hierarchy) {
+      Map<String, Object> annotation = type.getAnnotation(annotationType);
+      if (annotation != null) {
+        return annotation.get("value");
+      }
+    }
+    return null;
+  }
+
+  /** Returns the {@code @Test} methods that {@code Class.getMethods()} would return. */
+  private static List<TestMethodInfo> getPublicTestMethods(List<ClassFileInfo> hierarchy) {
+    List<TestMethodInfo> testMethods = new ArrayList<>();
+    Set<String> seenSignatures = new HashSet<>();
+    for (ClassFileInfo type : hierarchy) {
+      for (MethodInfo method : type.methods) {
+        if (!Modifier.isPublic(method.access)
+            || (method.access & ACC_SYNTHETIC) != 0
+            || method.name.startsWith("<")) {
+          continue;
+        }
+        // Overriding methods hide the overridden method, whether or not they are tests.
+        if (seenSignatures.add(method.name + method.descriptor)
+            && method.annotations.containsKey(TEST)) {
+          testMethods.add(new TestMethodInfo(
+              type.name, method.name, method.descriptor, method.access, method.exceptions));
+        }
+      }
+    }
+    return testMethods;
+  }
+
+  /** Returns {@code className} followed by its superclasses, excluding {@link Object}. */
+  private List<ClassFileInfo> getHierarchy(String className) {
+    List<ClassFileInfo> hierarchy = new ArrayList<>();
+    String typeName = className;
+    while (typeName != null && !typeName.equals(Object.class.getName())) {
+      Optional<ClassFileInfo> classFile = getClassFile(typeName);
+      if (!classFile.isPresent()) {
+        break;
+      }
+      hierarchy.add(classFile.get());
+      typeName = classFile.get().superName;
+    }
+    return ImmutableList.copyOf(hierarchy);
+  }
+
+  private Optional<ClassFileInfo> getClassFile(String className) {
+    return classFiles.computeIfAbsent(className, name -> {
+      try (InputStream in = classLoader.getResourceAsStream(name.replace('.', '/') + ".class")) {
+        if (in == null) {
+          return Optional.empty();
+        }
+        return Optional.of(ClassFileInfo.read(new BufferedInputStream(in)));
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read class file for " + name, e);
+      }
+    });
   }
 }
@@ -0,0 +1,232 @@
+package com.squareup.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.Filterable;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sortable;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.RunnerBuilder;
+
+/**
+ * The runner of a test class, built again just before the class runs and released once it has, so
+ * that a chunk only holds the runners and test instances of the classes running now. Until then
+ * it is described by the description of a runner that was built, filtered and released up front,
+ * which is all {@link ShardingTestRunner} and JUnit need of it.
+ *
+ * <p>Filters and sorters are applied to that description while the runner is released, without
+ * building it, and replayed on each runner that is built. Runners are expected to describe a class
+ * the same way every time they're built, as JUnit's own runners do.
+ *
+ * <p>Classes that a chunk may not run at all, such as those it claims from a {@link WorkQueue},
+ * are neither loaded nor built until they run, and are described by their scanned test methods
+ * until then.
+ */
+final class LazyRunner extends Runner implements Filterable, Sortable {
+  private final RunnerBuilder builder;
+  private final String className;
+  /** The test class, or null until an unbuilt runner's class is loaded. */
+  private Class<?> testClass;
+  private final List<Filter> filters = new ArrayList<>();
+  private final List<Sorter> sorters = new ArrayList<>();
+  private Runner runner;
+  private Description description;
+  private boolean started;
+  /** Thrown by the static initializer of the test class when it was preloaded. */
+  private Throwable initializationError;
+
+  private LazyRunner(RunnerBuilder builder, String className, Class<?> testClass, Runner runner,
+      Description description) {
+    this.builder = builder;
+    this.className = className;
+    this.testClass = testClass;
+    this.runner = runner;
+    this.description = description;
+  }
+
+  /**
+   * Returns a runner for {@code testClass} that is held until {@link #release}, or null if {@code
+   * builder} has none.
+   */
+  static LazyRunner build(RunnerBuilder builder, Class<?> testClass) {
+    Runner runner = builder.safeRunnerForClass(testClass);
+    return runner != null
+        ? new LazyRunner(builder, testClass.getName(), testClass, runner, null)
+        : null;
+  }
+
+  /**
+   * Returns a runner for {@code testClass} that isn't loaded or built until it runs. {@code
+   * filters} are only applied to the runner once it's built, since filtering on annotations would
+   * load the class.
+   */
+  static LazyRunner unbuilt(RunnerBuilder builder, TestClassInfo testClass,
+      List<Filter> filters) {
+    Description description = Description.createSuiteDescription(testClass.getName());
+    for (String methodName : testClass.getTestMethodNames()) {
+      description.addChild(Description.createTestDescription(testClass.getName(), methodName));
+    }
+    LazyRunner runner = new LazyRunner(builder, testClass.getName(), null, null, description);
+    runner.filters.addAll(filters);
+    return runner;
+  }
+
+  @Override public synchronized Description getDescription() {
+    return runner != null ? runner.getDescription() : description;
+  }
+
+  @Override public synchronized void filter(Filter filter) throws NoTestsRemainException {
+    // A filter that leaves no tests still empties the runner, and does so again when replayed.
+    filters.add(filter);
+    if (runner != null) {
+      filter.apply(runner);
+    } else {
+      description = filter(description, filter);
+    }
+  }
+
+  @Override public synchronized void sort(Sorter sorter) {
+    sorters.add(sorter);
+    if (runner != null) {
+      sorter.apply(runner);
+    } else {
+      description = sort(description, sorter);
+    }
+  }
+
+  /** Filters {@code description} the way {@link org.junit.runners.ParentRunner} filters. */
+  private static Description filter(Description description, Filter filter)
+      throws NoTestsRemainException {
+    Description filtered = description.childlessCopy();
+    for (Description child : description.getChildren()) {
+      if (!filter.shouldRun(child)) {
+        continue;
+      }
+      if (child.isTest()) {
+        filtered.addChild(child);
+      } else {
+        try {
+          filtered.addChild(filter(child, filter));
+        } catch (NoTestsRemainException e) {
+          // Suites left empty are dropped.
+        }
+      }
+    }
+    if (filtered.getChildren().isEmpty()) {
+      throw new NoTestsRemainException();
+    }
+    return filtered;
+  }
+
+  /** Sorts {@code description} the way {@link org.junit.runners.ParentRunner} sorts. */
+  private static Description sort(Description description, Sorter sorter) {
+    List<Description> children = new ArrayList<>();
+    for (Description child : description.getChildren()) {
+      children.add(child.isTest() ? child : sort(child, sorter));
+    }
+    children.sort(sorter);
+    Description sorted = description.childlessCopy();
+    children.forEach(sorted::addChild);
+    return sorted;
+  }
+
+  /** Releases the runner until the class runs, keeping its description. */
+  synchronized void release() {
+    if (runner != null) {
+      description = runner.getDescription();
+      runner = null;
+    }
+  }
+
+  /**
+   * Initializes the test class and builds its runner ahead of {@link #run}, unless the class has
+   * started running. See {@link ClassPreloader}.
+   */
+  void preload() {
+    synchronized (this) {
+      if (started) {
+        return;
+      }
+    }
+    try {
+      Class.forName(className, true, getTestClass().getClassLoader());
+    } catch (Throwable e) {
+      // The class can't be initialized again, so its tests fail with this rather than with a
+      // NoClassDefFoundError that doesn't say why.
+      synchronized (this) {
+        initializationError = e;
+      }
+      return;
+    }
+    synchronized (this) {
+      if (!started) {
+        get();
+      }
+    }
+  }
+
+  @Override public void run(RunNotifier notifier) {
+    Runner built;
+    Throwable error;
+    synchronized (this) {
+      started = true;
+      error = initializationError;
+      built = error == null ? get() : null;
+    }
+    try {
+      if (error != null) {
+        fireInitializationError(getDescription(), error, notifier);
+      } else if (built != null) {
+        built.run(notifier);
+      }
+    } finally {
+      release();
+    }
+  }
+
+  private static void fireInitializationError(Description description, Throwable error,
+      RunNotifier notifier) {
+    if (description.isTest()) {
+      notifier.fireTestStarted(description);
+      notifier.fireTestFailure(new Failure(description, error));
+      notifier.fireTestFinished(description);
+    }
+    for (Description child : description.getChildren()) {
+      fireInitializationError(child, error, notifier);
+    }
+  }
+
+  private Runner get() {
+    if (runner == null) {
+      runner = builder.safeRunnerForClass(getTestClass());
+      if (runner == null) {
+        return null;
+      }
+      for (Filter filter : filters) {
+        try {
+          filter.apply(runner);
+        } catch (NoTestsRemainException e) {
+          // As it did when the filter was first applied.
+        }
+      }
+      sorters.forEach(sorter -> sorter.apply(runner));
+    }
+    return runner;
+  }
+
+  private synchronized Class<?> getTestClass() {
+    if (testClass == null) {
+      try {
+        testClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return testClass;
+  }
+}
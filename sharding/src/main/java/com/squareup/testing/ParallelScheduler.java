@@ -0,0 +1,114 @@
+package com.squareup.testing;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * Runs the children of a {@link ShardingTestRunner} on a bounded pool of threads. Each child still
+ * runs on a single thread, so the events of one test class reach the {@code RunNotifier} in order.
+ */
+final class ParallelScheduler implements RunnerScheduler {
+  /** System property overriding {@link ShardedTestSuite#parallelism}. */
+  static final String PARALLELISM_PROPERTY = "square.test.parallelism";
+
+  /** System property overriding {@link ShardedTestSuite#virtualThreads}. */
+  static final String VIRTUAL_THREADS_PROPERTY = "square.test.virtualThreads";
+
+  private final int threads;
+  private final boolean virtualThreads;
+  private final List<Future<?>> futures = new ArrayList<>();
+  private ExecutorService executor;
+
+  ParallelScheduler(int threads, boolean virtualThreads) {
+    this.threads = threads;
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * Returns the number of classes to run at once, from {@value #PARALLELISM_PROPERTY} or else
+   * {@code suite}. Values below one mean one per available processor.
+   */
+  static int getParallelism(ShardedTestSuite suite) {
+    String property = System.getProperty(PARALLELISM_PROPERTY);
+    int parallelism = property != null ? Integer.parseInt(property) : suite.parallelism();
+    return parallelism >= 1 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  static boolean useVirtualThreads(ShardedTestSuite suite) {
+    String property = System.getProperty(VIRTUAL_THREADS_PROPERTY);
+    return property != null ? Boolean.parseBoolean(property) : suite.virtualThreads();
+  }
+
+  @Override public synchronized void schedule(Runnable childStatement) {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, threadFactory(virtualThreads));
+    }
+    futures.add(executor.submit(childStatement));
+  }
+
+  @Override public void finished() {
+    List<Future<?>> scheduled;
+    synchronized (this) {
+      scheduled = new ArrayList<>(futures);
+      futures.clear();
+    }
+    RuntimeException failure = null;
+    try {
+      for (Future<?> future : scheduled) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // Test failures are reported through the notifier; this is a failure of the runner.
+          if (failure == null) {
+            failure = new RuntimeException("Test class failed to run", e.getCause());
+          } else {
+            failure.addSuppressed(e.getCause());
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      synchronized (this) {
+        if (executor != null) {
+          executor.shutdownNow();
+          executor = null;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static ThreadFactory threadFactory(boolean virtualThreads) {
+    if (virtualThreads) {
+      // Virtual threads need Java 21, so they are created reflectively.
+      try {
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+        builder = builderType.getMethod("name", String.class, long.class)
+            .invoke(builder, "sharded-test-", 1L);
+        Method factory = builderType.getMethod("factory");
+        return (ThreadFactory) factory.invoke(builder);
+      } catch (ReflectiveOperationException e) {
+        ShardingTestRunner.out.println("*** Virtual threads unavailable, using platform threads ***");
+      }
+    }
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, "sharded-test-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,301 @@
+package com.squareup.testing;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Remembers test classes that passed, so that {@link ShardingTestRunner} can report them as passed
+ * without running them again while nothing they depend on has changed.
+ *
+ * <p>A class's key hashes the class files it reaches in the {@link ClassDependencyGraph}, the tests
+ * of the class that this chunk runs, the JVM's version and platform, and the values of the system
+ * properties listed in {@value #KEY_PROPERTIES_PROPERTY}. Each entry is a file named by its key in
+ * the directory {@value #CACHE_DIR_PROPERTY}, which lists the class's ignored tests. Reading an
+ * entry touches it, and the least recently used entries beyond {@value #MAX_ENTRIES_PROPERTY} are
+ * deleted when a run finishes. The directory may be shared by any number of JVMs.
+ *
+ * <p>A class is cached only if none of its tests failed or had a failed assumption. Tests reported
+ * from the cache carry {@link CachedResult}. Anything a test reads that isn't a class, such as
+ * resources, files or the network, is not part of its key.
+ */
+final class ResultCache extends RunListener {
+  /** System property naming the cache directory. The cache is off if unset. */
+  static final String CACHE_DIR_PROPERTY = "square.test.resultCacheDir";
+
+  /** System property limiting the number of cached classes. */
+  static final String MAX_ENTRIES_PROPERTY = "square.test.resultCacheMaxEntries";
+
+  /** System property listing, separated by commas, more system properties that tests read. */
+  static final String KEY_PROPERTIES_PROPERTY = "square.test.resultCacheProperties";
+
+  static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+  /** Changed when the key or the entry format changes. */
+  private static final int VERSION = 1;
+
+  private static final List<String> JVM_PROPERTIES =
+      ImmutableList.of("java.vendor", "java.version", "os.name", "os.arch");
+
+  private static final Annotation CACHED_RESULT = new CachedResult() {
+    @Override public Class<? extends Annotation> annotationType() {
+      return CachedResult.class;
+    }
+  };
+
+  private final Path directory;
+  private final int maxEntries;
+  private final ClassDependencyGraph graph;
+  private final HashCode propertiesHash;
+  private final Map<String, HashCode> dependencyHashes = new ConcurrentHashMap<>();
+  private final Set<String> failedClassNames = ConcurrentHashMap.newKeySet();
+  private final Set<String> ignoredTestIds = ConcurrentHashMap.newKeySet();
+  private int hits;
+  private int misses;
+
+  ResultCache(Path directory, int maxEntries, ClassDependencyGraph graph,
+      Collection<String> keyProperties) {
+    this.directory = directory;
+    this.maxEntries = maxEntries;
+    this.graph = graph;
+
+    Hasher hasher = Hashing.murmur3_128().newHasher().putInt(VERSION);
+    for (String property : new TreeSet<>(keyProperties)) {
+      String value = System.getProperty(property);
+      hasher.putString(property, StandardCharsets.UTF_8).putByte((byte) 0)
+          .putString(value != null ? value : "", StandardCharsets.UTF_8)
+          .putBoolean(value != null);
+    }
+    this.propertiesHash = hasher.hash();
+  }
+
+  /** Returns true if the result cache is configured by system properties. */
+  static boolean isEnabled() {
+    return System.getProperty(CACHE_DIR_PROPERTY) != null;
+  }
+
+  /** Returns the cache configured by system properties, or null if it is off. */
+  static ResultCache get(ClassDependencyGraph graph) {
+    String directory = System.getProperty(CACHE_DIR_PROPERTY);
+    if (directory == null) {
+      return null;
+    }
+    List<String> keyProperties = new ArrayList<>(JVM_PROPERTIES);
+    keyProperties.addAll(Splitter.on(',').trimResults().omitEmptyStrings()
+        .splitToList(System.getProperty(KEY_PROPERTIES_PROPERTY, "")));
+    return new ResultCache(Paths.get(directory),
+        Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES), graph, keyProperties);
+  }
+
+  /**
+   * Reports the tests of {@code child} to {@code notifier} as passed or ignored, marked with
+   * {@link CachedResult}, if they passed before with the same inputs. Returns false if they must
+   * run.
+   */
+  boolean replay(Runner child, RunNotifier notifier, PrintStream out) {
+    HashCode key = key(child.getDescription());
+    if (key == null) {
+      return false;
+    }
+    Path entry = directory.resolve(key.toString());
+    Set<String> ignored;
+    try {
+      ignored = ImmutableSet.copyOf(Files.readAllLines(entry, StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (NoSuchFileException e) {
+      synchronized (this) {
+        misses++;
+      }
+      return false;
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read result cache entry " + entry, e);
+    }
+    synchronized (this) {
+      hits++;
+    }
+
+    List<Description> tests = getTests(child.getDescription());
+    out.printf("Cached: %s (%d tests)\n", child.getDescription().getClassName(), tests.size());
+    for (Description test : tests) {
+      Description cached = markCached(test);
+      if (ignored.contains(ForkedChunk.testId(test))) {
+        notifier.fireTestIgnored(cached);
+      } else {
+        notifier.fireTestStarted(cached);
+        notifier.fireTestFinished(cached);
+      }
+    }
+    return true;
+  }
+
+  /** Remembers the tests of {@code child}, which just ran, if none of them failed. */
+  void store(Runner child) {
+    Description description = child.getDescription();
+    HashCode key = key(description);
+    if (key == null || failedClassNames.contains(description.getClassName())) {
+      return;
+    }
+    List<String> ignored = new ArrayList<>();
+    for (Description test : getTests(description)) {
+      if (failedClassNames.contains(test.getClassName())) {
+        return;
+      }
+      String testId = ForkedChunk.testId(test);
+      if (ignoredTestIds.contains(testId)) {
+        ignored.add(testId);
+      }
+    }
+
+    Path entry = directory.resolve(key.toString());
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, key.toString(), ".tmp");
+      Files.write(temp, ignored, StandardCharsets.UTF_8);
+      Files.move(temp, entry, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write result cache entry " + entry, e);
+    }
+  }
+
+  /** Deletes the least recently used entries beyond the maximum. */
+  void evict(PrintStream out) {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    List<Path> entries;
+    try (Stream<Path> files = Files.list(directory)) {
+      entries = files.filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+          .collect(toList());
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to list result cache " + directory, e);
+    }
+    int evicted = 0;
+    if (entries.size() > maxEntries) {
+      Map<Path, Long> lastUsed = new HashMap<>();
+      entries.forEach(entry -> lastUsed.put(entry, lastModifiedMillis(entry)));
+      entries.sort(Comparator.comparing(lastUsed::get));
+      for (Path entry : entries.subList(0, entries.size() - maxEntries)) {
+        try {
+          Files.deleteIfExists(entry);
+          evicted++;
+        } catch (IOException e) {
+          // Another JVM may be reading it; it will be evicted next time.
+        }
+      }
+    }
+    synchronized (this) {
+      out.printf("Result cache: %d hits, %d misses, %d evicted\n", hits, misses, evicted);
+    }
+  }
+
+  private static long lastModifiedMillis(Path entry) {
+    try {
+      return Files.getLastModifiedTime(entry).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  @Override public void testFailure(Failure failure) {
+    failedClassNames.add(String.valueOf(failure.getDescription().getClassName()));
+  }
+
+  @Override public void testAssumptionFailure(Failure failure) {
+    failedClassNames.add(String.valueOf(failure.getDescription().getClassName()));
+  }
+
+  @Override public void testIgnored(Description description) {
+    if (description.getAnnotation(CachedResult.class) == null) {
+      ignoredTestIds.add(ForkedChunk.testId(description));
+    }
+  }
+
+  /** Returns the key of a test class's tests, or null if its class isn't in the graph. */
+  private HashCode key(Description description) {
+    String className = description.getClassName();
+    HashCode dependencyHash = className != null
+        ? dependencyHashes.computeIfAbsent(className, this::hashDependencies)
+        : null;
+    if (dependencyHash == null || graph.getHash(className) == null) {
+      return null;
+    }
+    List<Description> tests = getTests(description);
+    if (tests.isEmpty()) {
+      return null;
+    }
+    Hasher hasher = Hashing.sha256().newHasher()
+        .putBytes(propertiesHash.asBytes())
+        .putBytes(dependencyHash.asBytes());
+    for (String testId : new TreeSet<>(tests.stream().map(ForkedChunk::testId).collect(toList()))) {
+      hasher.putString(testId, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash();
+  }
+
+  private HashCode hashDependencies(String className) {
+    List<HashCode> hashes = new ArrayList<>();
+    for (String dependency : graph.getDependencies(ImmutableList.of(className))) {
+      HashCode hash = graph.getHash(dependency);
+      if (hash != null) {
+        hashes.add(Hashing.murmur3_128().newHasher()
+            .putString(dependency, StandardCharsets.UTF_8)
+            .putBytes(hash.asBytes())
+            .hash());
+      }
+    }
+    return hashes.isEmpty() ? null : Hashing.combineUnordered(hashes);
+  }
+
+  private static List<Description> getTests(Description description) {
+    List<Description> tests = new ArrayList<>();
+    addTests(description, tests);
+    return tests;
+  }
+
+  private static void addTests(Description description, List<Description> tests) {
+    if (description.isTest()) {
+      tests.add(description);
+    }
+    for (Description child : description.getChildren()) {
+      addTests(child, tests);
+    }
+  }
+
+  private static Description markCached(Description test) {
+    List<Annotation> annotations = new ArrayList<>(test.getAnnotations());
+    annotations.add(CACHED_RESULT);
+    return Description.createTestDescription(test.getClassName(), test.getMethodName(),
+        annotations.toArray(new Annotation[0]));
+  }
+}
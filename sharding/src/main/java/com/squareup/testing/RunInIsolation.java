@@ -0,0 +1,19 @@
+package com.squareup.testing;
+
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a test class that must not run alongside other test classes, for example because it
+ * changes system properties or binds fixed ports. When {@link ShardingTestRunner} runs classes in
+ * parallel, it waits for running classes to finish before running this one on its own.
+ */
+@Inherited
+@Target(TYPE)
+@Retention(RUNTIME)
+public @interface RunInIsolation {
+}
@@ -0,0 +1,264 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.junit.runner.manipulation.Filter;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * The classes and methods every chunk of a sharded suite runs, computed once so that each worker
+ * can skip discovery and sharding. Plan a build's suites before starting its workers:
+ *
+ * <pre>
+ * java -cp $TEST_CLASSPATH com.squareup.testing.ShardPlan --chunks 40 --dir plans \
+ *     com.squareup.franklin.FranklinTestSuite
+ * </pre>
+ *
+ * <p>and point the workers at the same directory with {@value #PLAN_DIR_PROPERTY}. A plan is
+ * {@code <suite>.plan}, with one tab separated line per class or method: {@code chunk, "class",
+ * className} or {@code chunk, "method", className#methodName}. Chunks list their classes in the
+ * order they run, and list methods only if the strategy runs some of a class's methods. Methods
+ * keyed by the test class that runs them rather than the class that declares them, as {@link
+ * TestMethodFilter#forTestClasses} keys them, are listed as {@code chunk, "testClassMethod",
+ * className#methodName}.
+ *
+ * <p>A plan carries a fingerprint of the suite's configuration, the chunk count, the changed files
+ * of a {@link ChangeSelection}, and the class files in the suite's package. Workers compute the
+ * fingerprint too, which reads the package's class files but doesn't parse them, and ignore a plan
+ * whose fingerprint doesn't match. Test superclasses outside the package aren't fingerprinted.
+ */
+public final class ShardPlan {
+  /** System property naming the directory of plans to run. */
+  static final String PLAN_DIR_PROPERTY = "square.test.planDir";
+
+  private static final String HEADER = "# sharded test plan v1";
+  private static final String FINGERPRINT = "fingerprint";
+  private static final String CLASS = "class";
+  private static final String METHOD = "method";
+  private static final String TEST_CLASS_METHOD = "testClassMethod";
+
+  private final String fingerprint;
+  private final Map<Integer, List<String>> classesByChunk = new TreeMap<>();
+  private final Map<Integer, List<String>> methodsByChunk = new TreeMap<>();
+  private final Set<Integer> chunksKeyedByTestClass = new HashSet<>();
+
+  ShardPlan(String fingerprint) {
+    this.fingerprint = fingerprint;
+  }
+
+  /** Plans the chunks of each suite, for {@code --chunks} workers, into {@code --dir}. */
+  public static void main(String[] args) throws Exception {
+    int chunks = 0;
+    Path directory = Paths.get(".");
+    List<String> suites = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--chunks":
+          chunks = Integer.parseInt(args[++i]);
+          break;
+        case "--dir":
+          directory = Paths.get(args[++i]);
+          break;
+        default:
+          suites.add(args[i]);
+          break;
+      }
+    }
+    if (chunks < 1 || suites.isEmpty()) {
+      System.err.println("usage: ShardPlan --chunks N [--dir DIRECTORY] SUITE...");
+      System.exit(2);
+    }
+
+    boolean runFunctionalTests = ChunkConfig.get().runFunctionalTests;
+    for (String suite : suites) {
+      ShardingTestRunner runner = new ShardingTestRunner(
+          Class.forName(suite), new ChunkConfig(0, 0, runFunctionalTests));
+      ShardPlan plan = runner.plan(suite, new ChunkConfig(chunks, 1, runFunctionalTests));
+      Path file = plan.write(directory, suite);
+      System.out.printf("%s: %d chunks, %d classes, %d methods\n", file,
+          plan.classesByChunk.size(), count(plan.classesByChunk), count(plan.methodsByChunk));
+    }
+  }
+
+  private static int count(Map<Integer, List<String>> valuesByChunk) {
+    return valuesByChunk.values().stream().mapToInt(List::size).sum();
+  }
+
+  /** Returns true if workers should look for plans. */
+  static boolean isEnabled() {
+    return System.getProperty(PLAN_DIR_PROPERTY) != null;
+  }
+
+  /**
+   * Returns the plan for {@code suiteName} in {@value #PLAN_DIR_PROPERTY}, or null if there is
+   * none or it doesn't have {@code fingerprint}.
+   */
+  static ShardPlan get(String suiteName, String fingerprint, PrintStream out) {
+    String directory = System.getProperty(PLAN_DIR_PROPERTY);
+    if (directory == null) {
+      return null;
+    }
+    Path file = Paths.get(directory).resolve(suiteName + ".plan");
+    if (!Files.exists(file)) {
+      return null;
+    }
+    ShardPlan plan = read(file);
+    if (!plan.fingerprint.equals(fingerprint)) {
+      out.printf("*** Ignoring stale shard plan %s ***\n", file);
+      return null;
+    }
+    return plan;
+  }
+
+  static ShardPlan read(Path file) {
+    try {
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+        throw new RuntimeException("Not a shard plan: " + file);
+      }
+      ShardPlan plan = null;
+      for (String line : lines.subList(1, lines.size())) {
+        String[] fields = line.split("\t", -1);
+        if (fields[0].equals(FINGERPRINT)) {
+          plan = new ShardPlan(fields[1]);
+        } else if (plan == null || fields.length != 3) {
+          throw new RuntimeException("Malformed shard plan line in " + file + ": " + line);
+        } else if (fields[1].equals(CLASS)) {
+          plan.addClass(Integer.parseInt(fields[0]), fields[2]);
+        } else if (fields[1].equals(METHOD)) {
+          plan.addMethod(Integer.parseInt(fields[0]), fields[2]);
+        } else if (fields[1].equals(TEST_CLASS_METHOD)) {
+          plan.addMethod(Integer.parseInt(fields[0]), fields[2]);
+          plan.chunksKeyedByTestClass.add(Integer.parseInt(fields[0]));
+        }
+      }
+      if (plan == null) {
+        throw new RuntimeException("Shard plan without a fingerprint: " + file);
+      }
+      return plan;
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read shard plan " + file, e);
+    }
+  }
+
+  Path write(Path directory, String suiteName) {
+    Path file = directory.resolve(suiteName + ".plan");
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, suiteName, ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        writer.write(HEADER + "\n");
+        writer.write(FINGERPRINT + "\t" + fingerprint + "\n");
+        for (Map.Entry<Integer, List<String>> chunk : classesByChunk.entrySet()) {
+          for (String className : chunk.getValue()) {
+            writer.write(chunk.getKey() + "\t" + CLASS + "\t" + className + "\n");
+          }
+          String kind =
+              chunksKeyedByTestClass.contains(chunk.getKey()) ? TEST_CLASS_METHOD : METHOD;
+          for (String method : methodsByChunk.getOrDefault(chunk.getKey(), ImmutableList.of())) {
+            writer.write(chunk.getKey() + "\t" + kind + "\t" + method + "\n");
+          }
+        }
+      }
+      Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write shard plan " + file, e);
+    }
+    return file;
+  }
+
+  String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Adds a chunk's classes in the order they run, and its methods if the strategy runs some of
+   * them with a {@link TestMethodFilter}.
+   */
+  void addChunk(int runChunk, List<String> classNames, Filter filter) {
+    classesByChunk.computeIfAbsent(runChunk, chunk -> new ArrayList<>());
+    classNames.forEach(className -> addClass(runChunk, className));
+    if (filter instanceof TestMethodFilter) {
+      if (((TestMethodFilter) filter).isKeyedByTestClass()) {
+        chunksKeyedByTestClass.add(runChunk);
+      }
+      new TreeMap<>(((TestMethodFilter) filter).getMethodNamesByClassName())
+          .forEach((className, methodNames) -> {
+            // A Cucumber feature that runs none of its scenarios on this chunk.
+            if (methodNames.isEmpty()) {
+              addMethod(runChunk, className + "#");
+            }
+            methodNames.stream().sorted()
+                .forEach(methodName -> addMethod(runChunk, className + "#" + methodName));
+          });
+    } else if (filter != null) {
+      throw new IllegalArgumentException("Unable to plan filter " + filter.describe());
+    }
+  }
+
+  private void addClass(int runChunk, String className) {
+    classesByChunk.computeIfAbsent(runChunk, chunk -> new ArrayList<>()).add(className);
+  }
+
+  private void addMethod(int runChunk, String methodId) {
+    methodsByChunk.computeIfAbsent(runChunk, chunk -> new ArrayList<>()).add(methodId);
+  }
+
+  /** Returns the names of the classes {@code runChunk} runs, in order. */
+  List<String> getClasses(int runChunk) {
+    return classesByChunk.getOrDefault(runChunk, ImmutableList.of());
+  }
+
+  /** Returns the filter of the methods {@code runChunk} runs, or null to run every method. */
+  Filter getFilter(int runChunk) {
+    List<String> methodIds = methodsByChunk.get(runChunk);
+    if (methodIds == null) {
+      return null;
+    }
+    if (chunksKeyedByTestClass.contains(runChunk)) {
+      Map<String, List<String>> methodNamesByTestClassName = new HashMap<>();
+      for (String methodId : methodIds) {
+        int separator = methodId.lastIndexOf('#');
+        methodNamesByTestClassName
+            .computeIfAbsent(methodId.substring(0, separator), className -> new ArrayList<>())
+            .add(methodId.substring(separator + 1));
+      }
+      return TestMethodFilter.forTestClasses(methodNamesByTestClassName);
+    }
+    List<TestMethodInfo> methods = new ArrayList<>(methodIds.size());
+    for (String methodId : methodIds) {
+      int separator = methodId.lastIndexOf('#');
+      methods.add(new TestMethodInfo(methodId.substring(0, separator),
+          methodId.substring(separator + 1), "()V", Modifier.PUBLIC, ImmutableList.of()));
+    }
+    return new TestMethodFilter(methods);
+  }
+
+  /** Discards what the strategies print about each chunk while planning. */
+  static PrintStream discard() {
+    return new PrintStream(new OutputStream() {
+      @Override public void write(int b) {
+      }
+
+      @Override public void write(byte[] b, int off, int len) {
+      }
+    });
+  }
+}
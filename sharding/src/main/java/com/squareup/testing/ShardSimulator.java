@@ -0,0 +1,266 @@
+package com.squareup.testing;
+
+import com.google.common.base.Splitter;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.runner.manipulation.Filter;
+
+/**
+ * Predicts how long the shards of a suite take with each sharding strategy and chunk count, so
+ * that a build can pick both without trying them out on its workers:
+ *
+ * <pre>
+ * java -cp $TEST_CLASSPATH com.squareup.testing.ShardSimulator --timings timings.gz \
+ *     --chunks 10-60:10 com.squareup.franklin.FranklinTestSuite
+ * </pre>
+ *
+ * <p>Each chunk is estimated from the {@link TestTimings} of the classes and methods it runs.
+ * A class that runs only some of its methods takes its recorded duration in proportion to the
+ * methods it runs, or the sum of its methods' durations if the class has no history. Methods
+ * without history take the median method duration. A shard's makespan is its slowest chunk; its
+ * imbalance is how much longer that chunk takes than the mean, and a chunk's utilisation is its
+ * duration over the makespan. Startup, discovery and injector costs aren't modeled.
+ *
+ * <p>The strategies read timings from {@value TestTimings#TIMINGS_FILE_PROPERTY}, which should name
+ * the same history as the timings given here.
+ */
+public final class ShardSimulator {
+  private final List<TestClassInfo> testClasses;
+  private final TestTimings timings;
+  private final Map<String, TestClassInfo> testClassesByName = new HashMap<>();
+  private final Map<String, List<TestClassInfo>> testClassesByMethodClassName = new HashMap<>();
+  private final Map<String, Double> classMillis = new HashMap<>();
+
+  /** {@code testClasses} are in the order the suite shards them. */
+  ShardSimulator(List<TestClassInfo> testClasses, TestTimings timings) {
+    this.testClasses = testClasses;
+    this.timings = timings;
+    for (TestClassInfo testClass : testClasses) {
+      testClassesByName.put(testClass.getName(), testClass);
+      classMillis.put(testClass.getName(),
+          timings.estimateClassMillis(testClass.getName(), testClass.getTestMethodNames()));
+      // Filters name a test's class by the class that declares it or the class that runs it.
+      Set<String> methodClassNames = new HashSet<>();
+      if (!testClass.getTestMethods().isEmpty()) {
+        methodClassNames.add(testClass.getName());
+      }
+      for (TestMethodInfo testMethod : testClass.getTestMethods()) {
+        methodClassNames.add(testMethod.getDeclaringClassName());
+      }
+      for (String methodClassName : methodClassNames) {
+        testClassesByMethodClassName
+            .computeIfAbsent(methodClassName, name -> new ArrayList<>())
+            .add(testClass);
+      }
+    }
+  }
+
+  /**
+   * Simulates a suite: {@code ShardSimulator [--timings FILE] [--chunks MIN-MAX[:STEP]]
+   * [--strategies A,B] SUITE}.
+   */
+  public static void main(String[] args) throws Exception {
+    String chunks = "2-20";
+    String strategies = null;
+    String suite = null;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--timings":
+          System.setProperty(TestTimings.TIMINGS_FILE_PROPERTY, args[++i]);
+          break;
+        case "--chunks":
+          chunks = args[++i];
+          break;
+        case "--strategies":
+          strategies = args[++i];
+          break;
+        default:
+          suite = args[i];
+          break;
+      }
+    }
+    if (suite == null) {
+      System.err.println("usage: ShardSimulator [--timings FILE] [--chunks MIN-MAX[:STEP]]"
+          + " [--strategies A,B] SUITE");
+      System.exit(2);
+    }
+
+    boolean runFunctionalTests = ChunkConfig.get().runFunctionalTests;
+    ShardingTestRunner runner = new ShardingTestRunner(
+        Class.forName(suite), new ChunkConfig(0, 0, runFunctionalTests));
+    List<TestClassInfo> testClasses = runner.getSortedTestClasses(
+        new ChunkConfig(1, 1, runFunctionalTests), null);
+    new ShardSimulator(testClasses, TestTimings.get())
+        .report(parseStrategies(strategies), parseChunkCounts(chunks), runFunctionalTests,
+            System.out);
+  }
+
+  static List<ShardingStrategies> parseStrategies(String strategies) {
+    if (strategies == null) {
+      return Arrays.asList(ShardingStrategies.values());
+    }
+    List<ShardingStrategies> result = new ArrayList<>();
+    for (String strategy : Splitter.on(',').trimResults().omitEmptyStrings().split(strategies)) {
+      result.add(ShardingStrategies.valueOf(strategy));
+    }
+    return result;
+  }
+
+  /** Parses {@code MIN-MAX[:STEP]}, or a single chunk count. */
+  static List<Integer> parseChunkCounts(String chunks) {
+    int step = 1;
+    int colon = chunks.indexOf(':');
+    if (colon >= 0) {
+      step = Integer.parseInt(chunks.substring(colon + 1));
+      chunks = chunks.substring(0, colon);
+    }
+    int dash = chunks.indexOf('-');
+    int min = Integer.parseInt(dash >= 0 ? chunks.substring(0, dash) : chunks);
+    int max = dash >= 0 ? Integer.parseInt(chunks.substring(dash + 1)) : min;
+    if (min < 1 || max < min || step < 1) {
+      throw new IllegalArgumentException("Invalid chunk counts: " + chunks);
+    }
+    List<Integer> result = new ArrayList<>();
+    for (int count = min; count <= max; count += step) {
+      result.add(count);
+    }
+    return result;
+  }
+
+  /** Prints a row per strategy and chunk count, each followed by its chunks' utilisation. */
+  void report(List<ShardingStrategies> strategies, List<Integer> chunkCounts,
+      boolean runFunctionalTests, PrintStream out) {
+    out.printf("%d test classes, %s of tests\n", testClasses.size(),
+        seconds(classMillis.values().stream().mapToDouble(Double::doubleValue).sum()));
+    out.printf("%-20s %6s %10s %10s %9s %11s\n",
+        "strategy", "chunks", "makespan", "mean", "imbalance", "utilisation");
+    for (ShardingStrategies strategy : strategies) {
+      for (int chunks : chunkCounts) {
+        Simulation simulation = simulate(strategy, chunks, runFunctionalTests);
+        out.printf("%-20s %6d %10s %10s %8.1f%% %10.1f%%\n", strategy, chunks,
+            seconds(simulation.getMakespanMillis()), seconds(simulation.getMeanMillis()),
+            100 * simulation.getImbalance(), 100 * simulation.getMeanUtilisation());
+        StringBuilder utilisation = new StringBuilder("  ");
+        for (int chunk = 0; chunk < chunks; chunk++) {
+          utilisation.append(String.format(" %3.0f", 100 * simulation.getUtilisation(chunk)));
+        }
+        out.println(utilisation);
+      }
+    }
+  }
+
+  private static String seconds(double millis) {
+    return String.format("%.1fs", millis / 1000);
+  }
+
+  /** Shards the test classes with {@code strategy} into {@code chunks} and estimates each chunk. */
+  Simulation simulate(ShardingStrategies strategy, int chunks, boolean runFunctionalTests) {
+    PrintStream discard = ShardPlan.discard();
+    strategy.setTestClasses(testClasses);
+    double[] chunkMillis = new double[chunks];
+    for (int runChunk = 1; runChunk <= chunks; runChunk++) {
+      ChunkConfig chunkConfig = new ChunkConfig(chunks, runChunk, runFunctionalTests);
+      chunkMillis[runChunk - 1] = estimateChunkMillis(
+          strategy.getClassesForChunk(chunkConfig, discard), strategy.getFilter(chunkConfig));
+    }
+    return new Simulation(chunkMillis);
+  }
+
+  /**
+   * Estimates a chunk that runs {@code classNames}, and of them only the methods of {@code filter}
+   * if it is a {@link TestMethodFilter}. Visits only the chunk's classes and its filter's methods,
+   * so that simulating every chunk of a method strategy is linear in the number of methods.
+   */
+  double estimateChunkMillis(List<String> classNames, Filter filter) {
+    Map<String, Set<String>> methodNamesByClassName = filter instanceof TestMethodFilter
+        ? ((TestMethodFilter) filter).getMethodNamesByClassName()
+        : null;
+    if (methodNamesByClassName == null || methodNamesByClassName.isEmpty()) {
+      double millis = 0;
+      for (String className : classNames) {
+        millis += classMillis.getOrDefault(className, timings.getMedianMethodMillis());
+      }
+      return millis;
+    }
+
+    Set<String> chunkClassNames = new HashSet<>(classNames);
+    Map<String, Integer> selectedMethods = new HashMap<>();
+    Map<String, Double> selectedMillis = new HashMap<>();
+    for (Map.Entry<String, Set<String>> entry : methodNamesByClassName.entrySet()) {
+      for (TestClassInfo testClass : testClassesByMethodClassName.getOrDefault(
+          entry.getKey(), Collections.emptyList())) {
+        if (!chunkClassNames.contains(testClass.getName())) {
+          continue;
+        }
+        for (String methodName : entry.getValue()) {
+          Double methodMillis = timings.getMethodMillis(testClass.getName(), methodName);
+          selectedMethods.merge(testClass.getName(), 1, Integer::sum);
+          selectedMillis.merge(testClass.getName(),
+              methodMillis != null ? methodMillis : timings.getMedianMethodMillis(), Double::sum);
+        }
+      }
+    }
+
+    double millis = 0;
+    for (String className : classNames) {
+      TestClassInfo testClass = testClassesByName.get(className);
+      if (testClass == null || testClass.getTestMethods().isEmpty()) {
+        millis += classMillis.getOrDefault(className, timings.getMedianMethodMillis());
+        continue;
+      }
+      int selected = selectedMethods.getOrDefault(className, 0);
+      Double recorded = timings.getClassMillis(className);
+      millis += recorded != null
+          ? recorded * selected / testClass.getTestMethods().size()
+          : selectedMillis.getOrDefault(className, 0.0);
+    }
+    return millis;
+  }
+
+  /** The estimated duration of each chunk of a simulated shard. */
+  static final class Simulation {
+    private final double[] chunkMillis;
+    private final double makespanMillis;
+    private final double meanMillis;
+
+    Simulation(double[] chunkMillis) {
+      this.chunkMillis = chunkMillis;
+      this.makespanMillis = Arrays.stream(chunkMillis).max().orElse(0);
+      this.meanMillis = Arrays.stream(chunkMillis).average().orElse(0);
+    }
+
+    double getChunkMillis(int chunk) {
+      return chunkMillis[chunk];
+    }
+
+    /** Returns the duration of the slowest chunk, which is how long the shard takes. */
+    double getMakespanMillis() {
+      return makespanMillis;
+    }
+
+    double getMeanMillis() {
+      return meanMillis;
+    }
+
+    /** Returns how much longer the slowest chunk takes than the mean, 0 when perfectly even. */
+    double getImbalance() {
+      return meanMillis > 0 ? makespanMillis / meanMillis - 1 : 0;
+    }
+
+    /** Returns the fraction of the makespan that {@code chunk} is busy. */
+    double getUtilisation(int chunk) {
+      return makespanMillis > 0 ? chunkMillis[chunk] / makespanMillis : 1;
+    }
+
+    double getMeanUtilisation() {
+      return makespanMillis > 0 ? meanMillis / makespanMillis : 1;
+    }
+  }
+}
@@ -0,0 +1,302 @@
+package com.squareup.testing;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Where a chunk of a sharded suite spends its time: each phase of setting up the chunk, and each
+ * test class it runs. When the chunk finishes, {@link ShardingTestRunner} appends it to the JSON
+ * lines file named by {@value #TELEMETRY_FILE_PROPERTY}, and {@value #JMX_PROPERTY} exposes it as
+ * a {@link ShardTelemetryMXBean} while it runs.
+ *
+ * <p>Each chunk appends a {@code "class"} line per test class it ran and then a {@code "shard"}
+ * line with its phases and totals, under a file lock, so the file may be shared by any number of
+ * JVMs. Durations are in milliseconds. A test class's static initialization usually happens when
+ * its first test runs, so it counts towards the class rather than towards loading.
+ *
+ * <p>With telemetry on, the strategies' lists of the classes and methods of a chunk aren't
+ * printed, which for method sharding can be tens of thousands of lines per chunk.
+ */
+final class ShardTelemetry implements ShardTelemetryMXBean {
+  /** System property naming the JSON lines file that chunks append their telemetry to. */
+  static final String TELEMETRY_FILE_PROPERTY = "square.test.telemetryFile";
+
+  /** System property that registers each chunk's telemetry as an MXBean if set to true. */
+  static final String JMX_PROPERTY = "square.test.telemetryJmx";
+
+  /** The parts of setting up a chunk, in the order they happen. */
+  enum Phase {
+    /** Reading the class files of the suite's package. */
+    DISCOVERY("discovery"),
+    /** Selecting the test classes affected by a {@link ChangeSelection}. */
+    CHANGE_SELECTION("changeSelection"),
+    /** Assigning classes to chunks, reading a {@link ShardPlan}, or joining a {@link WorkQueue}. */
+    STRATEGY("strategy"),
+    /** Loading the chunk's test classes, without initializing them. */
+    CLASS_LOADING("classLoading"),
+    /** Building a runner for each test class, which validates it. */
+    RUNNER_BUILDING("runnerBuilding"),
+    /** Filtering the runners down to the chunk's tests. */
+    FILTERING("filtering");
+
+    final String jsonName;
+
+    Phase(String jsonName) {
+      this.jsonName = jsonName;
+    }
+  }
+
+  private final Path path;
+  private final String suite;
+  private final ChunkConfig chunkConfig;
+  private final String strategy;
+  private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+  private final Map<ShardedTestType, Integer> testClassCounts =
+      new EnumMap<>(ShardedTestType.class);
+  private final List<String> classLines = new ArrayList<>();
+  private int chunkClasses;
+  private int finishedClasses;
+  private long runStartNanos;
+  private long runNanos = -1;
+
+  ShardTelemetry(Path path, String suite, ChunkConfig chunkConfig, String strategy) {
+    this.path = path;
+    this.suite = suite;
+    this.chunkConfig = chunkConfig;
+    this.strategy = strategy;
+  }
+
+  /** Returns true if telemetry is configured by system properties. */
+  static boolean isEnabled() {
+    return System.getProperty(TELEMETRY_FILE_PROPERTY) != null || Boolean.getBoolean(JMX_PROPERTY);
+  }
+
+  /**
+   * Returns telemetry for a chunk of {@code suite} configured by system properties, or null if it
+   * is off.
+   */
+  static ShardTelemetry get(String suite, ChunkConfig chunkConfig, String strategy) {
+    if (!isEnabled()) {
+      return null;
+    }
+    String telemetryFile = System.getProperty(TELEMETRY_FILE_PROPERTY);
+    ShardTelemetry telemetry = new ShardTelemetry(
+        telemetryFile != null ? Paths.get(telemetryFile) : null, suite, chunkConfig, strategy);
+    if (Boolean.getBoolean(JMX_PROPERTY)) {
+      telemetry.register();
+    }
+    return telemetry;
+  }
+
+  private void register() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(
+          "com.squareup.testing:type=ShardTelemetry,suite=" + ObjectName.quote(suite));
+      // A JVM that runs the suite again, such as a test of the runner, replaces the last run.
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+    } catch (JMException e) {
+      throw new RuntimeException("Unable to register shard telemetry for " + suite, e);
+    }
+  }
+
+  /** Adds the time since {@code startNanos} to {@code phase}, and returns the current time. */
+  synchronized long phase(Phase phase, long startNanos) {
+    long now = System.nanoTime();
+    phaseNanos.merge(phase, now - startNanos, Long::sum);
+    return now;
+  }
+
+  /** Adds {@code nanos} to {@code phase}. */
+  synchronized void addPhaseNanos(Phase phase, long nanos) {
+    phaseNanos.merge(phase, nanos, Long::sum);
+  }
+
+  synchronized void setTestClassCounts(int runTestOnShard, int slow, int normal) {
+    testClassCounts.put(ShardedTestType.RUN_TEST_ON_SHARD, runTestOnShard);
+    testClassCounts.put(ShardedTestType.SLOW_TEST, slow);
+    testClassCounts.put(ShardedTestType.NORMAL_TEST, normal);
+  }
+
+  synchronized void setChunkClasses(int chunkClasses) {
+    this.chunkClasses = chunkClasses;
+  }
+
+  synchronized void runStarted() {
+    runStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Records a test class that started at {@code startNanos} and just finished, or was reported
+   * from the {@link ResultCache}.
+   */
+  synchronized void classFinished(String className, int testCount, boolean cached,
+      long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    Json line = new Json()
+        .put("event", "class")
+        .put("suite", suite)
+        .put("chunk", chunkConfig.runChunk)
+        .put("class", className)
+        .put("tests", testCount)
+        .put("millis", millis(nanos));
+    if (cached) {
+      line.put("cached", true);
+    }
+    classLines.add(line.toString());
+    finishedClasses++;
+  }
+
+  /** Appends the chunk's telemetry to the telemetry file, if there is one. */
+  void runFinished() {
+    List<String> lines;
+    synchronized (this) {
+      runNanos = System.nanoTime() - runStartNanos;
+      lines = new ArrayList<>(classLines);
+      lines.add(toShardLine());
+      classLines.clear();
+    }
+    if (path != null) {
+      append(path, lines);
+    }
+  }
+
+  private String toShardLine() {
+    Json phases = new Json();
+    for (Phase phase : Phase.values()) {
+      phases.put(phase.jsonName, millis(phaseNanos.getOrDefault(phase, 0L)));
+    }
+    Json counts = new Json();
+    testClassCounts.forEach((type, count) -> counts.put(type.name(), count));
+    return new Json()
+        .put("event", "shard")
+        .put("suite", suite)
+        .put("chunk", chunkConfig.runChunk)
+        .put("chunks", chunkConfig.chunks)
+        .put("strategy", strategy)
+        .put("timestamp", System.currentTimeMillis())
+        .put("phaseMillis", phases)
+        .put("testClasses", counts)
+        .put("chunkClasses", chunkClasses)
+        .put("finishedClasses", finishedClasses)
+        .put("runMillis", millis(runNanos))
+        .toString();
+  }
+
+  private static void append(Path path, List<String> lines) {
+    StringBuilder text = new StringBuilder();
+    lines.forEach(line -> text.append(line).append('\n'));
+    try (FileChannel channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+         FileLock ignored = channel.lock()) {
+      ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to append shard telemetry to " + path, e);
+    }
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  @Override public String getSuite() {
+    return suite;
+  }
+
+  @Override public int getChunk() {
+    return chunkConfig.runChunk;
+  }
+
+  @Override public int getChunks() {
+    return chunkConfig.chunks;
+  }
+
+  @Override public synchronized Map<String, Long> getPhaseMillis() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    phaseNanos.forEach((phase, nanos) -> result.put(phase.jsonName, millis(nanos)));
+    return result;
+  }
+
+  @Override public synchronized Map<String, Integer> getTestClassCounts() {
+    Map<String, Integer> result = new LinkedHashMap<>();
+    testClassCounts.forEach((type, count) -> result.put(type.name(), count));
+    return result;
+  }
+
+  @Override public synchronized int getChunkClasses() {
+    return chunkClasses;
+  }
+
+  @Override public synchronized int getFinishedClasses() {
+    return finishedClasses;
+  }
+
+  @Override public synchronized long getRunMillis() {
+    if (runStartNanos == 0) {
+      return 0;
+    }
+    return millis(runNanos >= 0 ? runNanos : System.nanoTime() - runStartNanos);
+  }
+
+  /** Writes a JSON object with fields in the order they're put. */
+  static final class Json {
+    private final StringBuilder json = new StringBuilder("{");
+
+    Json put(String name, Object value) {
+      if (json.length() > 1) {
+        json.append(',');
+      }
+      appendString(name);
+      json.append(':');
+      if (value instanceof String) {
+        appendString((String) value);
+      } else {
+        json.append(value);
+      }
+      return this;
+    }
+
+    private void appendString(String value) {
+      json.append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == '"' || c == '\\') {
+          json.append('\\').append(c);
+        } else if (c < 0x20) {
+          json.append(String.format("\\u%04x", (int) c));
+        } else {
+          json.append(c);
+        }
+      }
+      json.append('"');
+    }
+
+    @Override public String toString() {
+      return json + "}";
+    }
+  }
+}
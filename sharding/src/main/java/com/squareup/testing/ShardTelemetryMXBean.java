@@ -0,0 +1,31 @@
+package com.squareup.testing;
+
+import java.util.Map;
+
+/**
+ * What a chunk of a sharded suite has spent its time on so far, registered with the platform
+ * MBean server as {@code com.squareup.testing:type=ShardTelemetry,suite=<suite>} when {@value
+ * ShardTelemetry#JMX_PROPERTY} is set.
+ */
+public interface ShardTelemetryMXBean {
+  String getSuite();
+
+  int getChunk();
+
+  int getChunks();
+
+  /** Milliseconds spent in each phase of setting up the chunk, by phase. */
+  Map<String, Long> getPhaseMillis();
+
+  /** The suite's test classes by {@link ShardedTestType}. */
+  Map<String, Integer> getTestClassCounts();
+
+  /** The number of test classes this chunk runs. */
+  int getChunkClasses();
+
+  /** The number of test classes that have finished running. */
+  int getFinishedClasses();
+
+  /** Milliseconds since the chunk started running, or that it ran for once it finished. */
+  long getRunMillis();
+}
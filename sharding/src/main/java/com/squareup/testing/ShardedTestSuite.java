@@ -29,4 +29,14 @@ public @interface ShardedTestSuite {
 
   /** Ordering for tests, the default is order by name */
   TestOrderings testOrdering() default TestOrderings.NAME;
+
+  /**
+   * Number of test classes to run at once, the default runs them one after another. Values below
+   * one use one thread per available processor. See {@link RunInIsolation} for classes that must
+   * run alone.
+   */
+  int parallelism() default 1;
+
+  /** Runs test classes on virtual threads when {@link #parallelism} allows it and Java 21+ is used. */
+  boolean virtualThreads() default false;
 }
@@ -10,14 +10,15 @@ public enum ShardedTestType {
   SLOW_TEST,
   NORMAL_TEST;
 
-  public static ListMultimap<ShardedTestType, Class<?>> getTestClassesByShardedTestType(List<Class<?>> testClasses) {
+  public static ListMultimap<ShardedTestType, TestClassInfo> getTestClassesByShardedTestType(
+      List<TestClassInfo> testClasses) {
     return testClasses.stream()
-        .collect(GuavaCollectors.groupingIntoLists(clazz1 -> {
-          if (clazz1.getAnnotation(RunTestOnShard.class) != null) {
+        .collect(GuavaCollectors.groupingIntoLists(testClass -> {
+          if (testClass.getRunTestOnShard() != null) {
             return ShardedTestType.RUN_TEST_ON_SHARD;
           }
 
-          return new SlowTestPredicate().test(clazz1)
+          return testClass.isSlow()
               ? ShardedTestType.SLOW_TEST
               : ShardedTestType.NORMAL_TEST;
         }));
@@ -2,8 +2,12 @@ package com.squareup.testing;
 
 import com.squareup.testing.strategies.ClassEvenMethodsShardingStrategy;
 import com.squareup.testing.strategies.ClassShardingStrategy;
+import com.squareup.testing.strategies.HybridShardingStrategy;
+import com.squareup.testing.strategies.InjectorAffinityShardingStrategy;
 import com.squareup.testing.strategies.MethodShardingStrategy;
 import com.squareup.testing.strategies.MethodSlowTestsShardingStrategy;
+import com.squareup.testing.strategies.ResourceBalancedShardingStrategy;
+import com.squareup.testing.strategies.TimingBalancedShardingStrategy;
 import java.io.PrintStream;
 import java.util.List;
 import org.junit.runner.manipulation.Filter;
@@ -43,6 +47,45 @@ public enum ShardingStrategies implements ShardingStrategy {
     @Override protected ShardingStrategy buildShardingStrategy() {
       return new MethodSlowTestsShardingStrategy();
     }
+  },
+
+  /**
+   * Shard by class and balance the recorded duration of each chunk, see {@link TestTimings}
+   */
+  TIMING_BALANCED {
+    @Override protected ShardingStrategy buildShardingStrategy() {
+      return new TimingBalancedShardingStrategy();
+    }
+  },
+
+  /**
+   * Shard by class, keeping classes that share a Guice injector on one chunk, see {@link
+   * TestClassInfo#getInjectorKey}
+   */
+  INJECTOR_AFFINITY {
+    @Override protected ShardingStrategy buildShardingStrategy() {
+      return new InjectorAffinityShardingStrategy();
+    }
+  },
+
+  /**
+   * Shard by class and balance the recorded duration of each chunk, splitting a class by method
+   * only if it takes longer than a chunk's share, see {@link HybridShardingStrategy}
+   */
+  HYBRID {
+    @Override protected ShardingStrategy buildShardingStrategy() {
+      return new HybridShardingStrategy();
+    }
+  },
+
+  /**
+   * Shard by class, spreading the resources declared with {@link TestResources} evenly across
+   * chunks along with their recorded duration
+   */
+  RESOURCE_BALANCED {
+    @Override protected ShardingStrategy buildShardingStrategy() {
+      return new ResourceBalancedShardingStrategy();
+    }
   };
 
   private ShardingStrategy shardingStrategy;
@@ -52,12 +95,12 @@ public enum ShardingStrategies implements ShardingStrategy {
   }
 
   @Override
-  public void setTestClasses(List<Class<?>> testClasses) {
+  public void setTestClasses(List<TestClassInfo> testClasses) {
     shardingStrategy.setTestClasses(testClasses);
   }
 
   @Override
-  public List<Class<?>> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+  public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
     return shardingStrategy.getClassesForChunk(chunkConfig, out);
   }
 
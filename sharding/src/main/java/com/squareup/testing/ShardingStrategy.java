@@ -5,9 +5,10 @@ import java.util.List;
 import org.junit.runner.manipulation.Filter;
 
 public interface ShardingStrategy {
-  void setTestClasses(List<Class<?>> testClasses);
+  void setTestClasses(List<TestClassInfo> testClasses);
 
-  List<Class<?>> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out);
+  /** Returns the names of the classes to run in the chunk. */
+  List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out);
 
   Filter getFilter(ChunkConfig chunkConfig);
 }
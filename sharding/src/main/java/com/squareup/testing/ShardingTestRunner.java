@@ -4,13 +4,26 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.squareup.common.Strings2;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.junit.internal.builders.AllDefaultPossibilitiesBuilder;
 import org.junit.runner.Description;
 import org.junit.runner.Runner;
@@ -20,11 +33,9 @@ import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.ParentRunner;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.RunnerBuilder;
-import org.reflections.Reflections;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static java.lang.reflect.Modifier.isAbstract;
-import static java.lang.reflect.Modifier.isInterface;
 import static java.util.stream.Collectors.toList;
 
 /**
@@ -46,11 +57,24 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
 
   final ChunkConfig chunkConfig;
   final String shardedPackagePrefix;
+  /** {@link LazyRunner}s, which only hold a built runner while their class runs. */
   private final List<Runner> runners;
   private final Class<? extends Annotation> onlyIfAnnotated;
   private final Class<? extends Annotation> unlessAnnotated;
   private final ShardingStrategies shardingStrategy;
   private final TestOrderings testOrdering;
+  private final Map<Runner, String> runnerClassNames = new IdentityHashMap<>();
+  /** Held shared by classes running in parallel, and exclusively by {@link RunInIsolation} ones. */
+  private final ReadWriteLock isolationLock;
+  private WorkQueue workQueue;
+  /** The classes this chunk may claim from the {@link #workQueue}, which aren't loaded up front. */
+  private List<TestClassInfo> queuedTestClasses = ImmutableList.of();
+  private ShardPlan shardPlan;
+  private TestTimingRecorder timingRecorder;
+  private ClassDependencyGraph classDependencyGraph;
+  private final ResultCache resultCache;
+  private final ShardTelemetry telemetry;
+  private final ClassPreloader preloader;
 
   public ShardingTestRunner(Class<?> testClass) throws InitializationError {
     this(testClass, ChunkConfig.get());
@@ -61,20 +85,7 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
 
     ShardedTestSuite annotation = testClass.getAnnotation(ShardedTestSuite.class);
     checkNotNull(annotation, "Expected @ShardedTestSuite annotation on %s", testClass);
-    String shardRange = annotation.shardRange();
-    if (!Strings2.isBlank(shardRange)) {
-      int fromShard = Integer.parseInt(shardRange.substring(0, shardRange.indexOf('-')));
-      int toShard = Integer.parseInt(shardRange.substring(shardRange.indexOf('-') + 1));
-      if (chunkConfig.runChunk < fromShard || chunkConfig.runChunk > toShard) {
-        this.chunkConfig = new ChunkConfig(0, 0, false);
-      } else {
-        this.chunkConfig =
-            new ChunkConfig(toShard - fromShard + 1, chunkConfig.runChunk - fromShard + 1,
-                chunkConfig.runFunctionalTests);
-      }
-    } else {
-      this.chunkConfig = chunkConfig;
-    }
+    this.chunkConfig = getSuiteChunkConfig(annotation, chunkConfig);
 
     shardedPackagePrefix = annotation.packagePrefix();
     onlyIfAnnotated = annotation.onlyIfAnnotated() != Annotation.class
@@ -90,6 +101,18 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
 
     shardingStrategy = annotation.shardingStrategy();
     testOrdering = annotation.testOrdering();
+    telemetry = this.chunkConfig.chunks > 0
+        ? ShardTelemetry.get(testClass.getName(), this.chunkConfig, shardingStrategy.name())
+        : null;
+
+    int parallelism = ParallelScheduler.getParallelism(annotation);
+    if (parallelism > 1) {
+      setScheduler(
+          new ParallelScheduler(parallelism, ParallelScheduler.useVirtualThreads(annotation)));
+      isolationLock = new ReentrantReadWriteLock(true);
+    } else {
+      isolationLock = null;
+    }
 
     Filter onlyIfAnnotatedFilter = new Filter() {
       @Override public boolean shouldRun(Description description) {
@@ -120,23 +143,91 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
     };
 
     RunnerBuilder builder = new AllDefaultPossibilitiesBuilder(true);
-    this.runners = builder.runners(null, getTestClasses(shardedPackagePrefix, this.chunkConfig));
+    Class<?>[] testClasses = getTestClasses(testClass.getName(), shardedPackagePrefix, this.chunkConfig);
+    resultCache = ResultCache.isEnabled() ? ResultCache.get(getClassDependencyGraph()) : null;
+
+    long filteringStart = System.nanoTime();
+    Filter shardingStrategyFilter;
+    if (workQueue != null) {
+      shardingStrategyFilter = null;
+    } else if (shardPlan != null) {
+      shardingStrategyFilter = shardPlan.getFilter(this.chunkConfig.runChunk);
+    } else {
+      shardingStrategyFilter = shardingStrategy.getFilter(this.chunkConfig);
+    }
+    // Building and filtering are interleaved, so each phase accumulates its own part of the loop.
+    long buildingNanos = 0;
+    long filteringNanos = System.nanoTime() - filteringStart;
+    // Each runner is built to describe and filter its class, and released before the next is
+    // built, so that only one is held at a time. It is built again when its class runs.
+    this.runners = new ArrayList<>();
+    for (Class<?> clazz : testClasses) {
+      long buildStart = System.nanoTime();
+      LazyRunner runner = LazyRunner.build(builder, clazz);
+      filteringStart = System.nanoTime();
+      buildingNanos += filteringStart - buildStart;
+      if (runner == null) {
+        continue;
+      }
+      runners.add(runner);
+      try {
+        filter(runner, onlyIfAnnotatedFilter, unlessAnnotatedFilter, shardingStrategyFilter);
+      } finally {
+        runner.release();
+      }
+      filteringNanos += System.nanoTime() - filteringStart;
+    }
+    filteringStart = System.nanoTime();
+    // Queued classes are only loaded and built once this chunk claims them, by class name.
+    for (TestClassInfo queued : queuedTestClasses) {
+      LazyRunner runner = LazyRunner.unbuilt(
+          builder, queued, ImmutableList.of(onlyIfAnnotatedFilter, unlessAnnotatedFilter));
+      runners.add(runner);
+      runnerClassNames.put(runner, queued.getName());
+    }
+    // Queued classes mostly run on other chunks.
+    preloader = workQueue == null ? ClassPreloader.get(runners) : null;
+    filteringNanos += System.nanoTime() - filteringStart;
+    if (telemetry != null) {
+      telemetry.addPhaseNanos(ShardTelemetry.Phase.RUNNER_BUILDING, buildingNanos);
+      telemetry.addPhaseNanos(ShardTelemetry.Phase.FILTERING, filteringNanos);
+      telemetry.setChunkClasses(runners.size());
+    }
+  }
+
+  /**
+   * Returns the chunk config of a suite, whose {@code shardRange} makes it see a range of the
+   * build's chunks as all of its chunks.
+   */
+  private static ChunkConfig getSuiteChunkConfig(ShardedTestSuite annotation,
+      ChunkConfig chunkConfig) {
+    String shardRange = annotation.shardRange();
+    if (Strings2.isBlank(shardRange)) {
+      return chunkConfig;
+    }
+    int fromShard = Integer.parseInt(shardRange.substring(0, shardRange.indexOf('-')));
+    int toShard = Integer.parseInt(shardRange.substring(shardRange.indexOf('-') + 1));
+    if (chunkConfig.runChunk < fromShard || chunkConfig.runChunk > toShard) {
+      return new ChunkConfig(0, 0, false);
+    }
+    return new ChunkConfig(toShard - fromShard + 1, chunkConfig.runChunk - fromShard + 1,
+        chunkConfig.runFunctionalTests);
+  }
 
-    Filter shardingStrategyFilter = shardingStrategy.getFilter(this.chunkConfig);
-    for (Runner runner : this.runners) {
+  private static void filter(Runner runner, Filter onlyIfAnnotatedFilter,
+      Filter unlessAnnotatedFilter, Filter shardingStrategyFilter) {
+    try {
+      onlyIfAnnotatedFilter.apply(runner);
+      unlessAnnotatedFilter.apply(runner);
+    } catch (NoTestsRemainException e) {
+      // This should be ok since it happens if nothing is whitelisted or everything is blacklisted
+      return;
+    }
+    if (shardingStrategyFilter != null) {
       try {
-        onlyIfAnnotatedFilter.apply(runner);
-        unlessAnnotatedFilter.apply(runner);
+        shardingStrategyFilter.apply(runner);
       } catch (NoTestsRemainException e) {
-        // This should be ok since it happens if nothing is whitelisted or everything is blacklisted
-        continue;
-      }
-      if (shardingStrategyFilter != null) {
-        try {
-          shardingStrategyFilter.apply(runner);
-        } catch (NoTestsRemainException e) {
-          throw new RuntimeException("Test shard did not find tests for " + runner.getDescription().toString(), e);
-        }
+        throw new RuntimeException("Test shard did not find tests for " + runner.getDescription().toString(), e);
       }
     }
   }
@@ -149,30 +240,167 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
     return child.getDescription();
   }
 
+  @Override public void run(RunNotifier notifier) {
+    if (preloader == null) {
+      runWithTelemetry(notifier);
+      return;
+    }
+    preloader.advance(null);
+    try {
+      runWithTelemetry(notifier);
+    } finally {
+      preloader.shutdown();
+    }
+  }
+
+  private void runWithTelemetry(RunNotifier notifier) {
+    if (telemetry == null) {
+      runCachingResults(notifier);
+      return;
+    }
+    telemetry.runStarted();
+    try {
+      runCachingResults(notifier);
+    } finally {
+      telemetry.runFinished();
+    }
+  }
+
+  private void runCachingResults(RunNotifier notifier) {
+    if (resultCache == null) {
+      runRecordingTimings(notifier);
+      return;
+    }
+    notifier.addListener(resultCache);
+    try {
+      runRecordingTimings(notifier);
+    } finally {
+      notifier.removeListener(resultCache);
+      resultCache.evict(out);
+    }
+  }
+
+  private void runRecordingTimings(RunNotifier notifier) {
+    timingRecorder = TestTimingRecorder.get();
+    if (timingRecorder == null) {
+      super.run(notifier);
+      return;
+    }
+    notifier.addListener(timingRecorder);
+    try {
+      super.run(notifier);
+    } finally {
+      notifier.removeListener(timingRecorder);
+      timingRecorder.flush();
+    }
+  }
+
   @Override protected void runChild(Runner child, RunNotifier notifier) {
-    child.run(notifier);
+    if (workQueue != null && !workQueue.claim(runnerClassNames.get(child))) {
+      return;
+    }
+    if (preloader != null) {
+      preloader.advance(child);
+    }
+    long start = System.nanoTime();
+    if (resultCache != null && resultCache.replay(child, notifier, out)) {
+      if (telemetry != null) {
+        telemetry.classFinished(describeChild(child).getClassName(),
+            describeChild(child).testCount(), true, start);
+      }
+      return;
+    }
+    if (isolationLock == null) {
+      runChildTimed(child, notifier);
+    } else {
+      Lock lock = isIsolated(child) ? isolationLock.writeLock() : isolationLock.readLock();
+      lock.lock();
+      try {
+        runChildTimed(child, notifier);
+      } finally {
+        lock.unlock();
+      }
+    }
+    if (resultCache != null) {
+      resultCache.store(child);
+    }
+    if (telemetry != null) {
+      telemetry.classFinished(describeChild(child).getClassName(),
+          describeChild(child).testCount(), false, start);
+    }
+  }
+
+  private void runChildTimed(Runner child, RunNotifier notifier) {
+    if (timingRecorder == null) {
+      child.run(notifier);
+      return;
+    }
+    timingRecorder.testClassStarted(child.getDescription());
+    try {
+      child.run(notifier);
+    } finally {
+      timingRecorder.testClassFinished(child.getDescription());
+    }
+  }
+
+  /**
+   * Adds the time since {@code startNanos} to {@code phase} of the {@link ShardTelemetry}, if it's
+   * on, and returns the current time.
+   */
+  private long phase(ShardTelemetry.Phase phase, long startNanos) {
+    return telemetry != null ? telemetry.phase(phase, startNanos) : System.nanoTime();
+  }
+
+  /** Returns the dependency graph of the class path, which takes a while to read. */
+  private ClassDependencyGraph getClassDependencyGraph() {
+    if (classDependencyGraph == null) {
+      classDependencyGraph = ClassDependencyGraph.fromClassPath();
+    }
+    return classDependencyGraph;
+  }
+
+  private static boolean isIsolated(Runner child) {
+    Description description = child.getDescription();
+    return description.getAnnotation(RunInIsolation.class) != null
+        || (description.getTestClass() != null
+            && description.getTestClass().isAnnotationPresent(RunInIsolation.class));
   }
 
   /**
    * Search for all classes declaring either JUnit3 or JUnit4 style tests in the configured
    * package.
    *
+   * @param suiteName Name of the suite, which names its work queue
    * @param packagePrefix Package name to search
    * @param chunkConfig the chunking config to use
    * @return Array of classes found in the package for testing.
    */
-  private Class<?>[] getTestClasses(String packagePrefix, ChunkConfig chunkConfig) {
+  private Class<?>[] getTestClasses(String suiteName, String packagePrefix, ChunkConfig chunkConfig) {
     List<Class<?>> chunkTestClasses = ImmutableList.of();
 
     if (chunkConfig.chunks > 0) {
-      List<Class<?>> allTestClasses = getAllTestClasses(packagePrefix, chunkConfig);
+      long start = System.nanoTime();
+      ChangeSelection changeSelection = ChangeSelection.get();
+      if (ShardPlan.isEnabled() && !WorkQueue.isEnabled()) {
+        shardPlan = ShardPlan.get(
+            suiteName, getPlanFingerprint(suiteName, chunkConfig, changeSelection), out);
+        if (shardPlan != null) {
+          List<String> chunkClassNames = getPlannedTestClasses(chunkConfig);
+          start = phase(ShardTelemetry.Phase.STRATEGY, start);
+          chunkTestClasses = load(chunkClassNames);
+          phase(ShardTelemetry.Phase.CLASS_LOADING, start);
+          return chunkTestClasses.toArray(new Class<?>[0]);
+        }
+      }
+
+      List<TestClassInfo> allTestClasses = getAllTestClasses(packagePrefix, chunkConfig);
       if (!allTestClasses.isEmpty()) {
         allTestClasses.sort(testOrdering);
 
-        ListMultimap<ShardedTestType, Class<?>> testClassesByShardedTestType =
+        ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType =
             ShardedTestType.getTestClassesByShardedTestType(allTestClasses);
 
-        List<Class<?>> runTestOnShardTestClasses =
+        List<TestClassInfo> runTestOnShardTestClasses =
             testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
         int slowTestsCount = testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST).size();
         int normalTestsCount = testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST).size();
@@ -181,9 +409,31 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
             testClassWithAnnotation -> checkTargetedTestClass(testClassWithAnnotation, chunkConfig));
 
         printTestPreamble(chunkConfig, slowTestsCount, normalTestsCount, runTestOnShardTestClasses.size());
-        shardingStrategy.setTestClasses(allTestClasses);
-        chunkTestClasses = shardingStrategy.getClassesForChunk(chunkConfig, out);
-        chunkTestClasses.sort(testOrdering);
+        if (telemetry != null) {
+          telemetry.setTestClassCounts(
+              runTestOnShardTestClasses.size(), slowTestsCount, normalTestsCount);
+        }
+        start = phase(ShardTelemetry.Phase.DISCOVERY, start);
+        if (changeSelection != null) {
+          allTestClasses = changeSelection.select(allTestClasses, getClassDependencyGraph(), out);
+          start = phase(ShardTelemetry.Phase.CHANGE_SELECTION, start);
+        }
+        if (allTestClasses.isEmpty()) {
+          out.println("*** No test classes affected by the change ***");
+        } else {
+          List<String> chunkClassNames;
+          if (WorkQueue.isEnabled()) {
+            chunkClassNames = getQueuedTestClasses(suiteName, allTestClasses, chunkConfig);
+          } else {
+            shardingStrategy.setTestClasses(allTestClasses);
+            // The telemetry has what the strategies would list, without flooding the log.
+            chunkClassNames = sort(shardingStrategy.getClassesForChunk(
+                chunkConfig, telemetry != null ? ShardPlan.discard() : out), allTestClasses, out);
+          }
+          start = phase(ShardTelemetry.Phase.STRATEGY, start);
+          chunkTestClasses = load(chunkClassNames);
+          phase(ShardTelemetry.Phase.CLASS_LOADING, start);
+        }
       } else {
         out.println("*** No test classes found ***");
       }
@@ -193,6 +443,158 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
     return chunkTestClasses.toArray(new Class<?>[0]);
   }
 
+  /**
+   * Plans every chunk of this suite for {@link ShardPlan}, for a build of {@code
+   * chunkConfig.chunks} chunks. Test classes aren't loaded.
+   */
+  ShardPlan plan(String suiteName, ChunkConfig chunkConfig) {
+    return plan(suiteName, chunkConfig, shardingStrategy);
+  }
+
+  /** Plans every chunk of this suite with {@code shardingStrategy} rather than the suite's. */
+  ShardPlan plan(String suiteName, ChunkConfig chunkConfig, ShardingStrategy shardingStrategy) {
+    ShardedTestSuite annotation = getTestClass().getAnnotation(ShardedTestSuite.class);
+    ChunkConfig suiteChunkConfig = null;
+    for (int runChunk = 1; runChunk <= chunkConfig.chunks && suiteChunkConfig == null; runChunk++) {
+      ChunkConfig config = getSuiteChunkConfig(annotation,
+          new ChunkConfig(chunkConfig.chunks, runChunk, chunkConfig.runFunctionalTests));
+      suiteChunkConfig = config.chunks > 0 ? config : null;
+    }
+    checkArgument(suiteChunkConfig != null, "%s doesn't run on any of %s chunks", suiteName,
+        chunkConfig.chunks);
+
+    ChangeSelection changeSelection = ChangeSelection.get();
+    ShardPlan plan =
+        new ShardPlan(getPlanFingerprint(suiteName, suiteChunkConfig, changeSelection));
+    List<TestClassInfo> allTestClasses = getSortedTestClasses(suiteChunkConfig, changeSelection);
+    // Set once, so that strategies assign every chunk at once rather than once per chunk.
+    shardingStrategy.setTestClasses(allTestClasses);
+    for (int runChunk = 1; runChunk <= suiteChunkConfig.chunks; runChunk++) {
+      ChunkConfig config =
+          new ChunkConfig(suiteChunkConfig.chunks, runChunk, suiteChunkConfig.runFunctionalTests);
+      allTestClasses.stream()
+          .filter(testClass -> testClass.getRunTestOnShard() != null)
+          .forEach(testClass -> checkTargetedTestClass(testClass, config));
+      List<String> chunkClassNames =
+          shardingStrategy.getClassesForChunk(config, ShardPlan.discard());
+      plan.addChunk(runChunk, sort(chunkClassNames, allTestClasses, ShardPlan.discard()),
+          shardingStrategy.getFilter(config));
+    }
+    return plan;
+  }
+
+  /**
+   * Returns the suite's test classes in {@link #testOrdering}, as its sharding strategy sees them,
+   * narrowed to those affected by {@code changeSelection} if it isn't null. There are none if
+   * {@code chunkConfig} disables partitioning.
+   */
+  List<TestClassInfo> getSortedTestClasses(ChunkConfig chunkConfig,
+      ChangeSelection changeSelection) {
+    List<TestClassInfo> allTestClasses =
+        new ArrayList<>(getAllTestClasses(shardedPackagePrefix, chunkConfig));
+    allTestClasses.sort(testOrdering);
+    if (changeSelection != null) {
+      allTestClasses = changeSelection.select(allTestClasses, getClassDependencyGraph(), out);
+    }
+    return allTestClasses;
+  }
+
+  /**
+   * Fingerprints what a {@link ShardPlan} of this suite depends on, which is cheaper than
+   * discovering its tests.
+   */
+  private String getPlanFingerprint(String suiteName, ChunkConfig chunkConfig,
+      ChangeSelection changeSelection) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String value : ImmutableList.of(suiteName, shardedPackagePrefix, shardingStrategy.name(),
+        testOrdering.name())) {
+      hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    hasher.putInt(chunkConfig.chunks).putBoolean(chunkConfig.runFunctionalTests);
+    if (changeSelection != null) {
+      for (String changedFile : new TreeSet<>(changeSelection.getChangedFiles())) {
+        hasher.putString(changedFile, StandardCharsets.UTF_8).putByte((byte) 0);
+      }
+    }
+    hasher.putString(new JUnitTestsScanner(chunkConfig).fingerprint(shardedPackagePrefix),
+        StandardCharsets.UTF_8);
+    return hasher.hash().toString();
+  }
+
+  private List<String> getPlannedTestClasses(ChunkConfig chunkConfig) {
+    List<String> chunkClassNames = shardPlan.getClasses(chunkConfig.runChunk);
+    out.print("************** PARTITIONED TEST SUITE **************\n");
+    out.printf("*                 Chunk: %d of %d\n", chunkConfig.runChunk, chunkConfig.chunks);
+    out.printf("*   Planned Test Classes: %d\n", chunkClassNames.size());
+    out.print("****************************************************\n");
+    return chunkClassNames;
+  }
+
+  private static List<Class<?>> load(List<String> classNames) {
+    return classNames.stream().map(ShardingTestRunner::loadClass).collect(toList());
+  }
+
+  /**
+   * Sorts the chunk's classes by {@link #testOrdering}, which may need what the scanner found out
+   * about them. Only classes that weren't scanned are loaded.
+   */
+  private List<String> sort(List<String> chunkClassNames, List<TestClassInfo> allTestClasses,
+      PrintStream out) {
+    Map<String, TestClassInfo> testClassesByName = new HashMap<>();
+    allTestClasses.forEach(testClass -> testClassesByName.put(testClass.getName(), testClass));
+
+    // Strategies may also return classes that weren't scanned, such as abstract base classes.
+    List<Object> chunkTestClasses = new ArrayList<>();
+    Set<String> injectorKeys = new HashSet<>();
+    for (String name : chunkClassNames) {
+      TestClassInfo testClass = testClassesByName.get(name);
+      chunkTestClasses.add(testClass != null ? testClass : loadClass(name));
+      if (testClass != null && testClass.getInjectorKey() != null) {
+        injectorKeys.add(testClass.getInjectorKey());
+      }
+    }
+    chunkTestClasses.sort(testOrdering);
+    if (shardingStrategy == ShardingStrategies.INJECTOR_AFFINITY) {
+      out.printf("Injectors to build: %d\n", injectorKeys.size());
+    }
+
+    return chunkTestClasses.stream()
+        .map(testClass -> testClass instanceof Class
+            ? ((Class<?>) testClass).getName()
+            : ((TestClassInfo) testClass).getName())
+        .collect(toList());
+  }
+
+  /**
+   * Returns this chunk's {@code @RunTestOnShard} classes, and queues every other class, longest
+   * first, in {@link #queuedTestClasses}. {@link #runChild} only runs those once claimed from the
+   * {@link WorkQueue}.
+   */
+  private List<String> getQueuedTestClasses(String suiteName, List<TestClassInfo> allTestClasses,
+      ChunkConfig chunkConfig) {
+    TestTimings timings = TestTimings.get();
+    List<TestClassInfo> queuedTestClasses = allTestClasses.stream()
+        .filter(testClass -> testClass.getRunTestOnShard() == null)
+        .sorted(Comparator.comparingDouble((TestClassInfo testClass) ->
+            -timings.estimateClassMillis(testClass.getName(), testClass.getTestMethodNames())))
+        .collect(toList());
+    List<String> queuedNames = queuedTestClasses.stream()
+        .map(TestClassInfo::getName)
+        .collect(toList());
+    workQueue = WorkQueue.get(suiteName, queuedNames, chunkConfig.runChunk);
+    this.queuedTestClasses = queuedTestClasses;
+
+    List<String> chunkNames = allTestClasses.stream()
+        .filter(testClass -> testClass.getRunTestOnShard() != null
+            && testClass.getRunTestOnShard() == chunkConfig.runChunk - 1)
+        .map(TestClassInfo::getName)
+        .collect(toList());
+
+    out.printf("*            Work Queue: %s\n", workQueue);
+    out.print("****************************************************\n");
+    return chunkNames;
+  }
+
   private void printTestPreamble(ChunkConfig chunkConfig, int slowTestCount, int normalTestCount, int runTestOnShardTestCount) {
     out.print("************** PARTITIONED TEST SUITE **************\n");
     out.printf("*                 Chunk: %d of %d\n", chunkConfig.runChunk, chunkConfig.chunks);
@@ -201,31 +603,25 @@ public class ShardingTestRunner extends ParentRunner<Runner> {
     out.printf("* @RunTestOnShard Tests: %d\n", runTestOnShardTestCount);
   }
 
-  private void checkTargetedTestClass(Class<?> testClassWithAnnotation, ChunkConfig chunkConfig) {
-    RunTestOnShard annotation = testClassWithAnnotation.getAnnotation(RunTestOnShard.class);
+  private void checkTargetedTestClass(TestClassInfo testClassWithAnnotation, ChunkConfig chunkConfig) {
+    int shard = testClassWithAnnotation.getRunTestOnShard();
     Preconditions.checkArgument(
-        annotation.value() >= 0 && annotation.value() < chunkConfig.chunks,
+        shard >= 0 && shard < chunkConfig.chunks,
         "@RunTestOnShard needs to specify a shard in [0, %d), but was %d. See " +
             "java/kochiku.yml for shard definitions by project.",
-        chunkConfig.chunks, annotation.value());
+        chunkConfig.chunks, shard);
   }
 
-  private List<Class<?>> getAllTestClasses(String packagePrefix, ChunkConfig chunkConfig) {
+  private List<TestClassInfo> getAllTestClasses(String packagePrefix, ChunkConfig chunkConfig) {
     if (chunkConfig.chunks == 0) {
       return ImmutableList.of();
     }
 
-    Reflections reflections = new Reflections(packagePrefix, new JUnitTestsScanner(chunkConfig));
-
-    List<String> testClassNames =
-        new ArrayList<>(reflections.getStore().get("JUnitTestsScanner").get("UnitTestClass"));
-
-    return testClassNames.parallelStream()
-        .map(ShardingTestRunner::loadClass)
-        .filter(clazz1 ->
-            !isAbstract(clazz1.getModifiers())
-                && !isInterface(clazz1.getModifiers())
-                && !clazz1.equals(ShardingTestRunner.class))
+    return new JUnitTestsScanner(chunkConfig).scan(packagePrefix).stream()
+        .filter(testClass ->
+            !testClass.isAbstract()
+                && !testClass.isInterface()
+                && !testClass.getName().equals(ShardingTestRunner.class.getName()))
         .collect(toList());
   }
 
@@ -0,0 +1,124 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.runner.Runner;
+
+/**
+ * A test class found by {@link JUnitTestsScanner}, described without loading or initializing it.
+ * Sharding strategies plan with these so that only the classes a chunk runs are ever loaded.
+ */
+public final class TestClassInfo {
+  private final String name;
+  private final int modifiers;
+  private final String runWith;
+  private final boolean slow;
+  private final Integer runTestOnShard;
+  private final String injectorKey;
+  private final Map<TestResource, Integer> resources;
+  private final List<TestMethodInfo> testMethods;
+
+  TestClassInfo(String name, int modifiers, String runWith, boolean slow, Integer runTestOnShard,
+      String injectorKey, Map<TestResource, Integer> resources, List<TestMethodInfo> testMethods) {
+    this.name = name;
+    this.modifiers = modifiers;
+    this.runWith = runWith;
+    this.slow = slow;
+    this.runTestOnShard = runTestOnShard;
+    this.injectorKey = injectorKey;
+    this.resources = Maps.immutableEnumMap(resources);
+    this.testMethods = ImmutableList.copyOf(testMethods);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  int getModifiers() {
+    return modifiers;
+  }
+
+  public boolean isAbstract() {
+    return Modifier.isAbstract(modifiers);
+  }
+
+  public boolean isInterface() {
+    return Modifier.isInterface(modifiers);
+  }
+
+  /** Returns the name of the {@code @RunWith} runner, possibly inherited, or null if none. */
+  public String getRunWith() {
+    return runWith;
+  }
+
+  /**
+   * Returns true if this class runs with {@code runnerType} or a subclass of it. This loads the
+   * runner class, but not the test class.
+   */
+  public boolean runsWith(Class<? extends Runner> runnerType) {
+    if (runWith == null) {
+      return false;
+    }
+    if (runWith.equals(runnerType.getName())) {
+      return true;
+    }
+    try {
+      return runnerType.isAssignableFrom(
+          Class.forName(runWith, false, Thread.currentThread().getContextClassLoader()));
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /** Returns true if this class is considered slow, as defined by {@link SlowTestPredicate}. */
+  public boolean isSlow() {
+    return slow;
+  }
+
+  /** Returns the {@link RunTestOnShard} value of this class, or null if it is not annotated. */
+  public Integer getRunTestOnShard() {
+    return runTestOnShard;
+  }
+
+  /**
+   * Returns what the Guice injector of this class is built from, or null if it has none: the
+   * {@code @TestModule} class, or else the concrete type of its public static {@code @TestInjector}
+   * field, or the class declaring that field if its type is an interface or abstract. Classes with
+   * the same key share a memoized injector when they run in the same JVM.
+   */
+  public String getInjectorKey() {
+    return injectorKey;
+  }
+
+  /**
+   * Returns how many of each {@link TestResource} this class needs, from its {@link TestResources}
+   * and {@code @IntegrateApps} annotations. Resources it doesn't need are absent.
+   */
+  public Map<TestResource, Integer> getResources() {
+    return resources;
+  }
+
+  /**
+   * Returns this class's public {@code @Test} methods, including inherited ones, like {@code
+   * getMethods()} filtered to {@code @Test} would.
+   */
+  public List<TestMethodInfo> getTestMethods() {
+    return testMethods;
+  }
+
+  public List<String> getTestMethodNames() {
+    return testMethods.stream().map(TestMethodInfo::getName).collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the same string as {@link Class#toString}, so that {@link TestOrderings} sort these
+   * exactly as they sort the classes themselves.
+   */
+  @Override public String toString() {
+    return (isInterface() ? "interface " : "class ") + name;
+  }
+}
@@ -0,0 +1,380 @@
+package com.squareup.testing;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Runner;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A long-lived JVM that runs sharded suites for a {@link TestDaemonClient}, so that rerunning a
+ * chunk locally doesn't pay for starting a JVM, scanning the class path and building injectors
+ * each time. Classes stay loaded and compiled between runs, and so do injectors memoized by
+ * {@code TestInjectors}.
+ *
+ * <pre>
+ * java -cp $TEST_CLASSPATH com.squareup.testing.TestDaemon [--port N]
+ * </pre>
+ *
+ * <p>The daemon listens on the loopback interface and runs one suite at a time, reporting its
+ * tests with the same event lines as {@link ForkedChunk}. Since any local process can connect to
+ * it, it writes a random token to {@code ~/.square-test-daemon/<port>.token}, readable only by
+ * its user, and ignores requests that don't start with that token. Between runs it restores:
+ * <ul>
+ *   <li>system properties, which each run sets from its client,
+ *   <li>{@code System.out}, {@code System.err}, the default locale and the default time zone.
+ * </ul>
+ * Static fields are not reset, since that's what keeps the daemon warm. Classes whose static
+ * state must not leak from one run into the next register a hook with {@link #addResetHook},
+ * which runs after every run. Suites that can't be made to reset should run in a fresh JVM.
+ *
+ * <p>Before each run the daemon fingerprints its class path: the size and modification time of
+ * every jar and class file. If it has changed since the daemon started, or the client asks for a
+ * different class path, the daemon tells the client to retry, and starts a new daemon on the same
+ * port in its place.
+ */
+public final class TestDaemon {
+  static final int DEFAULT_PORT = 7358;
+
+  /** Sent instead of any events when the daemon is restarting, before it closes its socket. */
+  static final String RESTART = "RESTART";
+
+  static final String TOKEN = "TOKEN";
+  static final String CLASSPATH = "CLASSPATH";
+  static final String PROPERTY = "PROPERTY";
+  static final String ONLY = "ONLY";
+  static final String RUN = "RUN";
+
+  private static final List<Runnable> resetHooks = new CopyOnWriteArrayList<>();
+
+  private final ServerSocket serverSocket;
+  private final String classpath;
+  private final String fingerprint;
+  private final String token;
+  private int runs;
+
+  TestDaemon(ServerSocket serverSocket, String classpath, String token) {
+    this.serverSocket = serverSocket;
+    this.classpath = classpath;
+    this.fingerprint = fingerprint(classpath);
+    this.token = token;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = DEFAULT_PORT;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--port") && i + 1 < args.length) {
+        port = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: TestDaemon [--port N]");
+        System.exit(2);
+      }
+    }
+
+    String classpath = System.getProperty("java.class.path");
+    // The token is written before listening, so a client that connects can always read it.
+    String token = writeToken(tokenFile(port));
+    String restartClasspath;
+    try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      System.out.printf("Test daemon listening on port %d\n", port);
+      restartClasspath = new TestDaemon(serverSocket, classpath, token).serve();
+    }
+    System.out.println("Class path changed, restarting test daemon");
+    start(restartClasspath, port, ProcessBuilder.Redirect.INHERIT);
+    System.exit(0);
+  }
+
+  /**
+   * Registers {@code hook} to run after every run of the daemon, to reset static state that tests
+   * change. Outside of a daemon hooks never run.
+   */
+  public static void addResetHook(Runnable hook) {
+    resetHooks.add(hook);
+  }
+
+  /** Returns the file holding the token of the daemon on {@code port}. */
+  static Path tokenFile(int port) {
+    return Paths.get(System.getProperty("user.home"), ".square-test-daemon", port + ".token");
+  }
+
+  /** Writes a new random token to {@code file}, readable and writable only by this user. */
+  static String writeToken(Path file) throws IOException {
+    byte[] bytes = new byte[32];
+    new SecureRandom().nextBytes(bytes);
+    String token = BaseEncoding.base16().lowerCase().encode(bytes);
+
+    boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    Path directory = file.toAbsolutePath().getParent();
+    if (posix) {
+      Files.createDirectories(directory,
+          PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+    } else {
+      Files.createDirectories(directory);
+    }
+    // Written to a file that no one else can read, then moved into place, so that the token is
+    // never readable by anyone else even for a moment.
+    Path temp = posix
+        ? Files.createTempFile(directory, "token", ".tmp",
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+        : Files.createTempFile(directory, "token", ".tmp");
+    Files.write(temp, token.getBytes(StandardCharsets.UTF_8));
+    Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    return token;
+  }
+
+  /** Returns the token in {@code file}. */
+  static String readToken(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+  }
+
+  /**
+   * Starts a daemon in a new JVM on {@code classpath}, with this JVM's arguments other than its
+   * {@code square.test.*} properties.
+   */
+  static Process start(String classpath, int port, ProcessBuilder.Redirect output)
+      throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    // Each run is given its client's properties, which mustn't outlive it.
+    for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (!argument.startsWith("-Dsquare.test.")) {
+        command.add(argument);
+      }
+    }
+    command.add("-cp");
+    command.add(classpath);
+    command.add(TestDaemon.class.getName());
+    command.add("--port");
+    command.add(Integer.toString(port));
+    return new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(output)
+        .start();
+  }
+
+  /**
+   * Runs suites until the class path changes, and returns the class path to restart with, having
+   * closed the server socket.
+   */
+  String serve() throws IOException {
+    while (true) {
+      try (Socket socket = serverSocket.accept()) {
+        String restartClasspath = handle(socket);
+        if (restartClasspath != null) {
+          // Stop listening before the client hears back, so that it waits for the new daemon.
+          serverSocket.close();
+          return restartClasspath;
+        }
+      }
+    }
+  }
+
+  /** Runs the suite a client asked for, or returns the class path to restart with. */
+  private String handle(Socket socket) throws IOException {
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    PrintStream events =
+        new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8.name());
+
+    String first = reader.readLine();
+    String[] tokenFields = first != null ? first.split("\t", -1) : new String[0];
+    if (tokenFields.length != 2 || !tokenFields[0].equals(TOKEN)
+        || !MessageDigest.isEqual(tokenFields[1].getBytes(StandardCharsets.UTF_8),
+            token.getBytes(StandardCharsets.UTF_8))) {
+      System.err.println("Ignoring request without this daemon's token");
+      events.println("Test daemon rejected the request: it didn't send the daemon's token");
+      return null;
+    }
+
+    String clientClasspath = classpath;
+    Map<String, String> properties = new LinkedHashMap<>();
+    Set<String> only = new LinkedHashSet<>();
+    String suiteClassName = null;
+    String line;
+    while (suiteClassName == null && (line = reader.readLine()) != null) {
+      String[] fields = line.split("\t", -1);
+      switch (fields[0]) {
+        case CLASSPATH:
+          clientClasspath = ForkedChunk.decode(fields[1]);
+          break;
+        case PROPERTY:
+          properties.put(ForkedChunk.decode(fields[1]), ForkedChunk.decode(fields[2]));
+          break;
+        case ONLY:
+          only.add(ForkedChunk.decode(fields[1]));
+          break;
+        case RUN:
+          suiteClassName = ForkedChunk.decode(fields[1]);
+          break;
+        default:
+          // A confused client shouldn't take down the daemon.
+          System.err.println("Ignoring request with unexpected line: " + fields[0]);
+          return null;
+      }
+    }
+    if (suiteClassName == null) {
+      return null;
+    }
+
+    if (!clientClasspath.equals(classpath) || !fingerprint.equals(fingerprint(classpath))) {
+      events.println(ForkedChunk.EVENT_PREFIX + "\t" + RESTART + "\t\t\t");
+      return clientClasspath;
+    }
+    run(suiteClassName, properties, only, events);
+    return null;
+  }
+
+  private void run(String suiteClassName, Map<String, String> properties, Set<String> only,
+      PrintStream events) {
+    ForkedChunk.EventWriter eventWriter = new ForkedChunk.EventWriter(events);
+    Properties savedProperties = new Properties();
+    savedProperties.putAll(System.getProperties());
+    PrintStream savedOut = System.out;
+    PrintStream savedErr = System.err;
+    Locale savedLocale = Locale.getDefault();
+    TimeZone savedTimeZone = TimeZone.getDefault();
+    long start = System.nanoTime();
+    try {
+      properties.forEach(System::setProperty);
+      PrintStream output =
+          new PrintStream(new LineOutputStream(eventWriter), false, StandardCharsets.UTF_8.name());
+      System.setOut(output);
+      System.setErr(output);
+
+      Request request = Request.aClass(Class.forName(suiteClassName));
+      if (!only.isEmpty()) {
+        request = request.filterWith(new ForkedChunk.OnlyFilter(only));
+      }
+      Runner runner = request.getRunner();
+      eventWriter.plan(runner.getDescription());
+      JUnitCore core = new JUnitCore();
+      core.addListener(eventWriter);
+      core.run(runner);
+      output.flush();
+      eventWriter.write(ForkedChunk.DONE, "", "", "");
+    } catch (Throwable t) {
+      // The client reports a run without DONE as an error, with this as its output.
+      StringWriter trace = new StringWriter();
+      t.printStackTrace(new PrintWriter(trace));
+      for (String traceLine : trace.toString().split("\n")) {
+        eventWriter.output(traceLine);
+      }
+    } finally {
+      System.setProperties(savedProperties);
+      System.setOut(savedOut);
+      System.setErr(savedErr);
+      Locale.setDefault(savedLocale);
+      TimeZone.setDefault(savedTimeZone);
+      for (Runnable hook : resetHooks) {
+        hook.run();
+      }
+      runs++;
+      savedOut.printf("Run %d of %s took %d ms\n", runs, suiteClassName,
+          (System.nanoTime() - start) / 1_000_000);
+    }
+  }
+
+  /**
+   * Returns a hash of the size and modification time of every file on {@code classpath}, which
+   * changes when a jar is replaced or a class is compiled again.
+   */
+  static String fingerprint(String classpath) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      Path path = Paths.get(entry);
+      hasher.putString(entry, StandardCharsets.UTF_8);
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> files = Files.walk(path)) {
+          files.filter(Files::isRegularFile).sorted().forEach(file -> putFile(hasher, file));
+        } catch (IOException e) {
+          throw new RuntimeException("Unable to fingerprint " + path, e);
+        }
+      } else if (Files.exists(path)) {
+        putFile(hasher, path);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void putFile(Hasher hasher, Path file) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      hasher.putString(file.toString(), StandardCharsets.UTF_8)
+          .putLong(attributes.size())
+          .putLong(attributes.lastModifiedTime().toMillis());
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to fingerprint " + file, e);
+    }
+  }
+
+  /** Sends what tests print to the client a line at a time, between their events. */
+  private static final class LineOutputStream extends OutputStream {
+    private final ForkedChunk.EventWriter eventWriter;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    LineOutputStream(ForkedChunk.EventWriter eventWriter) {
+      this.eventWriter = eventWriter;
+    }
+
+    @Override public synchronized void write(int b) {
+      if (b == '\n') {
+        flushLine();
+      } else {
+        line.write(b);
+      }
+    }
+
+    @Override public synchronized void flush() {
+      if (line.size() > 0) {
+        flushLine();
+      }
+    }
+
+    private void flushLine() {
+      String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+      line.reset();
+      if (text.endsWith("\r")) {
+        text = text.substring(0, text.length() - 1);
+      }
+      // Output that looks like an event is indented so the client doesn't read it as one.
+      eventWriter.output(text.startsWith(ForkedChunk.EVENT_PREFIX) ? " " + text : text);
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package com.squareup.testing;
+
+import com.squareup.testing.ForkLauncher.TestResult;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a sharded suite in a {@link TestDaemon}, starting one if none is listening, and prints its
+ * results as {@link ForkLauncher} does. The chunk to run is set by the usual {@code
+ * square.test.chunkCount} and {@code square.test.runChunk} properties, which the daemon is given
+ * along with this JVM's other {@code square.test.*} properties.
+ *
+ * <pre>
+ * java -cp $TEST_CLASSPATH -Dsquare.test.chunkCount=4 -Dsquare.test.runChunk=2 \
+ *     com.squareup.testing.TestDaemonClient [--port N] [--classpath CLASSPATH]
+ *     [--test CLASS[#METHOD]]... SUITE_CLASS
+ * </pre>
+ *
+ * <p>The daemon runs on this JVM's class path unless {@code --classpath} gives another, so the
+ * client itself only needs this module and its dependencies. {@code --test} runs just the named
+ * classes and test methods of the chunk. Each request starts with the token the daemon wrote to
+ * {@link TestDaemon#tokenFile}.
+ */
+public final class TestDaemonClient {
+  private static final String FORWARDED_PROPERTY_PREFIX = "square.test.";
+  private static final long START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+  private static final int RESTARTS = 3;
+
+  private final int port;
+  private final String classpath;
+  private final Path tokenFile;
+
+  TestDaemonClient(int port, String classpath, Path tokenFile) {
+    this.port = port;
+    this.classpath = classpath;
+    this.tokenFile = tokenFile;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = TestDaemon.DEFAULT_PORT;
+    String classpath = System.getProperty("java.class.path");
+    List<String> tests = new ArrayList<>();
+    String suiteClassName = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].startsWith("--") && i + 1 == args.length) {
+        usage();
+      }
+      switch (args[i]) {
+        case "--port":
+          port = Integer.parseInt(args[++i]);
+          break;
+        case "--classpath":
+          classpath = args[++i];
+          break;
+        case "--test":
+          tests.add(args[++i]);
+          break;
+        default:
+          suiteClassName = args[i];
+      }
+    }
+    if (suiteClassName == null) {
+      usage();
+    }
+
+    Map<String, String> properties = new LinkedHashMap<>();
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith(FORWARDED_PROPERTY_PREFIX)) {
+        properties.put(name, System.getProperty(name));
+      }
+    }
+    TestDaemonClient client = new TestDaemonClient(port, classpath, TestDaemon.tokenFile(port));
+    Collection<TestResult> results = client.run(suiteClassName, tests, properties);
+    System.exit(ForkLauncher.printSummary(results) ? 0 : 1);
+  }
+
+  private static void usage() {
+    System.err.println("Usage: TestDaemonClient [--port N] [--classpath CLASSPATH] "
+        + "[--test CLASS[#METHOD]]... SUITE_CLASS");
+    System.exit(2);
+  }
+
+  /**
+   * Runs {@code suiteClassName} in the daemon with {@code properties} set, starting the daemon if
+   * it isn't running and waiting for it when it restarts.
+   */
+  Collection<TestResult> run(String suiteClassName, List<String> tests,
+      Map<String, String> properties) throws IOException, InterruptedException {
+    for (int attempt = 0; attempt <= RESTARTS; attempt++) {
+      Response response = send(suiteClassName, tests, properties, attempt == 0);
+      if (!response.restarting) {
+        return response.results(suiteClassName);
+      }
+      System.out.println("Class path changed, waiting for the test daemon to restart");
+    }
+    throw new RuntimeException("Test daemon on port " + port + " kept restarting");
+  }
+
+  /**
+   * Sends one request to the daemon. If {@code startDaemon} is true and no daemon is listening,
+   * one is started; otherwise this waits for a daemon to start listening.
+   */
+  Response send(String suiteClassName, List<String> tests, Map<String, String> properties,
+      boolean startDaemon) throws IOException, InterruptedException {
+    try (Socket socket = connect(startDaemon)) {
+      PrintStream request =
+          new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8.name());
+      // Read once connected, since a daemon writes its token before it listens.
+      request.println(TestDaemon.TOKEN + "\t" + TestDaemon.readToken(tokenFile));
+      request.println(TestDaemon.CLASSPATH + "\t" + ForkedChunk.encode(classpath));
+      properties.forEach((name, value) -> request.println(TestDaemon.PROPERTY + "\t"
+          + ForkedChunk.encode(name) + "\t" + ForkedChunk.encode(value)));
+      for (String test : tests) {
+        request.println(TestDaemon.ONLY + "\t" + ForkedChunk.encode(test));
+      }
+      request.println(TestDaemon.RUN + "\t" + ForkedChunk.encode(suiteClassName));
+
+      int runChunk = Integer.parseInt(properties.getOrDefault("square.test.runChunk", "1"));
+      Response response = new Response(runChunk);
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(ForkedChunk.EVENT_PREFIX + "\t" + TestDaemon.RESTART + "\t")) {
+          response.restarting = true;
+        } else if (!response.events.read(line)) {
+          System.out.println(line);
+        }
+      }
+      return response;
+    }
+  }
+
+  private Socket connect(boolean startDaemon) throws IOException, InterruptedException {
+    Process daemon = null;
+    long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+    while (true) {
+      try {
+        return new Socket(InetAddress.getLoopbackAddress(), port);
+      } catch (ConnectException e) {
+        if (System.currentTimeMillis() > deadline) {
+          throw new IOException("No test daemon listening on port " + port, e);
+        }
+        if (startDaemon && daemon == null) {
+          File log = File.createTempFile("test-daemon-" + port, ".log");
+          System.out.printf("Starting a test daemon on port %d, logging to %s\n", port, log);
+          daemon = TestDaemon.start(classpath, port, ProcessBuilder.Redirect.to(log));
+        }
+        if (daemon != null && !daemon.isAlive()) {
+          throw new IOException("Test daemon exited with code " + daemon.exitValue(), e);
+        }
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  /** What the daemon reported for one request. */
+  static final class Response {
+    final ForkLauncher.EventReader events;
+    boolean restarting;
+
+    Response(int runChunk) {
+      this.events = new ForkLauncher.EventReader(runChunk, new LinkedHashMap<>());
+    }
+
+    /**
+     * Returns the results of the run. A run that ended early, because the suite couldn't be run
+     * or the daemon died, fails the test that was running and those that hadn't run yet.
+     */
+    Collection<TestResult> results(String suiteClassName) {
+      Map<String, TestResult> results = events.chunkResults;
+      if (!events.done) {
+        if (events.running != null) {
+          results.put(events.running, TestResult.error(events.running, events.runChunk,
+              "Test daemon stopped while running this test"));
+        }
+        for (String testId : events.planned) {
+          results.putIfAbsent(testId,
+              TestResult.error(testId, events.runChunk, "Not run: test daemon stopped"));
+        }
+        if (results.isEmpty()) {
+          String testId = ForkedChunk.testId(suiteClassName, "initializationError");
+          results.put(testId,
+              TestResult.error(testId, events.runChunk, "Test daemon didn't run the suite"));
+        }
+      }
+      return results.values();
+    }
+  }
+}
@@ -0,0 +1,337 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.squareup.testing.ClassFileInfo.FieldInfo;
+import com.squareup.testing.ClassFileInfo.MethodInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An on-disk cache of the class files {@link JUnitTestsScanner} reads, so that shards only read
+ * the class path entries that changed since the index was written.
+ *
+ * <p>Entries are keyed by class path entry (a jar or classes directory) and package, and stamped
+ * with the entry's size and modification times. A stale stamp makes the scanner read the entry
+ * again.
+ *
+ * <p>The index is memory-mapped when read and replaced atomically when written, so any number of
+ * shard JVMs on one machine may share it. Writers hold a lock on a sibling {@code .lock} file and
+ * merge their entries into the latest index, so concurrent shards don't drop each other's work.
+ */
+final class TestIndex {
+  /** System property naming the index file. The index is disabled if unset. */
+  static final String INDEX_FILE_PROPERTY = "square.test.indexFile";
+
+  private static final int MAGIC = 0x53544958; // "STIX"
+  private static final int VERSION = 2;
+
+  private final Path path;
+  private final Map<String, Entry> entries;
+  private final Map<String, Entry> updatedEntries = new LinkedHashMap<>();
+
+  private TestIndex(Path path, Map<String, Entry> entries) {
+    this.path = path;
+    this.entries = entries;
+  }
+
+  /** Returns the index named by {@value #INDEX_FILE_PROPERTY}, or null if the property is unset. */
+  static TestIndex get() {
+    String indexFile = System.getProperty(INDEX_FILE_PROPERTY);
+    return indexFile != null ? load(Paths.get(indexFile)) : null;
+  }
+
+  /** Reads the index at {@code path}. A missing or unreadable index is treated as empty. */
+  static TestIndex load(Path path) {
+    return new TestIndex(path, read(path));
+  }
+
+  /** Returns the class files stored for {@code key}, or null if absent or stale. */
+  synchronized List<ClassFileInfo> get(String key, String stamp) {
+    Entry entry = updatedEntries.containsKey(key) ? updatedEntries.get(key) : entries.get(key);
+    return entry != null && entry.stamp.equals(stamp) ? entry.classFiles : null;
+  }
+
+  synchronized void put(String key, String stamp, List<ClassFileInfo> classFiles) {
+    updatedEntries.put(key, new Entry(stamp, ImmutableList.copyOf(classFiles)));
+  }
+
+  /** Writes any entries added with {@link #put} to disk. */
+  void save() {
+    Map<String, Entry> updates;
+    synchronized (this) {
+      if (updatedEntries.isEmpty()) {
+        return;
+      }
+      updates = new LinkedHashMap<>(updatedEntries);
+    }
+
+    // FileLock is held per JVM, so JVM-local callers must also take turns.
+    synchronized (TestIndex.class) {
+      Path lockFile = path.resolveSibling(path.getFileName() + ".lock");
+      try {
+        if (path.getParent() != null) {
+          Files.createDirectories(path.getParent());
+        }
+        try (FileChannel lockChannel = FileChannel.open(lockFile, CREATE, WRITE);
+             FileLock ignored = lockChannel.lock()) {
+          Map<String, Entry> merged = new TreeMap<>(read(path));
+          merged.putAll(updates);
+
+          Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+          try {
+            Files.write(temp, write(merged));
+            Files.move(temp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+          } finally {
+            Files.deleteIfExists(temp);
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to write test index to " + path, e);
+      }
+    }
+
+    synchronized (this) {
+      entries.putAll(updates);
+      updatedEntries.keySet().removeAll(updates.keySet());
+    }
+  }
+
+  private static Map<String, Entry> read(Path path) {
+    if (!Files.exists(path)) {
+      return new HashMap<>();
+    }
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new Reader(buffer).readEntries();
+    } catch (IOException | RuntimeException e) {
+      // A corrupt or outdated index only costs a rescan.
+      return new HashMap<>();
+    }
+  }
+
+  private static byte[] write(Map<String, Entry> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(entries.size());
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue().stamp);
+      out.writeInt(entry.getValue().classFiles.size());
+      for (ClassFileInfo classFile : entry.getValue().classFiles) {
+        writeString(out, classFile.name);
+        writeString(out, classFile.superName != null ? classFile.superName : "");
+        out.writeInt(classFile.access);
+        writeAnnotations(out, classFile.annotations);
+        out.writeInt(classFile.fields.size());
+        for (FieldInfo field : classFile.fields) {
+          writeString(out, field.name);
+          writeString(out, field.descriptor);
+          out.writeInt(field.access);
+          writeAnnotations(out, field.annotations);
+        }
+        out.writeInt(classFile.methods.size());
+        for (MethodInfo method : classFile.methods) {
+          writeString(out, method.name);
+          writeString(out, method.descriptor);
+          out.writeInt(method.access);
+          out.writeInt(method.exceptions.size());
+          for (String exception : method.exceptions) {
+            writeString(out, exception);
+          }
+          writeAnnotations(out, method.annotations);
+        }
+      }
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void writeAnnotations(DataOutputStream out,
+      Map<String, Map<String, Object>> annotations) throws IOException {
+    out.writeInt(annotations.size());
+    for (Map.Entry<String, Map<String, Object>> annotation : annotations.entrySet()) {
+      writeString(out, annotation.getKey());
+      out.writeInt(annotation.getValue().size());
+      for (Map.Entry<String, Object> value : annotation.getValue().entrySet()) {
+        writeString(out, value.getKey());
+        writeValue(out, value.getValue());
+      }
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value instanceof Integer) {
+      out.writeByte('I');
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte('J');
+      out.writeLong((Long) value);
+    } else if (value instanceof Float) {
+      out.writeByte('F');
+      out.writeFloat((Float) value);
+    } else if (value instanceof Double) {
+      out.writeByte('D');
+      out.writeDouble((Double) value);
+    } else if (value instanceof String) {
+      out.writeByte('s');
+      writeString(out, (String) value);
+    } else if (value instanceof List) {
+      List<?> values = (List<?>) value;
+      out.writeByte('[');
+      out.writeInt(values.size());
+      for (Object element : values) {
+        writeValue(out, element);
+      }
+    } else {
+      throw new IllegalArgumentException("Unexpected annotation value " + value);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static final class Reader {
+    private final ByteBuffer buffer;
+
+    Reader(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    Map<String, Entry> readEntries() {
+      Map<String, Entry> entries = new HashMap<>();
+      if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        return entries;
+      }
+      int entryCount = buffer.getInt();
+      for (int i = 0; i < entryCount; i++) {
+        String key = readString();
+        String stamp = readString();
+        int classCount = buffer.getInt();
+        List<ClassFileInfo> classFiles = new ArrayList<>(classCount);
+        for (int j = 0; j < classCount; j++) {
+          classFiles.add(readClassFile());
+        }
+        entries.put(key, new Entry(stamp, ImmutableList.copyOf(classFiles)));
+      }
+      return entries;
+    }
+
+    private ClassFileInfo readClassFile() {
+      String name = readString();
+      String superName = readString();
+      int access = buffer.getInt();
+      Map<String, Map<String, Object>> annotations = readAnnotations();
+      int fieldCount = buffer.getInt();
+      List<FieldInfo> fields = new ArrayList<>(fieldCount);
+      for (int i = 0; i < fieldCount; i++) {
+        String fieldName = readString();
+        String descriptor = readString();
+        int fieldAccess = buffer.getInt();
+        fields.add(new FieldInfo(fieldName, descriptor, fieldAccess, readAnnotations()));
+      }
+      int methodCount = buffer.getInt();
+      List<MethodInfo> methods = new ArrayList<>(methodCount);
+      for (int i = 0; i < methodCount; i++) {
+        String methodName = readString();
+        String descriptor = readString();
+        int methodAccess = buffer.getInt();
+        int exceptionCount = buffer.getInt();
+        List<String> exceptions = new ArrayList<>(exceptionCount);
+        for (int j = 0; j < exceptionCount; j++) {
+          exceptions.add(readString());
+        }
+        methods.add(new MethodInfo(methodName, descriptor, methodAccess,
+            ImmutableList.copyOf(exceptions), readAnnotations()));
+      }
+      return new ClassFileInfo(name, superName.isEmpty() ? null : superName, access, annotations,
+          ImmutableList.copyOf(fields), ImmutableList.copyOf(methods));
+    }
+
+    private Map<String, Map<String, Object>> readAnnotations() {
+      int count = buffer.getInt();
+      if (count == 0) {
+        return ImmutableMap.of();
+      }
+      Map<String, Map<String, Object>> annotations = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        String type = readString();
+        int valueCount = buffer.getInt();
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int j = 0; j < valueCount; j++) {
+          String valueName = readString();
+          values.put(valueName, readValue());
+        }
+        annotations.put(type, values);
+      }
+      return ImmutableMap.copyOf(annotations);
+    }
+
+    private Object readValue() {
+      byte tag = buffer.get();
+      switch (tag) {
+        case 'I':
+          return buffer.getInt();
+        case 'J':
+          return buffer.getLong();
+        case 'F':
+          return buffer.getFloat();
+        case 'D':
+          return buffer.getDouble();
+        case 's':
+          return readString();
+        case '[':
+          int count = buffer.getInt();
+          List<Object> values = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            values.add(readValue());
+          }
+          return values;
+        default:
+          throw new IllegalStateException("Unexpected annotation value tag " + (char) tag);
+      }
+    }
+
+    private String readString() {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static final class Entry {
+    final String stamp;
+    final List<ClassFileInfo> classFiles;
+
+    Entry(String stamp, List<ClassFileInfo> classFiles) {
+      this.stamp = stamp;
+      this.classFiles = classFiles;
+    }
+  }
+}
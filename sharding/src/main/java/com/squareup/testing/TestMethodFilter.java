@@ -1,34 +1,120 @@
 package com.squareup.testing;
 
-import cucumber.api.junit.Cucumber;
-import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.junit.runner.Description;
-import org.junit.runner.RunWith;
 import org.junit.runner.manipulation.Filter;
 
+/**
+ * Runs only the given test methods. Methods are indexed by declaring class and name, so each
+ * {@link Description} is matched in time proportional to the depth of its class hierarchy rather
+ * than the number of methods in the chunk.
+ */
 public class TestMethodFilter extends Filter {
 
-  final List<Method> testMethods;
+  private final Map<String, Set<String>> methodNamesByClassName = new HashMap<>();
+  private boolean keyedByTestClass;
 
-  public TestMethodFilter(List<Method> testMethods) {
-    this.testMethods = testMethods;
+  public TestMethodFilter(List<TestMethodInfo> testMethods) {
+    if (testMethods != null) {
+      for (TestMethodInfo testMethod : testMethods) {
+        methodNamesByClassName
+            .computeIfAbsent(testMethod.getDeclaringClassName(), className -> new HashSet<>())
+            .add(testMethod.getName());
+      }
+    }
+  }
+
+  /**
+   * Returns a filter that runs {@code methodNames} of each test class, keyed by the class that runs
+   * them rather than the class that declares them, so that a subclass can run some of the methods
+   * it inherits while another subclass runs all of them. Superclasses are never consulted, so a
+   * superclass that runs whole doesn't run every method its split subclasses inherit.
+   */
+  public static TestMethodFilter forTestClasses(
+      Map<String, ? extends Collection<String>> methodNamesByTestClassName) {
+    TestMethodFilter filter = new TestMethodFilter(null);
+    methodNamesByTestClassName.forEach((className, methodNames) ->
+        filter.methodNamesByClassName.put(className, new HashSet<>(methodNames)));
+    filter.keyedByTestClass = true;
+    return filter;
+  }
+
+  /**
+   * Returns a filter that runs {@code testMethods} and, of each Cucumber feature in {@code
+   * scenarioNamesByFeature}, only the named scenarios. Features are keyed by the class name of
+   * their scenarios' descriptions, and those that aren't keys run every scenario.
+   */
+  public static TestMethodFilter forTestMethods(List<TestMethodInfo> testMethods,
+      Map<String, ? extends Collection<String>> scenarioNamesByFeature) {
+    TestMethodFilter filter = new TestMethodFilter(testMethods);
+    scenarioNamesByFeature.forEach((feature, scenarioNames) -> filter.methodNamesByClassName
+        .computeIfAbsent(feature, key -> new HashSet<>())
+        .addAll(scenarioNames));
+    return filter;
+  }
+
+  /**
+   * Returns the names of the methods to run by declaring class, or by test class if {@link
+   * #isKeyedByTestClass}, or nothing to run every method.
+   */
+  Map<String, Set<String>> getMethodNamesByClassName() {
+    return Collections.unmodifiableMap(methodNamesByClassName);
+  }
+
+  /** Returns true if methods are keyed by the class that runs them, as {@link #forTestClasses}. */
+  boolean isKeyedByTestClass() {
+    return keyedByTestClass;
   }
 
   @Override
   public boolean shouldRun(Description description) {
     if (description.isSuite()
-        || testMethods == null
-        || testMethods.isEmpty()
-        || description.getTestClass() == null) { // cucumber tests have null test classes :-(
+        || methodNamesByClassName.isEmpty()
+        || description.getMethodName() == null) {
       return true;
     }
 
-    return testMethods.stream().anyMatch(frameworkMethod ->
-        frameworkMethod.getDeclaringClass().isAssignableFrom(description.getTestClass()) &&
-            frameworkMethod.getName()
-                .equals(description.getMethodName().replaceAll("\\[.+\\]$", ""))
-    );
+    String methodName = stripParameters(description.getMethodName());
+    if (declares(description.getClassName(), methodName)) {
+      return true;
+    }
+    Class<?> testClass = description.getTestClass();
+    if (testClass == null) {
+      // Cucumber scenarios have no test class, and their names are kept whole. Features that
+      // aren't partitioned run every scenario.
+      return !methodNamesByClassName.containsKey(description.getClassName())
+          || declares(description.getClassName(), description.getMethodName());
+    }
+    if (keyedByTestClass) {
+      return false;
+    }
+    for (Class<?> clazz = testClass.getSuperclass(); clazz != null; clazz = clazz.getSuperclass()) {
+      if (declares(clazz.getName(), methodName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean declares(String className, String methodName) {
+    Set<String> methodNames = methodNamesByClassName.get(className);
+    return methodNames != null && methodNames.contains(methodName);
+  }
+
+  /** Returns {@code methodName} without a {@code Parameterized} suffix such as {@code [0]}. */
+  static String stripParameters(String methodName) {
+    int last = methodName.length() - 1;
+    if (last < 0 || methodName.charAt(last) != ']') {
+      return methodName;
+    }
+    int start = methodName.indexOf('[');
+    return start >= 0 && start < last - 1 ? methodName.substring(0, start) : methodName;
   }
 
   @Override
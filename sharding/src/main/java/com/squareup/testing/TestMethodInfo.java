@@ -0,0 +1,123 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * A {@code @Test} method found by {@link JUnitTestsScanner}, described without loading its class.
+ */
+public final class TestMethodInfo {
+  private final String declaringClassName;
+  private final String name;
+  private final String descriptor;
+  private final int modifiers;
+  private final List<String> exceptionNames;
+
+  TestMethodInfo(String declaringClassName, String name, String descriptor, int modifiers,
+      List<String> exceptionNames) {
+    this.declaringClassName = declaringClassName;
+    this.name = name;
+    this.descriptor = descriptor;
+    this.modifiers = modifiers;
+    this.exceptionNames = ImmutableList.copyOf(exceptionNames);
+  }
+
+  public String getDeclaringClassName() {
+    return declaringClassName;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  String getDescriptor() {
+    return descriptor;
+  }
+
+  int getModifiers() {
+    return modifiers;
+  }
+
+  List<String> getExceptionNames() {
+    return exceptionNames;
+  }
+
+  @Override public boolean equals(Object o) {
+    if (!(o instanceof TestMethodInfo)) {
+      return false;
+    }
+    TestMethodInfo other = (TestMethodInfo) o;
+    return declaringClassName.equals(other.declaringClassName)
+        && name.equals(other.name)
+        && descriptor.equals(other.descriptor);
+  }
+
+  @Override public int hashCode() {
+    return (declaringClassName.hashCode() * 31 + name.hashCode()) * 31 + descriptor.hashCode();
+  }
+
+  /**
+   * Returns the same string as {@link java.lang.reflect.Method#toString}, so that orderings keyed
+   * on it are unchanged from when test methods were discovered reflectively.
+   */
+  @Override public String toString() {
+    StringBuilder result = new StringBuilder();
+    int methodModifiers = modifiers & Modifier.methodModifiers();
+    if (methodModifiers != 0) {
+      result.append(Modifier.toString(methodModifiers)).append(' ');
+    }
+    int returnTypeStart = descriptor.indexOf(')') + 1;
+    appendTypeName(result, descriptor, returnTypeStart);
+    result.append(' ').append(declaringClassName).append('.').append(name).append('(');
+    int index = 1;
+    while (descriptor.charAt(index) != ')') {
+      if (index > 1) {
+        result.append(',');
+      }
+      index = appendTypeName(result, descriptor, index);
+    }
+    result.append(')');
+    if (!exceptionNames.isEmpty()) {
+      result.append(" throws ").append(String.join(",", exceptionNames));
+    }
+    return result.toString();
+  }
+
+  /** Appends the Java type name of the descriptor at {@code index} and returns the next index. */
+  private static int appendTypeName(StringBuilder result, String descriptor, int index) {
+    int dimensions = 0;
+    while (descriptor.charAt(index) == '[') {
+      dimensions++;
+      index++;
+    }
+    char type = descriptor.charAt(index);
+    if (type == 'L') {
+      int end = descriptor.indexOf(';', index);
+      result.append(descriptor.substring(index + 1, end).replace('/', '.'));
+      index = end + 1;
+    } else {
+      result.append(primitiveName(type));
+      index++;
+    }
+    for (int i = 0; i < dimensions; i++) {
+      result.append("[]");
+    }
+    return index;
+  }
+
+  private static String primitiveName(char type) {
+    switch (type) {
+      case 'B': return "byte";
+      case 'C': return "char";
+      case 'D': return "double";
+      case 'F': return "float";
+      case 'I': return "int";
+      case 'J': return "long";
+      case 'S': return "short";
+      case 'Z': return "boolean";
+      case 'V': return "void";
+      default: throw new IllegalArgumentException("Unknown descriptor type " + type);
+    }
+  }
+}
@@ -22,5 +22,21 @@ public enum TestOrderings implements Comparator<Object> {
           .toString();
       return leftHash.compareTo(rightHash);
     }
+  },
+  /**
+   * Orders test classes sharing a Guice injector back to back, see {@link
+   * TestClassInfo#getInjectorKey}. Groups are ordered by key and classes without an injector come
+   * last; within a group classes are ordered by name. Other objects are ordered by name.
+   */
+  INJECTOR_AFFINITY {
+    @Override public int compare(Object left, Object right) {
+      int result = Comparator.nullsLast(Comparator.<String>naturalOrder())
+          .compare(injectorKey(left), injectorKey(right));
+      return result != 0 ? result : NAME.compare(left, right);
+    }
+
+    private String injectorKey(Object object) {
+      return object instanceof TestClassInfo ? ((TestClassInfo) object).getInjectorKey() : null;
+    }
   }
 }
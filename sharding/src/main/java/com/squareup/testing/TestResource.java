@@ -0,0 +1,20 @@
+package com.squareup.testing;
+
+/**
+ * A heavyweight resource that a test class holds while it runs, declared with {@link
+ * TestResources}. {@link ShardingStrategies#RESOURCE_BALANCED} spreads each kind evenly across
+ * chunks.
+ */
+public enum TestResource {
+  /** A database, such as an embedded MySQL or a schema on a shared server. */
+  DATABASE,
+
+  /** A {@code WebDriver} and the browser it drives. */
+  WEB_DRIVER,
+
+  /** One app started by {@code @IntegrateApps}. */
+  INTEGRATED_APP,
+
+  /** One port bound for the duration of the class. */
+  PORT
+}
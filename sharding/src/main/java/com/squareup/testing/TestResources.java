@@ -0,0 +1,26 @@
+package com.squareup.testing;
+
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Declares the heavyweight resources a test class needs, so that {@link
+ * ShardingStrategies#RESOURCE_BALANCED} doesn't put every browser test on one chunk and every
+ * database test on another. For example, {@code @TestResources(value = DATABASE, ports = 2)}.
+ *
+ * <p>Classes annotated with {@code @IntegrateApps}, or with {@code @Test} methods that are, need
+ * one {@link TestResource#INTEGRATED_APP} per app without declaring them.
+ */
+@Inherited
+@Target(TYPE)
+@Retention(RUNTIME)
+public @interface TestResources {
+  TestResource[] value() default {};
+
+  /** The number of ports the class binds. */
+  int ports() default 0;
+}
@@ -0,0 +1,175 @@
+package com.squareup.testing;
+
+import com.squareup.testing.TestTimings.Outcome;
+import com.squareup.testing.TestTimings.HistoryRecord;
+import com.squareup.testing.TestTimings.Timing;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Records the wall time, CPU time and outcome of every test method and test class, and appends
+ * them to a {@link TestTimings} history file when the run finishes.
+ *
+ * <p>Invocations of a parameterized method are summed into a single record for the method. Class
+ * durations are only as accurate as the class boundaries reported through {@link
+ * #testClassStarted} and {@link #testClassFinished}; {@link ShardingTestRunner} reports them, and
+ * without them a class is recorded as the sum of its methods. Tests reported from the {@link
+ * ResultCache} didn't run and aren't recorded.
+ */
+public class TestTimingRecorder extends RunListener {
+  /** System property naming the file that {@link ShardingTestRunner} appends timings to. */
+  public static final String RECORD_FILE_PROPERTY = "square.test.timingsRecordFile";
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final Path path;
+  private final Map<Description, long[]> running = new ConcurrentHashMap<>();
+  private final Map<Description, Outcome> outcomes = new ConcurrentHashMap<>();
+  private final Map<String, long[]> runningClasses = new ConcurrentHashMap<>();
+  private final Map<String, MutableTiming> methodTimings = new LinkedHashMap<>();
+  private final Map<String, MutableTiming> classTimings = new LinkedHashMap<>();
+
+  public TestTimingRecorder(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Returns a recorder for the file named by {@value #RECORD_FILE_PROPERTY}, or null if the
+   * property is unset.
+   */
+  public static TestTimingRecorder get() {
+    String recordFile = System.getProperty(RECORD_FILE_PROPERTY);
+    return recordFile != null ? new TestTimingRecorder(Paths.get(recordFile)) : null;
+  }
+
+  /** Called before a test class's runner is run, including its class level setup. */
+  public void testClassStarted(Description description) {
+    if (description.getClassName() != null) {
+      runningClasses.put(description.getClassName(), now());
+    }
+  }
+
+  /** Called after a test class's runner has run, including its class level teardown. */
+  public void testClassFinished(Description description) {
+    long[] start = description.getClassName() != null
+        ? runningClasses.remove(description.getClassName())
+        : null;
+    if (start == null) {
+      return;
+    }
+    long[] end = now();
+    synchronized (this) {
+      MutableTiming timing =
+          classTimings.computeIfAbsent(description.getClassName(), key -> new MutableTiming());
+      timing.add(end[0] - start[0], end[1] - start[1], Outcome.PASSED);
+      timing.explicit = true;
+    }
+  }
+
+  @Override public void testStarted(Description description) {
+    if (description.getAnnotation(CachedResult.class) != null) {
+      return;
+    }
+    running.put(description, now());
+  }
+
+  @Override public void testFailure(Failure failure) {
+    outcomes.put(failure.getDescription(), Outcome.FAILED);
+  }
+
+  @Override public void testAssumptionFailure(Failure failure) {
+    outcomes.put(failure.getDescription(), Outcome.ASSUMPTION_FAILED);
+  }
+
+  @Override public void testFinished(Description description) {
+    long[] start = running.remove(description);
+    Outcome outcome = outcomes.remove(description);
+    if (start == null || description.getClassName() == null || description.getMethodName() == null) {
+      return;
+    }
+    long[] end = now();
+    long wallNanos = end[0] - start[0];
+    long cpuNanos = end[1] - start[1];
+    outcome = outcome != null ? outcome : Outcome.PASSED;
+
+    String className = description.getClassName();
+    String methodName = description.getMethodName().replaceAll("\\[.+\\]$", "");
+    synchronized (this) {
+      methodTimings.computeIfAbsent(TestTimings.methodKey(className, methodName),
+          key -> new MutableTiming()).add(wallNanos, cpuNanos, outcome);
+      classTimings.computeIfAbsent(className, key -> new MutableTiming())
+          .addMethod(wallNanos, cpuNanos, outcome);
+    }
+  }
+
+  @Override public void testRunFinished(Result result) {
+    flush();
+  }
+
+  /** Appends everything recorded since the last flush to the history file. */
+  public void flush() {
+    List<HistoryRecord> records = new ArrayList<>();
+    synchronized (this) {
+      classTimings.forEach((className, timing) ->
+          records.add(new HistoryRecord(className, "", timing.toTiming())));
+      methodTimings.forEach((key, timing) -> {
+        int separator = key.lastIndexOf('#');
+        records.add(new HistoryRecord(
+            key.substring(0, separator), key.substring(separator + 1), timing.toTiming()));
+      });
+      classTimings.clear();
+      methodTimings.clear();
+    }
+    TestTimings.append(path, records);
+  }
+
+  private static long[] now() {
+    long cpuNanos = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+        ? THREAD_MX_BEAN.getCurrentThreadCpuTime()
+        : 0;
+    return new long[] {System.nanoTime(), cpuNanos};
+  }
+
+  private static class MutableTiming {
+    long wallNanos;
+    long cpuNanos;
+    long methodWallNanos;
+    long methodCpuNanos;
+    Outcome outcome = Outcome.PASSED;
+    boolean explicit;
+
+    void add(long wallNanos, long cpuNanos, Outcome outcome) {
+      this.wallNanos += wallNanos;
+      this.cpuNanos += cpuNanos;
+      this.outcome = worst(this.outcome, outcome);
+    }
+
+    void addMethod(long wallNanos, long cpuNanos, Outcome outcome) {
+      this.methodWallNanos += wallNanos;
+      this.methodCpuNanos += cpuNanos;
+      this.outcome = worst(this.outcome, outcome);
+    }
+
+    Timing toTiming() {
+      // Classes without reported boundaries fall back to the sum of their methods.
+      long wall = explicit ? wallNanos : wallNanos + methodWallNanos;
+      long cpu = explicit ? cpuNanos : cpuNanos + methodCpuNanos;
+      return new Timing(wall / 1_000_000d, cpu / 1_000_000d, outcome, 1);
+    }
+
+    private static Outcome worst(Outcome left, Outcome right) {
+      return left.compareTo(right) >= 0 ? left : right;
+    }
+  }
+}
@@ -0,0 +1,357 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Recorded durations of test classes and test methods, used to weight tests when sharding.
+ *
+ * <p>The history file has one tab separated record per line: {@code className, methodName,
+ * wallMillis, cpuMillis, outcome, samples}. Class records leave the method name empty and cover
+ * the whole class including {@code @BeforeClass} and {@code @AfterClass} work. Only the first three
+ * fields are required.
+ *
+ * <p>Records are folded in file order into an exponential moving average per test, so the file
+ * may be appended to by any number of JVMs (see {@link TestTimingRecorder}) and compacted later
+ * with {@link #merge} once they are done. Each append is a separate gzip member, and concatenated
+ * members are themselves a valid gzip file. Readers share the lock that appends hold, so they
+ * never see a partly written member.
+ */
+public final class TestTimings {
+  /** System property naming the timing history file to read. */
+  public static final String TIMINGS_FILE_PROPERTY = "square.test.timingsFile";
+
+  /** Weight of a single new sample in a test's moving average. */
+  static final double SAMPLE_WEIGHT = 0.3;
+
+  /** Samples beyond this many no longer change a record's weight; keeps the field small. */
+  private static final int MAX_SAMPLES = 100;
+
+  private static final TestTimings EMPTY = new TestTimings(ImmutableMap.of(), ImmutableMap.of());
+
+  private final Map<String, Timing> classTimings;
+  private final Map<String, Timing> methodTimings;
+  private final double medianMethodMillis;
+
+  TestTimings(Map<String, Timing> classTimings, Map<String, Timing> methodTimings) {
+    this.classTimings = ImmutableMap.copyOf(classTimings);
+    this.methodTimings = ImmutableMap.copyOf(methodTimings);
+    this.medianMethodMillis = median(methodTimings.values().stream()
+        .mapToDouble(timing -> timing.wallMillis)
+        .toArray());
+  }
+
+  /**
+   * Returns the timings from the file named by {@value #TIMINGS_FILE_PROPERTY}, or no timings if
+   * the property is unset or the file does not exist yet.
+   */
+  public static TestTimings get() {
+    String timingsFile = System.getProperty(TIMINGS_FILE_PROPERTY);
+    if (timingsFile == null) {
+      return EMPTY;
+    }
+    return read(Paths.get(timingsFile));
+  }
+
+  public static TestTimings read(Path... paths) {
+    Map<String, Timing> classTimings = new HashMap<>();
+    Map<String, Timing> methodTimings = new HashMap<>();
+    for (Path path : paths) {
+      if (!Files.exists(path)) {
+        continue;
+      }
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(open(path), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split("\t", -1);
+          if (fields.length < 3) {
+            continue;
+          }
+          Timing sample = new Timing(
+              Double.parseDouble(fields[2]),
+              fields.length > 3 ? Double.parseDouble(fields[3]) : 0,
+              fields.length > 4 ? Outcome.fromCode(fields[4]) : Outcome.PASSED,
+              fields.length > 5 ? Integer.parseInt(fields[5]) : 1);
+          if (fields[1].isEmpty()) {
+            classTimings.merge(fields[0], sample, Timing::update);
+          } else {
+            methodTimings.merge(methodKey(fields[0], fields[1]), sample, Timing::update);
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read test timings from " + path, e);
+      }
+    }
+    return classTimings.isEmpty() && methodTimings.isEmpty()
+        ? EMPTY
+        : new TestTimings(classTimings, methodTimings);
+  }
+
+  /**
+   * Folds the records of every input into one compacted record per test and atomically replaces
+   * {@code output} with them. {@code output} may also be one of the inputs.
+   */
+  public static void merge(Path output, Path... inputs) {
+    TestTimings timings = read(inputs);
+    Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        out.write(timings.toGzippedRecords());
+      }
+      Files.move(temp, output, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write test timings to " + output, e);
+    }
+  }
+
+  /**
+   * Appends {@code records} to {@code path} as one gzipped block. The file is locked while writing,
+   * so this is safe to call from concurrent JVMs sharing the file.
+   */
+  static void append(Path path, Collection<HistoryRecord> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+         FileLock ignored = channel.lock()) {
+      ByteBuffer buffer = ByteBuffer.wrap(gzip(records));
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to append test timings to " + path, e);
+    }
+  }
+
+  /** Merges timing history files: {@code TestTimings <output> <input>...}. */
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.err.println("Usage: TestTimings <output> <input>...");
+      System.exit(1);
+    }
+    Path[] inputs = Arrays.stream(args, 1, args.length).map(Paths::get).toArray(Path[]::new);
+    merge(Paths.get(args[0]), inputs);
+  }
+
+  /** Returns the recorded duration of {@code className}, or null if it has no history. */
+  public Double getClassMillis(String className) {
+    Timing timing = classTimings.get(className);
+    return timing != null ? timing.wallMillis : null;
+  }
+
+  /** Returns the recorded duration of a test method, or null if it has no history. */
+  public Double getMethodMillis(String className, String methodName) {
+    Timing timing = methodTimings.get(methodKey(className, methodName));
+    return timing != null ? timing.wallMillis : null;
+  }
+
+  /** Returns the recorded timing of {@code className}, or null if it has no history. */
+  public Timing getClassTiming(String className) {
+    return classTimings.get(className);
+  }
+
+  /** Returns the recorded timing of a test method, or null if it has no history. */
+  public Timing getMethodTiming(String className, String methodName) {
+    return methodTimings.get(methodKey(className, methodName));
+  }
+
+  /**
+   * Returns the median of all recorded method durations. This is the cost assumed for test methods
+   * without any history, and is 1 when there is no history at all so that estimates degrade to
+   * counting test methods.
+   */
+  public double getMedianMethodMillis() {
+    return medianMethodMillis;
+  }
+
+  /**
+   * Estimates how long {@code className} takes to run. The recorded class duration is used when
+   * present, otherwise the recorded duration of each of {@code testMethodNames}, falling back to
+   * the median method duration for methods that have never been recorded.
+   */
+  public double estimateClassMillis(String className, List<String> testMethodNames) {
+    Timing recorded = classTimings.get(className);
+    if (recorded != null) {
+      return recorded.wallMillis;
+    }
+    if (testMethodNames.isEmpty()) {
+      // Runners such as Cucumber don't declare @Test methods; count them as a single method.
+      return medianMethodMillis;
+    }
+    double estimate = 0;
+    for (String methodName : testMethodNames) {
+      Timing methodTiming = methodTimings.get(methodKey(className, methodName));
+      estimate += methodTiming != null ? methodTiming.wallMillis : medianMethodMillis;
+    }
+    return estimate;
+  }
+
+  public boolean isEmpty() {
+    return classTimings.isEmpty() && methodTimings.isEmpty();
+  }
+
+  static String methodKey(String className, String methodName) {
+    return className + "#" + methodName;
+  }
+
+  private byte[] toGzippedRecords() throws IOException {
+    // Sorted so that compacted files are stable and compress well.
+    Map<String, HistoryRecord> records = new TreeMap<>();
+    classTimings.forEach((className, timing) ->
+        records.put(className, new HistoryRecord(className, "", timing)));
+    methodTimings.forEach((key, timing) -> {
+      int separator = key.lastIndexOf('#');
+      records.put(key, new HistoryRecord(key.substring(0, separator), key.substring(separator + 1), timing));
+    });
+    return gzip(records.values());
+  }
+
+  private static byte[] gzip(Collection<HistoryRecord> records) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (Writer writer = new OutputStreamWriter(
+        new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+      for (HistoryRecord record : records) {
+        record.writeTo(writer);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static InputStream open(Path path) throws IOException {
+    // Appends hold an exclusive lock, so sharing it keeps out half-written gzip members.
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, READ);
+         FileLock ignored = channel.lock(0, Long.MAX_VALUE, true)) {
+      buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) == -1) {
+          break;
+        }
+      }
+    }
+    InputStream in = new ByteArrayInputStream(buffer.array(), 0, buffer.position());
+    in.mark(2);
+    int magic = in.read() | (in.read() << 8);
+    in.reset();
+    return magic == GZIPInputStream.GZIP_MAGIC ? new GZIPInputStream(in) : in;
+  }
+
+  private static double median(double[] values) {
+    if (values.length == 0) {
+      return 1;
+    }
+    Arrays.sort(values);
+    int middle = values.length / 2;
+    return values.length % 2 == 1
+        ? values[middle]
+        : (values[middle - 1] + values[middle]) / 2;
+  }
+
+  /** Outcome of a test, ordered from best to worst. */
+  public enum Outcome {
+    PASSED("P"),
+    ASSUMPTION_FAILED("A"),
+    FAILED("F");
+
+    final String code;
+
+    Outcome(String code) {
+      this.code = code;
+    }
+
+    static Outcome fromCode(String code) {
+      for (Outcome outcome : values()) {
+        if (outcome.code.equals(code)) {
+          return outcome;
+        }
+      }
+      throw new IllegalArgumentException("Unknown test outcome " + code);
+    }
+  }
+
+  /** Moving averages of a test's durations and its most recent outcome. */
+  public static final class Timing {
+    public final double wallMillis;
+    public final double cpuMillis;
+    public final Outcome lastOutcome;
+    public final int samples;
+
+    public Timing(double wallMillis, double cpuMillis, Outcome lastOutcome, int samples) {
+      this.wallMillis = wallMillis;
+      this.cpuMillis = cpuMillis;
+      this.lastOutcome = lastOutcome;
+      this.samples = samples;
+    }
+
+    /** Returns this timing with a newer {@code sample} folded in. */
+    Timing update(Timing sample) {
+      // A record summarizing n samples weighs as much as n consecutive single samples.
+      double weight = 1 - Math.pow(1 - SAMPLE_WEIGHT, sample.samples);
+      return new Timing(
+          wallMillis + weight * (sample.wallMillis - wallMillis),
+          cpuMillis + weight * (sample.cpuMillis - cpuMillis),
+          sample.lastOutcome,
+          Math.min(MAX_SAMPLES, samples + sample.samples));
+    }
+  }
+
+  /** A single line of the history file. */
+  static final class HistoryRecord {
+    final String className;
+    final String methodName;
+    final Timing timing;
+
+    HistoryRecord(String className, String methodName, Timing timing) {
+      this.className = className;
+      this.methodName = methodName;
+      this.timing = timing;
+    }
+
+    void writeTo(Writer writer) throws IOException {
+      writer.append(className).append('\t')
+          .append(methodName).append('\t')
+          .append(formatMillis(timing.wallMillis)).append('\t')
+          .append(formatMillis(timing.cpuMillis)).append('\t')
+          .append(timing.lastOutcome.code).append('\t')
+          .append(Integer.toString(timing.samples)).append('\n');
+    }
+
+    private static String formatMillis(double millis) {
+      long tenths = Math.round(millis * 10);
+      return tenths % 10 == 0
+          ? Long.toString(tenths / 10)
+          : Long.toString(tenths / 10) + "." + (tenths % 10);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A queue of test classes shared by the chunks of one build, so that chunks which finish early
+ * take work from the ones that are still running.
+ *
+ * <p>Every chunk computes the same ordered list of work and walks it front to back, claiming each
+ * item that no other chunk has claimed yet. The queue lives in a directory shared by the chunks:
+ * {@code <suite>.queue} holds a fingerprint of the work and a claimed flag per item under a file
+ * lock, and {@code <suite>.log} records {@code index, chunk, item} for every claim. Passing that log to {@value
+ * #REPLAY_LOG_PROPERTY} reruns exactly what one chunk pulled, in the same order.
+ *
+ * <p>The directory must be fresh for each build, since a finished queue has no work left.
+ */
+final class WorkQueue {
+  /** System property naming the directory shared by the chunks. Dynamic sharding is off if unset. */
+  static final String QUEUE_DIR_PROPERTY = "square.test.workQueueDir";
+
+  /** System property naming a pull log to replay instead of pulling from the queue. */
+  static final String REPLAY_LOG_PROPERTY = "square.test.workQueueReplay";
+
+  private static final int FINGERPRINT_SIZE = 8;
+
+  private final int runChunk;
+  private final Map<String, Integer> indexes = new HashMap<>();
+  private final long fingerprint;
+  private final Path queueFile;
+  private final Path logFile;
+  private final Set<String> replayedItems;
+
+  private WorkQueue(String suiteName, List<String> items, int runChunk, Path directory,
+      Path replayLog) {
+    this.runChunk = runChunk;
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (int i = 0; i < items.size(); i++) {
+      indexes.put(items.get(i), i);
+      hasher.putString(items.get(i), StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    this.fingerprint = hasher.hash().asLong();
+    this.queueFile = directory != null ? directory.resolve(suiteName + ".queue") : null;
+    this.logFile = directory != null ? directory.resolve(suiteName + ".log") : null;
+    this.replayedItems = replayLog != null ? readLog(replayLog, suiteName, runChunk) : null;
+  }
+
+  /** Returns true if dynamic sharding is configured by system properties. */
+  static boolean isEnabled() {
+    return System.getProperty(QUEUE_DIR_PROPERTY) != null
+        || System.getProperty(REPLAY_LOG_PROPERTY) != null;
+  }
+
+  /**
+   * Returns the queue of {@code items} configured by system properties for {@code suiteName}, or
+   * null if dynamic sharding is off.
+   */
+  static WorkQueue get(String suiteName, List<String> items, int runChunk) {
+    String replayLog = System.getProperty(REPLAY_LOG_PROPERTY);
+    if (replayLog != null) {
+      return replay(suiteName, items, runChunk, Paths.get(replayLog));
+    }
+    String directory = System.getProperty(QUEUE_DIR_PROPERTY);
+    return directory != null ? open(suiteName, items, runChunk, Paths.get(directory)) : null;
+  }
+
+  static WorkQueue open(String suiteName, List<String> items, int runChunk, Path directory) {
+    return new WorkQueue(suiteName, ImmutableList.copyOf(items), runChunk, directory, null);
+  }
+
+  static WorkQueue replay(String suiteName, List<String> items, int runChunk, Path log) {
+    return new WorkQueue(suiteName, ImmutableList.copyOf(items), runChunk, null, log);
+  }
+
+  /** Returns the file claims are logged to, or null when replaying. */
+  Path getLogFile() {
+    return logFile;
+  }
+
+  /**
+   * Claims {@code item} for this chunk, returning false if another chunk has it. Items that aren't
+   * queued, such as {@code @RunTestOnShard} classes, always belong to this chunk.
+   */
+  boolean claim(String item) {
+    Integer index = indexes.get(item);
+    if (index == null) {
+      return true;
+    }
+    if (replayedItems != null) {
+      return replayedItems.contains(item);
+    }
+
+    // FileLock is held per JVM, so JVM-local chunks must also take turns.
+    synchronized (WorkQueue.class) {
+      return claim(item, index);
+    }
+  }
+
+  private boolean claim(String item, int index) {
+    try {
+      Files.createDirectories(queueFile.getParent());
+      try (FileChannel queue = FileChannel.open(queueFile, CREATE, READ, WRITE);
+           FileLock ignored = queue.lock()) {
+        ByteBuffer fingerprintBuffer = ByteBuffer.allocate(FINGERPRINT_SIZE);
+        if (queue.size() < FINGERPRINT_SIZE) {
+          fingerprintBuffer.putLong(0, fingerprint);
+          queue.write(fingerprintBuffer, 0);
+        } else {
+          readFully(queue, fingerprintBuffer, 0);
+          if (fingerprintBuffer.getLong(0) != fingerprint) {
+            throw new IllegalStateException(queueFile + " was created for a different set of "
+                + "tests. Use a fresh " + QUEUE_DIR_PROPERTY + " for each build, and the same "
+                + "class path and system properties on every chunk.");
+          }
+        }
+
+        long position = FINGERPRINT_SIZE + index;
+        ByteBuffer claimed = ByteBuffer.allocate(1);
+        if (queue.size() > position) {
+          readFully(queue, claimed, position);
+          if (claimed.get(0) != 0) {
+            return false;
+          }
+        }
+        queue.write(ByteBuffer.wrap(new byte[] {1}), position);
+        Files.write(logFile, (index + "\t" + runChunk + "\t" + item + "\n")
+            .getBytes(StandardCharsets.UTF_8), CREATE, WRITE, APPEND);
+        return true;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to claim " + item + " from " + queueFile, e);
+    }
+  }
+
+  @Override public String toString() {
+    return replayedItems != null
+        ? "replaying " + replayedItems.size() + " of " + indexes.size() + " classes"
+        : indexes.size() + " classes in " + queueFile;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of " + channel);
+      }
+    }
+  }
+
+  /** Returns the items {@code runChunk} claimed according to {@code log}. */
+  private static Set<String> readLog(Path log, String suiteName, int runChunk) {
+    try {
+      ImmutableSet.Builder<String> items = ImmutableSet.builder();
+      for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+        String[] fields = line.split("\t");
+        if (fields.length == 3 && Integer.parseInt(fields[1]) == runChunk) {
+          items.add(fields[2]);
+        }
+      }
+      return items.build();
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read " + suiteName + " work queue log " + log, e);
+    }
+  }
+}
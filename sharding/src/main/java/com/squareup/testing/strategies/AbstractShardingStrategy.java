@@ -2,17 +2,75 @@ package com.squareup.testing.strategies;
 
 import com.squareup.testing.ChunkConfig;
 import com.squareup.testing.ShardingStrategy;
+import com.squareup.testing.TestClassInfo;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 import org.junit.runner.manipulation.Filter;
 
 public abstract class AbstractShardingStrategy implements ShardingStrategy {
-  protected List<Class<?>> testClasses;
+  protected List<TestClassInfo> testClasses;
+  private final Map<Object, Object> memos = new HashMap<>();
 
-  @Override public void setTestClasses(List<Class<?>> testClasses) {
+  @Override public void setTestClasses(List<TestClassInfo> testClasses) {
     this.testClasses = testClasses;
+    synchronized (memos) {
+      memos.clear();
+    }
   }
 
   @Override public Filter getFilter(ChunkConfig chunkConfig) {
     return null;
   }
+
+  /**
+   * Returns the value {@code compute} derives from the test classes for {@code key}, computing it
+   * once per {@link #setTestClasses}. Strategies that assign every chunk at once memoize the
+   * assignment by chunk count, so that planning all of a suite's chunks assigns them once.
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> T memoize(Object key, Supplier<T> compute) {
+    synchronized (memos) {
+      return (T) memos.computeIfAbsent(key, k -> compute.get());
+    }
+  }
+
+  /**
+   * Passes each class pinned with {@code @RunTestOnShard} to {@code place} with its chunk. Pinned
+   * classes are placed before the others are balanced, so that they count towards their chunk's
+   * load.
+   */
+  static void placePinned(List<TestClassInfo> runTestOnShardTests,
+      ObjIntConsumer<TestClassInfo> place) {
+    for (TestClassInfo clazz : runTestOnShardTests) {
+      place.accept(clazz, clazz.getRunTestOnShard());
+    }
+  }
+
+  /**
+   * Passes each of {@code items} in turn to {@code assign} with the chunk that has the least
+   * estimated work so far, the first of equally loaded chunks, and adds the item's {@code millis}
+   * to that chunk in {@code millisPerChunk}. Items should be sorted longest first.
+   */
+  static <T> void assignToLeastLoaded(List<T> items, ToDoubleFunction<T> millis,
+      double[] millisPerChunk, ObjIntConsumer<T> assign) {
+    PriorityQueue<Integer> leastLoadedChunks = new PriorityQueue<>(
+        Math.max(1, millisPerChunk.length),
+        Comparator.<Integer>comparingDouble(chunk -> millisPerChunk[chunk])
+            .thenComparingInt(chunk -> chunk));
+    for (int i = 0; i < millisPerChunk.length; i++) {
+      leastLoadedChunks.add(i);
+    }
+    for (T item : items) {
+      int chunk = leastLoadedChunks.poll();
+      assign.accept(item, chunk);
+      millisPerChunk[chunk] += millis.applyAsDouble(item);
+      leastLoadedChunks.add(chunk);
+    }
+  }
 }
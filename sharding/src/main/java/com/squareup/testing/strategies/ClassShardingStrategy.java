@@ -4,8 +4,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
 import com.squareup.testing.ChunkConfig;
 import com.squareup.testing.ChunkIndexes;
-import com.squareup.testing.RunTestOnShard;
 import com.squareup.testing.ShardedTestType;
+import com.squareup.testing.TestClassInfo;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,17 +14,17 @@ import java.util.stream.Collectors;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class ClassShardingStrategy extends AbstractShardingStrategy {
-  @Override public List<Class<?>> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+  @Override public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
     checkNotNull(testClasses, "setTestClasses should be called before getClassesForChunk");
-    List<Class<?>> chunkTestClasses = new ArrayList<>();
+    List<TestClassInfo> chunkTestClasses = new ArrayList<>();
 
-    ListMultimap<ShardedTestType, Class<?>> testClassesByShardedTestType =
+    ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType =
         ShardedTestType.getTestClassesByShardedTestType(testClasses);
-    List<Class<?>> allRunTestOnShardTests = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
-    List<Class<?>> allSlowTests = testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST);
-    List<Class<?>> allNormalTests = testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST);
+    List<TestClassInfo> allRunTestOnShardTests = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
+    List<TestClassInfo> allSlowTests = testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST);
+    List<TestClassInfo> allNormalTests = testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST);
 
-    List<Class<?>> chunkSlowTests = ImmutableList.of();
+    List<TestClassInfo> chunkSlowTests = ImmutableList.of();
     if (!allSlowTests.isEmpty()) {
       ChunkIndexes indexes = chunkConfig.getChunkIndexes(allSlowTests.size());
       if (indexes.size() > 0) {
@@ -36,7 +36,7 @@ public class ClassShardingStrategy extends AbstractShardingStrategy {
       }
     }
 
-    List<Class<?>> chunkNormalTests = ImmutableList.of();
+    List<TestClassInfo> chunkNormalTests = ImmutableList.of();
     if (!allNormalTests.isEmpty()) {
       ChunkIndexes indexes = chunkConfig.getChunkIndexes(allNormalTests.size());
       if (indexes.size() > 0) {
@@ -48,9 +48,9 @@ public class ClassShardingStrategy extends AbstractShardingStrategy {
       }
     }
 
-    List<Class<?>> chunkRunTestOnShardTests = allRunTestOnShardTests.stream()
+    List<TestClassInfo> chunkRunTestOnShardTests = allRunTestOnShardTests.stream()
         .filter(clazz ->
-            clazz.getAnnotation(RunTestOnShard.class).value() == (chunkConfig.runChunk - 1))
+            clazz.getRunTestOnShard() == (chunkConfig.runChunk - 1))
         .collect(Collectors.toList());
     chunkTestClasses.addAll(chunkRunTestOnShardTests);
 
@@ -68,6 +68,6 @@ public class ClassShardingStrategy extends AbstractShardingStrategy {
       chunkRunTestOnShardTests.forEach(clazz -> out.printf(" - %s\n", clazz.getName()));
     }
 
-    return chunkTestClasses;
+    return chunkTestClasses.stream().map(TestClassInfo::getName).collect(Collectors.toList());
   }
 }
@@ -0,0 +1,185 @@
+package com.squareup.testing.strategies;
+
+import com.squareup.testing.TestClassInfo;
+import com.squareup.testing.TestTimings;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.junit.runner.Description;
+import org.junit.runner.Request;
+
+/**
+ * Partitions the scenarios of Cucumber runners across chunks for {@link MethodShardingStrategy},
+ * by feature or by scenario as {@value #CUCUMBER_SHARDING_PROPERTY} says. By default each Cucumber
+ * runner class runs whole on one chunk.
+ *
+ * <p>Scenarios are only known once a runner has parsed its features, so each Cucumber class is
+ * built to read its {@link Description}. Partitions are assigned longest first to the chunk with
+ * the least estimated work, counting the chunk's test methods, using the recorded duration of each
+ * scenario where there is one. Scenarios of a scenario outline share a name and run together.
+ * Runners whose scenarios can't be told apart, such as those reporting each step as a test, are
+ * sharded by class.
+ */
+public final class CucumberPartitioning {
+  /** System property naming how Cucumber runners are sharded: class, feature or scenario. */
+  public static final String CUCUMBER_SHARDING_PROPERTY = "square.test.cucumberSharding";
+
+  enum Granularity {
+    CLASS, FEATURE, SCENARIO
+  }
+
+  private CucumberPartitioning() {
+  }
+
+  static Granularity getGranularity() {
+    String value = System.getProperty(CUCUMBER_SHARDING_PROPERTY, "class");
+    try {
+      return Granularity.valueOf(value.trim().toUpperCase(Locale.US));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unexpected " + CUCUMBER_SHARDING_PROPERTY + " " + value
+          + ", expected class, feature or scenario", e);
+    }
+  }
+
+  /**
+   * Assigns the scenarios of {@code cucumberTests} to {@code millisPerChunk.length} chunks, on top
+   * of the estimated work each chunk already has.
+   */
+  static Assignment assign(List<TestClassInfo> cucumberTests, Granularity granularity,
+      TestTimings timings, double[] millisPerChunk) {
+    int chunks = millisPerChunk.length;
+    List<String> unpartitionedClasses = new ArrayList<>();
+    // Features are keyed by the class name of their scenarios' descriptions, which is what the
+    // filter sees. Runners that share a feature run its scenarios together.
+    Map<String, Partition> partitionsByKey = new TreeMap<>();
+    for (TestClassInfo testClass : cucumberTests) {
+      Map<String, List<String>> scenarios = getScenarios(testClass.getName());
+      if (scenarios == null) {
+        unpartitionedClasses.add(testClass.getName());
+        continue;
+      }
+      scenarios.forEach((feature, scenarioNames) -> {
+        for (String scenarioName : scenarioNames) {
+          String key = granularity == Granularity.FEATURE ? feature : feature + "#" + scenarioName;
+          partitionsByKey.computeIfAbsent(key, k -> new Partition(feature))
+              .add(testClass.getName(), scenarioName);
+        }
+      });
+    }
+
+    List<Partition> partitions = new ArrayList<>(partitionsByKey.values());
+    for (Partition partition : partitions) {
+      partition.estimateMillis(timings);
+    }
+    // Stable sort, so equal partitions keep the order of their keys.
+    partitions.sort(Comparator.<Partition>comparingDouble(partition -> partition.millis).reversed());
+
+    List<Map<String, Set<String>>> scenariosPerChunk = new ArrayList<>(chunks);
+    List<Set<String>> classesPerChunk = new ArrayList<>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      scenariosPerChunk.add(new TreeMap<>());
+      classesPerChunk.add(new LinkedHashSet<>());
+    }
+    AbstractShardingStrategy.assignToLeastLoaded(partitions, partition -> partition.millis,
+        millisPerChunk, (partition, chunk) -> {
+          scenariosPerChunk.get(chunk)
+              .computeIfAbsent(partition.feature, feature -> new TreeSet<>())
+              .addAll(partition.scenarioNames.keySet());
+          classesPerChunk.get(chunk).addAll(partition.classNames);
+        });
+
+    // The filter only runs the listed scenarios of a feature that is listed at all, so a chunk
+    // lists every feature of its runners, even those it runs none of.
+    for (int i = 0; i < chunks; i++) {
+      for (Partition partition : partitions) {
+        if (partition.classNames.stream().anyMatch(classesPerChunk.get(i)::contains)) {
+          scenariosPerChunk.get(i).computeIfAbsent(partition.feature, feature -> new TreeSet<>());
+        }
+      }
+    }
+    return new Assignment(scenariosPerChunk, classesPerChunk, unpartitionedClasses,
+        partitions.size());
+  }
+
+  /**
+   * Returns the names of the scenarios of each feature of the Cucumber runner {@code className},
+   * or null if they can't be told apart.
+   */
+  private static Map<String, List<String>> getScenarios(String className) {
+    Class<?> testClass;
+    try {
+      testClass = Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+    Description runner = Request.aClass(testClass).getRunner().getDescription();
+    Map<String, List<String>> scenarios = new LinkedHashMap<>();
+    for (Description feature : runner.getChildren()) {
+      if (!feature.isSuite()) {
+        // Such as the initializationError of a runner that failed to build.
+        return null;
+      }
+      for (Description scenario : feature.getChildren()) {
+        if (!scenario.isTest() || scenario.getMethodName() == null
+            || scenario.getTestClass() != null) {
+          return null;
+        }
+        scenarios.computeIfAbsent(scenario.getClassName(), key -> new ArrayList<>())
+            .add(scenario.getMethodName());
+      }
+    }
+    return scenarios;
+  }
+
+  /** A feature, or the scenarios of a feature that share a name, which run on one chunk. */
+  private static final class Partition {
+    final String feature;
+    final Set<String> classNames = new TreeSet<>();
+    /** The number of scenarios with each name, counted once per runner. */
+    final Map<String, Integer> scenarioNames = new TreeMap<>();
+    double millis;
+
+    Partition(String feature) {
+      this.feature = feature;
+    }
+
+    void add(String className, String scenarioName) {
+      classNames.add(className);
+      scenarioNames.merge(scenarioName, 1, Integer::sum);
+    }
+
+    void estimateMillis(TestTimings timings) {
+      scenarioNames.forEach((scenarioName, count) -> {
+        // Recorded durations of scenarios that share a name are summed, like parameterized tests.
+        Double recorded = timings.getMethodMillis(feature, scenarioName);
+        millis += recorded != null ? recorded : count * timings.getMedianMethodMillis();
+      });
+    }
+  }
+
+  static final class Assignment {
+    /** The scenario names each chunk runs, by feature. */
+    final List<Map<String, Set<String>>> scenariosPerChunk;
+    /** The Cucumber classes each chunk runs some scenarios of. */
+    final List<Set<String>> classesPerChunk;
+    /** Cucumber classes whose scenarios can't be partitioned, to shard by class. */
+    final List<String> unpartitionedClasses;
+    final int partitionCount;
+
+    Assignment(List<Map<String, Set<String>>> scenariosPerChunk,
+        List<Set<String>> classesPerChunk, List<String> unpartitionedClasses,
+        int partitionCount) {
+      this.scenariosPerChunk = scenariosPerChunk;
+      this.classesPerChunk = classesPerChunk;
+      this.unpartitionedClasses = unpartitionedClasses;
+      this.partitionCount = partitionCount;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package com.squareup.testing.strategies;
+
+import com.google.common.collect.ListMultimap;
+import com.squareup.testing.ChunkConfig;
+import com.squareup.testing.ShardedTestType;
+import com.squareup.testing.TestClassInfo;
+import com.squareup.testing.TestMethodFilter;
+import com.squareup.testing.TestMethodInfo;
+import com.squareup.testing.TestTimings;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.junit.runner.manipulation.Filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Shards by class like {@link TimingBalancedShardingStrategy}, but splits a class by method when
+ * it alone would take longer than a chunk's share of the suite. A split class runs on as few
+ * chunks as it needs, so most classes pay their setup once, and a chunk only filters methods if it
+ * runs part of a split class.
+ *
+ * <p>A class is split into as many parts as its estimated duration is longer than a chunk's share,
+ * with its methods balanced by duration across the parts. Slow classes without any timing history
+ * are split across every chunk by method, as {@link MethodSlowTestsShardingStrategy} does, since
+ * their duration can't be estimated. Classes pinned with {@code @RunTestOnShard} are never split.
+ */
+public class HybridShardingStrategy extends AbstractShardingStrategy {
+  private Map<String, Set<String>> chunkMethodNames;
+
+  @Override public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+    checkNotNull(testClasses, "setTestClasses should be called before getClassesForChunk");
+    Assignment assignment = memoize(chunkConfig.chunks, () -> assignChunks(chunkConfig.chunks));
+    List<Part> chunkParts = assignment.chunkedParts.get(chunkConfig.runChunk - 1);
+
+    // Parts of a split class that land on the same chunk run together.
+    Map<TestClassInfo, Set<String>> methodNamesByClass = new LinkedHashMap<>();
+    for (Part part : chunkParts) {
+      Set<String> methodNames =
+          methodNamesByClass.computeIfAbsent(part.clazz, clazz -> new TreeSet<>());
+      part.methods.forEach(method -> methodNames.add(method.getName()));
+    }
+    chunkMethodNames = new LinkedHashMap<>();
+    boolean splitClasses = false;
+    for (Map.Entry<TestClassInfo, Set<String>> entry : methodNamesByClass.entrySet()) {
+      chunkMethodNames.put(entry.getKey().getName(), entry.getValue());
+      splitClasses |= entry.getValue().size() < entry.getKey().getTestMethods().size();
+    }
+    if (!splitClasses) {
+      chunkMethodNames = null;
+    }
+
+    out.printf("*    Chunk Test Classes: %d\n", methodNamesByClass.size());
+    out.printf("*         Split Classes: %d\n", assignment.splitClassCount);
+    out.printf("*        Timing History: %s\n", assignment.timingHistory ? "yes" : "NONE");
+    out.print("****************************************************\n");
+    for (int i = 0; i < assignment.millisPerChunk.length; i++) {
+      out.printf("Chunk %d : estimatedMillis = %.0f\n", (i + 1), assignment.millisPerChunk[i]);
+    }
+    out.print("****************************************************\n");
+    out.print("Tests to run:\n");
+    methodNamesByClass.forEach((clazz, methodNames) -> {
+      if (methodNames.size() < clazz.getTestMethods().size()) {
+        out.printf(" - %s [SPLIT %d of %d methods]\n",
+            clazz.getName(), methodNames.size(), clazz.getTestMethods().size());
+      } else {
+        out.printf(" - %s\n", clazz.getName());
+      }
+    });
+
+    return methodNamesByClass.keySet().stream()
+        .map(TestClassInfo::getName)
+        .collect(Collectors.toList());
+  }
+
+  @Override public Filter getFilter(ChunkConfig chunkConfig) {
+    return chunkMethodNames != null ? TestMethodFilter.forTestClasses(chunkMethodNames) : null;
+  }
+
+  private Assignment assignChunks(int chunks) {
+    TestTimings timings = TestTimings.get();
+
+    ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType =
+        ShardedTestType.getTestClassesByShardedTestType(testClasses);
+    List<TestClassInfo> allRunTestOnShardTests = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
+    List<TestClassInfo> allSlowTests = testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST);
+    List<TestClassInfo> allNormalTests = testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST);
+
+    double[] millisPerChunk = new double[chunks];
+    List<List<Part>> chunkedParts = new ArrayList<>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      chunkedParts.add(new ArrayList<>());
+    }
+
+    placePinned(allRunTestOnShardTests, (clazz, chunk) -> {
+      Part part = new Part(clazz, clazz.getTestMethods(), estimateMillis(timings, clazz));
+      chunkedParts.get(chunk).add(part);
+      millisPerChunk[chunk] += part.millis;
+    });
+    double totalMillis = Arrays.stream(millisPerChunk).sum();
+    List<TestClassInfo> unpinnedTests = new ArrayList<>(allSlowTests);
+    unpinnedTests.addAll(allNormalTests);
+    for (TestClassInfo clazz : unpinnedTests) {
+      totalMillis += estimateMillis(timings, clazz);
+    }
+    double chunkShareMillis = totalMillis / chunks;
+
+    List<Part> parts = new ArrayList<>();
+    int splitClassCount = 0;
+    for (TestClassInfo clazz : unpinnedTests) {
+      List<Part> classParts = split(timings, clazz, chunks, chunkShareMillis);
+      if (classParts.size() > 1) {
+        splitClassCount++;
+      }
+      parts.addAll(classParts);
+    }
+    parts.sort(Comparator.<Part>comparingDouble(part -> part.millis).reversed()
+        .thenComparing(part -> part.clazz.getName()));
+
+    assignToLeastLoaded(parts, part -> part.millis, millisPerChunk,
+        (part, chunk) -> chunkedParts.get(chunk).add(part));
+    return new Assignment(chunkedParts, millisPerChunk, splitClassCount, !timings.isEmpty());
+  }
+
+  /**
+   * Returns {@code clazz} as one part if it fits in a chunk's share, or its methods balanced
+   * across as many parts as it takes.
+   */
+  private static List<Part> split(TestTimings timings, TestClassInfo clazz, int chunks,
+      double chunkShareMillis) {
+    double classMillis = estimateMillis(timings, clazz);
+    List<TestMethodInfo> methods = clazz.getTestMethods();
+    int partCount;
+    if (clazz.isSlow() && !hasHistory(timings, clazz)) {
+      partCount = chunks;
+    } else if (chunkShareMillis > 0 && classMillis > chunkShareMillis) {
+      partCount = (int) Math.min(chunks, Math.ceil(classMillis / chunkShareMillis));
+    } else {
+      partCount = 1;
+    }
+    partCount = Math.min(partCount, methods.size());
+    if (partCount <= 1) {
+      List<Part> whole = new ArrayList<>();
+      whole.add(new Part(clazz, methods, classMillis));
+      return whole;
+    }
+
+    // A recorded class duration includes its setup, so it's spread over the methods by count.
+    Double recordedClassMillis = timings.getClassMillis(clazz.getName());
+    List<TestMethodInfo> sortedMethods = new ArrayList<>(methods);
+    Map<TestMethodInfo, Double> methodMillis = new LinkedHashMap<>();
+    for (TestMethodInfo method : methods) {
+      Double recorded = timings.getMethodMillis(clazz.getName(), method.getName());
+      methodMillis.put(method, recordedClassMillis != null
+          ? recordedClassMillis / methods.size()
+          : recorded != null ? recorded : timings.getMedianMethodMillis());
+    }
+    sortedMethods.sort(Comparator.<TestMethodInfo>comparingDouble(methodMillis::get).reversed()
+        .thenComparing(TestMethodInfo::toString));
+
+    double[] millisPerPart = new double[partCount];
+    List<List<TestMethodInfo>> methodsPerPart = new ArrayList<>(partCount);
+    for (int i = 0; i < partCount; i++) {
+      methodsPerPart.add(new ArrayList<>());
+    }
+    assignToLeastLoaded(sortedMethods, methodMillis::get, millisPerPart,
+        (method, part) -> methodsPerPart.get(part).add(method));
+
+    List<Part> parts = new ArrayList<>(partCount);
+    for (int i = 0; i < partCount; i++) {
+      parts.add(new Part(clazz, methodsPerPart.get(i), millisPerPart[i]));
+    }
+    return parts;
+  }
+
+  private static boolean hasHistory(TestTimings timings, TestClassInfo clazz) {
+    if (timings.getClassMillis(clazz.getName()) != null) {
+      return true;
+    }
+    for (String methodName : clazz.getTestMethodNames()) {
+      if (timings.getMethodMillis(clazz.getName(), methodName) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static double estimateMillis(TestTimings timings, TestClassInfo clazz) {
+    return timings.estimateClassMillis(clazz.getName(), clazz.getTestMethodNames());
+  }
+
+  /** A whole class, or some of the methods of a split class. */
+  private static class Part {
+    final TestClassInfo clazz;
+    final List<TestMethodInfo> methods;
+    final double millis;
+
+    Part(TestClassInfo clazz, List<TestMethodInfo> methods, double millis) {
+      this.clazz = clazz;
+      this.methods = methods;
+      this.millis = millis;
+    }
+  }
+
+  private static class Assignment {
+    final List<List<Part>> chunkedParts;
+    final double[] millisPerChunk;
+    final int splitClassCount;
+    final boolean timingHistory;
+
+    Assignment(List<List<Part>> chunkedParts, double[] millisPerChunk, int splitClassCount,
+        boolean timingHistory) {
+      this.chunkedParts = chunkedParts;
+      this.millisPerChunk = millisPerChunk;
+      this.splitClassCount = splitClassCount;
+      this.timingHistory = timingHistory;
+    }
+  }
+}
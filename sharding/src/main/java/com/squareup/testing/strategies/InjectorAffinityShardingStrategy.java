@@ -0,0 +1,182 @@
+package com.squareup.testing.strategies;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.squareup.testing.ChunkConfig;
+import com.squareup.testing.ChunkIndexes;
+import com.squareup.testing.ShardedTestType;
+import com.squareup.testing.TestClassInfo;
+import com.squareup.testing.TestOrderings;
+import com.squareup.testing.TestTimings;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Shards by class, keeping classes that share a Guice injector on the same chunk so that each
+ * injector is built once per build rather than once per chunk. See {@link
+ * TestClassInfo#getInjectorKey}.
+ *
+ * <p>Classes are grouped by injector, and groups are assigned longest first to the chunk with the
+ * least estimated work, as in {@link TimingBalancedShardingStrategy}. A group follows any of its
+ * classes that is pinned with {@code @RunTestOnShard}. The plan reports the injectors each chunk
+ * builds, next to the number it would build with {@link ClassShardingStrategy}.
+ */
+public class InjectorAffinityShardingStrategy extends AbstractShardingStrategy {
+  @Override public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+    checkNotNull(testClasses, "setTestClasses should be called before getClassesForChunk");
+    Assignment assignment = memoize(chunkConfig.chunks, () -> assignChunks(chunkConfig.chunks));
+
+    List<TestClassInfo> chunkTestClasses =
+        new ArrayList<>(assignment.chunkedTestClasses.get(chunkConfig.runChunk - 1));
+    chunkTestClasses.sort(TestOrderings.INJECTOR_AFFINITY);
+
+    out.printf("*    Chunk Test Classes: %d\n", chunkTestClasses.size());
+    out.printf("*       Injector Groups: %d\n", assignment.groupCount);
+    out.print("****************************************************\n");
+    for (int i = 0; i < assignment.millisPerChunk.length; i++) {
+      out.printf("Chunk %d : estimatedMillis = %.0f, injectors = %d (%d with CLASS sharding)\n",
+          (i + 1), assignment.millisPerChunk[i],
+          countInjectors(assignment.chunkedTestClasses.get(i)),
+          assignment.classShardingInjectors[i]);
+    }
+    out.print("****************************************************\n");
+    out.print("Tests to run:\n");
+    chunkTestClasses.forEach(clazz -> out.printf(" - %s%s\n", clazz.getName(),
+        clazz.getInjectorKey() != null ? " [" + clazz.getInjectorKey() + "]" : ""));
+
+    return chunkTestClasses.stream().map(TestClassInfo::getName).collect(Collectors.toList());
+  }
+
+  private Assignment assignChunks(int chunks) {
+    TestTimings timings = TestTimings.get();
+
+    ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType =
+        ShardedTestType.getTestClassesByShardedTestType(testClasses);
+    List<TestClassInfo> allRunTestOnShardTests = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
+    List<TestClassInfo> allSlowTests = testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST);
+    List<TestClassInfo> allNormalTests = testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST);
+
+    double[] millisPerChunk = new double[chunks];
+    List<List<TestClassInfo>> chunkedTestClasses = new ArrayList<>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      chunkedTestClasses.add(Lists.newArrayList());
+    }
+
+    Map<String, Integer> pinnedChunks = new HashMap<>();
+    placePinned(allRunTestOnShardTests, (clazz, chunk) -> {
+      chunkedTestClasses.get(chunk).add(clazz);
+      millisPerChunk[chunk] += estimateMillis(timings, clazz);
+      if (clazz.getInjectorKey() != null) {
+        pinnedChunks.putIfAbsent(clazz.getInjectorKey(), chunk);
+      }
+    });
+
+    // Classes without an injector are groups of their own.
+    Map<String, InjectorGroup> groupsByKey = new LinkedHashMap<>();
+    List<TestClassInfo> unpinnedTests = new ArrayList<>(allSlowTests);
+    unpinnedTests.addAll(allNormalTests);
+    for (TestClassInfo clazz : unpinnedTests) {
+      String key = clazz.getInjectorKey() != null ? clazz.getInjectorKey() : clazz.getName();
+      groupsByKey.computeIfAbsent(key, InjectorGroup::new).add(clazz, estimateMillis(timings, clazz));
+    }
+    List<InjectorGroup> groups = new ArrayList<>(groupsByKey.values());
+    groups.sort(Comparator.<InjectorGroup>comparingDouble(group -> group.millis).reversed()
+        .thenComparing(group -> group.key));
+
+    // Groups that follow a pinned class go to its chunk before the others are balanced.
+    List<InjectorGroup> unpinnedGroups = new ArrayList<>();
+    for (InjectorGroup group : groups) {
+      Integer chunk = pinnedChunks.get(group.key);
+      if (chunk != null) {
+        chunkedTestClasses.get(chunk).addAll(group.testClasses);
+        millisPerChunk[chunk] += group.millis;
+      } else {
+        unpinnedGroups.add(group);
+      }
+    }
+    assignToLeastLoaded(unpinnedGroups, group -> group.millis, millisPerChunk,
+        (group, chunk) -> chunkedTestClasses.get(chunk).addAll(group.testClasses));
+
+    int[] classShardingInjectors = new int[chunks];
+    for (int i = 0; i < chunks; i++) {
+      classShardingInjectors[i] = countInjectors(classShardingChunk(chunks, i + 1,
+          allRunTestOnShardTests, allSlowTests, allNormalTests));
+    }
+    return new Assignment(chunkedTestClasses, millisPerChunk, groups.size(),
+        classShardingInjectors);
+  }
+
+  /** Returns the classes {@link ClassShardingStrategy} assigns to {@code runChunk}. */
+  private static List<TestClassInfo> classShardingChunk(int chunks, int runChunk,
+      List<TestClassInfo> allRunTestOnShardTests, List<TestClassInfo> allSlowTests,
+      List<TestClassInfo> allNormalTests) {
+    ChunkConfig chunkConfig = new ChunkConfig(chunks, runChunk, true);
+    List<TestClassInfo> chunkTestClasses = new ArrayList<>();
+    for (List<TestClassInfo> testClasses : Lists.newArrayList(allSlowTests, allNormalTests)) {
+      List<TestClassInfo> sorted = new ArrayList<>(testClasses);
+      sorted.sort(TestOrderings.NAME);
+      ChunkIndexes indexes = chunkConfig.getChunkIndexes(sorted.size());
+      if (indexes.size() > 0) {
+        chunkTestClasses.addAll(sorted.subList(indexes.getStartIndex(), indexes.getEndIndex()));
+      }
+    }
+    allRunTestOnShardTests.stream()
+        .filter(clazz -> clazz.getRunTestOnShard() == runChunk - 1)
+        .forEach(chunkTestClasses::add);
+    return chunkTestClasses;
+  }
+
+  private static int countInjectors(List<TestClassInfo> testClasses) {
+    Set<String> injectorKeys = new HashSet<>();
+    for (TestClassInfo clazz : testClasses) {
+      if (clazz.getInjectorKey() != null) {
+        injectorKeys.add(clazz.getInjectorKey());
+      }
+    }
+    return injectorKeys.size();
+  }
+
+  private double estimateMillis(TestTimings timings, TestClassInfo clazz) {
+    return timings.estimateClassMillis(clazz.getName(), clazz.getTestMethodNames());
+  }
+
+  private static class Assignment {
+    final List<List<TestClassInfo>> chunkedTestClasses;
+    final double[] millisPerChunk;
+    final int groupCount;
+    final int[] classShardingInjectors;
+
+    Assignment(List<List<TestClassInfo>> chunkedTestClasses, double[] millisPerChunk,
+        int groupCount, int[] classShardingInjectors) {
+      this.chunkedTestClasses = chunkedTestClasses;
+      this.millisPerChunk = millisPerChunk;
+      this.groupCount = groupCount;
+      this.classShardingInjectors = classShardingInjectors;
+    }
+  }
+
+  private static class InjectorGroup {
+    final String key;
+    final List<TestClassInfo> testClasses = new ArrayList<>();
+    double millis;
+
+    InjectorGroup(String key) {
+      this.key = key;
+    }
+
+    void add(TestClassInfo clazz, double millis) {
+      testClasses.add(clazz);
+      this.millis += millis;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.squareup.testing.strategies;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.squareup.testing.ChunkConfig;
+import com.squareup.testing.ChunkIndexes;
+import com.squareup.testing.TestClassInfo;
+import com.squareup.testing.TestMethodInfo;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Partitioning shared by the strategies that shard by test method. Sort keys are computed once per
+ * method rather than once per comparison, so planning stays O(n log n) in the number of methods.
+ */
+final class MethodPartitioning {
+  private static final HashFunction MURMUR = Hashing.murmur3_32();
+
+  private MethodPartitioning() {
+  }
+
+  /** A key that spreads methods evenly over chunks, independent of their class. */
+  static String hashKey(TestMethodInfo method) {
+    return MURMUR.hashString(method.toString(), Charset.defaultCharset()).toString();
+  }
+
+  static List<TestMethodInfo> getTestMethods(Collection<TestClassInfo> testClasses) {
+    List<TestMethodInfo> testMethods = new ArrayList<>();
+    for (TestClassInfo testClass : testClasses) {
+      testMethods.addAll(testClass.getTestMethods());
+    }
+    return testMethods;
+  }
+
+  /** Returns {@code methods} sorted by {@code sortKey}, which is called once per method. */
+  static List<TestMethodInfo> sorted(List<TestMethodInfo> methods,
+      Function<TestMethodInfo, String> sortKey) {
+    List<KeyedMethod> keyedMethods = new ArrayList<>(methods.size());
+    for (TestMethodInfo method : methods) {
+      keyedMethods.add(new KeyedMethod(sortKey.apply(method), method));
+    }
+    keyedMethods.sort(Comparator.comparing(keyedMethod -> keyedMethod.key));
+
+    List<TestMethodInfo> result = new ArrayList<>(keyedMethods.size());
+    for (KeyedMethod keyedMethod : keyedMethods) {
+      result.add(keyedMethod.method);
+    }
+    return result;
+  }
+
+  /** Returns this chunk's contiguous share of {@code sortedMethods}. */
+  static List<TestMethodInfo> slice(List<TestMethodInfo> sortedMethods, ChunkConfig chunkConfig) {
+    ChunkIndexes chunkIndexes = chunkConfig.getChunkIndexes(sortedMethods.size());
+    if (chunkIndexes.size() <= 0) {
+      return ImmutableList.of();
+    }
+    return sortedMethods.subList(chunkIndexes.getStartIndex(), chunkIndexes.getEndIndex());
+  }
+
+  private static final class KeyedMethod {
+    final String key;
+    final TestMethodInfo method;
+
+    KeyedMethod(String key, TestMethodInfo method) {
+      this.key = key;
+      this.method = method;
+    }
+  }
+}
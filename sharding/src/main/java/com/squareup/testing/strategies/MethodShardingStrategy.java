@@ -1,27 +1,22 @@
 package com.squareup.testing.strategies;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 import com.squareup.testing.ChunkConfig;
 import com.squareup.testing.ChunkIndexes;
-import com.squareup.testing.RunTestOnShard;
 import com.squareup.testing.ShardedTestType;
+import com.squareup.testing.TestClassInfo;
 import com.squareup.testing.TestMethodFilter;
+import com.squareup.testing.TestMethodInfo;
+import com.squareup.testing.TestTimings;
 import cucumber.api.junit.Cucumber;
 import java.io.PrintStream;
-import java.lang.reflect.Method;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
-import org.junit.Test;
-import org.junit.runner.RunWith;
 import org.junit.runner.manipulation.Filter;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -29,100 +24,120 @@ import static com.google.common.base.Preconditions.checkNotNull;
 // TODO: Still doesn't work if a parent test class with an @Test method is not included on the same
 // shard as the derived class
 public class MethodShardingStrategy extends AbstractShardingStrategy {
-  private List<Method> chunkTestMethods;
-  private HashFunction murmur = Hashing.murmur3_32();
+  private List<TestMethodInfo> chunkTestMethods;
+  private Map<String, Set<String>> chunkScenarios;
 
   @Override
-  public List<Class<?>> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+  public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
     checkNotNull(testClasses, "setTestClasses should be called before getClassesForChunk");
     chunkTestMethods = new ArrayList<>();
 
-    ListMultimap<ShardedTestType, Class<?>> testClassesByShardedTestType =
+    ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType =
         ShardedTestType.getTestClassesByShardedTestType(testClasses);
 
     chunkTestMethods.addAll(getChunkTestMethods(chunkConfig, testClassesByShardedTestType));
 
     // Shard methods from @RunTestOnShard Tests by test class with round-robin sharding
-    List<Class<?>> allRunTestOnShardTestClasses = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
-    List<Method> chunkRunTestOnShardMethods = Lists.newArrayList();
-    for (Class runTestOnShardTestClass : allRunTestOnShardTestClasses) {
-      int chunk = ((RunTestOnShard) runTestOnShardTestClass.getAnnotation(RunTestOnShard.class)).value();
+    List<TestClassInfo> allRunTestOnShardTestClasses = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
+    Set<TestMethodInfo> chunkRunTestOnShardMethods = Sets.newHashSet();
+    for (TestClassInfo runTestOnShardTestClass : allRunTestOnShardTestClasses) {
+      int chunk = runTestOnShardTestClass.getRunTestOnShard();
       if (chunk == (chunkConfig.runChunk - 1)) {
-        List<Method> runTestOnShardTestMethods = getTestMethods(runTestOnShardTestClass);
+        List<TestMethodInfo> runTestOnShardTestMethods = runTestOnShardTestClass.getTestMethods();
         chunkRunTestOnShardMethods.addAll(runTestOnShardTestMethods);
         chunkTestMethods.addAll(runTestOnShardTestMethods);
       }
     }
 
     // Shard Cucumber test classes
-    final List<Class<?>> chunkCucumberTests;
-    List<Class<?>> allCucumberTests = this.testClasses.stream()
-        .filter(testClass -> {
-          RunWith runWith = testClass.getAnnotation(RunWith.class);
-          return runWith != null && Cucumber.class.isAssignableFrom(runWith.value());
-        }).collect(Collectors.toList());
-    ChunkIndexes cucumberIndexes = chunkConfig.getChunkIndexes(allCucumberTests.size());
+    List<TestClassInfo> allCucumberTests = this.testClasses.stream()
+        .filter(testClass -> testClass.runsWith(Cucumber.class))
+        .collect(Collectors.toList());
+    List<String> chunkCucumberTests = new ArrayList<>();
+    chunkScenarios = ImmutableMap.of();
+    CucumberPartitioning.Granularity granularity = CucumberPartitioning.getGranularity();
+    List<TestClassInfo> classShardedCucumberTests = allCucumberTests;
+    if (granularity != CucumberPartitioning.Granularity.CLASS && !allCucumberTests.isEmpty()) {
+      List<TestMethodInfo> sortedTestMethods = getSortedTestMethods(testClassesByShardedTestType);
+      CucumberPartitioning.Assignment assignment = memoize("cucumber" + chunkConfig.chunks,
+          () -> assignCucumberTests(allCucumberTests, granularity, chunkConfig.chunks,
+              sortedTestMethods));
+      chunkCucumberTests.addAll(assignment.classesPerChunk.get(chunkConfig.runChunk - 1));
+      chunkScenarios = assignment.scenariosPerChunk.get(chunkConfig.runChunk - 1);
+      classShardedCucumberTests = allCucumberTests.stream()
+          .filter(testClass -> assignment.unpartitionedClasses.contains(testClass.getName()))
+          .collect(Collectors.toList());
+    }
+    ChunkIndexes cucumberIndexes = chunkConfig.getChunkIndexes(classShardedCucumberTests.size());
     if (cucumberIndexes.size() > 0) {
-      chunkCucumberTests = allCucumberTests.subList(cucumberIndexes.getStartIndex(), cucumberIndexes.getEndIndex());
-    } else {
-      chunkCucumberTests = ImmutableList.of();
+      classShardedCucumberTests
+          .subList(cucumberIndexes.getStartIndex(), cucumberIndexes.getEndIndex())
+          .forEach(testClass -> chunkCucumberTests.add(testClass.getName()));
     }
 
-    chunkTestMethods.sort(Comparator.comparing(Method::toString));
+    chunkTestMethods = MethodPartitioning.sorted(chunkTestMethods, TestMethodInfo::toString);
 
     out.print("*************** METHOD PARTITIONING ****************\n");
     out.printf("*            Test Methods: %d\n", chunkTestMethods.size());
     out.printf("* @RunTestOnShard Methods: %d\n", chunkRunTestOnShardMethods.size());
+    if (!chunkScenarios.isEmpty()) {
+      out.printf("*      Cucumber Scenarios: %d\n",
+          chunkScenarios.values().stream().mapToInt(Set::size).sum());
+    }
     out.print("****************************************************\n");
     chunkTestMethods.forEach(method -> {
       out.printf(" - %s#%s%s\n",
-          method.getDeclaringClass().getCanonicalName(),
+          method.getDeclaringClassName().replace('$', '.'),
           method.getName(),
           chunkRunTestOnShardMethods.contains(method) ? " [RUN_ON_SHARD]" : "");
     });
+    chunkScenarios.forEach((feature, scenarioNames) -> scenarioNames.forEach(
+        scenarioName -> out.printf(" - %s#%s [CUCUMBER]\n", feature, scenarioName)));
 
-    Set<Class<?>> chunkTestClasses = Sets.newHashSet();
-    chunkTestMethods.forEach(method -> chunkTestClasses.add(method.getDeclaringClass()));
+    Set<String> chunkTestClasses = Sets.newHashSet();
+    chunkTestMethods.forEach(method -> chunkTestClasses.add(method.getDeclaringClassName()));
     chunkTestClasses.addAll(chunkCucumberTests);
     return new ArrayList<>(chunkTestClasses);
   }
 
   @Override
   public Filter getFilter(ChunkConfig chunkConfig) {
-    return new TestMethodFilter(chunkTestMethods);
+    return TestMethodFilter.forTestMethods(chunkTestMethods, chunkScenarios);
   }
 
-  private List<Method> getChunkTestMethods(ChunkConfig chunkConfig,
-      ListMultimap<ShardedTestType, Class<?>> testClassesByShardedTestType) {
-    List<Method> allTestMethods = new ArrayList<>();
-
-    allTestMethods.addAll(getTestMethods(testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST)));
-    allTestMethods.addAll(getTestMethods(testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST)));
-
-    allTestMethods.sort(Comparator.comparing(method -> murmur.hashString(method.toString(),
-        Charset.defaultCharset()).toString()));
-    ChunkIndexes chunkIndexes = chunkConfig.getChunkIndexes(allTestMethods.size());
-    if (chunkIndexes.size() > 0) {
-      chunkTestMethods = allTestMethods.subList(chunkIndexes.getStartIndex(), chunkIndexes.getEndIndex());
+  /**
+   * Assigns the scenarios of {@code cucumberTests} to chunks on top of the methods each chunk
+   * runs, which are estimated from their recorded durations.
+   */
+  private CucumberPartitioning.Assignment assignCucumberTests(List<TestClassInfo> cucumberTests,
+      CucumberPartitioning.Granularity granularity, int chunks,
+      List<TestMethodInfo> sortedTestMethods) {
+    TestTimings timings = TestTimings.get();
+    double[] millisPerChunk = new double[chunks];
+    for (int i = 0; i < chunks; i++) {
+      ChunkConfig config = new ChunkConfig(chunks, i + 1, true);
+      for (TestMethodInfo method : MethodPartitioning.slice(sortedTestMethods, config)) {
+        Double recorded = timings.getMethodMillis(method.getDeclaringClassName(), method.getName());
+        millisPerChunk[i] += recorded != null ? recorded : timings.getMedianMethodMillis();
+      }
     }
-    return chunkTestMethods;
+    return CucumberPartitioning.assign(cucumberTests, granularity, timings, millisPerChunk);
   }
 
-  private List<Method> getTestMethods(List<Class<?>> slowTests) {
-    List<Method> testMethods = Lists.newArrayList();
-    for (Class testClass : slowTests) {
-      testMethods.addAll(getTestMethods(testClass));
-    }
-    return testMethods;
+  private List<TestMethodInfo> getChunkTestMethods(ChunkConfig chunkConfig,
+      ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType) {
+    return MethodPartitioning.slice(getSortedTestMethods(testClassesByShardedTestType), chunkConfig);
   }
 
-  private List<Method> getTestMethods(Class<?> testClass) {
-    List<Method> testMethods = Lists.newArrayList();
-    for (Method method : testClass.getMethods()) {
-      if (method.isAnnotationPresent(Test.class)) {
-        testMethods.add(method);
-      }
-    }
-    return testMethods;
+  private List<TestMethodInfo> getSortedTestMethods(
+      ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType) {
+    return memoize("sortedTestMethods", () -> {
+      List<TestMethodInfo> allTestMethods = new ArrayList<>();
+      allTestMethods.addAll(MethodPartitioning.getTestMethods(
+          testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST)));
+      allTestMethods.addAll(MethodPartitioning.getTestMethods(
+          testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST)));
+      return MethodPartitioning.sorted(allTestMethods, MethodPartitioning::hashKey);
+    });
   }
 }
@@ -0,0 +1,184 @@
+package com.squareup.testing.strategies;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.squareup.testing.ChunkConfig;
+import com.squareup.testing.ShardedTestType;
+import com.squareup.testing.TestClassInfo;
+import com.squareup.testing.TestResource;
+import com.squareup.testing.TestResources;
+import com.squareup.testing.TestTimings;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Shards by class, spreading each kind of {@link TestResource} evenly across chunks as well as
+ * their estimated duration, so that one chunk doesn't run every browser test while another runs
+ * every database test. See {@link TestResources}.
+ *
+ * <p>Each chunk's load is a vector of its estimated duration and its count of each resource, each
+ * relative to a chunk's share of the suite's total. Classes are assigned in decreasing order of
+ * their largest share to the chunk whose largest load would be smallest with them, as in vector
+ * bin packing, or if that ties, to the chunk that has the least of what the class needs. Classes
+ * that need no resources still balance the duration.
+ */
+public class ResourceBalancedShardingStrategy extends AbstractShardingStrategy {
+  private static final TestResource[] RESOURCES = TestResource.values();
+  /** The index of the duration in a load vector, after the resources. */
+  private static final int MILLIS = RESOURCES.length;
+
+  @Override public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+    checkNotNull(testClasses, "setTestClasses should be called before getClassesForChunk");
+    Assignment assignment = memoize(chunkConfig.chunks, () -> assignChunks(chunkConfig.chunks));
+    List<TestClassInfo> chunkTestClasses =
+        assignment.chunkedTestClasses.get(chunkConfig.runChunk - 1);
+
+    out.printf("*    Chunk Test Classes: %d\n", chunkTestClasses.size());
+    out.printf("*        Timing History: %s\n", assignment.timingHistory ? "yes" : "NONE");
+    out.print("****************************************************\n");
+    for (int i = 0; i < assignment.loadPerChunk.length; i++) {
+      double[] load = assignment.loadPerChunk[i];
+      StringBuilder line = new StringBuilder()
+          .append(String.format("Chunk %d : estimatedMillis = %.0f", (i + 1), load[MILLIS]));
+      for (TestResource resource : RESOURCES) {
+        if (assignment.totals[resource.ordinal()] > 0) {
+          line.append(String.format(", %s = %.0f", resource, load[resource.ordinal()]));
+        }
+      }
+      out.print(line.append('\n'));
+    }
+    out.print("****************************************************\n");
+    out.print("Tests to run:\n");
+    chunkTestClasses.forEach(clazz -> out.printf(" - %s%s\n", clazz.getName(),
+        clazz.getResources().isEmpty() ? "" : " " + clazz.getResources()));
+
+    return chunkTestClasses.stream().map(TestClassInfo::getName).collect(Collectors.toList());
+  }
+
+  private Assignment assignChunks(int chunks) {
+    TestTimings timings = TestTimings.get();
+
+    ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType =
+        ShardedTestType.getTestClassesByShardedTestType(testClasses);
+    List<TestClassInfo> allRunTestOnShardTests = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
+    List<TestClassInfo> allSlowTests = testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST);
+    List<TestClassInfo> allNormalTests = testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST);
+
+    double[][] loadPerChunk = new double[chunks][MILLIS + 1];
+    List<List<TestClassInfo>> chunkedTestClasses = new ArrayList<>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      chunkedTestClasses.add(Lists.newArrayList());
+    }
+
+    double[] totals = new double[MILLIS + 1];
+    for (TestClassInfo clazz : testClasses) {
+      add(totals, footprint(timings, clazz));
+    }
+
+    placePinned(allRunTestOnShardTests, (clazz, chunk) -> {
+      chunkedTestClasses.get(chunk).add(clazz);
+      add(loadPerChunk[chunk], footprint(timings, clazz));
+    });
+
+    // A chunk's share of each dimension, so that seconds and browsers can be compared.
+    double[] shares = new double[MILLIS + 1];
+    for (int i = 0; i < shares.length; i++) {
+      shares[i] = totals[i] / chunks;
+    }
+
+    List<Item> items = new ArrayList<>();
+    for (List<TestClassInfo> tests : Lists.newArrayList(allSlowTests, allNormalTests)) {
+      for (TestClassInfo clazz : tests) {
+        double[] footprint = footprint(timings, clazz);
+        items.add(new Item(clazz, footprint, maxShare(footprint, shares)));
+      }
+    }
+    items.sort(Comparator.<Item>comparingDouble(item -> item.size).reversed()
+        .thenComparing(item -> item.clazz.getName()));
+
+    for (Item item : items) {
+      int bestChunk = 0;
+      double bestMax = Double.MAX_VALUE;
+      double bestOverlap = Double.MAX_VALUE;
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        double max = 0;
+        double overlap = 0;
+        for (int i = 0; i < shares.length; i++) {
+          if (shares[i] > 0) {
+            double load = loadPerChunk[chunk][i] / shares[i];
+            double size = item.footprint[i] / shares[i];
+            max = Math.max(max, load + size);
+            overlap += load * size;
+          }
+        }
+        // Ties on the largest load go to the chunk that has the least of what the class needs.
+        if (max < bestMax || (max == bestMax && overlap < bestOverlap)) {
+          bestChunk = chunk;
+          bestMax = max;
+          bestOverlap = overlap;
+        }
+      }
+      chunkedTestClasses.get(bestChunk).add(item.clazz);
+      add(loadPerChunk[bestChunk], item.footprint);
+    }
+    return new Assignment(chunkedTestClasses, loadPerChunk, totals, !timings.isEmpty());
+  }
+
+  private static double[] footprint(TestTimings timings, TestClassInfo clazz) {
+    double[] footprint = new double[MILLIS + 1];
+    for (Map.Entry<TestResource, Integer> resource : clazz.getResources().entrySet()) {
+      footprint[resource.getKey().ordinal()] = resource.getValue();
+    }
+    footprint[MILLIS] = timings.estimateClassMillis(clazz.getName(), clazz.getTestMethodNames());
+    return footprint;
+  }
+
+  private static double maxShare(double[] footprint, double[] shares) {
+    double max = 0;
+    for (int i = 0; i < shares.length; i++) {
+      if (shares[i] > 0) {
+        max = Math.max(max, footprint[i] / shares[i]);
+      }
+    }
+    return max;
+  }
+
+  private static void add(double[] load, double[] footprint) {
+    for (int i = 0; i < load.length; i++) {
+      load[i] += footprint[i];
+    }
+  }
+
+  private static class Item {
+    final TestClassInfo clazz;
+    final double[] footprint;
+    final double size;
+
+    Item(TestClassInfo clazz, double[] footprint, double size) {
+      this.clazz = clazz;
+      this.footprint = footprint;
+      this.size = size;
+    }
+  }
+
+  private static class Assignment {
+    final List<List<TestClassInfo>> chunkedTestClasses;
+    final double[][] loadPerChunk;
+    final double[] totals;
+    final boolean timingHistory;
+
+    Assignment(List<List<TestClassInfo>> chunkedTestClasses, double[][] loadPerChunk,
+        double[] totals, boolean timingHistory) {
+      this.chunkedTestClasses = chunkedTestClasses;
+      this.loadPerChunk = loadPerChunk;
+      this.totals = totals;
+      this.timingHistory = timingHistory;
+    }
+  }
+}
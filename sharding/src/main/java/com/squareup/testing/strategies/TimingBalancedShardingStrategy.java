@@ -0,0 +1,103 @@
+package com.squareup.testing.strategies;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.squareup.testing.ChunkConfig;
+import com.squareup.testing.ShardedTestType;
+import com.squareup.testing.TestClassInfo;
+import com.squareup.testing.TestTimings;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Shards by class, balancing the recorded duration of each chunk rather than the number of
+ * classes. Classes are assigned longest first to the chunk with the least estimated work. See
+ * {@link TestTimings} for how classes without a recorded duration are estimated.
+ */
+public class TimingBalancedShardingStrategy extends AbstractShardingStrategy {
+  @Override public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+    checkNotNull(testClasses, "setTestClasses should be called before getClassesForChunk");
+    Assignment assignment = memoize(chunkConfig.chunks, () -> assignChunks(chunkConfig.chunks));
+    double[] millisPerChunk = assignment.millisPerChunk;
+    List<TestClassInfo> chunkTestClasses = assignment.chunkedTestClasses.get(chunkConfig.runChunk - 1);
+
+    out.printf("*    Chunk Test Classes: %d\n", chunkTestClasses.size());
+    out.printf("*        Timing History: %s\n", assignment.timingHistory ? "yes" : "NONE");
+    out.print("****************************************************\n");
+    for (int i = 0; i < millisPerChunk.length; i++) {
+      out.printf("Chunk %d : estimatedMillis = %.0f\n", (i + 1), millisPerChunk[i]);
+    }
+    out.print("****************************************************\n");
+    out.print("Tests to run:\n");
+    chunkTestClasses.forEach(clazz -> out.printf(" - %s\n", clazz.getName()));
+
+    return chunkTestClasses.stream().map(TestClassInfo::getName).collect(Collectors.toList());
+  }
+
+  private Assignment assignChunks(int chunks) {
+    TestTimings timings = TestTimings.get();
+
+    ListMultimap<ShardedTestType, TestClassInfo> testClassesByShardedTestType =
+        ShardedTestType.getTestClassesByShardedTestType(testClasses);
+    List<TestClassInfo> allRunTestOnShardTests = testClassesByShardedTestType.get(ShardedTestType.RUN_TEST_ON_SHARD);
+    List<TestClassInfo> allSlowTests = testClassesByShardedTestType.get(ShardedTestType.SLOW_TEST);
+    List<TestClassInfo> allNormalTests = testClassesByShardedTestType.get(ShardedTestType.NORMAL_TEST);
+
+    double[] millisPerChunk = new double[chunks];
+    List<List<TestClassInfo>> chunkedTestClasses = new ArrayList<>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      chunkedTestClasses.add(Lists.newArrayList());
+    }
+
+    placePinned(allRunTestOnShardTests, (clazz, chunk) -> {
+      chunkedTestClasses.get(chunk).add(clazz);
+      millisPerChunk[chunk] += estimateMillis(timings, clazz);
+    });
+
+    List<ClassEstimate> classEstimates = new ArrayList<>();
+    for (TestClassInfo clazz : allSlowTests) {
+      classEstimates.add(new ClassEstimate(clazz, estimateMillis(timings, clazz)));
+    }
+    for (TestClassInfo clazz : allNormalTests) {
+      classEstimates.add(new ClassEstimate(clazz, estimateMillis(timings, clazz)));
+    }
+    classEstimates.sort(Comparator.<ClassEstimate>comparingDouble(o -> o.millis).reversed()
+        .thenComparing(o -> o.clazz.getName()));
+
+    assignToLeastLoaded(classEstimates, classEstimate -> classEstimate.millis, millisPerChunk,
+        (classEstimate, chunk) -> chunkedTestClasses.get(chunk).add(classEstimate.clazz));
+    return new Assignment(chunkedTestClasses, millisPerChunk, !timings.isEmpty());
+  }
+
+  private double estimateMillis(TestTimings timings, TestClassInfo clazz) {
+    return timings.estimateClassMillis(clazz.getName(), clazz.getTestMethodNames());
+  }
+
+  private static class Assignment {
+    final List<List<TestClassInfo>> chunkedTestClasses;
+    final double[] millisPerChunk;
+    final boolean timingHistory;
+
+    Assignment(List<List<TestClassInfo>> chunkedTestClasses, double[] millisPerChunk,
+        boolean timingHistory) {
+      this.chunkedTestClasses = chunkedTestClasses;
+      this.millisPerChunk = millisPerChunk;
+      this.timingHistory = timingHistory;
+    }
+  }
+
+  private static class ClassEstimate {
+    final TestClassInfo clazz;
+    final double millis;
+
+    ClassEstimate(TestClassInfo clazz, double millis) {
+      this.clazz = clazz;
+      this.millis = millis;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.testing.changetests.CalculatorTest;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChangeSelectionTest {
+  private static final String PACKAGE = "com.squareup.testing.changetests";
+  private static final String SOURCE_DIRECTORY = "sharding/src/test/java/com/squareup/testing/changetests/";
+
+  private final ClassDependencyGraph graph = ClassDependencyGraph.read(ImmutableList.of(testClassesRoot()));
+  private final List<TestClassInfo> testClasses =
+      new JUnitTestsScanner(new ChunkConfig(1, 1, true)).scan(PACKAGE);
+
+  @Test public void mapsSourceFilesToClasses() {
+    assertThat(graph.getClassesForSourceFile(SOURCE_DIRECTORY + "Calculator.java"))
+        .containsExactly(PACKAGE + ".Calculator");
+    assertThat(graph.getClassesForSourceFile("com/squareup/testing/changetests/Helper.java"))
+        .containsExactly(PACKAGE + ".Helper");
+    assertThat(graph.getClassesForSourceFile("Helper.java")).isEmpty();
+  }
+
+  @Test public void findsTransitiveDependents() {
+    assertThat(graph.getDependents(ImmutableList.of(PACKAGE + ".Helper"))).contains(
+        PACKAGE + ".Helper", PACKAGE + ".Calculator", PACKAGE + ".CalculatorTest")
+        .doesNotContain(PACKAGE + ".GreeterTest");
+  }
+
+  @Test public void selectsTestsThatReachAChangedClass() {
+    assertThat(names(select(SOURCE_DIRECTORY + "Helper.java")))
+        .containsExactly(PACKAGE + ".CalculatorTest");
+    assertThat(names(select(SOURCE_DIRECTORY + "GreeterTest.java")))
+        .containsExactly(PACKAGE + ".GreeterTest");
+  }
+
+  @Test public void ignoresSourceFilesWithoutClasses() {
+    assertThat(select(SOURCE_DIRECTORY + "DeletedTest.java")).isEmpty();
+  }
+
+  @Test public void selectsEverythingForOtherFiles() {
+    assertThat(select(SOURCE_DIRECTORY + "Helper.java", "sharding/src/test/resources/fixture.json"))
+        .isEqualTo(testClasses);
+  }
+
+  private List<TestClassInfo> select(String... changedFiles) {
+    return new ChangeSelection(ImmutableList.copyOf(changedFiles))
+        .select(testClasses, graph, ShardingTestRunner.out);
+  }
+
+  private static List<String> names(List<TestClassInfo> testClasses) {
+    return testClasses.stream().map(TestClassInfo::getName).collect(toList());
+  }
+
+  private static Path testClassesRoot() {
+    try {
+      return Paths.get(CalculatorTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.testing.ForkLauncher.TestResult;
+import com.squareup.testing.forkcrashtests.CrashingTest;
+import com.squareup.testing.forkcrashtests.ForkCrashTestSuite;
+import com.squareup.testing.timingbalancedtests.TimingBalancedShardingTestSuite;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ForkLauncherTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearExitProperty() {
+    System.clearProperty(CrashingTest.EXIT_PROPERTY);
+  }
+
+  @Test public void runsEachChunkInItsOwnJvm() throws Exception {
+    ForkLauncher launcher = new ForkLauncher(TimingBalancedShardingTestSuite.class.getName(), 2, 1,
+        10000, 10100, ImmutableList.of());
+
+    Collection<TestResult> results = launcher.run();
+
+    assertThat(results.stream().map(result -> result.methodName)).containsExactlyInAnyOrder(
+        "testPinned", "testIntegration",
+        "testUnit1_test1", "testUnit1_test2",
+        "testUnit2_test1", "testUnit2_test2",
+        "testUnit3_test1", "testUnit3_test2");
+    assertThat(results).allMatch(result -> result.status == TestResult.Status.PASSED);
+    assertThat(results.stream().map(result -> result.chunk)).contains(1, 2);
+  }
+
+  @Test public void retriesRemainingTestsWhenJvmExits() throws Exception {
+    System.setProperty(CrashingTest.EXIT_PROPERTY, "true");
+    ForkLauncher launcher = new ForkLauncher(ForkCrashTestSuite.class.getName(), 1, 1,
+        10000, 10100, ImmutableList.of());
+
+    Map<String, TestResult.Status> statuses = launcher.run().stream()
+        .collect(Collectors.toMap(result -> result.methodName, result -> result.status));
+
+    assertThat(statuses).containsEntry("testA_exits", TestResult.Status.ERROR)
+        .containsEntry("testB_afterExit", TestResult.Status.PASSED)
+        .containsEntry("testSurvivor", TestResult.Status.PASSED)
+        .hasSize(3);
+  }
+
+  @Test public void givesEachChunkItsOwnPorts() {
+    ForkLauncher launcher = new ForkLauncher("Suite", 2, 1, 10000, 10100, ImmutableList.of());
+
+    assertThat(launcher.command(1, null)).contains(
+        "-Dsquare.test.portRangeStart=10000", "-Dsquare.test.portRangeEnd=10050",
+        "-Dsquare.test.chunkCount=2", "-Dsquare.test.runChunk=1");
+    assertThat(launcher.command(2, null)).contains(
+        "-Dsquare.test.portRangeStart=10050", "-Dsquare.test.portRangeEnd=10100",
+        "-Dsquare.test.runChunk=2");
+  }
+
+  @Test public void writesJUnitReport() throws Exception {
+    File report = new File(temporaryFolder.getRoot(), "reports/results.xml");
+    List<TestResult> results = ImmutableList.of(
+        new TestResult("a.FooTest", "testPasses", 1, TestResult.Status.PASSED, 1500, ""),
+        new TestResult("a.FooTest", "testFails", 2, TestResult.Status.FAILED, 20,
+            "java.lang.AssertionError: expected <1>\n\tat a.FooTest.testFails"),
+        new TestResult("a.BarTest", "testIgnored", 2, TestResult.Status.SKIPPED, 0, ""));
+
+    ForkLauncher.writeReport("a.Suite", results, report.toPath());
+
+    String xml = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    assertThat(xml).contains("<testsuite name=\"a.Suite\" tests=\"3\" failures=\"1\" errors=\"0\" "
+        + "skipped=\"1\" time=\"1.520\">");
+    assertThat(xml).contains(
+        "<testcase classname=\"a.FooTest\" name=\"testPasses\" time=\"1.500\"></testcase>");
+    assertThat(xml).contains("<failure message=\"java.lang.AssertionError: expected &lt;1&gt;\">");
+    assertThat(xml).contains("<skipped/>");
+    assertThat(ForkLauncher.printSummary(results)).isFalse();
+  }
+}
@@ -0,0 +1,151 @@
+package com.squareup.testing;
+
+import com.squareup.testing.injectortests.AFooTest;
+import com.squareup.testing.injectortests.BBarTest;
+import com.squareup.testing.injectortests.BarModule;
+import com.squareup.testing.injectortests.CFooTest;
+import com.squareup.testing.injectortests.ESupplierTest;
+import com.squareup.testing.injectortests.FooModule;
+import com.squareup.testing.injectortests.SharedInjectorSupplier;
+import com.squareup.testing.resourcetests.ADatabaseTest;
+import com.squareup.testing.resourcetests.DBrowserTest;
+import com.squareup.testing.resourcetests.EPlainTest;
+import com.squareup.testing.scannertests.BaseTestCase;
+import com.squareup.testing.scannertests.InheritedTest;
+import com.squareup.testing.scannertests.PinnedTest;
+import com.squareup.testing.scannertests.SlowCategoryTest;
+import com.squareup.testing.scannertests.StaticInitializerTest;
+import com.squareup.testing.scannertests.StaticInitializers;
+import com.squareup.testing.scannertests.SupplierInterfaceTest;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class JUnitTestsScannerTest {
+  private static final String PACKAGE = "com.squareup.testing.scannertests";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final JUnitTestsScanner scanner = new JUnitTestsScanner(new ChunkConfig(1, 1, true));
+
+  @Test public void findsTestClasses() {
+    List<String> names = scanner.scan(PACKAGE).stream()
+        .map(TestClassInfo::getName)
+        .collect(toList());
+
+    assertThat(names).containsOnly(
+        InheritedTest.class.getName(),
+        PinnedTest.class.getName(),
+        SlowCategoryTest.class.getName(),
+        StaticInitializerTest.class.getName(),
+        SupplierInterfaceTest.class.getName());
+  }
+
+  @Test public void findsInjectorKeys() {
+    Map<String, String> injectorKeys = scanner.scan("com.squareup.testing.injectortests").stream()
+        .filter(testClass -> testClass.getInjectorKey() != null)
+        .collect(toMap(TestClassInfo::getName, TestClassInfo::getInjectorKey));
+
+    assertThat(injectorKeys).containsOnly(
+        entry(AFooTest.class.getName(), FooModule.class.getName()),
+        entry(BBarTest.class.getName(), BarModule.class.getName()),
+        entry(CFooTest.class.getName(), FooModule.class.getName()),
+        entry(ESupplierTest.class.getName(), SharedInjectorSupplier.class.getName()));
+  }
+
+  @Test public void keysInjectorFieldsOfInterfaceTypeByTheirClass() {
+    TestClassInfo testClass = scanner.scan(PACKAGE).stream()
+        .filter(scanned -> scanned.getName().equals(SupplierInterfaceTest.class.getName()))
+        .findFirst()
+        .get();
+
+    assertThat(testClass.getInjectorKey()).isEqualTo(SupplierInterfaceTest.class.getName());
+  }
+
+  @Test public void findsResources() {
+    Map<String, Map<TestResource, Integer>> resources =
+        scanner.scan("com.squareup.testing.resourcetests").stream()
+            .collect(toMap(TestClassInfo::getName, TestClassInfo::getResources));
+
+    assertThat(resources.get(ADatabaseTest.class.getName()))
+        .containsOnly(entry(TestResource.DATABASE, 1));
+    assertThat(resources.get(DBrowserTest.class.getName()))
+        .containsOnly(entry(TestResource.WEB_DRIVER, 1), entry(TestResource.PORT, 2));
+    assertThat(resources.get(EPlainTest.class.getName())).isEmpty();
+  }
+
+  @Test public void doesNotInitializeTestClasses() {
+    String className = "com.squareup.testing.scannertests.StaticInitializerTest";
+    boolean initializedBefore = StaticInitializers.INITIALIZED.contains(className);
+
+    Map<String, TestClassInfo> testClasses = scan();
+
+    assertThat(testClasses).containsKey(className);
+    assertThat(StaticInitializers.INITIALIZED.contains(className)).isEqualTo(initializedBefore);
+  }
+
+  @Test public void readsAnnotations() {
+    Map<String, TestClassInfo> testClasses = scan();
+
+    TestClassInfo pinned = testClasses.get(PinnedTest.class.getName());
+    assertThat(pinned.getRunTestOnShard()).isEqualTo(1);
+    assertThat(pinned.isSlow()).isFalse();
+
+    TestClassInfo slow = testClasses.get(SlowCategoryTest.class.getName());
+    assertThat(slow.getRunTestOnShard()).isNull();
+    assertThat(slow.isSlow()).isTrue();
+  }
+
+  @Test public void inheritedTestMethodsMatchReflection() throws Exception {
+    TestClassInfo inherited = scan().get(InheritedTest.class.getName());
+
+    assertThat(inherited.getTestMethods()).hasSize(1);
+    TestMethodInfo method = inherited.getTestMethods().get(0);
+    assertThat(method.getDeclaringClassName()).isEqualTo(BaseTestCase.class.getName());
+    assertThat(method.toString())
+        .isEqualTo(InheritedTest.class.getMethod("testInherited").toString());
+  }
+
+  @Test public void classInfoToStringMatchesClass() {
+    assertThat(scan().get(PinnedTest.class.getName()).toString())
+        .isEqualTo(PinnedTest.class.toString());
+  }
+
+  @Test public void scansTheSameWithAnIndex() throws Exception {
+    Path indexFile = temporaryFolder.getRoot().toPath().resolve("test.index");
+    ClassLoader classLoader = getClass().getClassLoader();
+    ChunkConfig config = new ChunkConfig(1, 1, true);
+
+    List<String> expected = describe(scanner.scan(PACKAGE));
+    List<String> indexing = describe(
+        new JUnitTestsScanner(config, classLoader, TestIndex.load(indexFile)).scan(PACKAGE));
+    List<String> indexed = describe(
+        new JUnitTestsScanner(config, classLoader, TestIndex.load(indexFile)).scan(PACKAGE));
+
+    assertThat(indexFile).exists();
+    assertThat(indexing).isEqualTo(expected);
+    assertThat(indexed).isEqualTo(expected);
+  }
+
+  private static List<String> describe(List<TestClassInfo> testClasses) {
+    return testClasses.stream()
+        .map(testClass -> testClass + " " + testClass.isSlow() + " "
+            + testClass.getRunTestOnShard() + " " + testClass.getTestMethods())
+        .sorted()
+        .collect(toList());
+  }
+
+  private Map<String, TestClassInfo> scan() {
+    return scanner.scan(PACKAGE).stream()
+        .collect(toMap(TestClassInfo::getName, Function.identity()));
+  }
+}
@@ -0,0 +1,72 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.testing.timingbalancedtests.TimingBalancedShardingTestSuite;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class ShardSimulatorTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ShardSimulator simulator;
+
+  @Before public void setUp() throws Exception {
+    File timingsFile = temporaryFolder.newFile("timings.tsv");
+    Files.write(timingsFile.toPath(), ImmutableList.of(
+        "com.squareup.testing.timingbalancedtests.IntegrationTest\t\t480000",
+        "com.squareup.testing.timingbalancedtests.PinnedTest\ttestPinned\t50",
+        "com.squareup.testing.timingbalancedtests.Unit1Test\ttestUnit1_test1\t50",
+        "com.squareup.testing.timingbalancedtests.Unit1Test\ttestUnit1_test2\t50",
+        "com.squareup.testing.timingbalancedtests.Unit2Test\t\t100"),
+        StandardCharsets.UTF_8);
+    System.setProperty(TestTimings.TIMINGS_FILE_PROPERTY, timingsFile.getPath());
+
+    List<TestClassInfo> testClasses = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(0, 0, true))
+        .getSortedTestClasses(new ChunkConfig(1, 1, true), null);
+    simulator = new ShardSimulator(testClasses, TestTimings.get());
+  }
+
+  @After public void clearTimingsFile() {
+    System.clearProperty(TestTimings.TIMINGS_FILE_PROPERTY);
+  }
+
+  @Test public void makespanIsTheSlowestChunk() {
+    ShardSimulator.Simulation simulation =
+        simulator.simulate(ShardingStrategies.TIMING_BALANCED, 2, true);
+
+    // Unit3Test has no history and takes the median method duration, 50ms, per method.
+    assertThat(simulation.getMakespanMillis()).isEqualTo(480000.0);
+    assertThat(simulation.getChunkMillis(0) + simulation.getChunkMillis(1))
+        .isEqualTo(480000.0 + 50 + 100 + 100 + 100);
+    assertThat(simulation.getUtilisation(1)).isEqualTo(1.0);
+    assertThat(simulation.getImbalance()).isGreaterThan(0.99);
+  }
+
+  @Test public void everyStrategyEstimatesTheWholeSuite() {
+    for (ShardingStrategies strategy : ShardingStrategies.values()) {
+      for (int chunks = 1; chunks <= 4; chunks++) {
+        ShardSimulator.Simulation simulation = simulator.simulate(strategy, chunks, true);
+        assertThat(simulation.getMeanMillis() * chunks)
+            .as("%s with %d chunks", strategy, chunks)
+            .isCloseTo(480350.0, within(0.001));
+      }
+    }
+  }
+
+  @Test public void parsesChunkCounts() {
+    assertThat(ShardSimulator.parseChunkCounts("4")).containsExactly(4);
+    assertThat(ShardSimulator.parseChunkCounts("2-5")).containsExactly(2, 3, 4, 5);
+    assertThat(ShardSimulator.parseChunkCounts("10-40:10")).containsExactly(10, 20, 30, 40);
+  }
+}
@@ -0,0 +1,49 @@
+package com.squareup.testing;
+
+import com.squareup.testing.changetests.ChangeSelectionTestSuite;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerChangeSelectionTest extends ShardingTestRunnerBaseTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearChangeProperties() {
+    System.clearProperty(ChangeSelection.CHANGED_FILES_PROPERTY);
+  }
+
+  @Test public void runsOnlyAffectedTests() throws Exception {
+    setChangedFiles("sharding/src/test/java/com/squareup/testing/changetests/Helper.java");
+
+    ShardingTestRunner shard = new ShardingTestRunner(ChangeSelectionTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).containsExactly("testCalculator");
+  }
+
+  @Test public void runsNothingWhenNoTestIsAffected() throws Exception {
+    setChangedFiles("sharding/src/test/java/com/squareup/testing/changetests/DeletedTest.java");
+
+    ShardingTestRunner shard = new ShardingTestRunner(ChangeSelectionTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).isEmpty();
+  }
+
+  @Test public void runsEverythingWithoutAChange() throws Exception {
+    ShardingTestRunner shard = new ShardingTestRunner(ChangeSelectionTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).containsExactly("testCalculator", "testGreeter");
+  }
+
+  private void setChangedFiles(String... changedFiles) throws Exception {
+    File file = temporaryFolder.newFile("changed-files.txt");
+    Files.write(file.toPath(), Arrays.asList(changedFiles), StandardCharsets.UTF_8);
+    System.setProperty(ChangeSelection.CHANGED_FILES_PROPERTY, file.getPath());
+  }
+}
@@ -0,0 +1,44 @@
+package com.squareup.testing;
+
+import com.squareup.testing.cucumbertests.CucumberShardingTestSuite;
+import com.squareup.testing.strategies.CucumberPartitioning;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerCucumberTest extends ShardingTestRunnerBaseTest {
+  @After public void clearCucumberSharding() {
+    System.clearProperty(CucumberPartitioning.CUCUMBER_SHARDING_PROPERTY);
+  }
+
+  @Test public void runsCucumberClassesWholeByDefault() throws Exception {
+    assertThat(executedTests(shard(1))).containsExactlyInAnyOrder(
+        "Scenarios 1 A", "Scenarios 1 B", "Scenarios 1 C",
+        "Scenarios 2 A", "Scenarios 2 Outline", "Scenarios 2 Outline");
+    assertThat(executedTests(shard(2))).isEmpty();
+  }
+
+  @Test public void splitsCucumberClassesByScenario() throws Exception {
+    System.setProperty(CucumberPartitioning.CUCUMBER_SHARDING_PROPERTY, "scenario");
+
+    // The outline's examples share a name, so they run together and count twice.
+    assertThat(executedTests(shard(1))).containsExactlyInAnyOrder(
+        "Scenarios 1 C", "Scenarios 2 Outline", "Scenarios 2 Outline");
+    assertThat(executedTests(shard(2))).containsExactlyInAnyOrder(
+        "Scenarios 1 A", "Scenarios 1 B", "Scenarios 2 A");
+  }
+
+  @Test public void splitsCucumberClassesByFeature() throws Exception {
+    System.setProperty(CucumberPartitioning.CUCUMBER_SHARDING_PROPERTY, "feature");
+
+    assertThat(executedTests(shard(1))).containsExactlyInAnyOrder(
+        "Scenarios 1 A", "Scenarios 1 B", "Scenarios 1 C");
+    assertThat(executedTests(shard(2))).containsExactlyInAnyOrder(
+        "Scenarios 2 A", "Scenarios 2 Outline", "Scenarios 2 Outline");
+  }
+
+  private static ShardingTestRunner shard(int runChunk) throws Exception {
+    return new ShardingTestRunner(CucumberShardingTestSuite.class, new ChunkConfig(2, runChunk, true));
+  }
+}
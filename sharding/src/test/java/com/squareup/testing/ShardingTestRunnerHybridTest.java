@@ -0,0 +1,60 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.testing.hybridtests.HybridShardingTestSuite;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerHybridTest extends ShardingTestRunnerBaseTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearTimingsFile() {
+    System.clearProperty(TestTimings.TIMINGS_FILE_PROPERTY);
+  }
+
+  @Test public void splitsOnlyClassesLongerThanAChunksShare() throws Exception {
+    File timingsFile = temporaryFolder.newFile("timings.tsv");
+    ImmutableList.Builder<String> timings = ImmutableList.builder();
+    for (int i = 1; i <= 6; i++) {
+      timings.add("com.squareup.testing.hybridtests.HugeTest\ttestHuge" + i + "\t100");
+    }
+    for (int i = 1; i <= 3; i++) {
+      timings.add("com.squareup.testing.hybridtests.Small" + i + "Test\t\t50");
+    }
+    Files.write(timingsFile.toPath(), timings.build(), StandardCharsets.UTF_8);
+    System.setProperty(TestTimings.TIMINGS_FILE_PROPERTY, timingsFile.getPath());
+
+    assertThat(executedTests(shard(1)))
+        .containsExactlyInAnyOrder("testHuge1", "testHuge4", "testSmall1");
+    assertThat(executedTests(shard(2)))
+        .containsExactlyInAnyOrder("testHuge2", "testHuge5", "testSmall2");
+    assertThat(executedTests(shard(3)))
+        .containsExactlyInAnyOrder("testHuge3", "testHuge6", "testSmall3");
+  }
+
+  @Test public void splitsByMethodCountWithoutHistory() throws Exception {
+    assertThat(executedTests(shard(1)))
+        .containsExactlyInAnyOrder("testHuge1", "testHuge3", "testHuge5");
+    assertThat(executedTests(shard(2)))
+        .containsExactlyInAnyOrder("testHuge2", "testHuge4", "testHuge6");
+    assertThat(executedTests(shard(3)))
+        .containsExactlyInAnyOrder("testSmall1", "testSmall2", "testSmall3");
+  }
+
+  @Test public void runsWholeClassesWithoutAFilter() throws Exception {
+    assertThat(executedTests(new ShardingTestRunner(HybridShardingTestSuite.class, ALL_CHUNKS)))
+        .hasSize(9);
+    assertThat(ShardingStrategies.HYBRID.getFilter(ALL_CHUNKS)).isNull();
+  }
+
+  private static ShardingTestRunner shard(int runChunk) throws Exception {
+    return new ShardingTestRunner(HybridShardingTestSuite.class, new ChunkConfig(3, runChunk, true));
+  }
+}
@@ -0,0 +1,25 @@
+package com.squareup.testing;
+
+import com.squareup.testing.injectortests.InjectorAffinityTestSuite;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerInjectorAffinityTest extends ShardingTestRunnerBaseTest {
+  @Test public void keepsClassesSharingAnInjectorOnOneChunk() throws Exception {
+    ShardingTestRunner shard1 =
+        new ShardingTestRunner(InjectorAffinityTestSuite.class, new ChunkConfig(2, 1, true));
+    ShardingTestRunner shard2 =
+        new ShardingTestRunner(InjectorAffinityTestSuite.class, new ChunkConfig(2, 2, true));
+
+    assertThat(executedTests(shard1)).containsExactly("testAFoo", "testCFoo", "testESupplier");
+    assertThat(executedTests(shard2)).containsExactly("testBBar", "testDPlain");
+  }
+
+  @Test public void ordersClassesSharingAnInjectorBackToBack() throws Exception {
+    ShardingTestRunner shard = new ShardingTestRunner(InjectorAffinityTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).containsExactly(
+        "testBBar", "testAFoo", "testCFoo", "testESupplier", "testDPlain");
+  }
+}
@@ -0,0 +1,58 @@
+package com.squareup.testing;
+
+import com.squareup.testing.lazytests.ALazyTest;
+import com.squareup.testing.lazytests.LazyTestSuite;
+import com.squareup.testing.lazytests.RecordingRunner;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerLazyTest extends ShardingTestRunnerBaseTest {
+  @Before public void clearEvents() {
+    RecordingRunner.EVENTS.clear();
+  }
+
+  @Test public void buildsEachRunnerAgainJustBeforeItRuns() throws Exception {
+    ShardingTestRunner shard = new ShardingTestRunner(LazyTestSuite.class, ALL_CHUNKS);
+    assertThat(builds()).containsExactly("build ALazyTest", "build BLazyTest");
+    assertThat(shard.getDescription().testCount()).isEqualTo(2);
+
+    RecordingRunner.EVENTS.clear();
+    assertThat(executedTests(shard)).containsExactly("testALazy", "testBLazy");
+    assertThat(RecordingRunner.EVENTS).containsSubsequence(
+        "build ALazyTest", "run testALazy", "build BLazyTest", "run testBLazy");
+    assertThat(builds()).containsExactly("build ALazyTest", "build BLazyTest");
+  }
+
+  @Test public void filtersEachRunnerBeforeBuildingTheNext() throws Exception {
+    new ShardingTestRunner(LazyTestSuite.class, ALL_CHUNKS);
+
+    assertThat(RecordingRunner.EVENTS).contains("filter ALazyTest", "filter BLazyTest");
+    assertThat(RecordingRunner.EVENTS.lastIndexOf("filter ALazyTest"))
+        .isLessThan(RecordingRunner.EVENTS.indexOf("build BLazyTest"));
+  }
+
+  @Test public void replaysFiltersOnRunnersBuiltAgain() throws Exception {
+    ShardingTestRunner shard = new ShardingTestRunner(LazyTestSuite.class, ALL_CHUNKS);
+    RecordingRunner.EVENTS.clear();
+    shard.filter(Filter.matchMethodDescription(
+        Description.createTestDescription(ALazyTest.class, "testALazy")));
+
+    // Released runners are filtered by their descriptions, without building them again.
+    assertThat(RecordingRunner.EVENTS).isEmpty();
+    assertThat(shard.getDescription().testCount()).isEqualTo(1);
+    assertThat(executedTests(shard)).containsExactly("testALazy");
+    assertThat(builds()).containsExactly("build ALazyTest");
+  }
+
+  private static List<String> builds() {
+    return RecordingRunner.EVENTS.stream()
+        .filter(event -> event.startsWith("build "))
+        .collect(Collectors.toList());
+  }
+}
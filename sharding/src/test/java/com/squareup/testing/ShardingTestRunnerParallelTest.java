@@ -0,0 +1,76 @@
+package com.squareup.testing;
+
+import com.squareup.testing.paralleltests.ConcurrencyTracker;
+import com.squareup.testing.paralleltests.ParallelTestSuite;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerParallelTest extends ShardingTestRunnerBaseTest {
+  @Before public void resetTracker() {
+    ConcurrencyTracker.reset();
+  }
+
+  @After public void clearParallelismProperty() {
+    System.clearProperty(ParallelScheduler.PARALLELISM_PROPERTY);
+  }
+
+  @Test public void runsClassesConcurrently() throws Exception {
+    ShardingTestRunner shard = new ShardingTestRunner(ParallelTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).containsExactlyInAnyOrder(
+        "testIsolated",
+        "testSleep1_test1", "testSleep1_test2",
+        "testSleep2_test1", "testSleep2_test2",
+        "testSleep3_test1", "testSleep3_test2");
+    assertThat(ConcurrencyTracker.maxRunning()).isGreaterThan(1);
+    assertThat(ConcurrencyTracker.isolatedOverlapped()).isFalse();
+  }
+
+  @Test public void systemPropertyOverridesSuite() throws Exception {
+    System.setProperty(ParallelScheduler.PARALLELISM_PROPERTY, "1");
+    ShardingTestRunner shard = new ShardingTestRunner(ParallelTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).hasSize(7);
+    assertThat(ConcurrencyTracker.maxRunning()).isEqualTo(1);
+  }
+
+  @Test public void eventsStayOrderedPerClass() throws Exception {
+    ShardingTestRunner shard = new ShardingTestRunner(ParallelTestSuite.class, ALL_CHUNKS);
+    Map<String, List<String>> eventsByClass = new ConcurrentHashMap<>();
+
+    RunNotifier notifier = new RunNotifier();
+    notifier.addListener(new RunListener() {
+      @Override public void testStarted(Description description) {
+        events(description).add("started " + description.getMethodName());
+      }
+
+      @Override public void testFinished(Description description) {
+        events(description).add("finished " + description.getMethodName());
+      }
+
+      private List<String> events(Description description) {
+        return eventsByClass.computeIfAbsent(description.getClassName(), key -> new ArrayList<>());
+      }
+    });
+    shard.run(notifier);
+
+    assertThat(eventsByClass).hasSize(4);
+    eventsByClass.values().forEach(events -> {
+      for (int i = 0; i < events.size(); i += 2) {
+        String methodName = events.get(i).substring("started ".length());
+        assertThat(events.get(i)).isEqualTo("started " + methodName);
+        assertThat(events.get(i + 1)).isEqualTo("finished " + methodName);
+      }
+    });
+  }
+}
@@ -0,0 +1,36 @@
+package com.squareup.testing;
+
+import com.squareup.testing.preloadtests.PreloadEvents;
+import com.squareup.testing.preloadtests.PreloadTestSuite;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerPreloadTest extends ShardingTestRunnerBaseTest {
+  @Before public void clearEvents() {
+    PreloadEvents.EVENTS.clear();
+  }
+
+  @After public void clearPreloadClasses() {
+    System.clearProperty(ClassPreloader.PRELOAD_PROPERTY);
+  }
+
+  @Test public void initializesTheNextClassWhileOneRuns() throws Exception {
+    System.setProperty(ClassPreloader.PRELOAD_PROPERTY, "1");
+    ShardingTestRunner shard = new ShardingTestRunner(PreloadTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).containsExactly("testAPreload", "testBPreload");
+    List<String> events = PreloadEvents.EVENTS;
+    int preloaded = events.indexOf(PreloadEvents.PRELOADED_B);
+    assertThat(preloaded).isNotNegative();
+    assertThat(preloaded).isLessThan(events.indexOf("run testAPreload"));
+    assertThat(preloaded).isLessThan(events.indexOf("start BPreloadTest"));
+    // The runner that reached the class is the one the preloader built.
+    assertThat(events.subList(preloaded + 1, events.size()))
+        .noneMatch(event -> event.startsWith("build BPreloadTest"))
+        .containsSubsequence("run testAPreload", "start BPreloadTest", "run testBPreload");
+  }
+}
@@ -0,0 +1,27 @@
+package com.squareup.testing;
+
+import com.squareup.testing.resourcetests.ResourceBalancedTestSuite;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerResourceBalancedTest extends ShardingTestRunnerBaseTest {
+  @Test public void spreadsEachResourceAcrossChunks() throws Exception {
+    ShardingTestRunner shard1 =
+        new ShardingTestRunner(ResourceBalancedTestSuite.class, new ChunkConfig(2, 1, true));
+    ShardingTestRunner shard2 =
+        new ShardingTestRunner(ResourceBalancedTestSuite.class, new ChunkConfig(2, 2, true));
+
+    // CLASS sharding would run both database tests and a browser test on the first chunk.
+    assertThat(executedTests(shard1)).containsExactlyInAnyOrder("testBDatabase", "testDBrowser");
+    assertThat(executedTests(shard2))
+        .containsExactlyInAnyOrder("testADatabase", "testCBrowser", "testEPlain");
+  }
+
+  @Test public void runsEveryClassOnOneChunk() throws Exception {
+    ShardingTestRunner shard = new ShardingTestRunner(ResourceBalancedTestSuite.class, ALL_CHUNKS);
+
+    assertThat(executedTests(shard)).containsExactlyInAnyOrder(
+        "testADatabase", "testBDatabase", "testCBrowser", "testDBrowser", "testEPlain");
+  }
+}
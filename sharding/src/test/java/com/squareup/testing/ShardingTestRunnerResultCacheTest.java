@@ -0,0 +1,84 @@
+package com.squareup.testing;
+
+import com.squareup.testing.cachetests.CountingTest;
+import com.squareup.testing.cachetests.FlakyTest;
+import com.squareup.testing.cachetests.ResultCacheTestSuite;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerResultCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Before public void setUp() {
+    System.setProperty(ResultCache.CACHE_DIR_PROPERTY, temporaryFolder.getRoot().getPath());
+    CountingTest.runs.set(0);
+    FlakyTest.runs.set(0);
+  }
+
+  @After public void clearCacheProperties() {
+    System.clearProperty(ResultCache.CACHE_DIR_PROPERTY);
+    System.clearProperty(ResultCache.MAX_ENTRIES_PROPERTY);
+    System.clearProperty(FlakyTest.FAIL_PROPERTY);
+  }
+
+  @Test public void reportsPassedClassesFromTheCache() throws Exception {
+    assertThat(run()).containsExactlyInAnyOrder(
+        "testCounting", "testIgnored (ignored)", "testFlaky");
+    assertThat(run()).containsExactlyInAnyOrder(
+        "testCounting (cached)", "testIgnored (ignored, cached)", "testFlaky (cached)");
+
+    assertThat(CountingTest.runs.get()).isEqualTo(1);
+    assertThat(FlakyTest.runs.get()).isEqualTo(1);
+  }
+
+  @Test public void runsFailedClassesAgain() throws Exception {
+    System.setProperty(FlakyTest.FAIL_PROPERTY, "true");
+    run();
+    System.clearProperty(FlakyTest.FAIL_PROPERTY);
+
+    assertThat(run()).containsExactlyInAnyOrder(
+        "testCounting (cached)", "testIgnored (ignored, cached)", "testFlaky");
+    assertThat(FlakyTest.runs.get()).isEqualTo(2);
+  }
+
+  @Test public void evictsLeastRecentlyUsedEntries() throws Exception {
+    System.setProperty(ResultCache.MAX_ENTRIES_PROPERTY, "1");
+    run();
+
+    File[] entries = temporaryFolder.getRoot().listFiles();
+    assertThat(entries).hasSize(1);
+  }
+
+  private static List<String> run() throws Exception {
+    List<String> result = new ArrayList<>();
+    RunNotifier runNotifier = new RunNotifier();
+    runNotifier.addListener(new RunListener() {
+      @Override public void testStarted(Description description) {
+        result.add(description.getMethodName() + (isCached(description) ? " (cached)" : ""));
+      }
+
+      @Override public void testIgnored(Description description) {
+        result.add(description.getMethodName()
+            + (isCached(description) ? " (ignored, cached)" : " (ignored)"));
+      }
+    });
+    new ShardingTestRunner(
+        ResultCacheTestSuite.class, ShardingTestRunnerBaseTest.ALL_CHUNKS).run(runNotifier);
+    return result;
+  }
+
+  private static boolean isCached(Description description) {
+    return description.getAnnotation(CachedResult.class) != null;
+  }
+}
@@ -0,0 +1,126 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.squareup.testing.methodtests.MethodShardingTestSuite;
+import com.squareup.testing.strategies.AbstractShardingStrategy;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerShardPlanTest extends ShardingTestRunnerBaseTest {
+  private static final String SUITE = MethodShardingTestSuite.class.getName();
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearPlanProperties() {
+    System.clearProperty(ShardPlan.PLAN_DIR_PROPERTY);
+  }
+
+  @Test public void plannedChunksRunWhatTheyWouldHavePlanned() throws Exception {
+    List<String> shard1Tests = executedTests(shard(1));
+    List<String> shard2Tests = executedTests(shard(2));
+
+    writePlan();
+    System.setProperty(ShardPlan.PLAN_DIR_PROPERTY, temporaryFolder.getRoot().getPath());
+
+    assertThat(executedTests(shard(1))).containsExactlyElementsOf(shard1Tests);
+    assertThat(executedTests(shard(2))).containsExactlyElementsOf(shard2Tests);
+  }
+
+  @Test public void planListsClassesAndMethodsOfEveryChunk() throws Exception {
+    ShardPlan plan = ShardPlan.read(writePlan());
+
+    assertThat(plan.getClasses(1)).isNotEmpty();
+    assertThat(plan.getClasses(2)).isNotEmpty();
+    assertThat(plan.getClasses(3)).isEmpty();
+    assertThat(plan.getFilter(1)).isInstanceOf(TestMethodFilter.class);
+  }
+
+  @Test public void keepsFiltersKeyedByTestClass() throws Exception {
+    String split = TestMethodFilterTest.SplitTest.class.getName();
+    String whole = TestMethodFilterTest.WholeTest.class.getName();
+    ShardPlan written = new ShardPlan("fingerprint");
+    written.addChunk(1, ImmutableList.of(split, whole), TestMethodFilter.forTestClasses(
+        ImmutableMap.of(split, ImmutableList.of("testFirst"),
+            whole, ImmutableList.of("testFirst", "testSecond"))));
+
+    Filter filter = ShardPlan.read(written.write(temporaryFolder.getRoot().toPath(), SUITE))
+        .getFilter(1);
+
+    assertThat(filter.shouldRun(Description.createTestDescription(
+        TestMethodFilterTest.SplitTest.class, "testSecond"))).isFalse();
+    assertThat(filter.shouldRun(Description.createTestDescription(
+        TestMethodFilterTest.WholeTest.class, "testSecond"))).isTrue();
+  }
+
+  @Test public void ignoresStalePlans() throws Exception {
+    List<String> shard1Tests = executedTests(shard(1));
+
+    Path file = writePlan();
+    String stale = new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+        .replaceFirst("fingerprint\t\\w+", "fingerprint\tstale")
+        .replaceAll("(?m)^1\tmethod\t.*\n", "");
+    Files.write(file, stale.getBytes(StandardCharsets.UTF_8));
+    System.setProperty(ShardPlan.PLAN_DIR_PROPERTY, temporaryFolder.getRoot().getPath());
+
+    assertThat(executedTests(shard(1))).containsExactlyElementsOf(shard1Tests);
+  }
+
+  @Test public void assignsEveryChunkAtOnce() throws Exception {
+    ShardingTestRunner planner =
+        new ShardingTestRunner(MethodShardingTestSuite.class, new ChunkConfig(0, 0, true));
+    CountingStrategy strategy = new CountingStrategy();
+
+    ShardPlan plan = planner.plan(SUITE, new ChunkConfig(3, 1, true), strategy);
+
+    assertThat(strategy.assignments).isEqualTo(1);
+    List<String> planned = new ArrayList<>();
+    for (int chunk = 1; chunk <= 3; chunk++) {
+      planned.addAll(plan.getClasses(chunk));
+    }
+    assertThat(planned).doesNotHaveDuplicates().isNotEmpty();
+  }
+
+  private Path writePlan() throws Exception {
+    ShardingTestRunner planner =
+        new ShardingTestRunner(MethodShardingTestSuite.class, new ChunkConfig(0, 0, true));
+    return planner.plan(SUITE, new ChunkConfig(2, 1, true))
+        .write(temporaryFolder.getRoot().toPath(), SUITE);
+  }
+
+  private static ShardingTestRunner shard(int runChunk) throws Exception {
+    return new ShardingTestRunner(MethodShardingTestSuite.class, new ChunkConfig(2, runChunk, true));
+  }
+
+  /** Assigns classes to chunks round robin, counting how often it assigns the whole suite. */
+  static final class CountingStrategy extends AbstractShardingStrategy {
+    int assignments;
+
+    @Override public List<String> getClassesForChunk(ChunkConfig chunkConfig, PrintStream out) {
+      List<List<String>> assignment = memoize(chunkConfig.chunks, () -> {
+        assignments++;
+        List<List<String>> chunks = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkConfig.chunks; chunk++) {
+          chunks.add(new ArrayList<>());
+        }
+        for (int i = 0; i < testClasses.size(); i++) {
+          chunks.get(i % chunkConfig.chunks).add(testClasses.get(i).getName());
+        }
+        return chunks;
+      });
+      return assignment.get(chunkConfig.runChunk - 1);
+    }
+  }
+}
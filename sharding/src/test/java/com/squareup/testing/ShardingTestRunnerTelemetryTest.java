@@ -0,0 +1,72 @@
+package com.squareup.testing;
+
+import com.squareup.testing.timingbalancedtests.TimingBalancedShardingTestSuite;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import javax.management.JMX;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerTelemetryTest extends ShardingTestRunnerBaseTest {
+  private static final String SUITE = TimingBalancedShardingTestSuite.class.getName();
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearTelemetryProperties() {
+    System.clearProperty(ShardTelemetry.TELEMETRY_FILE_PROPERTY);
+    System.clearProperty(ShardTelemetry.JMX_PROPERTY);
+  }
+
+  @Test public void appendsAClassLinePerClassAndAShardLine() throws Exception {
+    File telemetryFile = new File(temporaryFolder.getRoot(), "telemetry.jsonl");
+    System.setProperty(ShardTelemetry.TELEMETRY_FILE_PROPERTY, telemetryFile.getPath());
+
+    executedTests(new ShardingTestRunner(TimingBalancedShardingTestSuite.class, ALL_CHUNKS));
+    executedTests(new ShardingTestRunner(TimingBalancedShardingTestSuite.class, ALL_CHUNKS));
+
+    List<String> lines = Files.readAllLines(telemetryFile.toPath(), StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(12);
+    assertThat(lines.subList(0, 5)).allMatch(line -> line.startsWith(
+        "{\"event\":\"class\",\"suite\":\"" + SUITE + "\",\"chunk\":1,\"class\":"));
+    assertThat(lines.subList(0, 5)).anyMatch(line -> line.contains(
+        "\"class\":\"com.squareup.testing.timingbalancedtests.Unit1Test\",\"tests\":2,"));
+
+    String shard = lines.get(5);
+    assertThat(shard).startsWith("{\"event\":\"shard\",\"suite\":\"" + SUITE + "\","
+        + "\"chunk\":1,\"chunks\":1,\"strategy\":\"TIMING_BALANCED\",");
+    assertThat(shard).containsPattern("\"phaseMillis\":\\{\"discovery\":\\d+,"
+        + "\"changeSelection\":\\d+,\"strategy\":\\d+,\"classLoading\":\\d+,"
+        + "\"runnerBuilding\":\\d+,\"filtering\":\\d+}");
+    assertThat(shard).contains(
+        "\"testClasses\":{\"RUN_TEST_ON_SHARD\":1,\"SLOW_TEST\":0,\"NORMAL_TEST\":4}",
+        "\"chunkClasses\":5,\"finishedClasses\":5,");
+    assertThat(lines.get(11)).startsWith("{\"event\":\"shard\",");
+  }
+
+  @Test public void registersAnMXBean() throws Exception {
+    System.setProperty(ShardTelemetry.JMX_PROPERTY, "true");
+
+    executedTests(new ShardingTestRunner(TimingBalancedShardingTestSuite.class, ALL_CHUNKS));
+
+    ShardTelemetryMXBean telemetry = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+        new ObjectName("com.squareup.testing:type=ShardTelemetry,suite=" + ObjectName.quote(SUITE)),
+        ShardTelemetryMXBean.class);
+    assertThat(telemetry.getChunk()).isEqualTo(1);
+    assertThat(telemetry.getFinishedClasses()).isEqualTo(5);
+    assertThat(telemetry.getPhaseMillis()).containsKeys("discovery", "strategy", "filtering");
+    assertThat(telemetry.getTestClassCounts()).containsEntry("NORMAL_TEST", 4);
+  }
+
+  @Test public void escapesJson() {
+    assertThat(new ShardTelemetry.Json().put("name", "a\"b\\c\n").put("count", 1).toString())
+        .isEqualTo("{\"name\":\"a\\\"b\\\\c\\u000a\",\"count\":1}");
+  }
+}
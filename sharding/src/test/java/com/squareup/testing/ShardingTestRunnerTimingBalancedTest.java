@@ -0,0 +1,57 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.testing.timingbalancedtests.TimingBalancedShardingTestSuite;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerTimingBalancedTest extends ShardingTestRunnerBaseTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearTimingsFile() {
+    System.clearProperty(TestTimings.TIMINGS_FILE_PROPERTY);
+  }
+
+  @Test public void balancesByRecordedDuration() throws Exception {
+    File timingsFile = temporaryFolder.newFile("timings.tsv");
+    Files.write(timingsFile.toPath(), ImmutableList.of(
+        "com.squareup.testing.timingbalancedtests.IntegrationTest\t\t480000",
+        "com.squareup.testing.timingbalancedtests.PinnedTest\ttestPinned\t50",
+        "com.squareup.testing.timingbalancedtests.Unit1Test\ttestUnit1_test1\t50",
+        "com.squareup.testing.timingbalancedtests.Unit1Test\ttestUnit1_test2\t50",
+        "com.squareup.testing.timingbalancedtests.Unit2Test\t\t100"),
+        StandardCharsets.UTF_8);
+    System.setProperty(TestTimings.TIMINGS_FILE_PROPERTY, timingsFile.getPath());
+
+    ShardingTestRunner shard1 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 1, true));
+    assertThat(executedTests(shard1)).containsExactlyInAnyOrder(
+        "testPinned",
+        "testUnit1_test1", "testUnit1_test2",
+        "testUnit2_test1", "testUnit2_test2",
+        "testUnit3_test1", "testUnit3_test2");
+
+    ShardingTestRunner shard2 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 2, true));
+    assertThat(executedTests(shard2)).containsExactlyInAnyOrder("testIntegration");
+  }
+
+  @Test public void balancesByMethodCountWithoutHistory() throws Exception {
+    ShardingTestRunner shard1 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 1, true));
+    assertThat(executedTests(shard1)).containsExactlyInAnyOrder(
+        "testPinned", "testIntegration", "testUnit2_test1", "testUnit2_test2");
+
+    ShardingTestRunner shard2 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 2, true));
+    assertThat(executedTests(shard2)).containsExactlyInAnyOrder(
+        "testUnit1_test1", "testUnit1_test2", "testUnit3_test1", "testUnit3_test2");
+  }
+}
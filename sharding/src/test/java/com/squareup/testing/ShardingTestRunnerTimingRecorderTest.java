@@ -0,0 +1,55 @@
+package com.squareup.testing;
+
+import com.squareup.testing.TestTimings.Outcome;
+import com.squareup.testing.TestTimings.Timing;
+import com.squareup.testing.timingrecordertests.SleepingTest;
+import com.squareup.testing.timingrecordertests.TimingRecorderTestSuite;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerTimingRecorderTest extends ShardingTestRunnerBaseTest {
+  private static final String CLASS_NAME = SleepingTest.class.getName();
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Before public void recordTimings() {
+    File history = new File(temporaryFolder.getRoot(), "timings");
+    System.setProperty(TestTimingRecorder.RECORD_FILE_PROPERTY, history.getPath());
+    System.setProperty(TestTimings.TIMINGS_FILE_PROPERTY, history.getPath());
+  }
+
+  @After public void clearTimingProperties() {
+    System.clearProperty(TestTimingRecorder.RECORD_FILE_PROPERTY);
+    System.clearProperty(TestTimings.TIMINGS_FILE_PROPERTY);
+  }
+
+  @Test public void recordsEachMethodAndClass() throws Exception {
+    executedTests(new ShardingTestRunner(TimingRecorderTestSuite.class, ALL_CHUNKS));
+
+    TestTimings timings = TestTimings.get();
+    Timing sleeps = timings.getMethodTiming(CLASS_NAME, "testSleeps");
+    assertThat(sleeps.wallMillis).isGreaterThanOrEqualTo(SleepingTest.SLEEP_MILLIS);
+    assertThat(sleeps.wallMillis).isGreaterThanOrEqualTo(sleeps.cpuMillis);
+    assertThat(sleeps.lastOutcome).isEqualTo(Outcome.PASSED);
+    assertThat(sleeps.samples).isEqualTo(1);
+    assertThat(timings.getMethodTiming(CLASS_NAME, "testSkipsItself").lastOutcome)
+        .isEqualTo(Outcome.ASSUMPTION_FAILED);
+    // The class is timed from its runner's start to its finish, so it covers its methods.
+    assertThat(timings.getClassMillis(CLASS_NAME)).isGreaterThanOrEqualTo(sleeps.wallMillis);
+  }
+
+  @Test public void appendsEachRunToTheHistory() throws Exception {
+    executedTests(new ShardingTestRunner(TimingRecorderTestSuite.class, ALL_CHUNKS));
+    executedTests(new ShardingTestRunner(TimingRecorderTestSuite.class, ALL_CHUNKS));
+
+    Timing sleeps = TestTimings.get().getMethodTiming(CLASS_NAME, "testSleeps");
+    assertThat(sleeps.samples).isEqualTo(2);
+    assertThat(sleeps.wallMillis).isGreaterThanOrEqualTo(SleepingTest.SLEEP_MILLIS);
+  }
+}
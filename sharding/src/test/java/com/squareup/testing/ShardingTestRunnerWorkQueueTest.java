@@ -0,0 +1,123 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.testing.lazytests.LazyTestSuite;
+import com.squareup.testing.lazytests.RecordingRunner;
+import com.squareup.testing.timingbalancedtests.TimingBalancedShardingTestSuite;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTestRunnerWorkQueueTest extends ShardingTestRunnerBaseTest {
+  private static final String[] ALL_TESTS = {
+      "testPinned", "testIntegration",
+      "testUnit1_test1", "testUnit1_test2",
+      "testUnit2_test1", "testUnit2_test2",
+      "testUnit3_test1", "testUnit3_test2"};
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearQueueProperties() {
+    System.clearProperty(WorkQueue.QUEUE_DIR_PROPERTY);
+    System.clearProperty(WorkQueue.REPLAY_LOG_PROPERTY);
+  }
+
+  @Test public void firstChunkTakesEverythingWhenRunAlone() throws Exception {
+    System.setProperty(WorkQueue.QUEUE_DIR_PROPERTY, temporaryFolder.getRoot().getPath());
+
+    ShardingTestRunner shard1 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 1, true));
+    ShardingTestRunner shard2 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 2, true));
+
+    assertThat(executedTests(shard1)).containsExactlyInAnyOrder(ALL_TESTS);
+    assertThat(executedTests(shard2)).isEmpty();
+  }
+
+  @Test public void buildsQueuedRunnersOnlyOnceClaimed() throws Exception {
+    System.setProperty(WorkQueue.QUEUE_DIR_PROPERTY, temporaryFolder.getRoot().getPath());
+    RecordingRunner.EVENTS.clear();
+
+    ShardingTestRunner shard1 =
+        new ShardingTestRunner(LazyTestSuite.class, new ChunkConfig(2, 1, true));
+    ShardingTestRunner shard2 =
+        new ShardingTestRunner(LazyTestSuite.class, new ChunkConfig(2, 2, true));
+    assertThat(RecordingRunner.EVENTS).isEmpty();
+    assertThat(shard2.getDescription().testCount()).isEqualTo(2);
+
+    assertThat(executedTests(shard1)).containsExactlyInAnyOrder("testALazy", "testBLazy");
+    assertThat(executedTests(shard2)).isEmpty();
+    assertThat(RecordingRunner.EVENTS).filteredOn(event -> event.startsWith("build "))
+        .containsExactlyInAnyOrder("build ALazyTest", "build BLazyTest");
+  }
+
+  @Test public void concurrentChunksRunEachTestOnce() throws Exception {
+    System.setProperty(WorkQueue.QUEUE_DIR_PROPERTY, temporaryFolder.getRoot().getPath());
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      List<Future<ImmutableList<String>>> chunks = new ArrayList<>();
+      for (int chunk = 1; chunk <= 3; chunk++) {
+        ShardingTestRunner shard = new ShardingTestRunner(
+            TimingBalancedShardingTestSuite.class, new ChunkConfig(3, chunk, true));
+        chunks.add(executor.submit(() -> executedTests(shard)));
+      }
+
+      List<String> executed = new ArrayList<>();
+      for (Future<ImmutableList<String>> chunk : chunks) {
+        executed.addAll(chunk.get());
+      }
+      assertThat(executed).containsExactlyInAnyOrder(ALL_TESTS);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void replaysPullLog() throws Exception {
+    File log = temporaryFolder.newFile("suite.log");
+    Files.write(log.toPath(), ImmutableList.of(
+        "0\t1\tcom.squareup.testing.timingbalancedtests.Unit1Test",
+        "1\t2\tcom.squareup.testing.timingbalancedtests.Unit2Test",
+        "2\t1\tcom.squareup.testing.timingbalancedtests.Unit3Test",
+        "3\t2\tcom.squareup.testing.timingbalancedtests.IntegrationTest"),
+        StandardCharsets.UTF_8);
+    System.setProperty(WorkQueue.REPLAY_LOG_PROPERTY, log.getPath());
+
+    ShardingTestRunner shard1 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 1, true));
+    assertThat(executedTests(shard1)).containsExactlyInAnyOrder(
+        "testPinned",
+        "testUnit1_test1", "testUnit1_test2",
+        "testUnit3_test1", "testUnit3_test2");
+
+    ShardingTestRunner shard2 = new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 2, true));
+    assertThat(executedTests(shard2)).containsExactlyInAnyOrder(
+        "testUnit2_test1", "testUnit2_test2", "testIntegration");
+  }
+
+  @Test public void logsClaims() throws Exception {
+    System.setProperty(WorkQueue.QUEUE_DIR_PROPERTY, temporaryFolder.getRoot().getPath());
+
+    executedTests(new ShardingTestRunner(
+        TimingBalancedShardingTestSuite.class, new ChunkConfig(2, 2, true)));
+
+    File log = new File(temporaryFolder.getRoot(), TimingBalancedShardingTestSuite.class.getName() + ".log");
+    assertThat(Files.readAllLines(log.toPath(), StandardCharsets.UTF_8)).containsExactly(
+        "0\t2\tcom.squareup.testing.timingbalancedtests.Unit1Test",
+        "1\t2\tcom.squareup.testing.timingbalancedtests.Unit2Test",
+        "2\t2\tcom.squareup.testing.timingbalancedtests.Unit3Test",
+        "3\t2\tcom.squareup.testing.timingbalancedtests.IntegrationTest");
+  }
+}
@@ -0,0 +1,142 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.squareup.testing.ForkLauncher.TestResult;
+import com.squareup.testing.daemontests.ADaemonTest;
+import com.squareup.testing.daemontests.BDaemonTest;
+import com.squareup.testing.daemontests.DaemonTestSuite;
+import java.io.File;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class TestDaemonTest {
+  private static final Map<String, String> PROPERTIES =
+      ImmutableMap.of(ADaemonTest.GREETING_PROPERTY, "hello");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private ServerSocket serverSocket;
+  private Future<String> restartClasspath;
+  private Path tokenFile;
+  private TestDaemonClient client;
+
+  @Before public void startDaemon() throws Exception {
+    String classpath = System.getProperty("java.class.path");
+    tokenFile = temporaryFolder.getRoot().toPath().resolve("daemon").resolve("daemon.token");
+    String token = TestDaemon.writeToken(tokenFile);
+    serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    TestDaemon daemon = new TestDaemon(serverSocket, classpath, token);
+    restartClasspath = executor.submit(daemon::serve);
+    client = new TestDaemonClient(serverSocket.getLocalPort(), classpath, tokenFile);
+  }
+
+  @After public void stopDaemon() throws Exception {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  @Test public void runsSuitesAgainInTheSameJvm() throws Exception {
+    Collection<TestResult> first =
+        client.run(DaemonTestSuite.class.getName(), ImmutableList.of(), PROPERTIES);
+    Collection<TestResult> second =
+        client.run(DaemonTestSuite.class.getName(), ImmutableList.of(), PROPERTIES);
+
+    assertThat(methodNames(first)).containsExactlyInAnyOrder("testAGreets", "testB");
+    assertThat(methodNames(second)).containsExactlyInAnyOrder("testAGreets", "testB");
+    assertThat(second).allMatch(result -> result.status == TestResult.Status.PASSED);
+    assertThat(ADaemonTest.INITIALIZATIONS.get()).isEqualTo(1);
+    assertThat(ADaemonTest.greeting).isEqualTo("hello");
+  }
+
+  @Test public void restoresSystemPropertiesAndRunsResetHooks() throws Exception {
+    AtomicInteger resets = new AtomicInteger();
+    TestDaemon.addResetHook(resets::incrementAndGet);
+
+    client.run(DaemonTestSuite.class.getName(), ImmutableList.of(), PROPERTIES);
+
+    assertThat(System.getProperty(ADaemonTest.GREETING_PROPERTY)).isNull();
+    assertThat(System.getProperty(ADaemonTest.LEAKED_PROPERTY)).isNull();
+    assertThat(resets.get()).isEqualTo(1);
+  }
+
+  @Test public void runsOnlyTheNamedTests() throws Exception {
+    Collection<TestResult> results = client.run(DaemonTestSuite.class.getName(),
+        ImmutableList.of(BDaemonTest.class.getName()), PROPERTIES);
+
+    assertThat(methodNames(results)).containsExactly("testB");
+  }
+
+  @Test public void restartsWhenTheClientHasAnotherClassPath() throws Exception {
+    TestDaemonClient otherClient =
+        new TestDaemonClient(serverSocket.getLocalPort(), "other-classes.jar", tokenFile);
+
+    TestDaemonClient.Response response = otherClient.send(DaemonTestSuite.class.getName(),
+        ImmutableList.of(), PROPERTIES, false);
+
+    assertThat(response.restarting).isTrue();
+    assertThat(restartClasspath.get(10, TimeUnit.SECONDS)).isEqualTo("other-classes.jar");
+    assertThat(serverSocket.isClosed()).isTrue();
+  }
+
+  @Test public void rejectsRequestsWithoutTheToken() throws Exception {
+    Path otherTokenFile = temporaryFolder.getRoot().toPath().resolve("other.token");
+    TestDaemon.writeToken(otherTokenFile);
+    TestDaemonClient otherClient = new TestDaemonClient(serverSocket.getLocalPort(),
+        System.getProperty("java.class.path"), otherTokenFile);
+    ADaemonTest.greeting = null;
+
+    Collection<TestResult> results =
+        otherClient.run(DaemonTestSuite.class.getName(), ImmutableList.of(), PROPERTIES);
+
+    assertThat(results).hasSize(1);
+    assertThat(results.iterator().next().status).isEqualTo(TestResult.Status.ERROR);
+    assertThat(ADaemonTest.greeting).isNull();
+  }
+
+  @Test public void writesTokensOnlyItsUserCanRead() throws Exception {
+    assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+
+    assertThat(Files.getPosixFilePermissions(tokenFile))
+        .isEqualTo(PosixFilePermissions.fromString("rw-------"));
+    assertThat(Files.getPosixFilePermissions(tokenFile.getParent()))
+        .isEqualTo(PosixFilePermissions.fromString("rwx------"));
+    assertThat(TestDaemon.readToken(tokenFile)).hasSize(64);
+  }
+
+  @Test public void fingerprintChangesWhenAClassIsCompiledAgain() throws Exception {
+    File classFile = temporaryFolder.newFile("FooTest.class");
+    String classpath = temporaryFolder.getRoot().getPath();
+    String before = TestDaemon.fingerprint(classpath);
+
+    Files.write(classFile.toPath(), new byte[] {(byte) 0xca, (byte) 0xfe});
+
+    assertThat(TestDaemon.fingerprint(classpath)).isNotEqualTo(before);
+  }
+
+  private static List<String> methodNames(Collection<TestResult> results) {
+    return results.stream().map(result -> result.methodName).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,97 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.squareup.testing.ClassFileInfo.FieldInfo;
+import com.squareup.testing.ClassFileInfo.MethodInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestIndexTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test public void missingIndexIsEmpty() throws IOException {
+    TestIndex index = TestIndex.load(temporaryFolder.getRoot().toPath().resolve("missing"));
+
+    assertThat(index.get("classes", "1")).isNull();
+  }
+
+  @Test public void corruptIndexIsEmpty() throws IOException {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, new byte[] {1, 2, 3});
+
+    assertThat(TestIndex.load(path).get("classes", "1")).isNull();
+  }
+
+  @Test public void roundTrip() throws IOException {
+    Path path = temporaryFolder.getRoot().toPath().resolve("test.index");
+    TestIndex index = TestIndex.load(path);
+    index.put("classes", "1", ImmutableList.of(classFile("com.example.FooTest")));
+    index.save();
+
+    List<ClassFileInfo> classFiles = TestIndex.load(path).get("classes", "1");
+    assertThat(classFiles).hasSize(1);
+    ClassFileInfo classFile = classFiles.get(0);
+    assertThat(classFile.name).isEqualTo("com.example.FooTest");
+    assertThat(classFile.superName).isEqualTo("com.example.BaseTest");
+    assertThat(classFile.getAnnotation("org.junit.experimental.categories.Category"))
+        .isEqualTo(ImmutableMap.of("value", ImmutableList.of("com.squareup.testing.SlowTests")));
+    assertThat(classFile.getAnnotation("com.squareup.testing.RunTestOnShard"))
+        .isEqualTo(ImmutableMap.of("value", 2));
+    FieldInfo field = classFile.fields.get(0);
+    assertThat(field.name).isEqualTo("injector");
+    assertThat(field.descriptor).isEqualTo("Lcom/example/FooInjectorSupplier;");
+    assertThat(field.annotations).containsOnlyKeys("com.squareup.testing.guice.TestInjector");
+    MethodInfo method = classFile.methods.get(0);
+    assertThat(method.name).isEqualTo("testFoo");
+    assertThat(method.descriptor).isEqualTo("()V");
+    assertThat(method.exceptions).containsExactly("java.lang.Exception");
+    assertThat(method.annotations).containsOnlyKeys("org.junit.Test");
+  }
+
+  @Test public void staleStampIsAMiss() throws IOException {
+    Path path = temporaryFolder.getRoot().toPath().resolve("test.index");
+    TestIndex index = TestIndex.load(path);
+    index.put("classes", "1", ImmutableList.of(classFile("com.example.FooTest")));
+    index.save();
+
+    assertThat(TestIndex.load(path).get("classes", "2")).isNull();
+  }
+
+  @Test public void concurrentWritersKeepEachOthersEntries() throws IOException {
+    Path path = temporaryFolder.getRoot().toPath().resolve("test.index");
+    TestIndex first = TestIndex.load(path);
+    TestIndex second = TestIndex.load(path);
+
+    first.put("first.jar", "1", ImmutableList.of(classFile("com.example.FirstTest")));
+    second.put("second.jar", "1", ImmutableList.of(classFile("com.example.SecondTest")));
+    first.save();
+    second.save();
+
+    TestIndex index = TestIndex.load(path);
+    assertThat(index.get("first.jar", "1")).hasSize(1);
+    assertThat(index.get("second.jar", "1")).hasSize(1);
+  }
+
+  private static ClassFileInfo classFile(String name) {
+    FieldInfo field = new FieldInfo("injector", "Lcom/example/FooInjectorSupplier;", 9,
+        ImmutableMap.of("com.squareup.testing.guice.TestInjector", ImmutableMap.of()));
+    MethodInfo method = new MethodInfo("testFoo", "()V", 1,
+        ImmutableList.of("java.lang.Exception"), ImmutableMap.of("org.junit.Test", ImmutableMap.of()));
+    return new ClassFileInfo(name, "com.example.BaseTest", 1,
+        ImmutableMap.of(
+            "org.junit.experimental.categories.Category",
+            ImmutableMap.of("value", ImmutableList.of("com.squareup.testing.SlowTests")),
+            "com.squareup.testing.RunTestOnShard",
+            ImmutableMap.of("value", 2)),
+        ImmutableList.of(field),
+        ImmutableList.of(method));
+  }
+}
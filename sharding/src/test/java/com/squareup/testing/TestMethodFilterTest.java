@@ -0,0 +1,69 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.squareup.testing.scannertests.BaseTestCase;
+import com.squareup.testing.scannertests.InheritedTest;
+import com.squareup.testing.scannertests.PinnedTest;
+import org.junit.Test;
+import org.junit.runner.Description;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestMethodFilterTest {
+  private final TestMethodFilter filter = new TestMethodFilter(ImmutableList.of(
+      method(BaseTestCase.class, "testInherited"),
+      method(PinnedTest.class, "testPinned")));
+
+  @Test public void runsChunkMethods() {
+    assertThat(filter.shouldRun(Description.createTestDescription(PinnedTest.class, "testPinned")))
+        .isTrue();
+    assertThat(filter.shouldRun(Description.createTestDescription(PinnedTest.class, "testOther")))
+        .isFalse();
+  }
+
+  @Test public void runsMethodsInheritedFromChunkClasses() {
+    assertThat(filter.shouldRun(
+        Description.createTestDescription(InheritedTest.class, "testInherited"))).isTrue();
+  }
+
+  @Test public void ignoresParameters() {
+    assertThat(filter.shouldRun(
+        Description.createTestDescription(PinnedTest.class, "testPinned[0: a]"))).isTrue();
+    assertThat(TestMethodFilter.stripParameters("testPinned[1]")).isEqualTo("testPinned");
+    assertThat(TestMethodFilter.stripParameters("testPinned[]")).isEqualTo("testPinned[]");
+    assertThat(TestMethodFilter.stripParameters("testPinned")).isEqualTo("testPinned");
+  }
+
+  @Test public void runsSuitesAndEverythingWithoutMethods() {
+    assertThat(filter.shouldRun(Description.createSuiteDescription(InheritedTest.class))).isTrue();
+    assertThat(new TestMethodFilter(ImmutableList.of()).shouldRun(
+        Description.createTestDescription(PinnedTest.class, "testOther"))).isTrue();
+  }
+
+  @Test public void runsOnlyTheTestClassesOwnMethodsWhenKeyedByTestClass() {
+    // A split subclass and its whole superclass on the same chunk.
+    TestMethodFilter filter = TestMethodFilter.forTestClasses(ImmutableMap.of(
+        SplitTest.class.getName(), ImmutableList.of("testFirst"),
+        WholeTest.class.getName(), ImmutableList.of("testFirst", "testSecond")));
+
+    assertThat(filter.isKeyedByTestClass()).isTrue();
+    assertThat(filter.shouldRun(Description.createTestDescription(SplitTest.class, "testFirst")))
+        .isTrue();
+    assertThat(filter.shouldRun(Description.createTestDescription(SplitTest.class, "testSecond")))
+        .isFalse();
+    assertThat(filter.shouldRun(Description.createTestDescription(WholeTest.class, "testSecond")))
+        .isTrue();
+  }
+
+  private static TestMethodInfo method(Class<?> declaringClass, String name) {
+    return new TestMethodInfo(declaringClass.getName(), name, "()V", 1, ImmutableList.of());
+  }
+
+  /** A concrete test superclass; only its hierarchy matters to the filter. */
+  static class WholeTest {
+  }
+
+  static class SplitTest extends WholeTest {
+  }
+}
@@ -0,0 +1,71 @@
+package com.squareup.testing;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.testing.TestTimings.Outcome;
+import com.squareup.testing.TestTimings.HistoryRecord;
+import com.squareup.testing.TestTimings.Timing;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TestTimingsTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test public void missingFileHasNoTimings() throws Exception {
+    TestTimings timings = TestTimings.read(temporaryFolder.getRoot().toPath().resolve("missing"));
+    assertThat(timings.isEmpty()).isTrue();
+    assertThat(timings.getMedianMethodMillis()).isEqualTo(1);
+  }
+
+  @Test public void appendedRunsAreAveraged() throws Exception {
+    Path history = temporaryFolder.getRoot().toPath().resolve("timings");
+    TestTimings.append(history, ImmutableList.of(
+        new HistoryRecord("FooTest", "", new Timing(100, 50, Outcome.PASSED, 1)),
+        new HistoryRecord("FooTest", "testFoo", new Timing(100, 50, Outcome.PASSED, 1))));
+    TestTimings.append(history, ImmutableList.of(
+        new HistoryRecord("FooTest", "testFoo", new Timing(200, 150, Outcome.FAILED, 1))));
+
+    TestTimings timings = TestTimings.read(history);
+    assertThat(timings.getClassMillis("FooTest")).isEqualTo(100);
+    Timing testFoo = timings.getMethodTiming("FooTest", "testFoo");
+    assertThat(testFoo.wallMillis).isCloseTo(130, within(0.01));
+    assertThat(testFoo.cpuMillis).isCloseTo(80, within(0.01));
+    assertThat(testFoo.lastOutcome).isEqualTo(Outcome.FAILED);
+    assertThat(testFoo.samples).isEqualTo(2);
+    assertThat(timings.getMethodMillis("FooTest", "testBar")).isNull();
+  }
+
+  @Test public void mergeCompactsHistory() throws Exception {
+    Path shard1 = temporaryFolder.getRoot().toPath().resolve("shard1");
+    Path shard2 = temporaryFolder.getRoot().toPath().resolve("shard2");
+    Path merged = temporaryFolder.getRoot().toPath().resolve("merged");
+    TestTimings.append(shard1, ImmutableList.of(
+        new HistoryRecord("FooTest", "testFoo", new Timing(10, 10, Outcome.PASSED, 1))));
+    TestTimings.append(shard2, ImmutableList.of(
+        new HistoryRecord("BarTest", "testBar", new Timing(30, 20, Outcome.PASSED, 1))));
+
+    TestTimings.merge(merged, shard1, shard2);
+
+    TestTimings timings = TestTimings.read(merged);
+    assertThat(timings.getMethodMillis("FooTest", "testFoo")).isEqualTo(10);
+    assertThat(timings.getMethodMillis("BarTest", "testBar")).isEqualTo(30);
+    assertThat(timings.getMedianMethodMillis()).isEqualTo(20);
+  }
+
+  @Test public void estimatesUnknownMethodsWithMedian() throws Exception {
+    Path history = temporaryFolder.getRoot().toPath().resolve("timings");
+    TestTimings.append(history, ImmutableList.of(
+        new HistoryRecord("FooTest", "testFoo", new Timing(10, 0, Outcome.PASSED, 1)),
+        new HistoryRecord("FooTest", "testBar", new Timing(20, 0, Outcome.PASSED, 1)),
+        new HistoryRecord("FooTest", "testBaz", new Timing(90, 0, Outcome.PASSED, 1))));
+
+    TestTimings timings = TestTimings.read(history);
+    assertThat(timings.estimateClassMillis("FooTest", ImmutableList.of("testFoo", "testQux")))
+        .isEqualTo(30);
+    assertThat(timings.estimateClassMillis("NewTest", ImmutableList.of("a", "b"))).isEqualTo(40);
+  }
+}
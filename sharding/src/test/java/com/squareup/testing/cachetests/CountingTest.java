@@ -0,0 +1,16 @@
+package com.squareup.testing.cachetests;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public final class CountingTest {
+  public static final AtomicInteger runs = new AtomicInteger();
+
+  @Test public void testCounting() {
+    runs.incrementAndGet();
+  }
+
+  @Ignore @Test public void testIgnored() {
+  }
+}
@@ -0,0 +1,16 @@
+package com.squareup.testing.cachetests;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class FlakyTest {
+  public static final String FAIL_PROPERTY = "square.test.resultCacheTest.fail";
+  public static final AtomicInteger runs = new AtomicInteger();
+
+  @Test public void testFlaky() {
+    runs.incrementAndGet();
+    assertEquals(null, System.getProperty(FAIL_PROPERTY));
+  }
+}
@@ -0,0 +1,10 @@
+package com.squareup.testing.cachetests;
+
+import com.squareup.testing.ShardedTestSuite;
+import com.squareup.testing.ShardingTestRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(ShardingTestRunner.class)
+@ShardedTestSuite(packagePrefix = "com.squareup.testing.cachetests")
+public final class ResultCacheTestSuite {
+}
@@ -0,0 +1,7 @@
+package com.squareup.testing.changetests;
+
+final class Calculator {
+  int doubleSum(int a, int b) {
+    return Helper.twice(a + b);
+  }
+}
@@ -0,0 +1,11 @@
+package com.squareup.testing.changetests;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class CalculatorTest {
+  @Test public void testCalculator() {
+    assertEquals(10, new Calculator().doubleSum(2, 3));
+  }
+}
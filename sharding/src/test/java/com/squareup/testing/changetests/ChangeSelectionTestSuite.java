@@ -0,0 +1,10 @@
+package com.squareup.testing.changetests;
+
+import com.squareup.testing.ShardedTestSuite;
+import com.squareup.testing.ShardingTestRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(ShardingTestRunner.class)
+@ShardedTestSuite(packagePrefix = "com.squareup.testing.changetests")
+public final class ChangeSelectionTestSuite {
+}
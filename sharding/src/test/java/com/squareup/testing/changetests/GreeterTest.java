@@ -0,0 +1,11 @@
+package com.squareup.testing.changetests;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class GreeterTest {
+  @Test public void testGreeter() {
+    assertEquals("Hello, Jesse", "Hello, " + "Jesse");
+  }
+}
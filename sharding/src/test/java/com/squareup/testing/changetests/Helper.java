@@ -0,0 +1,7 @@
+package com.squareup.testing.changetests;
+
+final class Helper {
+  static int twice(int value) {
+    return value * 2;
+  }
+}
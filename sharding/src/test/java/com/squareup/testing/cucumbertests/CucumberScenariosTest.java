@@ -0,0 +1,13 @@
+package com.squareup.testing.cucumbertests;
+
+import cucumber.api.CucumberOptions;
+import cucumber.api.junit.Cucumber;
+import org.junit.runner.RunWith;
+
+@RunWith(Cucumber.class)
+@CucumberOptions(features = {
+    "classpath:features/scenarios1.feature",
+    "classpath:features/scenarios2.feature"
+})
+public class CucumberScenariosTest {
+}
@@ -0,0 +1,13 @@
+package com.squareup.testing.cucumbertests;
+
+import com.squareup.testing.ShardedTestSuite;
+import com.squareup.testing.ShardingStrategies;
+import com.squareup.testing.ShardingTestRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(ShardingTestRunner.class)
+@ShardedTestSuite(
+    packagePrefix = "com.squareup.testing.cucumbertests",
+    shardingStrategy = ShardingStrategies.METHOD)
+public final class CucumberShardingTestSuite {
+}
@@ -0,0 +1,19 @@
+package com.squareup.testing.cucumbertests;
+
+import cucumber.api.java.en.Given;
+import cucumber.api.java.en.Then;
+import cucumber.api.java.en.When;
+
+public class CucumberStepDefinitions {
+  @Given("^the number One$")
+  public void theNumberOne() {
+  }
+
+  @When("^I ask is One equal to Two$")
+  public void iAskIsOneEqualtoTwo() {
+  }
+
+  @Then("^I should be told \"No\"$")
+  public void iShouldBeToldNo() {
+  }
+}
@@ -0,0 +1,21 @@
+package com.squareup.testing.daemontests;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public final class ADaemonTest {
+  public static final String GREETING_PROPERTY = "daemontests.greeting";
+  public static final String LEAKED_PROPERTY = "daemontests.leaked";
+  public static final AtomicInteger INITIALIZATIONS = new AtomicInteger();
+  public static volatile String greeting;
+
+  static {
+    INITIALIZATIONS.incrementAndGet();
+  }
+
+  @Test public void testAGreets() {
+    greeting = System.getProperty(GREETING_PROPERTY);
+    System.setProperty(LEAKED_PROPERTY, "true");
+    System.out.println("greeting: " + greeting);
+  }
+}
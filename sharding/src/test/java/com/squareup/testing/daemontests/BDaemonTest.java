@@ -0,0 +1,8 @@
+package com.squareup.testing.daemontests;
+
+import org.junit.Test;
+
+public final class BDaemonTest {
+  @Test public void testB() {
+  }
+}
@@ -0,0 +1,20 @@
+package com.squareup.testing.forkcrashtests;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public final class CrashingTest {
+  /** Set only in JVMs forked by {@code ForkLauncherTest}, so this test is safe to run anywhere. */
+  public static final String EXIT_PROPERTY = "square.test.forkCrashTest.exit";
+
+  @Test public void testA_exits() {
+    if (Boolean.getBoolean(EXIT_PROPERTY)) {
+      System.exit(3);
+    }
+  }
+
+  @Test public void testB_afterExit() {
+  }
+}
@@ -0,0 +1,8 @@
+package com.squareup.testing.forkcrashtests;
+
+import org.junit.Test;
+
+public final class SurvivorTest {
+  @Test public void testSurvivor() {
+  }
+}
@@ -0,0 +1,23 @@
+package com.squareup.testing.hybridtests;
+
+import org.junit.Test;
+
+public final class HugeTest {
+  @Test public void testHuge1() {
+  }
+
+  @Test public void testHuge2() {
+  }
+
+  @Test public void testHuge3() {
+  }
+
+  @Test public void testHuge4() {
+  }
+
+  @Test public void testHuge5() {
+  }
+
+  @Test public void testHuge6() {
+  }
+}
@@ -0,0 +1,8 @@
+package com.squareup.testing.hybridtests;
+
+import org.junit.Test;
+
+public final class Small2Test {
+  @Test public void testSmall2() {
+  }
+}
@@ -0,0 +1,10 @@
+package com.squareup.testing.injectortests;
+
+import com.squareup.testing.TestModule;
+import org.junit.Test;
+
+@TestModule(FooModule.class)
+public final class AFooTest {
+  @Test public void testAFoo() {
+  }
+}
@@ -0,0 +1,10 @@
+package com.squareup.testing.injectortests;
+
+import com.squareup.testing.TestModule;
+import org.junit.Test;
+
+@TestModule(BarModule.class)
+public final class BBarTest {
+  @Test public void testBBar() {
+  }
+}
@@ -0,0 +1,8 @@
+package com.squareup.testing.injectortests;
+
+import com.google.inject.AbstractModule;
+
+public final class BarModule extends AbstractModule {
+  @Override protected void configure() {
+  }
+}
@@ -0,0 +1,8 @@
+package com.squareup.testing.injectortests;
+
+import org.junit.Test;
+
+public final class DPlainTest {
+  @Test public void testDPlain() {
+  }
+}
@@ -0,0 +1,11 @@
+package com.squareup.testing.injectortests;
+
+import com.squareup.testing.guice.TestInjector;
+import org.junit.Test;
+
+public final class ESupplierTest {
+  @TestInjector public static SharedInjectorSupplier injectorSupplier = new SharedInjectorSupplier();
+
+  @Test public void testESupplier() {
+  }
+}
@@ -0,0 +1,15 @@
+package com.squareup.testing.injectortests;
+
+import com.squareup.testing.ShardedTestSuite;
+import com.squareup.testing.ShardingStrategies;
+import com.squareup.testing.ShardingTestRunner;
+import com.squareup.testing.TestOrderings;
+import org.junit.runner.RunWith;
+
+@RunWith(ShardingTestRunner.class)
+@ShardedTestSuite(
+    packagePrefix = "com.squareup.testing.injectortests",
+    shardingStrategy = ShardingStrategies.INJECTOR_AFFINITY,
+    testOrdering = TestOrderings.INJECTOR_AFFINITY)
+public final class InjectorAffinityTestSuite {
+}
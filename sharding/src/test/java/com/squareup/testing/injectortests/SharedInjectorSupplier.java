@@ -0,0 +1,11 @@
+package com.squareup.testing.injectortests;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.squareup.testing.guice.InjectorSupplier;
+
+public final class SharedInjectorSupplier implements InjectorSupplier {
+  @Override public Injector getInjector() {
+    return Guice.createInjector(new FooModule());
+  }
+}
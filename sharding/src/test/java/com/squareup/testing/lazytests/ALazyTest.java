@@ -0,0 +1,11 @@
+package com.squareup.testing.lazytests;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RecordingRunner.class)
+public final class ALazyTest {
+  @Test public void testALazy() {
+    RecordingRunner.EVENTS.add("run testALazy");
+  }
+}
@@ -0,0 +1,11 @@
+package com.squareup.testing.lazytests;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RecordingRunner.class)
+public final class BLazyTest {
+  @Test public void testBLazy() {
+    RecordingRunner.EVENTS.add("run testBLazy");
+  }
+}
@@ -0,0 +1,10 @@
+package com.squareup.testing.lazytests;
+
+import com.squareup.testing.ShardedTestSuite;
+import com.squareup.testing.ShardingTestRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(ShardingTestRunner.class)
+@ShardedTestSuite(packagePrefix = "com.squareup.testing.lazytests")
+public final class LazyTestSuite {
+}
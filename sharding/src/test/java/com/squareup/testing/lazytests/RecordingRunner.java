@@ -0,0 +1,23 @@
+package com.squareup.testing.lazytests;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.InitializationError;
+
+/** Records when runners are built and filtered and tests run, to see when the sharding runner builds them. */
+public final class RecordingRunner extends BlockJUnit4ClassRunner {
+  public static final List<String> EVENTS = new CopyOnWriteArrayList<>();
+
+  public RecordingRunner(Class<?> testClass) throws InitializationError {
+    super(testClass);
+    EVENTS.add("build " + testClass.getSimpleName());
+  }
+
+  @Override public void filter(Filter filter) throws NoTestsRemainException {
+    EVENTS.add("filter " + getTestClass().getJavaClass().getSimpleName());
+    super.filter(filter);
+  }
+}
@@ -0,0 +1,43 @@
+package com.squareup.testing.paralleltests;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Tracks how many tests in this package run at once. */
+public final class ConcurrencyTracker {
+  private static final AtomicInteger running = new AtomicInteger();
+  private static final AtomicInteger maxRunning = new AtomicInteger();
+  private static volatile boolean isolatedOverlapped;
+
+  private ConcurrencyTracker() {
+  }
+
+  public static void reset() {
+    running.set(0);
+    maxRunning.set(0);
+    isolatedOverlapped = false;
+  }
+
+  public static int maxRunning() {
+    return maxRunning.get();
+  }
+
+  public static boolean isolatedOverlapped() {
+    return isolatedOverlapped;
+  }
+
+  static void run(boolean isolated) throws InterruptedException {
+    int now = running.incrementAndGet();
+    maxRunning.accumulateAndGet(now, Math::max);
+    try {
+      if (isolated && now != 1) {
+        isolatedOverlapped = true;
+      }
+      Thread.sleep(200);
+      if (isolated && running.get() != 1) {
+        isolatedOverlapped = true;
+      }
+    } finally {
+      running.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package com.squareup.testing.paralleltests;
+
+import com.squareup.testing.RunInIsolation;
+import org.junit.Test;
+
+@RunInIsolation
+public class IsolatedTest {
+  @Test public void testIsolated() throws Exception {
+    ConcurrencyTracker.run(true);
+  }
+}
@@ -0,0 +1,10 @@
+package com.squareup.testing.paralleltests;
+
+import com.squareup.testing.ShardedTestSuite;
+import com.squareup.testing.ShardingTestRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(ShardingTestRunner.class)
+@ShardedTestSuite(packagePrefix = "com.squareup.testing.paralleltests", parallelism = 3)
+public final class ParallelTestSuite {
+}
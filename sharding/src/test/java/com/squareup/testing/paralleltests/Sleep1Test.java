@@ -0,0 +1,13 @@
+package com.squareup.testing.paralleltests;
+
+import org.junit.Test;
+
+public class Sleep1Test {
+  @Test public void testSleep1_test1() throws Exception {
+    ConcurrencyTracker.run(false);
+  }
+
+  @Test public void testSleep1_test2() throws Exception {
+    ConcurrencyTracker.run(false);
+  }
+}
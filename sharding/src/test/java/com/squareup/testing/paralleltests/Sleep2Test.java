@@ -0,0 +1,13 @@
+package com.squareup.testing.paralleltests;
+
+import org.junit.Test;
+
+public class Sleep2Test {
+  @Test public void testSleep2_test1() throws Exception {
+    ConcurrencyTracker.run(false);
+  }
+
+  @Test public void testSleep2_test2() throws Exception {
+    ConcurrencyTracker.run(false);
+  }
+}
@@ -0,0 +1,13 @@
+package com.squareup.testing.paralleltests;
+
+import org.junit.Test;
+
+public class Sleep3Test {
+  @Test public void testSleep3_test1() throws Exception {
+    ConcurrencyTracker.run(false);
+  }
+
+  @Test public void testSleep3_test2() throws Exception {
+    ConcurrencyTracker.run(false);
+  }
+}
@@ -0,0 +1,13 @@
+package com.squareup.testing.preloadtests;
+
+import org.junit.Test;
+
+public final class APreloadTest {
+  @Test public void testAPreload() throws Exception {
+    // Run on its own, nothing is preloaded.
+    if (Integer.getInteger("square.test.preloadClasses", 0) > 0) {
+      PreloadEvents.await(PreloadEvents.PRELOADED_B);
+    }
+    PreloadEvents.EVENTS.add("run testAPreload");
+  }
+}
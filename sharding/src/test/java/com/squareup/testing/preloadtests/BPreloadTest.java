@@ -0,0 +1,12 @@
+package com.squareup.testing.preloadtests;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RecordingRunner.class)
+public final class BPreloadTest {
+
+  @Test public void testBPreload() {
+    PreloadEvents.EVENTS.add("run testBPreload");
+  }
+}
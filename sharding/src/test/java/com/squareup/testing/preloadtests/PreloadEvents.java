@@ -0,0 +1,24 @@
+package com.squareup.testing.preloadtests;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/** Records when the preload tests' runners are built and when the tests run. */
+public final class PreloadEvents {
+  public static final List<String> EVENTS = new CopyOnWriteArrayList<>();
+
+  /** Recorded when the preloader builds the runner of {@link BPreloadTest}. */
+  public static final String PRELOADED_B = "build BPreloadTest on test-class-preloader";
+
+  private PreloadEvents() {
+  }
+
+  /** Waits up to ten seconds for {@code event}, so that a preloaded class has time to load. */
+  static void await(String event) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!EVENTS.contains(event) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
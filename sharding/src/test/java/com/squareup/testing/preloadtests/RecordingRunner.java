@@ -0,0 +1,19 @@
+package com.squareup.testing.preloadtests;
+
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.InitializationError;
+
+/** Records which thread builds the runner of a preload test, and when the runner reaches it. */
+public final class RecordingRunner extends BlockJUnit4ClassRunner {
+  public RecordingRunner(Class<?> testClass) throws InitializationError {
+    super(testClass);
+    PreloadEvents.EVENTS.add(
+        "build " + testClass.getSimpleName() + " on " + Thread.currentThread().getName());
+  }
+
+  @Override public void run(RunNotifier notifier) {
+    PreloadEvents.EVENTS.add("start " + getTestClass().getJavaClass().getSimpleName());
+    super.run(notifier);
+  }
+}
@@ -0,0 +1,12 @@
+package com.squareup.testing.resourcetests;
+
+import com.squareup.testing.TestResources;
+import org.junit.Test;
+
+import static com.squareup.testing.TestResource.DATABASE;
+
+@TestResources(DATABASE)
+public final class BDatabaseTest {
+  @Test public void testBDatabase() {
+  }
+}
@@ -0,0 +1,12 @@
+package com.squareup.testing.resourcetests;
+
+import com.squareup.testing.TestResources;
+import org.junit.Test;
+
+import static com.squareup.testing.TestResource.WEB_DRIVER;
+
+@TestResources(WEB_DRIVER)
+public final class CBrowserTest {
+  @Test public void testCBrowser() {
+  }
+}
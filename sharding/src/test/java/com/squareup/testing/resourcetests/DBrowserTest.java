@@ -0,0 +1,12 @@
+package com.squareup.testing.resourcetests;
+
+import com.squareup.testing.TestResources;
+import org.junit.Test;
+
+import static com.squareup.testing.TestResource.WEB_DRIVER;
+
+@TestResources(value = WEB_DRIVER, ports = 2)
+public final class DBrowserTest {
+  @Test public void testDBrowser() {
+  }
+}
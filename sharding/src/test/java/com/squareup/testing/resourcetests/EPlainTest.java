@@ -0,0 +1,8 @@
+package com.squareup.testing.resourcetests;
+
+import org.junit.Test;
+
+public final class EPlainTest {
+  @Test public void testEPlain() {
+  }
+}
@@ -0,0 +1,8 @@
+package com.squareup.testing.scannertests;
+
+import org.junit.Test;
+
+public abstract class BaseTestCase {
+  @Test public void testInherited() throws Exception {
+  }
+}
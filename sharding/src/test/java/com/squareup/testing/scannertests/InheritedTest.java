@@ -0,0 +1,4 @@
+package com.squareup.testing.scannertests;
+
+public class InheritedTest extends BaseTestCase {
+}
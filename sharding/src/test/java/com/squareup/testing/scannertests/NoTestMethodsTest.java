@@ -0,0 +1,6 @@
+package com.squareup.testing.scannertests;
+
+public class NoTestMethodsTest {
+  public void testNotAnnotated() {
+  }
+}
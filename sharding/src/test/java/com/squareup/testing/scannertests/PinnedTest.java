@@ -0,0 +1,10 @@
+package com.squareup.testing.scannertests;
+
+import com.squareup.testing.RunTestOnShard;
+import org.junit.Test;
+
+@RunTestOnShard(1)
+public class PinnedTest {
+  @Test public void testPinned() {
+  }
+}
@@ -0,0 +1,11 @@
+package com.squareup.testing.scannertests;
+
+import com.squareup.testing.SlowTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SlowTests.class)
+public class SlowCategoryTest {
+  @Test public void testSlow() {
+  }
+}
@@ -0,0 +1,12 @@
+package com.squareup.testing.scannertests;
+
+import org.junit.Test;
+
+public class StaticInitializerTest {
+  static {
+    StaticInitializers.INITIALIZED.add(StaticInitializerTest.class.getName());
+  }
+
+  @Test public void testInitialized() {
+  }
+}
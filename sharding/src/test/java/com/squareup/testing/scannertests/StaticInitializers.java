@@ -0,0 +1,12 @@
+package com.squareup.testing.scannertests;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Records which test classes in this package have been initialized. */
+public final class StaticInitializers {
+  public static final Set<String> INITIALIZED = ConcurrentHashMap.newKeySet();
+
+  private StaticInitializers() {
+  }
+}
@@ -0,0 +1,13 @@
+package com.squareup.testing.scannertests;
+
+import com.squareup.testing.guice.InjectorSupplier;
+import com.squareup.testing.guice.TestInjector;
+import com.squareup.testing.injectortests.SharedInjectorSupplier;
+import org.junit.Test;
+
+public class SupplierInterfaceTest {
+  @TestInjector public static InjectorSupplier injectorSupplier = new SharedInjectorSupplier();
+
+  @Test public void testSupplierInterface() {
+  }
+}
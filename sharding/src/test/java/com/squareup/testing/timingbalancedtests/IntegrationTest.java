@@ -0,0 +1,8 @@
+package com.squareup.testing.timingbalancedtests;
+
+import org.junit.Test;
+
+public final class IntegrationTest {
+  @Test public void testIntegration() {
+  }
+}
@@ -0,0 +1,10 @@
+package com.squareup.testing.timingbalancedtests;
+
+import com.squareup.testing.RunTestOnShard;
+import org.junit.Test;
+
+@RunTestOnShard(0)
+public final class PinnedTest {
+  @Test public void testPinned() {
+  }
+}
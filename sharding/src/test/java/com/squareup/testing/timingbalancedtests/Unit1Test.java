@@ -0,0 +1,11 @@
+package com.squareup.testing.timingbalancedtests;
+
+import org.junit.Test;
+
+public final class Unit1Test {
+  @Test public void testUnit1_test1() {
+  }
+
+  @Test public void testUnit1_test2() {
+  }
+}
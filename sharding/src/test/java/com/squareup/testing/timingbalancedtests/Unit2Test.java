@@ -0,0 +1,11 @@
+package com.squareup.testing.timingbalancedtests;
+
+import org.junit.Test;
+
+public final class Unit2Test {
+  @Test public void testUnit2_test1() {
+  }
+
+  @Test public void testUnit2_test2() {
+  }
+}
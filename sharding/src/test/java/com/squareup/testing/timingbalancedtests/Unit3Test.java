@@ -0,0 +1,11 @@
+package com.squareup.testing.timingbalancedtests;
+
+import org.junit.Test;
+
+public final class Unit3Test {
+  @Test public void testUnit3_test1() {
+  }
+
+  @Test public void testUnit3_test2() {
+  }
+}
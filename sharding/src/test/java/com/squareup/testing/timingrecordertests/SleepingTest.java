@@ -0,0 +1,17 @@
+package com.squareup.testing.timingrecordertests;
+
+import org.junit.Test;
+
+import static org.junit.Assume.assumeTrue;
+
+public final class SleepingTest {
+  public static final long SLEEP_MILLIS = 50;
+
+  @Test public void testSleeps() throws InterruptedException {
+    Thread.sleep(SLEEP_MILLIS);
+  }
+
+  @Test public void testSkipsItself() {
+    assumeTrue(false);
+  }
+}
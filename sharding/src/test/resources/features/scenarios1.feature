@@ -0,0 +1,17 @@
+Feature: Scenarios 1
+  Test sharding a cucumber test by scenario
+
+  Scenario: Scenarios 1 A
+    Given the number One
+    When I ask is One equal to Two
+    Then I should be told "No"
+
+  Scenario: Scenarios 1 B
+    Given the number One
+    When I ask is One equal to Two
+    Then I should be told "No"
+
+  Scenario: Scenarios 1 C
+    Given the number One
+    When I ask is One equal to Two
+    Then I should be told "No"
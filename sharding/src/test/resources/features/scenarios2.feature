@@ -0,0 +1,17 @@
+Feature: Scenarios 2
+  Test sharding a cucumber test by scenario, with a scenario outline
+
+  Scenario: Scenarios 2 A
+    Given the number One
+    When I ask is One equal to Two
+    Then I should be told "No"
+
+  Scenario Outline: Scenarios 2 Outline
+    Given the number One
+    When I ask is One equal to Two
+    Then I should be told "<answer>"
+
+    Examples:
+      | answer |
+      | No     |
+      | No     |
@@ -7,6 +7,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.squareup.testing.annotationprocessing.OptionsForProcessing.Option;
+import com.squareup.testing.runners.BaseTestRunner;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
@@ -42,7 +43,6 @@ import javax.tools.ToolProvider;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
@@ -192,7 +192,7 @@ import org.junit.runners.model.Statement;
 // TODO(jh): extra validation to check config and verify invariants prior to running a test case.
 // for example: checking that all referenced resources are present and verifying annotation
 // compatibility (for example, @ProcessorUnderTest and @NoProcess not allowed on same method)
-public class AnnotationProcessorTestRunner extends BlockJUnit4ClassRunner {
+public class AnnotationProcessorTestRunner extends BaseTestRunner {
 
   private static final Set<Class<?>> ALLOWED_PROCESS_RETURN_TYPES =
       ImmutableSet.of(void.class, boolean.class, Boolean.class);
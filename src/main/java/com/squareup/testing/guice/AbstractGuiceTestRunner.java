@@ -53,6 +53,21 @@ public abstract class AbstractGuiceTestRunner extends BaseTestRunner {
     }
   }
 
+  /** Stress test threads create and inject their own instances, so they need the method too. */
+  @Override protected Statement stressTestInvocation(final FrameworkMethod method,
+      final Statement invocation) {
+    return new Statement() {
+      @Override public void evaluate() throws Throwable {
+        currentTestMethod.set(method);
+        try {
+          invocation.evaluate();
+        } finally {
+          currentTestMethod.remove();
+        }
+      }
+    };
+  }
+
   @Override protected Object createTest() throws Exception {
     Preconditions.checkNotNull(currentTestMethod);
     beforeMemberInjection(currentTestMethod.get());
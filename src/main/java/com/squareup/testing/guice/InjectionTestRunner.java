@@ -102,7 +102,8 @@ public class InjectionTestRunner extends AbstractGuiceTestRunner {
     return null;
   }
 
-  @Override protected Injector getInjector() {
+  /** Synchronized because {@link com.squareup.testing.runners.StressTest} threads share it. */
+  @Override protected synchronized Injector getInjector() {
     if (injector == null) {
       Class<? extends Module> testModuleClass = getTestModuleClass();
       if (testModuleClass != null) {
@@ -3,10 +3,20 @@ package com.squareup.testing.net;
 import java.net.ServerSocket;
 import java.util.concurrent.atomic.AtomicInteger;
 
-/** Utility class that helps us pick an available IP port. */
+/**
+ * Utility class that helps us pick an available IP port.
+ *
+ * <p>Ports are picked from {@value #PORT_RANGE_START_PROPERTY} (default 1025, inclusive) to {@value
+ * #PORT_RANGE_END_PROPERTY} (default 2048, exclusive). Test JVMs running side by side on one host
+ * should be given disjoint ranges.
+ */
 public class PortPicker {
-  private static final int MAX_PORT = 2048;
-  private static final AtomicInteger lastPort = new AtomicInteger(1024);
+  public static final String PORT_RANGE_START_PROPERTY = "square.test.portRangeStart";
+  public static final String PORT_RANGE_END_PROPERTY = "square.test.portRangeEnd";
+
+  private static final int MAX_PORT = Integer.getInteger(PORT_RANGE_END_PROPERTY, 2048);
+  private static final AtomicInteger lastPort =
+      new AtomicInteger(Integer.getInteger(PORT_RANGE_START_PROPERTY, 1025) - 1);
 
   /**
    * Returns an available IP port.
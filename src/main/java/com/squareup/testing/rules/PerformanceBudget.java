@@ -0,0 +1,34 @@
+package com.squareup.testing.rules;
+
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Declares how much a test may spend, enforced by a {@link PerformanceBudgetRule}. On a class it
+ * applies to every test that doesn't declare its own. Limits that are left negative aren't
+ * enforced.
+ */
+@Inherited
+@Target({METHOD, TYPE})
+@Retention(RUNTIME)
+public @interface PerformanceBudget {
+  /** The most wall clock time the test may take, in milliseconds. */
+  long maxMillis() default -1;
+
+  /** The most CPU time the test's thread may use, in milliseconds. */
+  long maxCpuMillis() default -1;
+
+  /** The most bytes the test's thread may allocate. */
+  long maxAllocatedBytes() default -1;
+
+  /** The most garbage collections the JVM may run while the test runs. */
+  int maxGcs() default -1;
+
+  /** How many times to run the test, unmeasured, before the run that is measured. */
+  int warmups() default 0;
+}
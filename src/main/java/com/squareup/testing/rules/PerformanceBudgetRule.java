@@ -0,0 +1,221 @@
+package com.squareup.testing.rules;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * A {@link TestRule} that fails tests which exceed their {@link PerformanceBudget}: too much wall
+ * time, CPU time, allocation or garbage collection. Each test runs its warm-ups first, then once
+ * more while it's measured, and fails with what it used against what it was allowed.
+ *
+ * <pre>
+ * {@literal @}Rule public PerformanceBudgetRule budget = new PerformanceBudgetRule();
+ *
+ * {@literal @}Test {@literal @}PerformanceBudget(maxAllocatedBytes = 1024 * 1024, warmups = 5)
+ * public void parsesWithoutCopying() { ... }
+ * </pre>
+ *
+ * <p>To give each parameter of a {@link ParameterRule} its own budget, create the rule with {@link
+ * #perParameter} and put it inside the parameter rule, so that each parameter is warmed up and
+ * measured on its own:
+ *
+ * <pre>
+ * private final ParameterRule&lt;Integer&gt; sizes = new ParameterRule&lt;&gt;(10, 10000);
+ * {@literal @}Rule public RuleChain rules = RuleChain.outerRule(sizes)
+ *     .around(PerformanceBudgetRule.perParameter(sizes,
+ *         size -&gt; Budget.create().maxAllocatedBytes(100L * size).warmups(3)));
+ * </pre>
+ *
+ * <p>CPU time and allocation are measured on the test's thread, so they miss work the test hands
+ * to other threads; garbage collections are counted for the whole JVM.
+ *
+ * <p>Warm-ups run on the same test instance as the measured run. Its {@code @Before} and
+ * {@code @After} methods and the rules inside this one run again for each warm-up, but fields the
+ * test changes keep their values from one run to the next, so a test with warm-ups should reset
+ * such state in {@code @Before}.
+ */
+public class PerformanceBudgetRule implements TestRule {
+  private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  private final AbstractParameterRule<?> parameterRule;
+  private final Function<Description, Budget> budgets;
+
+  /** Creates a rule that enforces the {@link PerformanceBudget} of each test or its class. */
+  public PerformanceBudgetRule() {
+    this(null, PerformanceBudgetRule::annotatedBudget);
+  }
+
+  private PerformanceBudgetRule(AbstractParameterRule<?> parameterRule,
+      Function<Description, Budget> budgets) {
+    this.parameterRule = parameterRule;
+    this.budgets = budgets;
+  }
+
+  /**
+   * Creates a rule that enforces the budget {@code budgets} returns for the current parameter of
+   * {@code parameterRule}, or the test's {@link PerformanceBudget} if it returns null.
+   */
+  public static <T> PerformanceBudgetRule perParameter(final AbstractParameterRule<T> parameterRule,
+      final Function<? super T, Budget> budgets) {
+    return new PerformanceBudgetRule(parameterRule, description -> {
+      Budget budget = budgets.apply(parameterRule.getCurrentParameter());
+      return budget != null ? budget : annotatedBudget(description);
+    });
+  }
+
+  private static Budget annotatedBudget(Description description) {
+    PerformanceBudget annotation = description.getAnnotation(PerformanceBudget.class);
+    if (annotation == null && description.getTestClass() != null) {
+      annotation = description.getTestClass().getAnnotation(PerformanceBudget.class);
+    }
+    return annotation != null ? Budget.of(annotation) : null;
+  }
+
+  @Override public Statement apply(final Statement base, final Description description) {
+    return new Statement() {
+      @Override public void evaluate() throws Throwable {
+        // A parameter's budget is only known once the parameter rule has chosen it.
+        Budget budget = budgets.apply(description);
+        if (budget == null) {
+          base.evaluate();
+          return;
+        }
+        for (int i = 0; i < budget.warmups; i++) {
+          base.evaluate();
+        }
+        Usage start = Usage.now();
+        base.evaluate();
+        Usage used = Usage.now().minus(start);
+        budget.check(testName(description), used);
+      }
+    };
+  }
+
+  private String testName(Description description) {
+    String name = description.getDisplayName();
+    return parameterRule != null ? name + " [" + parameterRule.getCurrentParameter() + "]" : name;
+  }
+
+  /** Limits on what a test may spend. Limits that are negative aren't enforced. */
+  public static final class Budget {
+    private final long maxMillis;
+    private final long maxCpuMillis;
+    private final long maxAllocatedBytes;
+    private final int maxGcs;
+    private final int warmups;
+
+    private Budget(long maxMillis, long maxCpuMillis, long maxAllocatedBytes, int maxGcs,
+        int warmups) {
+      this.maxMillis = maxMillis;
+      this.maxCpuMillis = maxCpuMillis;
+      this.maxAllocatedBytes = maxAllocatedBytes;
+      this.maxGcs = maxGcs;
+      this.warmups = warmups;
+    }
+
+    /** Returns a budget with no limits and no warm-ups. */
+    public static Budget create() {
+      return new Budget(-1, -1, -1, -1, 0);
+    }
+
+    public static Budget of(PerformanceBudget annotation) {
+      return new Budget(annotation.maxMillis(), annotation.maxCpuMillis(),
+          annotation.maxAllocatedBytes(), annotation.maxGcs(), annotation.warmups());
+    }
+
+    public Budget maxMillis(long maxMillis) {
+      return new Budget(maxMillis, maxCpuMillis, maxAllocatedBytes, maxGcs, warmups);
+    }
+
+    public Budget maxCpuMillis(long maxCpuMillis) {
+      return new Budget(maxMillis, maxCpuMillis, maxAllocatedBytes, maxGcs, warmups);
+    }
+
+    public Budget maxAllocatedBytes(long maxAllocatedBytes) {
+      return new Budget(maxMillis, maxCpuMillis, maxAllocatedBytes, maxGcs, warmups);
+    }
+
+    public Budget maxGcs(int maxGcs) {
+      return new Budget(maxMillis, maxCpuMillis, maxAllocatedBytes, maxGcs, warmups);
+    }
+
+    public Budget warmups(int warmups) {
+      return new Budget(maxMillis, maxCpuMillis, maxAllocatedBytes, maxGcs, warmups);
+    }
+
+    /** Throws an {@link AssertionError} listing each limit that {@code used} exceeds. */
+    void check(String testName, Usage used) {
+      List<String> exceeded = new ArrayList<>();
+      long millis = TimeUnit.NANOSECONDS.toMillis(used.wallNanos);
+      if (maxMillis >= 0 && millis > maxMillis) {
+        exceeded.add(String.format("wall time %d ms > %d ms", millis, maxMillis));
+      }
+      long cpuMillis = TimeUnit.NANOSECONDS.toMillis(used.cpuNanos);
+      if (maxCpuMillis >= 0 && used.cpuNanos >= 0 && cpuMillis > maxCpuMillis) {
+        exceeded.add(String.format("CPU time %d ms > %d ms", cpuMillis, maxCpuMillis));
+      }
+      if (maxAllocatedBytes >= 0 && used.allocatedBytes > maxAllocatedBytes) {
+        exceeded.add(String.format("allocated %,d bytes > %,d bytes", used.allocatedBytes,
+            maxAllocatedBytes));
+      }
+      if (maxGcs >= 0 && used.gcs > maxGcs) {
+        exceeded.add(String.format("%d garbage collections > %d", used.gcs, maxGcs));
+      }
+      if (!exceeded.isEmpty()) {
+        throw new AssertionError(testName + " exceeded its performance budget after "
+            + warmups + " warm-ups:\n  " + String.join("\n  ", exceeded));
+      }
+    }
+  }
+
+  /** What the current thread has used so far, or between two points when subtracted. */
+  private static final class Usage {
+    final long wallNanos;
+    final long cpuNanos;
+    final long allocatedBytes;
+    final long gcs;
+
+    Usage(long wallNanos, long cpuNanos, long allocatedBytes, long gcs) {
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.gcs = gcs;
+    }
+
+    static Usage now() {
+      long gcs = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        gcs += Math.max(0, collector.getCollectionCount());
+      }
+      long allocatedBytes = -1;
+      if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean sunThreadMXBean =
+            (com.sun.management.ThreadMXBean) threadMXBean;
+        if (sunThreadMXBean.isThreadAllocatedMemorySupported()
+            && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+          allocatedBytes = sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+      }
+      long cpuNanos = threadMXBean.isCurrentThreadCpuTimeSupported()
+          ? threadMXBean.getCurrentThreadCpuTime()
+          : -1;
+      return new Usage(System.nanoTime(), cpuNanos, allocatedBytes, gcs);
+    }
+
+    /** Returns what was used since {@code start}, leaving unsupported measurements at -1. */
+    Usage minus(Usage start) {
+      return new Usage(wallNanos - start.wallNanos,
+          cpuNanos < 0 ? -1 : cpuNanos - start.cpuNanos,
+          allocatedBytes < 0 ? -1 : allocatedBytes - start.allocatedBytes,
+          gcs - start.gcs);
+    }
+  }
+}
@@ -11,7 +11,9 @@ import org.junit.runners.model.Statement;
 
 /**
  * Base class for test runners.  Provides easier hooks for performing actions before and after
- * tests and test classes
+ * tests and test classes, measures the resources each test uses for {@link
+ * TestResourceAccounting}, profiles slow tests with {@link SlowTestProfiler}, checks test
+ * classes for leaks with {@link LeakDetector}, and runs {@link StressTest}s concurrently.
  */
 public class BaseTestRunner extends BlockJUnit4ClassRunner {
   private static final ThreadLocal<Object> CURRENT_TEST = new ThreadLocal<Object>();
@@ -39,7 +41,7 @@ public class BaseTestRunner extends BlockJUnit4ClassRunner {
   @Override
   protected Statement classBlock(final RunNotifier notifier) {
     final Statement parentClassBlock = super.classBlock(notifier);
-    return new Statement() {
+    Statement classBlock = new Statement() {
       @Override public void evaluate() throws Throwable {
         beforeTestClass(getTestClass().getJavaClass(), notifier);
         try {
@@ -49,9 +51,66 @@ public class BaseTestRunner extends BlockJUnit4ClassRunner {
         }
       }
     };
+    LeakDetector leakDetector = LeakDetector.get();
+    return leakDetector != null ? leakDetector.apply(classBlock, getDescription()) : classBlock;
   }
 
   @Override protected Statement methodBlock(final FrameworkMethod method) {
+    final StressTest stressTest = method.getAnnotation(StressTest.class);
+    return new Statement() {
+      @Override public void evaluate() throws Throwable {
+        SlowTestProfiler.Profile profile = SlowTestProfiler.start(describeChild(method));
+        TestResourceAccounting.Measurement measurement = null;
+        boolean passed = false;
+        Throwable failure = null;
+        try {
+          measurement = TestResourceAccounting.start(getTestClass().getJavaClass(), method);
+          // Built only now, since building it creates and injects the test, which is measured and
+          // profiled too. Unless the instance is shared, each invocation of a stress test creates
+          // and sets up its own instance on the thread that invokes it.
+          Statement testBlock = stressTest != null && !stressTest.sharedInstance()
+              ? StressTestRun.statement(testName(method), stressTest,
+                  () -> stressTestInvocation(method, testBlock(method)).evaluate())
+              : testBlock(method);
+          testBlock.evaluate();
+          passed = true;
+        } catch (Throwable t) {
+          failure = t;
+        }
+        // Failing to measure or profile the test mustn't hide how the test itself failed, nor keep
+        // its recording open.
+        if (measurement != null) {
+          try {
+            measurement.finish(passed);
+          } catch (Throwable t) {
+            failure = suppress(failure, t);
+          }
+        }
+        if (profile != null) {
+          try {
+            profile.stop();
+          } catch (Throwable t) {
+            failure = suppress(failure, t);
+          }
+        }
+        if (failure != null) {
+          throw failure;
+        }
+      }
+    };
+  }
+
+  /** Returns {@code failure} with {@code secondary} suppressed by it, or secondary if none. */
+  private static Throwable suppress(Throwable failure, Throwable secondary) {
+    if (failure == null) {
+      return secondary;
+    }
+    failure.addSuppressed(secondary);
+    return failure;
+  }
+
+  /** Returns a statement that creates, sets up, runs and tears down one instance of the test. */
+  private Statement testBlock(final FrameworkMethod method) {
     final Statement parentBlock = super.methodBlock(method);
     if (parentBlock instanceof Fail) {
       // This is heavily dependent on the current impl of BlockJUnit4ClassRunner#methodBlock
@@ -68,14 +127,18 @@ public class BaseTestRunner extends BlockJUnit4ClassRunner {
     }
     return new Statement() {
       @Override public void evaluate() throws Throwable {
-        beforeTest(method, getTestClass().getJavaClass(), CURRENT_TEST.get());
+        boolean started = false;
         try {
+          beforeTest(method, getTestClass().getJavaClass(), CURRENT_TEST.get());
+          started = true;
           parentBlock.evaluate();
         } catch (InvocationTargetException e) {
           throw e.getTargetException();
         } finally {
-          afterTest(method, getTestClass().getJavaClass(), CURRENT_TEST.get());
-          CURRENT_TEST.remove();
+          if (started) {
+            afterTest(method, getTestClass().getJavaClass(), CURRENT_TEST.get());
+            CURRENT_TEST.remove();
+          }
         }
       }
     };
@@ -86,11 +149,17 @@ public class BaseTestRunner extends BlockJUnit4ClassRunner {
     CURRENT_TEST.set(test);
 
     final Statement parentInvoke = super.methodInvoker(method, test);
+    StressTest stressTest = method.getAnnotation(StressTest.class);
+    // A stress test that shares its instance is set up once, and only the method runs concurrently.
+    final Statement invoke = stressTest != null && stressTest.sharedInstance()
+        ? StressTestRun.statement(testName(method), stressTest,
+            () -> stressTestInvocation(method, parentInvoke).evaluate())
+        : parentInvoke;
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
         try {
-          parentInvoke.evaluate();
+          invoke.evaluate();
         } finally {
           CURRENT_TEST.remove();
         }
@@ -98,4 +167,16 @@ public class BaseTestRunner extends BlockJUnit4ClassRunner {
     };
   }
 
+  /**
+   * Returns the statement that a {@link StressTest} thread evaluates to invoke {@code method} once.
+   * Those threads aren't the one that runs the test method, so runners that keep what they know
+   * about the running test in thread locals should set it up here.
+   */
+  protected Statement stressTestInvocation(FrameworkMethod method, Statement invocation) {
+    return invocation;
+  }
+
+  private String testName(FrameworkMethod method) {
+    return getTestClass().getName() + "#" + method.getName();
+  }
 }
@@ -0,0 +1,138 @@
+package com.squareup.testing.runners;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts latencies in buckets that are an eighth of a power of two wide, so that percentiles are
+ * within 12.5% of the truth whatever the scale, in constant space. Not thread safe; give each
+ * thread its own and {@link #add} them together.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = bucket(Long.MAX_VALUE) + 1;
+  private static final int BAR_WIDTH = 40;
+
+  private final long[] counts = new long[BUCKET_COUNT];
+  private long count;
+  private long totalNanos;
+  private long minNanos = Long.MAX_VALUE;
+  private long maxNanos;
+
+  void record(long nanos) {
+    nanos = Math.max(0, nanos);
+    counts[bucket(nanos)]++;
+    count++;
+    totalNanos += nanos;
+    minNanos = Math.min(minNanos, nanos);
+    maxNanos = Math.max(maxNanos, nanos);
+  }
+
+  /** Adds the latencies recorded by {@code other} to this. */
+  void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    totalNanos += other.totalNanos;
+    minNanos = Math.min(minNanos, other.minNanos);
+    maxNanos = Math.max(maxNanos, other.maxNanos);
+  }
+
+  long count() {
+    return count;
+  }
+
+  long minNanos() {
+    return count > 0 ? minNanos : 0;
+  }
+
+  long maxNanos() {
+    return maxNanos;
+  }
+
+  long meanNanos() {
+    return count > 0 ? totalNanos / count : 0;
+  }
+
+  /**
+   * Returns the latency that {@code percentile} percent of latencies are at or below, rounded up
+   * to the top of its bucket.
+   */
+  long percentileNanos(double percentile) {
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= Math.max(1, rank)) {
+        return Math.max(minNanos(), Math.min(maxNanos, lowerBound(i + 1) - 1));
+      }
+    }
+    return maxNanos;
+  }
+
+  /** Prints a bar for each power of two between the fastest and the slowest latency. */
+  String draw(String indent) {
+    if (count == 0) {
+      return "";
+    }
+    int first = bucket(minNanos) / SUB_BUCKETS;
+    int last = bucket(maxNanos) / SUB_BUCKETS;
+    long[] rows = new long[last - first + 1];
+    long largest = 0;
+    for (int i = first * SUB_BUCKETS; i < (last + 1) * SUB_BUCKETS; i++) {
+      rows[i / SUB_BUCKETS - first] += counts[i];
+      largest = Math.max(largest, rows[i / SUB_BUCKETS - first]);
+    }
+
+    StringBuilder result = new StringBuilder();
+    for (int row = 0; row < rows.length; row++) {
+      int bucket = (first + row) * SUB_BUCKETS;
+      int width = (int) Math.ceil((double) BAR_WIDTH * rows[row] / largest);
+      result.append(String.format("%s%8s - %-8s |", indent, format(lowerBound(bucket)),
+          format(lowerBound(bucket + SUB_BUCKETS))));
+      for (int i = 0; i < width; i++) {
+        result.append('#');
+      }
+      result.append(' ').append(rows[row]).append('\n');
+    }
+    return result.toString();
+  }
+
+  /** Formats {@code nanos} in whichever unit keeps it short. */
+  static String format(long nanos) {
+    if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+      return nanos + "ns";
+    } else if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+      return String.format("%.1fus", nanos / 1e3);
+    } else if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+      return String.format("%.1fms", nanos / 1e6);
+    }
+    return String.format("%.2fs", nanos / 1e9);
+  }
+
+  /**
+   * Values below {@link #SUB_BUCKETS} each have a bucket; larger values share {@link
+   * #SUB_BUCKETS} buckets per power of two.
+   */
+  private static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** Returns the smallest value in {@code bucket}, saturating past the largest bucket. */
+  private static long lowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    if (bucket >= BUCKET_COUNT) {
+      return Long.MAX_VALUE;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+  }
+}
@@ -0,0 +1,211 @@
+package com.squareup.testing.runners;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Finds test classes that leak non-daemon threads, file descriptors or heap, by comparing
+ * snapshots taken before and after the class. {@link BaseTestRunner} checks every test class when
+ * {@value #LEAK_DETECTION_PROPERTY} is {@code report}, which logs leaks, or {@code fail}, which
+ * fails the class. Tests run by other runners can use it as a {@code @ClassRule}.
+ *
+ * <p>Threads that are still running after the class are given a second to finish, so that
+ * executors shut down asynchronously aren't reported. File descriptors are read from {@code
+ * /proc/self/fd}, so are only checked on Linux, ignoring the jar files that class loading opens.
+ * The heap is measured after a forced GC, and only growth over {@value #HEAP_THRESHOLD_PROPERTY}
+ * bytes (default 64 MiB) is a leak, since caches such as memoized injectors grow it legitimately.
+ */
+public class LeakDetector implements TestRule {
+  /** System property set to {@code report} or {@code fail} to check each test class for leaks. */
+  public static final String LEAK_DETECTION_PROPERTY = "square.test.leakDetection";
+
+  /** System property setting how many bytes the heap may grow by during a test class. */
+  public static final String HEAP_THRESHOLD_PROPERTY = "square.test.leakHeapThresholdBytes";
+
+  private static final Logger logger = Logger.getLogger(LeakDetector.class.getCanonicalName());
+  private static final Path FD_DIRECTORY = Paths.get("/proc/self/fd");
+  private static final long THREAD_GRACE_MILLIS = 1000;
+
+  private final boolean failOnLeak;
+  private final long heapThresholdBytes;
+
+  public LeakDetector(boolean failOnLeak, long heapThresholdBytes) {
+    this.failOnLeak = failOnLeak;
+    this.heapThresholdBytes = heapThresholdBytes;
+  }
+
+  /** Returns a leak detector configured by system properties, or null if leaks aren't checked. */
+  static LeakDetector get() {
+    String mode = System.getProperty(LEAK_DETECTION_PROPERTY);
+    if (mode == null) {
+      return null;
+    }
+    if (!mode.equals("report") && !mode.equals("fail")) {
+      throw new IllegalArgumentException(
+          LEAK_DETECTION_PROPERTY + " must be report or fail, but was " + mode);
+    }
+    return new LeakDetector(mode.equals("fail"),
+        Long.getLong(HEAP_THRESHOLD_PROPERTY, 64L * 1024 * 1024));
+  }
+
+  @Override public Statement apply(final Statement base, final Description description) {
+    return new Statement() {
+      @Override public void evaluate() throws Throwable {
+        Snapshot before = Snapshot.take();
+        Throwable failure = null;
+        try {
+          base.evaluate();
+        } catch (Throwable t) {
+          failure = t;
+        }
+        // A leak is reported alongside the class's own failure rather than in place of it.
+        try {
+          check(description.getDisplayName(), before);
+        } catch (Throwable leak) {
+          if (failure == null) {
+            throw leak;
+          }
+          failure.addSuppressed(leak);
+        }
+        if (failure != null) {
+          throw failure;
+        }
+      }
+    };
+  }
+
+  /**
+   * Compares the JVM with {@code before}, and reports or fails on what {@code testName} leaked.
+   */
+  void check(String testName, Snapshot before) {
+    List<String> leaks = before.leaksSince(Snapshot.take(), heapThresholdBytes);
+    if (leaks.isEmpty()) {
+      return;
+    }
+    String message = testName + " leaked:\n  " + String.join("\n  ", leaks);
+    if (failOnLeak) {
+      throw new AssertionError(message);
+    }
+    logger.warning(message);
+  }
+
+  /** The live non-daemon threads, open file descriptors and used heap at one point. */
+  static final class Snapshot {
+    private final Set<Thread> threads;
+    private final Map<String, String> fileDescriptors;
+    private final long heapBytes;
+
+    private Snapshot(Set<Thread> threads, Map<String, String> fileDescriptors, long heapBytes) {
+      this.threads = threads;
+      this.fileDescriptors = fileDescriptors;
+      this.heapBytes = heapBytes;
+    }
+
+    static Snapshot take() {
+      return new Snapshot(nonDaemonThreads(), fileDescriptors(), usedHeapBytes());
+    }
+
+    /** Returns a description of each thread, file descriptor and heap growth since this. */
+    List<String> leaksSince(Snapshot after, long heapThresholdBytes) {
+      List<String> leaks = new ArrayList<>();
+      Set<Thread> newThreads = new HashSet<>(after.threads);
+      newThreads.removeAll(threads);
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(THREAD_GRACE_MILLIS);
+      for (Thread thread : newThreads) {
+        try {
+          thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+          leaks.add(describe(thread));
+        }
+      }
+
+      for (Map.Entry<String, String> fd : after.fileDescriptors.entrySet()) {
+        if (!fd.getValue().equals(fileDescriptors.get(fd.getKey()))
+            && !fd.getValue().endsWith(".jar")) {
+          leaks.add("file descriptor " + fd.getKey() + " -> " + fd.getValue());
+        }
+      }
+
+      long heapGrowth = after.heapBytes - heapBytes;
+      if (heapGrowth > heapThresholdBytes) {
+        leaks.add(String.format("heap grew by %,d bytes, from %,d to %,d", heapGrowth, heapBytes,
+            after.heapBytes));
+      }
+      return leaks;
+    }
+
+    private static String describe(Thread thread) {
+      StringBuilder description = new StringBuilder()
+          .append("thread \"").append(thread.getName()).append("\" (")
+          .append(thread.getState()).append(")");
+      StackTraceElement[] stackTrace = thread.getStackTrace();
+      for (int i = 0; i < Math.min(5, stackTrace.length); i++) {
+        description.append("\n      at ").append(stackTrace[i]);
+      }
+      return description.toString();
+    }
+
+    private static Set<Thread> nonDaemonThreads() {
+      Set<Thread> threads = new HashSet<>();
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (!thread.isDaemon() && thread.isAlive()) {
+          threads.add(thread);
+        }
+      }
+      return threads;
+    }
+
+    /** Returns each open file descriptor and what it refers to, or nothing if unsupported. */
+    private static Map<String, String> fileDescriptors() {
+      Map<String, String> fileDescriptors = new HashMap<>();
+      if (!Files.isDirectory(FD_DIRECTORY)) {
+        return fileDescriptors;
+      }
+      try (DirectoryStream<Path> fds = Files.newDirectoryStream(FD_DIRECTORY)) {
+        Path listing = FD_DIRECTORY.toRealPath();
+        for (Path fd : fds) {
+          try {
+            Path target = Files.readSymbolicLink(fd);
+            // The directory stream's own descriptor isn't a leak.
+            if (!target.equals(listing)) {
+              fileDescriptors.put(fd.getFileName().toString(), target.toString());
+            }
+          } catch (IOException e) {
+            // Closed since it was listed.
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to list " + FD_DIRECTORY, e);
+      }
+      return fileDescriptors;
+    }
+
+    private static long usedHeapBytes() {
+      MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+      // A second collection frees what finalizers released during the first.
+      System.gc();
+      System.runFinalization();
+      System.gc();
+      return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package com.squareup.testing.runners;
+
+import com.google.common.base.Throwables;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.runner.Description;
+
+/**
+ * Records each test run by a {@link BaseTestRunner} with Java Flight Recorder's low-overhead
+ * {@code default} settings, and keeps the recording of any test slower than {@value
+ * #THRESHOLD_PROPERTY} milliseconds. Profiling is off unless that property is set.
+ *
+ * <p>A slow test leaves two files in {@value #DIRECTORY_PROPERTY} (default {@code test-profiles}
+ * in the temporary directory): its {@code .jfr} recording, to open in JDK Mission Control, and a
+ * {@code .json} summary of its hottest methods, its biggest allocation sites and its most contended
+ * locks. Both are named for the test with a unique suffix, so that parameterized, repeated and
+ * stress test runs of one method don't overwrite each other's. The recording samples every thread in the JVM, so it includes the
+ * servers a test talks to, and other tests when they run in parallel.
+ *
+ * <p>Each profile kept is logged. Flight Recorder needs Java 11, so it is used reflectively; a JVM
+ * without it logs a warning and runs its tests without profiling them.
+ */
+public final class SlowTestProfiler {
+  /** System property setting how many milliseconds a test may take before its profile is kept. */
+  public static final String THRESHOLD_PROPERTY = "square.test.profileSlowerThanMillis";
+
+  /** System property naming the directory that slow tests' profiles are written to. */
+  public static final String DIRECTORY_PROPERTY = "square.test.profileDir";
+
+  private static final Logger logger = Logger.getLogger(SlowTestProfiler.class.getCanonicalName());
+  private static final int TOP_COUNT = 10;
+
+  private static volatile boolean unavailable;
+
+  private SlowTestProfiler() {
+  }
+
+  /**
+   * Starts recording a test that is about to run, or returns null if slow tests aren't profiled.
+   */
+  static Profile start(Description description) {
+    String threshold = System.getProperty(THRESHOLD_PROPERTY);
+    if (threshold == null || unavailable) {
+      return null;
+    }
+    String directory = System.getProperty(DIRECTORY_PROPERTY);
+    Path path = directory != null
+        ? Paths.get(directory)
+        : Paths.get(System.getProperty("java.io.tmpdir"), "test-profiles");
+    try {
+      return new Profile(description, Long.parseLong(threshold), path);
+    } catch (IllegalStateException e) {
+      unavailable = true;
+      logger.warning("Not profiling slow tests, Flight Recorder is unavailable: " + e);
+      return null;
+    }
+  }
+
+  /** A recording of one test. */
+  static final class Profile {
+    private final String testName;
+    private final long thresholdMillis;
+    private final Path directory;
+    private final Object recording;
+    private final long startNanos;
+
+    private Profile(Description description, long thresholdMillis, Path directory) {
+      this.testName = description.getClassName() + "#" + description.getMethodName();
+      this.thresholdMillis = thresholdMillis;
+      this.directory = directory;
+      FlightRecorder flightRecorder = FlightRecorder.get();
+      try {
+        recording = flightRecorder.newRecording.newInstance(
+            call(flightRecorder.getConfiguration, null, "default"));
+        call(flightRecorder.setName, recording, testName);
+        // Allocations are sampled, never recorded one by one, which would slow every test down.
+        call(flightRecorder.enable, recording, "jdk.ObjectAllocationSample");
+        call(flightRecorder.disable, recording, "jdk.ObjectAllocationInNewTLAB");
+        call(flightRecorder.disable, recording, "jdk.ObjectAllocationOutsideTLAB");
+        call(flightRecorder.start, recording);
+      } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+        throw new IllegalStateException("Unable to start a Flight Recorder recording", e);
+      }
+      startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops recording, and writes the recording and its summary if the test was slow. The
+     * recording is closed even if that fails.
+     */
+    void stop() {
+      long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      FlightRecorder flightRecorder = FlightRecorder.get();
+      try (Closeable closed = () -> call(flightRecorder.close, recording)) {
+        call(flightRecorder.stop, recording);
+        if (millis < thresholdMillis) {
+          return;
+        }
+        Files.createDirectories(directory);
+        Path jfr = Files.createTempFile(directory, fileName(testName) + "-", ".jfr");
+        call(flightRecorder.dump, recording, jfr);
+        String jfrName = jfr.getFileName().toString();
+        Path json = directory.resolve(
+            jfrName.substring(0, jfrName.length() - ".jfr".length()) + ".json");
+        Files.write(json, summarize(jfr, millis).getBytes(StandardCharsets.UTF_8));
+        logger.info(String.format("%s took %d ms, profile written to %s", testName, millis, json));
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to write the profile of " + testName, e);
+      }
+    }
+
+    /** Returns {@code testName} with anything that isn't safe in a file name replaced. */
+    private static String fileName(String testName) {
+      return testName.replaceAll("[^A-Za-z0-9._#$-]", "_");
+    }
+
+    private String summarize(Path jfr, long millis) throws IOException {
+      FlightRecorder flightRecorder = FlightRecorder.get();
+      Map<String, Long> samplesByMethod = new HashMap<>();
+      Map<String, Long> sampledBytesBySite = new HashMap<>();
+      Map<String, Long> blockedMillisByLock = new HashMap<>();
+      for (Object event : (List<?>) call(flightRecorder.readAllEvents, null, jfr)) {
+        String frame = topFrame(call(flightRecorder.getStackTrace, event));
+        Object eventType = call(flightRecorder.getEventType, event);
+        switch ((String) call(flightRecorder.eventTypeName, eventType)) {
+          case "jdk.ExecutionSample":
+            samplesByMethod.merge(frame, 1L, Long::sum);
+            break;
+          case "jdk.ObjectAllocationSample":
+            sampledBytesBySite.merge(
+                frame, (Long) call(flightRecorder.getLong, event, "weight"), Long::sum);
+            break;
+          case "jdk.JavaMonitorEnter":
+            Object monitorClass = call(flightRecorder.getClass, event, "monitorClass");
+            String lock = call(flightRecorder.className, monitorClass) + " at " + frame;
+            Duration blocked = (Duration) call(flightRecorder.getDuration, event);
+            blockedMillisByLock.merge(lock, blocked.toMillis(), Long::sum);
+            break;
+          default:
+            break;
+        }
+      }
+
+      JsonObject summary = new JsonObject();
+      summary.addProperty("test", testName);
+      summary.addProperty("millis", millis);
+      summary.addProperty("recording", jfr.getFileName().toString());
+      summary.add("hotMethods", top(samplesByMethod, "method", "samples"));
+      summary.add("allocationSites", top(sampledBytesBySite, "site", "bytes"));
+      summary.add("contendedLocks", top(blockedMillisByLock, "lock", "blockedMillis"));
+      return new GsonBuilder().setPrettyPrinting().create().toJson(summary);
+    }
+
+    private static String topFrame(Object stackTrace) throws IOException {
+      FlightRecorder flightRecorder = FlightRecorder.get();
+      List<?> frames = stackTrace != null
+          ? (List<?>) call(flightRecorder.getFrames, stackTrace)
+          : null;
+      if (frames == null || frames.isEmpty()) {
+        return "<unknown>";
+      }
+      Object frame = frames.get(0);
+      Object method = call(flightRecorder.getMethod, frame);
+      Object type = call(flightRecorder.getType, method);
+      return call(flightRecorder.className, type) + "." + call(flightRecorder.methodName, method)
+          + ":" + call(flightRecorder.getLineNumber, frame);
+    }
+
+    /** Returns the {@value #TOP_COUNT} largest of {@code values}, largest first. */
+    private static JsonArray top(Map<String, Long> values, String keyName, String valueName) {
+      List<Map.Entry<String, Long>> entries = new ArrayList<>(values.entrySet());
+      entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+      JsonArray top = new JsonArray();
+      for (Map.Entry<String, Long> entry
+          : entries.subList(0, Math.min(TOP_COUNT, entries.size()))) {
+        JsonObject json = new JsonObject();
+        json.addProperty(keyName, entry.getKey());
+        json.addProperty(valueName, entry.getValue());
+        top.add(json);
+      }
+      return top;
+    }
+  }
+
+  /** Invokes {@code method}, throwing what it throws rather than wrapping it. */
+  private static Object call(Method method, Object target, Object... args) throws IOException {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The parts of Flight Recorder's API that profiles use, looked up once. Looking them up throws
+   * IllegalStateException on a JVM without Flight Recorder.
+   */
+  private static final class FlightRecorder {
+    private static volatile FlightRecorder instance;
+
+    final Method getConfiguration;
+    final Constructor<?> newRecording;
+    final Method setName;
+    final Method enable;
+    final Method disable;
+    final Method start;
+    final Method stop;
+    final Method dump;
+    final Method close;
+    final Method readAllEvents;
+    final Method getStackTrace;
+    final Method getEventType;
+    final Method eventTypeName;
+    final Method getLong;
+    final Method getClass;
+    final Method getDuration;
+    final Method getFrames;
+    final Method getMethod;
+    final Method getLineNumber;
+    final Method getType;
+    final Method methodName;
+    final Method className;
+
+    private FlightRecorder() throws ReflectiveOperationException {
+      Class<?> configuration = Class.forName("jdk.jfr.Configuration");
+      Class<?> recording = Class.forName("jdk.jfr.Recording");
+      Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+      Class<?> recordedObject = Class.forName("jdk.jfr.consumer.RecordedObject");
+      Class<?> recordedEvent = Class.forName("jdk.jfr.consumer.RecordedEvent");
+      Class<?> eventType = Class.forName("jdk.jfr.EventType");
+      Class<?> recordedStackTrace = Class.forName("jdk.jfr.consumer.RecordedStackTrace");
+      Class<?> recordedFrame = Class.forName("jdk.jfr.consumer.RecordedFrame");
+      Class<?> recordedMethod = Class.forName("jdk.jfr.consumer.RecordedMethod");
+      Class<?> recordedClass = Class.forName("jdk.jfr.consumer.RecordedClass");
+      getConfiguration = configuration.getMethod("getConfiguration", String.class);
+      newRecording = recording.getConstructor(configuration);
+      setName = recording.getMethod("setName", String.class);
+      enable = recording.getMethod("enable", String.class);
+      disable = recording.getMethod("disable", String.class);
+      start = recording.getMethod("start");
+      stop = recording.getMethod("stop");
+      dump = recording.getMethod("dump", Path.class);
+      close = recording.getMethod("close");
+      readAllEvents = recordingFile.getMethod("readAllEvents", Path.class);
+      getStackTrace = recordedEvent.getMethod("getStackTrace");
+      getEventType = recordedEvent.getMethod("getEventType");
+      eventTypeName = eventType.getMethod("getName");
+      getLong = recordedObject.getMethod("getLong", String.class);
+      getClass = recordedObject.getMethod("getClass", String.class);
+      getDuration = recordedEvent.getMethod("getDuration");
+      getFrames = recordedStackTrace.getMethod("getFrames");
+      getMethod = recordedFrame.getMethod("getMethod");
+      getLineNumber = recordedFrame.getMethod("getLineNumber");
+      getType = recordedMethod.getMethod("getType");
+      methodName = recordedMethod.getMethod("getName");
+      className = recordedClass.getMethod("getName");
+    }
+
+    static FlightRecorder get() {
+      if (instance == null) {
+        try {
+          instance = new FlightRecorder();
+        } catch (ReflectiveOperationException | LinkageError e) {
+          throw new IllegalStateException("Flight Recorder is unavailable", e);
+        }
+      }
+      return instance;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.squareup.testing.runners;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Makes a {@link BaseTestRunner} run a test method many times at once, on {@link #threads}
+ * threads, for {@link #iterations} invocations in total or for {@link #durationMillis}. The test
+ * fails if any invocation fails. Invocations that fail an assumption are counted as skipped, and
+ * the test is skipped only if every invocation is. Its throughput, latency percentiles and a
+ * histogram of its latencies are logged when it finishes, and failures are grouped by message.
+ *
+ * <p>By default each invocation gets its own test instance, with its own {@code @Before} and
+ * {@code @After} methods, rules and {@code beforeTest} and {@code afterTest} hooks, just as if it
+ * were run alone. With {@link #sharedInstance} the test is set up once and only the test method
+ * itself runs concurrently, on the one instance, to stress what that instance holds.
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface StressTest {
+  /** How many threads invoke the test at once. */
+  int threads() default 4;
+
+  /** How many times to invoke the test, across all threads. Ignored if there is a duration. */
+  int iterations() default 100;
+
+  /** How long to keep invoking the test, in milliseconds, or 0 to run {@link #iterations}. */
+  long durationMillis() default 0;
+
+  /** Whether every invocation shares one test instance, rather than each creating its own. */
+  boolean sharedInstance() default false;
+}
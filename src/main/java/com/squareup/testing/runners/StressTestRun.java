@@ -0,0 +1,174 @@
+package com.squareup.testing.runners;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.runners.model.Statement;
+
+/**
+ * Runs one {@link StressTest}: invokes the test from every thread until its iterations or its
+ * duration are used up, then logs what it measured and fails if any invocation failed. Invocations
+ * that fail an assumption are skipped rather than failed, and the test is skipped only if every
+ * invocation was.
+ */
+final class StressTestRun {
+  /** One invocation of the test, from setting it up to tearing it down. */
+  interface Invocation {
+    void invoke() throws Throwable;
+  }
+
+  private static final Logger logger = Logger.getLogger(StressTestRun.class.getCanonicalName());
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final String testName;
+  private final StressTest stressTest;
+  private final Invocation invocation;
+  private final AtomicInteger remaining;
+  private final AtomicLong failureCount = new AtomicLong();
+  private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+  private final AtomicLong skippedCount = new AtomicLong();
+  private final AtomicReference<AssumptionViolatedException> firstSkip = new AtomicReference<>();
+  private final Map<String, AtomicLong> failuresByMessage = new ConcurrentHashMap<>();
+  private volatile long deadlineNanos;
+
+  private StressTestRun(String testName, StressTest stressTest, Invocation invocation) {
+    if (stressTest.threads() < 1) {
+      throw new IllegalArgumentException(testName + " must stress test with at least one thread");
+    }
+    if (stressTest.durationMillis() <= 0 && stressTest.iterations() < 1) {
+      throw new IllegalArgumentException(
+          testName + " must stress test for at least one iteration or a duration");
+    }
+    this.testName = testName;
+    this.stressTest = stressTest;
+    this.invocation = invocation;
+    this.remaining = new AtomicInteger(stressTest.iterations());
+  }
+
+  /** Returns a statement that stress tests {@code invocation} as {@code stressTest} says. */
+  static Statement statement(final String testName, final StressTest stressTest,
+      final Invocation invocation) {
+    return new Statement() {
+      @Override public void evaluate() throws Throwable {
+        new StressTestRun(testName, stressTest, invocation).run();
+      }
+    };
+  }
+
+  private void run() throws Throwable {
+    final int threads = stressTest.threads();
+    final CountDownLatch ready = new CountDownLatch(threads);
+    final CountDownLatch go = new CountDownLatch(1);
+    final AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, testName + "-stress-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    List<Future<LatencyHistogram>> futures = new ArrayList<>();
+    long startNanos;
+    try {
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(() -> {
+          ready.countDown();
+          go.await();
+          return invokeUntilDone();
+        }));
+      }
+      // Release every thread at once, so the test is as contended as it can be from the start.
+      ready.await();
+      startNanos = System.nanoTime();
+      deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(stressTest.durationMillis());
+      go.countDown();
+
+      LatencyHistogram latencies = new LatencyHistogram();
+      for (Future<LatencyHistogram> future : futures) {
+        try {
+          latencies.add(future.get());
+        } catch (ExecutionException e) {
+          throw e.getCause();
+        }
+      }
+      report(latencies, System.nanoTime() - startNanos);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private LatencyHistogram invokeUntilDone() {
+    LatencyHistogram latencies = new LatencyHistogram();
+    while (stressTest.durationMillis() > 0
+        ? System.nanoTime() - deadlineNanos < 0
+        : remaining.getAndDecrement() > 0) {
+      long startNanos = System.nanoTime();
+      try {
+        invocation.invoke();
+      } catch (AssumptionViolatedException skip) {
+        skippedCount.incrementAndGet();
+        firstSkip.compareAndSet(null, skip);
+      } catch (Throwable failure) {
+        failed(failure);
+      }
+      latencies.record(System.nanoTime() - startNanos);
+    }
+    return latencies;
+  }
+
+  private void failed(Throwable failure) {
+    failureCount.incrementAndGet();
+    firstFailure.compareAndSet(null, failure);
+    failuresByMessage.computeIfAbsent(String.valueOf(failure), key -> new AtomicLong())
+        .incrementAndGet();
+  }
+
+  /**
+   * Logs the throughput and latencies of the run, fails if any invocation failed, and skips the
+   * test if every invocation was skipped.
+   */
+  private void report(LatencyHistogram latencies, long elapsedNanos) {
+    StringBuilder report = new StringBuilder()
+        .append(String.format(
+            "%s: %,d invocations on %d threads in %s, %,.1f/s, %,d failed, %,d skipped\n",
+            testName, latencies.count(), stressTest.threads(),
+            LatencyHistogram.format(elapsedNanos),
+            latencies.count() * 1e9 / Math.max(1, elapsedNanos), failureCount.get(),
+            skippedCount.get()))
+        .append("  latency: min ").append(LatencyHistogram.format(latencies.minNanos()))
+        .append(", mean ").append(LatencyHistogram.format(latencies.meanNanos()));
+    for (double percentile : PERCENTILES) {
+      report.append(", p")
+          .append(percentile == (long) percentile ? Long.toString((long) percentile) : percentile)
+          .append(' ')
+          .append(LatencyHistogram.format(latencies.percentileNanos(percentile)));
+    }
+    report.append(", max ").append(LatencyHistogram.format(latencies.maxNanos())).append('\n')
+        .append(latencies.draw("  "));
+    logger.info(report.toString());
+
+    if (firstFailure.get() != null) {
+      StringBuilder message = new StringBuilder()
+          .append(String.format("%s failed %,d of %,d invocations:\n", testName,
+              failureCount.get(), latencies.count()));
+      for (Map.Entry<String, AtomicLong> failure : failuresByMessage.entrySet()) {
+        message.append(String.format("  %,d x %s\n", failure.getValue().get(), failure.getKey()));
+      }
+      throw new AssertionError(message.append(report).toString(), firstFailure.get());
+    }
+    if (skippedCount.get() == latencies.count() && firstSkip.get() != null) {
+      throw firstSkip.get();
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package com.squareup.testing.runners;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.runners.model.FrameworkMethod;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Measures the wall time, CPU time, allocation, garbage collection and peak threads of each test
+ * run by a {@link BaseTestRunner}, and publishes them to {@link TestResourceListener}s and to a
+ * JSON report. CPU time and allocation cover only the thread that runs the test, not the threads
+ * it starts, so a {@link StressTest}'s are those of its runner thread alone. Peak threads are
+ * sampled every {@value #THREAD_SAMPLE_MILLIS} ms while each test runs rather than read from the
+ * JVM's peak, which is shared by every test running at once.
+ *
+ * <p>The report is the JSON lines file named by {@value #REPORT_FILE_PROPERTY}: one object per
+ * test, appended as each test finishes, under a file lock so that any number of JVMs may share it.
+ * Tests aren't measured at all unless there is a report or a listener.
+ */
+public final class TestResourceAccounting {
+  /** System property naming the JSON lines file that each test's resource usage is appended to. */
+  public static final String REPORT_FILE_PROPERTY = "square.test.resourceReport";
+
+  private static final long THREAD_SAMPLE_MILLIS = 10;
+
+  private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+  private static final List<TestResourceListener> listeners = new CopyOnWriteArrayList<>();
+  private static final Set<Measurement> running = ConcurrentHashMap.newKeySet();
+  private static ScheduledExecutorService threadSampler;
+
+  private TestResourceAccounting() {
+  }
+
+  public static void addListener(TestResourceListener listener) {
+    listeners.add(listener);
+  }
+
+  public static void removeListener(TestResourceListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Starts measuring a test that is about to run on the current thread, or returns null if nothing
+   * would receive the measurement.
+   */
+  static Measurement start(Class<?> testClass, FrameworkMethod method) {
+    String reportFile = System.getProperty(REPORT_FILE_PROPERTY);
+    if (reportFile == null && listeners.isEmpty()) {
+      return null;
+    }
+    return new Measurement(testClass.getName(), method.getName(),
+        reportFile != null ? Paths.get(reportFile) : null);
+  }
+
+  /** Samples the live threads for every running test, from a daemon thread started once. */
+  private static synchronized void startSamplingThreads() {
+    if (threadSampler != null) {
+      return;
+    }
+    threadSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "test-resource-sampler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    threadSampler.scheduleAtFixedRate(() -> {
+      if (!running.isEmpty()) {
+        int threads = threadMXBean.getThreadCount();
+        running.forEach(measurement -> measurement.sampleThreads(threads));
+      }
+    }, THREAD_SAMPLE_MILLIS, THREAD_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Returns the bytes allocated by the current thread so far, or -1 if that isn't supported. */
+  private static long allocatedBytes() {
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunThreadMXBean =
+          (com.sun.management.ThreadMXBean) threadMXBean;
+      if (sunThreadMXBean.isThreadAllocatedMemorySupported()
+          && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+        return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static long cpuNanos() {
+    return threadMXBean.isCurrentThreadCpuTimeSupported()
+        ? threadMXBean.getCurrentThreadCpuTime()
+        : -1;
+  }
+
+  private static long[] gcCountAndMillis() {
+    long[] gc = new long[2];
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      gc[0] += Math.max(0, collector.getCollectionCount());
+      gc[1] += Math.max(0, collector.getCollectionTime());
+    }
+    return gc;
+  }
+
+  private static synchronized void append(Path path, TestResourceUsage usage) {
+    byte[] line = (usage.toJson() + "\n").getBytes(StandardCharsets.UTF_8);
+    try (FileChannel channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+         FileLock ignored = channel.lock()) {
+      ByteBuffer buffer = ByteBuffer.wrap(line);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to append test resource usage to " + path, e);
+    }
+  }
+
+  /** The resources used so far by a running test. */
+  static final class Measurement {
+    private final String className;
+    private final String methodName;
+    private final Path reportPath;
+    private final long startNanos;
+    private final long startCpuNanos;
+    private final long startAllocatedBytes;
+    private final long[] startGc;
+    private final AtomicInteger peakThreads = new AtomicInteger();
+
+    private Measurement(String className, String methodName, Path reportPath) {
+      this.className = className;
+      this.methodName = methodName;
+      this.reportPath = reportPath;
+      sampleThreads(threadMXBean.getThreadCount());
+      startSamplingThreads();
+      running.add(this);
+      this.startGc = gcCountAndMillis();
+      this.startAllocatedBytes = allocatedBytes();
+      this.startCpuNanos = cpuNanos();
+      this.startNanos = System.nanoTime();
+    }
+
+    void sampleThreads(int threads) {
+      peakThreads.accumulateAndGet(threads, Math::max);
+    }
+
+    /** Finishes measuring the test and publishes its usage. */
+    void finish(boolean passed) {
+      long wallNanos = System.nanoTime() - startNanos;
+      running.remove(this);
+      sampleThreads(threadMXBean.getThreadCount());
+      long cpuNanos = startCpuNanos < 0 ? -1 : cpuNanos() - startCpuNanos;
+      long allocatedBytes = startAllocatedBytes < 0 ? -1 : allocatedBytes() - startAllocatedBytes;
+      long[] gc = gcCountAndMillis();
+      TestResourceUsage usage = new TestResourceUsage(className, methodName, passed, wallNanos,
+          cpuNanos, allocatedBytes, gc[0] - startGc[0], gc[1] - startGc[1],
+          peakThreads.get());
+
+      if (reportPath != null) {
+        append(reportPath, usage);
+      }
+      for (TestResourceListener listener : listeners) {
+        listener.testFinished(usage);
+      }
+    }
+  }
+}
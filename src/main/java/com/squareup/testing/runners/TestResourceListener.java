@@ -0,0 +1,13 @@
+package com.squareup.testing.runners;
+
+/**
+ * Receives the resources each test used, as measured by {@link BaseTestRunner}. Register one with
+ * {@link TestResourceAccounting#addListener}.
+ */
+public interface TestResourceListener {
+  /**
+   * Called on the test's thread after each test and its {@code afterTest} hook. Listeners
+   * shouldn't throw, since that would fail the test.
+   */
+  void testFinished(TestResourceUsage usage);
+}
@@ -0,0 +1,100 @@
+package com.squareup.testing.runners;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The resources one test used, from just before its instance is created to just after its {@code
+ * afterTest} hook, so including its constructor, its injection by the Guice runners, its rules and
+ * its {@code @Before} and {@code @After} methods.
+ *
+ * <p>CPU time and allocation are those of the thread that runs the test, and are -1 if the JVM
+ * can't measure them; threads the test starts, such as those of a {@link StressTest}, aren't
+ * counted. GC and peak thread counts are for the whole JVM, so they include other tests' work when
+ * tests run in parallel. The peak is sampled while the test runs, so it can miss threads that
+ * live only between samples.
+ */
+public final class TestResourceUsage {
+  private final String className;
+  private final String methodName;
+  private final boolean passed;
+  private final long wallNanos;
+  private final long cpuNanos;
+  private final long allocatedBytes;
+  private final long gcCount;
+  private final long gcMillis;
+  private final int peakThreads;
+
+  TestResourceUsage(String className, String methodName, boolean passed, long wallNanos,
+      long cpuNanos, long allocatedBytes, long gcCount, long gcMillis, int peakThreads) {
+    this.className = className;
+    this.methodName = methodName;
+    this.passed = passed;
+    this.wallNanos = wallNanos;
+    this.cpuNanos = cpuNanos;
+    this.allocatedBytes = allocatedBytes;
+    this.gcCount = gcCount;
+    this.gcMillis = gcMillis;
+    this.peakThreads = peakThreads;
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  /** Returns false if the test failed, or was skipped by a failed assumption. */
+  public boolean isPassed() {
+    return passed;
+  }
+
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  /** Returns the CPU time of the test's thread, or -1 if it can't be measured. */
+  public long getCpuNanos() {
+    return cpuNanos;
+  }
+
+  /** Returns the bytes allocated by the test's thread, or -1 if they can't be measured. */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /** Returns the number of garbage collections in the JVM while the test ran. */
+  public long getGcCount() {
+    return gcCount;
+  }
+
+  /** Returns the time the JVM's garbage collectors spent collecting while the test ran. */
+  public long getGcMillis() {
+    return gcMillis;
+  }
+
+  /** Returns the most live threads in the JVM at once that were sampled while the test ran. */
+  public int getPeakThreads() {
+    return peakThreads;
+  }
+
+  /** Returns this usage as one line of the JSON report. */
+  JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    json.addProperty("class", className);
+    json.addProperty("method", methodName);
+    json.addProperty("passed", passed);
+    json.addProperty("wallMillis", wallNanos / 1000000);
+    json.addProperty("cpuMillis", cpuNanos < 0 ? -1 : cpuNanos / 1000000);
+    json.addProperty("allocatedBytes", allocatedBytes);
+    json.addProperty("gcCount", gcCount);
+    json.addProperty("gcMillis", gcMillis);
+    json.addProperty("peakThreads", peakThreads);
+    return json;
+  }
+
+  @Override public String toString() {
+    return className + "#" + methodName + " " + toJson();
+  }
+}
@@ -0,0 +1,93 @@
+package com.squareup.testing.guice;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Provides;
+import com.google.inject.name.Names;
+import com.squareup.testing.TestModule;
+import com.squareup.testing.TestScoped;
+import com.squareup.testing.runners.StressTest;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/** Test for {@link StressTest}s run by an {@link InjectionTestRunner}. */
+public class InjectionTestRunnerStressTest {
+  @After public void resetSampleTest() {
+    RecordingRunner.injectedMethods.clear();
+    SampleTest.testScopedValues.clear();
+  }
+
+  @Test public void injectsEachInvocationOnItsOwnThread() {
+    Result result = new JUnitCore().run(Request.method(SampleTest.class, "freshInstances"));
+
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+    assertEquals(40, RecordingRunner.injectedMethods.size());
+    for (FrameworkMethod method : RecordingRunner.injectedMethods) {
+      assertNotNull(method);
+      assertEquals("freshInstances", method.getName());
+    }
+    // Each invocation enters the test scope on its own thread.
+    assertEquals(40, SampleTest.testScopedValues.size());
+  }
+
+  /** Records the method of every test it injects, and fails if it doesn't know the method. */
+  public static class RecordingRunner extends InjectionTestRunner {
+    static final List<FrameworkMethod> injectedMethods = new CopyOnWriteArrayList<>();
+
+    public RecordingRunner(Class<?> klass) throws InitializationError {
+      super(klass);
+    }
+
+    @Override protected void beforeMemberInjection(FrameworkMethod testMethod) {
+      injectedMethods.add(testMethod);
+      super.beforeMemberInjection(testMethod);
+    }
+
+    @Override protected synchronized Injector getInjector() {
+      assertNotNull("no current test method", getCurrentTestMethod());
+      return super.getInjector();
+    }
+  }
+
+  public static class SampleModule extends AbstractModule {
+    @Override protected void configure() {
+      bindConstant().annotatedWith(Names.named("myConstant")).to("my-value");
+    }
+
+    @Provides @TestScoped @Named("testScoped") public Object testScoped() {
+      return new Object();
+    }
+  }
+
+  @RunWith(RecordingRunner.class)
+  @TestModule(SampleModule.class)
+  public static class SampleTest {
+    static final Set<Object> testScopedValues = Collections.synchronizedSet(new HashSet<>());
+
+    @Inject @Named("myConstant") String injectedMember;
+    @Inject @Named("testScoped") Object testScoped;
+
+    @Test @StressTest(threads = 4, iterations = 40)
+    public void freshInstances() {
+      assertEquals("my-value", injectedMember);
+      testScopedValues.add(testScoped);
+    }
+  }
+}
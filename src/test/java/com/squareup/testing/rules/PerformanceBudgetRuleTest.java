@@ -0,0 +1,106 @@
+package com.squareup.testing.rules;
+
+import com.squareup.testing.rules.PerformanceBudgetRule.Budget;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class PerformanceBudgetRuleTest {
+  private static final int MEGABYTE = 1024 * 1024;
+
+  /** Keeps the sample tests from running, and failing, outside of this test. */
+  private static volatile boolean runningSamples;
+
+  @Before public void runSamples() {
+    runningSamples = true;
+  }
+
+  @After public void stopRunningSamples() {
+    runningSamples = false;
+  }
+
+  @Test public void failsTestsOverBudget() {
+    Result result = new JUnitCore().run(Request.method(BudgetedTest.class, "allocates"));
+
+    assertThat(result.getFailureCount()).isEqualTo(1);
+    assertThat(result.getFailures().get(0).getMessage())
+        .contains("allocates(" + BudgetedTest.class.getName() + ")")
+        .contains("exceeded its performance budget after 0 warm-ups")
+        .contains("> 1,048,576 bytes");
+  }
+
+  @Test public void runsWarmupsBeforeMeasuring() {
+    BudgetedTest.cheapRuns.set(0);
+
+    Result result = new JUnitCore().run(Request.method(BudgetedTest.class, "cheap"));
+
+    assertThat(result.wasSuccessful()).isTrue();
+    assertThat(BudgetedTest.cheapRuns.get()).isEqualTo(4);
+  }
+
+  @Test public void runsWarmupsOnTheSameInstance() {
+    Result result = new JUnitCore().run(Request.method(BudgetedTest.class, "countsItsRuns"));
+
+    assertThat(result.wasSuccessful()).isTrue();
+    assertThat(BudgetedTest.lastInstanceRuns).isEqualTo(3);
+  }
+
+  @Test public void measuresEachParameterOnItsOwn() {
+    Result result = new JUnitCore().run(PerParameterBudgetTest.class);
+
+    assertThat(result.getFailureCount()).isEqualTo(1);
+    assertThat(result.getFailures().get(0).getMessage())
+        .contains("[4] exceeded its performance budget after 2 warm-ups");
+  }
+
+  @PerformanceBudget(maxAllocatedBytes = MEGABYTE)
+  public static class BudgetedTest {
+    static final AtomicInteger cheapRuns = new AtomicInteger();
+    static volatile byte[] sink;
+    static volatile int lastInstanceRuns;
+
+    @Rule public PerformanceBudgetRule budget = new PerformanceBudgetRule();
+
+    private int instanceRuns;
+
+    @Test public void allocates() {
+      assumeTrue(runningSamples);
+      for (int i = 0; i < 4; i++) {
+        sink = new byte[MEGABYTE];
+      }
+    }
+
+    @Test @PerformanceBudget(maxMillis = 10000, warmups = 3)
+    public void cheap() {
+      cheapRuns.incrementAndGet();
+    }
+
+    @Test @PerformanceBudget(warmups = 2)
+    public void countsItsRuns() {
+      lastInstanceRuns = ++instanceRuns;
+    }
+  }
+
+  public static class PerParameterBudgetTest {
+    static volatile byte[] sink;
+
+    private final ParameterRule<Integer> megabytes = new ParameterRule<>(1, 4);
+    @Rule public RuleChain rules = RuleChain.outerRule(megabytes)
+        .around(PerformanceBudgetRule.perParameter(megabytes,
+            parameter -> Budget.create().maxAllocatedBytes(2 * MEGABYTE).warmups(2)));
+
+    @Test public void allocatesItsParameter() {
+      assumeTrue(runningSamples);
+      sink = new byte[megabytes.getCurrentParameter() * MEGABYTE];
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.squareup.testing.runners;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LeakDetectorTest {
+  /** Keeps the sample test's thread alive until this test is done with it. */
+  private static volatile CountDownLatch release;
+
+  @After public void releaseLeakedThread() {
+    System.clearProperty(LeakDetector.LEAK_DETECTION_PROPERTY);
+    if (release != null) {
+      release.countDown();
+      release = null;
+    }
+  }
+
+  @Test public void failsClassesThatLeakThreads() {
+    System.setProperty(LeakDetector.LEAK_DETECTION_PROPERTY, "fail");
+    release = new CountDownLatch(1);
+
+    Result result = new JUnitCore().run(LeakingTest.class);
+
+    assertThat(result.getFailureCount()).isEqualTo(1);
+    assertThat(result.getFailures().get(0).getMessage())
+        .startsWith(LeakingTest.class.getName() + " leaked:")
+        .contains("thread \"leaking-thread\"");
+  }
+
+  @Test public void keepsTheClassesOwnFailure() {
+    System.setProperty(LeakDetector.LEAK_DETECTION_PROPERTY, "fail");
+    release = new CountDownLatch(1);
+
+    Result result = new JUnitCore().run(LeakingBeforeClassTest.class);
+
+    assertThat(result.getFailureCount()).isEqualTo(1);
+    Throwable failure = result.getFailures().get(0).getException();
+    assertThat(failure).hasMessage("before class failed");
+    assertThat(failure.getSuppressed()).hasSize(1);
+    assertThat(failure.getSuppressed()[0])
+        .hasMessageStartingWith(LeakingBeforeClassTest.class.getName() + " leaked:");
+  }
+
+  @Test public void ignoresThreadsThatFinishSoonAfter() {
+    System.setProperty(LeakDetector.LEAK_DETECTION_PROPERTY, "fail");
+    release = new CountDownLatch(0);
+
+    Result result = new JUnitCore().run(LeakingTest.class);
+
+    assertThat(result.wasSuccessful()).isTrue();
+  }
+
+  /** Starts a thread that runs until the test releases it, if the test is leaking one. */
+  private static void startLeakingThread() {
+    final CountDownLatch latch = release;
+    if (latch == null) {
+      return;
+    }
+    new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          latch.await();
+        } catch (InterruptedException ignored) {
+        }
+      }
+    }, "leaking-thread").start();
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class LeakingTest {
+    @Test public void startsThread() {
+      startLeakingThread();
+    }
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class LeakingBeforeClassTest {
+    @BeforeClass public static void failAfterStartingThread() {
+      startLeakingThread();
+      if (release != null) {
+        throw new IllegalStateException("before class failed");
+      }
+    }
+
+    @Test public void doesNothing() {
+    }
+  }
+}
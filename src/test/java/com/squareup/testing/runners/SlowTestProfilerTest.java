@@ -0,0 +1,132 @@
+package com.squareup.testing.runners;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlowTestProfilerTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After public void clearProperties() {
+    System.clearProperty(SlowTestProfiler.THRESHOLD_PROPERTY);
+    System.clearProperty(SlowTestProfiler.DIRECTORY_PROPERTY);
+  }
+
+  @Test public void keepsProfilesOfSlowTestsOnly() throws Exception {
+    File directory = temporaryFolder.getRoot();
+    System.setProperty(SlowTestProfiler.THRESHOLD_PROPERTY, "200");
+    System.setProperty(SlowTestProfiler.DIRECTORY_PROPERTY, directory.getPath());
+
+    new JUnitCore().run(SampleTest.class);
+
+    String slowTest = SampleTest.class.getName() + "#slow";
+    List<String> profiles = profiles(directory);
+    assertThat(profiles).hasSize(2);
+    assertThat(profiles.get(0)).startsWith(slowTest + "-").endsWith(".jfr");
+    assertThat(profiles.get(1)).isEqualTo(profiles.get(0).replaceFirst("\\.jfr$", ".json"));
+    byte[] json = Files.readAllBytes(new File(directory, profiles.get(1)).toPath());
+    JsonObject summary =
+        new JsonParser().parse(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
+    assertThat(summary.get("test").getAsString()).isEqualTo(slowTest);
+    assertThat(summary.get("millis").getAsLong()).isGreaterThanOrEqualTo(200);
+    assertThat(summary.getAsJsonArray("hotMethods").size()).isGreaterThan(0);
+    assertThat(summary.has("allocationSites")).isTrue();
+    assertThat(summary.has("contendedLocks")).isTrue();
+  }
+
+  @Test public void profilesCreatingTheTest() throws Exception {
+    File directory = temporaryFolder.getRoot();
+    System.setProperty(SlowTestProfiler.THRESHOLD_PROPERTY, "200");
+    System.setProperty(SlowTestProfiler.DIRECTORY_PROPERTY, directory.getPath());
+
+    new JUnitCore().run(SlowConstructorTest.class);
+
+    String slowTest = SlowConstructorTest.class.getName() + "#doesNothing";
+    assertThat(profiles(directory)).hasSize(2).allMatch(name -> name.startsWith(slowTest + "-"));
+  }
+
+  @Test public void keepsTheProfileOfEveryRun() throws Exception {
+    File directory = temporaryFolder.getRoot();
+    System.setProperty(SlowTestProfiler.THRESHOLD_PROPERTY, "200");
+    System.setProperty(SlowTestProfiler.DIRECTORY_PROPERTY, directory.getPath());
+
+    new JUnitCore().run(SlowConstructorTest.class);
+    new JUnitCore().run(SlowConstructorTest.class);
+
+    assertThat(profiles(directory)).hasSize(4).doesNotHaveDuplicates();
+  }
+
+  @Test public void keepsTheTestsFailureIfItsProfileCantBeWritten() throws Exception {
+    File notADirectory = temporaryFolder.newFile();
+    System.setProperty(SlowTestProfiler.THRESHOLD_PROPERTY, "0");
+    System.setProperty(SlowTestProfiler.DIRECTORY_PROPERTY, notADirectory.getPath());
+
+    Result result = new JUnitCore().run(FailingTest.class);
+
+    assertThat(result.getFailureCount()).isEqualTo(1);
+    Throwable failure = result.getFailures().get(0).getException();
+    assertThat(failure).hasMessage("expected failure");
+    assertThat(failure.getSuppressed()).hasSize(1);
+    assertThat(failure.getSuppressed()[0]).hasMessageStartingWith("Unable to write the profile");
+  }
+
+  /** Returns the names of the files in {@code directory}, each recording before its summary. */
+  private static List<String> profiles(File directory) {
+    List<String> names = new ArrayList<>(Arrays.asList(directory.list()));
+    Collections.sort(names, Comparator.comparing(
+        (String name) -> name.substring(0, name.lastIndexOf('.'))).thenComparing(
+        name -> name.endsWith(".json")));
+    return names;
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class SampleTest {
+    static volatile Object sink;
+
+    @Test public void fast() {
+    }
+
+    @Test public void slow() {
+      long end = System.nanoTime() + 300_000_000L;
+      while (System.nanoTime() < end) {
+        sink = new int[64];
+      }
+    }
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class SlowConstructorTest {
+    public SlowConstructorTest() {
+      long end = System.nanoTime() + 300_000_000L;
+      while (System.nanoTime() < end) {
+        SampleTest.sink = new int[64];
+      }
+    }
+
+    @Test public void doesNothing() {
+    }
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class FailingTest {
+    @Test public void fails() {
+      throw new AssertionError("expected failure");
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.squareup.testing.runners;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class StressTestTest {
+  @After public void resetSampleTest() {
+    SampleTest.instances.clear();
+    SampleTest.invocations.set(0);
+    SampleTest.threads.clear();
+    SampleTest.failEvery = 0;
+    SampleTest.skipEvery = 0;
+  }
+
+  @Test public void createsAnInstanceForEachInvocation() {
+    Result result = run("freshInstances");
+
+    assertThat(result.wasSuccessful()).isTrue();
+    assertThat(SampleTest.invocations.get()).isEqualTo(200);
+    assertThat(SampleTest.instances).hasSize(200);
+    assertThat(SampleTest.threads).hasSize(4);
+  }
+
+  @Test public void sharesOneInstanceBetweenInvocations() {
+    Result result = run("sharedInstance");
+
+    assertThat(result.wasSuccessful()).isTrue();
+    assertThat(SampleTest.invocations.get()).isEqualTo(200);
+    assertThat(SampleTest.instances).hasSize(1);
+    assertThat(SampleTest.threads).hasSize(4);
+  }
+
+  @Test public void runsForTheDuration() {
+    long startMillis = System.currentTimeMillis();
+    Result result = run("forDuration");
+
+    assertThat(result.wasSuccessful()).isTrue();
+    assertThat(System.currentTimeMillis() - startMillis).isGreaterThanOrEqualTo(100);
+    assertThat(SampleTest.invocations.get()).isGreaterThan(0);
+  }
+
+  @Test public void failsWithEveryFailedInvocation() {
+    SampleTest.failEvery = 10;
+
+    Result result = run("freshInstances");
+
+    assertThat(result.getFailureCount()).isEqualTo(1);
+    assertThat(result.getFailures().get(0).getMessage())
+        .startsWith(SampleTest.class.getName() + "#freshInstances failed 20 of 200 invocations:")
+        .contains("20 x java.lang.AssertionError: invocation failed")
+        .contains("200 invocations on 4 threads")
+        .contains("p99 ");
+    assertThat(result.getFailures().get(0).getException().getCause())
+        .hasMessage("invocation failed");
+  }
+
+  @Test public void skipsInvocationsThatFailAnAssumption() {
+    SampleTest.skipEvery = 10;
+    List<Failure> assumptionFailures = new ArrayList<>();
+
+    Result result = run("freshInstances", assumptionFailures);
+
+    assertThat(result.wasSuccessful()).isTrue();
+    assertThat(assumptionFailures).isEmpty();
+    assertThat(SampleTest.invocations.get()).isEqualTo(200);
+  }
+
+  @Test public void skipsTheTestIfEveryInvocationIsSkipped() {
+    SampleTest.skipEvery = 1;
+    List<Failure> assumptionFailures = new ArrayList<>();
+
+    Result result = run("freshInstances", assumptionFailures);
+
+    assertThat(result.getFailureCount()).isEqualTo(0);
+    assertThat(assumptionFailures).hasSize(1);
+    assertThat(SampleTest.invocations.get()).isEqualTo(200);
+  }
+
+  @Test public void histogramPercentilesAreWithinABucket() {
+    LatencyHistogram latencies = new LatencyHistogram();
+    for (long nanos = 1; nanos <= 1000; nanos++) {
+      latencies.record(nanos * 1000);
+    }
+
+    assertThat(latencies.count()).isEqualTo(1000);
+    assertThat(latencies.minNanos()).isEqualTo(1000);
+    assertThat(latencies.maxNanos()).isEqualTo(1000000);
+    assertThat(latencies.percentileNanos(50)).isBetween(500000L, 562500L);
+    assertThat(latencies.percentileNanos(90)).isBetween(900000L, 1000000L);
+    assertThat(latencies.percentileNanos(100)).isEqualTo(1000000);
+    assertThat(latencies.draw("")).contains("#");
+  }
+
+  private static Result run(String methodName) {
+    return new JUnitCore().run(Request.method(SampleTest.class, methodName));
+  }
+
+  private static Result run(String methodName, List<Failure> assumptionFailures) {
+    JUnitCore core = new JUnitCore();
+    core.addListener(new RunListener() {
+      @Override public void testAssumptionFailure(Failure failure) {
+        assumptionFailures.add(failure);
+      }
+    });
+    return core.run(Request.method(SampleTest.class, methodName));
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class SampleTest {
+    static final Set<SampleTest> instances = Collections.synchronizedSet(new HashSet<>());
+    static final Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+    static final AtomicInteger invocations = new AtomicInteger();
+    static volatile int failEvery;
+    static volatile int skipEvery;
+
+    private boolean setUp;
+
+    @Before public void setUp() {
+      setUp = true;
+    }
+
+    @Test @StressTest(threads = 4, iterations = 200)
+    public void freshInstances() throws Exception {
+      invoke();
+    }
+
+    @Test @StressTest(threads = 4, iterations = 200, sharedInstance = true)
+    public void sharedInstance() throws Exception {
+      invoke();
+    }
+
+    @Test @StressTest(threads = 2, durationMillis = 100)
+    public void forDuration() throws Exception {
+      invoke();
+    }
+
+    private void invoke() throws Exception {
+      assertThat(setUp).isTrue();
+      instances.add(this);
+      threads.add(Thread.currentThread());
+      // Long enough that every thread takes a turn before the iterations run out.
+      Thread.sleep(1);
+      int invocation = invocations.incrementAndGet();
+      assumeTrue(skipEvery == 0 || invocation % skipEvery != 0);
+      if (failEvery > 0 && invocation % failEvery == 0) {
+        throw new AssertionError("invocation failed");
+      }
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package com.squareup.testing.runners;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.FixMethodOrder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class TestResourceAccountingTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Map<String, TestResourceUsage> usages = new ConcurrentHashMap<>();
+  private final TestResourceListener listener = new TestResourceListener() {
+    @Override public void testFinished(TestResourceUsage usage) {
+      usages.put(usage.getMethodName(), usage);
+    }
+  };
+
+  @Before public void addListener() {
+    TestResourceAccounting.addListener(listener);
+  }
+
+  @After public void removeListener() {
+    TestResourceAccounting.removeListener(listener);
+    System.clearProperty(TestResourceAccounting.REPORT_FILE_PROPERTY);
+  }
+
+  @Test public void measuresEachTest() {
+    new JUnitCore().run(SampleTest.class);
+
+    assertThat(usages).containsOnlyKeys("allocates", "skipsItself");
+    TestResourceUsage allocates = usages.get("allocates");
+    assertThat(allocates.getClassName()).isEqualTo(SampleTest.class.getName());
+    assertThat(allocates.isPassed()).isTrue();
+    assertThat(allocates.getAllocatedBytes()).isGreaterThanOrEqualTo(8 * SampleTest.MEGABYTE);
+    assertThat(allocates.getCpuNanos()).isGreaterThan(0);
+    assertThat(allocates.getWallNanos()).isGreaterThanOrEqualTo(allocates.getCpuNanos() / 2);
+    assertThat(allocates.getPeakThreads()).isGreaterThan(0);
+    assertThat(usages.get("skipsItself").isPassed()).isFalse();
+  }
+
+  @Test public void measuresCreatingTheTest() {
+    new JUnitCore().run(SlowConstructorTest.class);
+
+    TestResourceUsage usage = usages.get("doesNothing");
+    assertThat(usage.isPassed()).isTrue();
+    assertThat(usage.getAllocatedBytes()).isGreaterThanOrEqualTo(8 * SampleTest.MEGABYTE);
+    assertThat(usage.getWallNanos())
+        .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(SlowConstructorTest.SLEEP_MILLIS));
+  }
+
+  @Test public void samplesThePeakThreadsOfEachTest() {
+    new JUnitCore().run(ThreadsTest.class);
+
+    assertThat(usages.get("aStartsThreads").getPeakThreads())
+        .isGreaterThanOrEqualTo(ThreadsTest.THREADS)
+        .isGreaterThan(usages.get("bStartsNone").getPeakThreads());
+  }
+
+  @Test public void appendsEachTestToTheReport() throws Exception {
+    File report = new File(temporaryFolder.getRoot(), "resources.json");
+    System.setProperty(TestResourceAccounting.REPORT_FILE_PROPERTY, report.getPath());
+
+    new JUnitCore().run(SampleTest.class);
+
+    List<String> methods = new ArrayList<>();
+    for (String line : Files.readAllLines(report.toPath(), StandardCharsets.UTF_8)) {
+      JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+      assertThat(json.get("class").getAsString()).isEqualTo(SampleTest.class.getName());
+      assertThat(json.has("allocatedBytes")).isTrue();
+      methods.add(json.get("method").getAsString());
+    }
+    assertThat(methods).containsExactlyInAnyOrder("allocates", "skipsItself");
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class SampleTest {
+    static final int MEGABYTE = 1024 * 1024;
+    static volatile byte[] sink;
+
+    @Test public void allocates() {
+      for (int i = 0; i < 10; i++) {
+        sink = new byte[MEGABYTE];
+      }
+    }
+
+    @Test public void skipsItself() {
+      assumeTrue(false);
+    }
+  }
+
+  @RunWith(BaseTestRunner.class)
+  public static class SlowConstructorTest {
+    static final long SLEEP_MILLIS = 50;
+
+    public SlowConstructorTest() throws InterruptedException {
+      for (int i = 0; i < 10; i++) {
+        SampleTest.sink = new byte[SampleTest.MEGABYTE];
+      }
+      Thread.sleep(SLEEP_MILLIS);
+    }
+
+    @Test public void doesNothing() {
+    }
+  }
+
+  @RunWith(BaseTestRunner.class)
+  @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+  public static class ThreadsTest {
+    static final int THREADS = 8;
+
+    @Test public void aStartsThreads() throws InterruptedException {
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        Thread thread = new Thread(() -> {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException ignored) {
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    }
+
+    @Test public void bStartsNone() throws InterruptedException {
+      Thread.sleep(50);
+    }
+  }
+}